@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Compares two sets of JMH results, as written by <tt>-rf json</tt>, and reports the benchmarks
+ * whose scores have got worse by more than a given percentage.
+ * <p>
+ * Usage: <tt>BenchmarkResultComparator &lt;baseline.json&gt; &lt;results.json&gt; [thresholdPercent]</tt>
+ * <p>
+ * The process exits with status 1 if any benchmark has regressed, so that it can fail a build.
+ * Benchmarks that are only in one of the files are listed but are not counted as regressions.
+ *
+ * @since 5.2
+ */
+public class BenchmarkResultComparator
+{
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+    private static final String MODE_THROUGHPUT = "thrpt";
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            System.err.println("Usage: BenchmarkResultComparator <baseline.json> <results.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = (args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT);
+
+        Map<String, Result> baseline = load(new File(args[0]));
+        Map<String, Result> current = load(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet())
+        {
+            String key = entry.getKey();
+            Result result = entry.getValue();
+            Result base = baseline.get(key);
+            if (base == null)
+            {
+                System.out.println(String.format("NEW        %s: %.3f %s", key, result.score, result.unit));
+                continue;
+            }
+            double change = base.getChangePercent(result);
+            boolean regressed = change < -threshold;
+            if (regressed)
+            {
+                regressions++;
+            }
+            System.out.println(String.format(
+                    "%-10s %s: %.3f -> %.3f %s (%+.1f%%)",
+                    regressed ? "REGRESSED" : "OK", key, base.score, result.score, result.unit, change));
+        }
+        for (String key : baseline.keySet())
+        {
+            if (!current.containsKey(key))
+            {
+                System.out.println("MISSING    " + key);
+            }
+        }
+
+        System.out.println(String.format("%d regression(s) beyond %.1f%%", regressions, threshold));
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Load results keyed by benchmark, mode and parameters.
+     */
+    private static Map<String, Result> load(File file) throws IOException, JSONException
+    {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        JSONArray json;
+        try
+        {
+            json = new JSONArray(new JSONTokener(reader));
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        Map<String, Result> results = new TreeMap<String, Result>();
+        for (int i = 0; i < json.length(); i++)
+        {
+            JSONObject run = json.getJSONObject(i);
+            String mode = run.getString("mode");
+            StringBuilder key = new StringBuilder(run.getString("benchmark"))
+                    .append(" [").append(mode);
+            JSONObject params = run.optJSONObject("params");
+            if (params != null)
+            {
+                // Sorted, so that the key does not depend on the order in the file
+                Map<String, String> sortedParams = new TreeMap<String, String>();
+                Iterator<?> names = params.keys();
+                while (names.hasNext())
+                {
+                    String name = (String) names.next();
+                    sortedParams.put(name, params.getString(name));
+                }
+                for (Map.Entry<String, String> param : sortedParams.entrySet())
+                {
+                    key.append(", ").append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            key.append(']');
+
+            JSONObject metric = run.getJSONObject("primaryMetric");
+            results.put(key.toString(), new Result(mode, metric.getDouble("score"), metric.getString("scoreUnit")));
+        }
+        return results;
+    }
+
+    private static class Result
+    {
+        private final String mode;
+        private final double score;
+        private final String unit;
+
+        private Result(String mode, double score, String unit)
+        {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        /**
+         * @return the improvement of the given result over this one as a percentage, which is
+         *         negative if it is worse.  Higher scores are better for throughput and lower
+         *         scores are better for the time-based modes.
+         */
+        private double getChangePercent(Result other)
+        {
+            if (score == 0.0)
+            {
+                return 0.0;
+            }
+            double change = (other.score - score) / score * 100.0;
+            return (MODE_THROUGHPUT.equals(mode) ? change : -change);
+        }
+    }
+}
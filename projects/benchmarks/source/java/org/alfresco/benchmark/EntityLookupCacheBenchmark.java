@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups through an {@link EntityLookupCache} whose entities are all cached.  The DAO is held
+ * in memory, so only the cost of the cache itself is measured.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EntityLookupCacheBenchmark
+{
+    private static final int NUM_ENTITIES = 10000;
+    private static final int BATCH_SIZE = 50;
+
+    private EntityLookupCache<Long, String, String> lookupCache;
+    private String[] values;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        lookupCache = new EntityLookupCache<Long, String, String>(
+                new DefaultSimpleCache<Serializable, Object>(NUM_ENTITIES * 4, "benchmarkLookupCache"),
+                new InMemoryEntityDAO());
+        values = new String[NUM_ENTITIES];
+        for (int i = 0; i < NUM_ENTITIES; i++)
+        {
+            values[i] = "entity-" + i;
+            lookupCache.getOrCreateByValue(values[i]);
+        }
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        // IDs are issued from 1
+        long id = ThreadLocalRandom.current().nextInt(NUM_ENTITIES) + 1L;
+        return lookupCache.getByKey(id);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        return lookupCache.getByValue(values[ThreadLocalRandom.current().nextInt(NUM_ENTITIES)]);
+    }
+
+    @Benchmark
+    public List<Pair<Long, String>> getByKeys()
+    {
+        int start = ThreadLocalRandom.current().nextInt(NUM_ENTITIES);
+        List<Long> ids = new ArrayList<Long>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++)
+        {
+            ids.add(((start + i) % NUM_ENTITIES) + 1L);
+        }
+        return lookupCache.getByKeys(ids);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getOrCreateByValue()
+    {
+        return lookupCache.getOrCreateByValue(values[ThreadLocalRandom.current().nextInt(NUM_ENTITIES)]);
+    }
+
+    /**
+     * Stands in for a DAO, with the entities held in maps.
+     */
+    private static class InMemoryEntityDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final AtomicLong nextId = new AtomicLong(1L);
+        private final ConcurrentMap<Long, String> byKey = new ConcurrentHashMap<Long, String>();
+        private final ConcurrentMap<String, Long> byValue = new ConcurrentHashMap<String, Long>();
+
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            String value = byKey.get(key);
+            return (value == null ? null : new Pair<Long, String>(key, value));
+        }
+
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            Long key = byValue.get(value);
+            return (key == null ? null : new Pair<Long, String>(key, value));
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            Long key = nextId.getAndIncrement();
+            byKey.put(key, value);
+            byValue.put(value, key);
+            return new Pair<Long, String>(key, value);
+        }
+    }
+}
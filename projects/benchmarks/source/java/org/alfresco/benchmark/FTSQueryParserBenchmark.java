@@ -0,0 +1,99 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.search.impl.parsers.AlfrescoFunctionEvaluationContext;
+import org.alfresco.repo.search.impl.parsers.FTSParser;
+import org.alfresco.repo.search.impl.parsers.FTSQueryParser;
+import org.alfresco.repo.search.impl.querymodel.Constraint;
+import org.alfresco.repo.search.impl.querymodel.QueryOptions.Connective;
+import org.alfresco.repo.search.impl.querymodel.impl.lucene.LuceneQueryModelFactory;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of Alfresco FTS queries into the query model, as done for every FTS search before it
+ * is handed to the index.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FTSQueryParserBenchmark
+{
+    private static final String DEFAULT_FIELD = "keywords";
+
+    @Param({
+        "alfresco",
+        "cm:name:report* AND TYPE:\"cm:content\" AND -ASPECT:\"sys:hidden\" AND cm:modified:[2010-01-01 TO NOW]",
+        "keywords:(budget OR forecast) AND PATH:\"/app:company_home//*\""})
+    public String query;
+
+    private AlfrescoFunctionEvaluationContext functionContext;
+    private Map<String, String> templates;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository)
+    {
+        NamespaceService namespaceService = repository.getBean("namespaceService");
+        DictionaryService dictionaryService = repository.getBean("dictionaryService");
+        functionContext = new AlfrescoFunctionEvaluationContext(
+                namespaceService, dictionaryService, NamespaceService.CONTENT_MODEL_1_0_URI);
+
+        // The template used by the Share search
+        templates = new HashMap<String, String>();
+        templates.put(DEFAULT_FIELD, "%(cm:name cm:title cm:description ia:whatEvent ia:descriptionEvent lnk:title lnk:description TEXT TAG)");
+    }
+
+    @Benchmark
+    public Constraint buildFTS()
+    {
+        // The parser adds to the templates it is given
+        Map<String, String> queryTemplates = new HashMap<String, String>(templates);
+        return FTSQueryParser.buildFTS(query, new LuceneQueryModelFactory(), functionContext, null, null,
+                FTSParser.Mode.DEFAULT_DISJUNCTION, Connective.OR, queryTemplates, DEFAULT_FIELD, FTSQueryParser.RerankPhase.SINGLE_PASS);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * Writes and reads of content through a {@link FileContentStore} in a temporary directory.
+ * No repository is needed; the results mostly depend on the file system that holds the
+ * temporary directory.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileContentStoreBenchmark
+{
+    private static final int NUM_READ_URLS = 100;
+
+    /** The size of the content in bytes */
+    @Param({"1024", "1048576"})
+    public int size;
+
+    private File storeRoot;
+    private FileContentStore store;
+    private byte[] content;
+    private String[] contentUrls;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        StaticApplicationContext ctx = new StaticApplicationContext();
+        ctx.refresh();
+        storeRoot = new File(TempFileProvider.getTempDir(), "benchmark-" + GUID.generate());
+        store = new FileContentStore(ctx, storeRoot);
+
+        content = new byte[size];
+        new Random(42L).nextBytes(content);
+
+        contentUrls = new String[NUM_READ_URLS];
+        for (int i = 0; i < NUM_READ_URLS; i++)
+        {
+            contentUrls[i] = write();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(storeRoot);
+    }
+
+    @Benchmark
+    public String write()
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(new ByteArrayInputStream(content));
+        return writer.getContentUrl();
+    }
+
+    @Benchmark
+    public long read() throws IOException
+    {
+        String contentUrl = contentUrls[ThreadLocalRandom.current().nextInt(NUM_READ_URLS)];
+        byte[] buffer = new byte[8192];
+        long total = 0L;
+        InputStream is = store.getReader(contentUrl).getContentInputStream();
+        try
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                total += read;
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.locale.LocaleDAO;
+import org.alfresco.repo.domain.node.NodePropertyHelper;
+import org.alfresco.repo.domain.node.NodePropertyKey;
+import org.alfresco.repo.domain.node.NodePropertyValue;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of a typical set of document properties to and from their persisted form, which
+ * happens whenever node properties are written or loaded into the node cache.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NodePropertyHelperBenchmark
+{
+    private NodePropertyHelper helper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistentProperties;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository)
+    {
+        DictionaryService dictionaryService = repository.getBean("dictionaryService");
+        QNameDAO qnameDAO = repository.getBean("qnameDAO");
+        LocaleDAO localeDAO = repository.getBean("localeDAO");
+        ContentDataDAO contentDataDAO = repository.getBean("contentDataDAO");
+        helper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
+
+        publicProperties = new HashMap<QName, Serializable>();
+        publicProperties.put(ContentModel.PROP_NAME, "Quarterly report.docx");
+        publicProperties.put(ContentModel.PROP_TITLE, new MLText(Locale.ENGLISH, "Quarterly report"));
+        publicProperties.put(ContentModel.PROP_DESCRIPTION, new MLText(Locale.ENGLISH, "Figures for the last quarter"));
+        publicProperties.put(ContentModel.PROP_CREATOR, "admin");
+        publicProperties.put(ContentModel.PROP_MODIFIER, "admin");
+        publicProperties.put(ContentModel.PROP_CREATED, new Date());
+        publicProperties.put(ContentModel.PROP_MODIFIED, new Date());
+        publicProperties.put(ContentModel.PROP_AUTO_VERSION, Boolean.TRUE);
+        publicProperties.put(ContentModel.PROP_VERSION_LABEL, "1.0");
+        List<String> addressees = new ArrayList<String>();
+        addressees.add("alice");
+        addressees.add("bob");
+        publicProperties.put(ContentModel.PROP_ADDRESSEES, (Serializable) addressees);
+
+        // Creates any QNames and locales that are missing, so that the benchmarks only read them
+        persistentProperties = repository.doAsSystemInTransaction(new RetryingTransactionCallback<Map<NodePropertyKey, NodePropertyValue>>()
+        {
+            @Override
+            public Map<NodePropertyKey, NodePropertyValue> execute() throws Throwable
+            {
+                return helper.convertToPersistentProperties(publicProperties);
+            }
+        });
+    }
+
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> convertToPersistentProperties(TransactionState txn)
+    {
+        return helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties(TransactionState txn)
+    {
+        return helper.convertToPublicProperties(persistentProperties);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.model.Repository;
+import org.alfresco.repo.security.permissions.impl.PermissionServiceImpl;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Permission checks by an ordinary user on a document that inherits its permissions from a
+ * folder some levels above it.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PermissionServiceBenchmark
+{
+    private static final String USER_NAME = "benchmarkUser";
+
+    /** The number of folders between the permission assignment and the document */
+    @Param({"1", "10"})
+    public int depth;
+
+    private PermissionServiceImpl permissionService;
+    private NodeRef document;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository)
+    {
+        permissionService = repository.getBean("permissionServiceImpl");
+        final PersonService personService = repository.getServiceRegistry().getPersonService();
+        final FileFolderService fileFolderService = repository.getServiceRegistry().getFileFolderService();
+        final PermissionService publicPermissionService = repository.getServiceRegistry().getPermissionService();
+        final Repository repositoryHelper = repository.getBean("repositoryHelper");
+
+        document = repository.doAsSystemInTransaction(new RetryingTransactionCallback<NodeRef>()
+        {
+            @Override
+            public NodeRef execute() throws Throwable
+            {
+                if (!personService.personExists(USER_NAME))
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+                    properties.put(ContentModel.PROP_USERNAME, USER_NAME);
+                    personService.createPerson(properties);
+                }
+
+                NodeRef top = fileFolderService.create(
+                        repositoryHelper.getCompanyHome(), "benchmark-" + GUID.generate(), ContentModel.TYPE_FOLDER).getNodeRef();
+                publicPermissionService.setPermission(top, USER_NAME, PermissionService.CONSUMER, true);
+
+                NodeRef parent = top;
+                for (int i = 1; i < depth; i++)
+                {
+                    parent = fileFolderService.create(parent, "folder-" + i, ContentModel.TYPE_FOLDER).getNodeRef();
+                }
+                return fileFolderService.create(parent, "document.txt", ContentModel.TYPE_CONTENT).getNodeRef();
+            }
+        });
+    }
+
+    @Benchmark
+    public AccessStatus hasReadPermission(UserTransactionState txn)
+    {
+        return permissionService.hasPermission(document, PermissionService.READ);
+    }
+
+    @Benchmark
+    public AccessStatus hasWritePermission(UserTransactionState txn)
+    {
+        // Denied, so that the check cannot be short-circuited by a matching entry
+        return permissionService.hasPermission(document, PermissionService.WRITE);
+    }
+
+    /**
+     * Holds a transaction for the benchmark user rather than for the system user, whose checks
+     * are never evaluated.
+     */
+    public static class UserTransactionState extends TransactionState
+    {
+        @Override
+        protected String getRunAsUser()
+        {
+            return USER_NAME;
+        }
+    }
+}
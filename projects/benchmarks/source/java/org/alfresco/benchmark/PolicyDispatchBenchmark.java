@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.policy.ClassPolicy;
+import org.alfresco.repo.policy.ClassPolicyDelegate;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup and invocation of class behaviours through the {@link PolicyComponent}, which happens
+ * several times for every node operation.  The benchmark policy is bound to <tt>cm:content</tt>
+ * and is looked up for a node with a type and a set of aspects, as the node service does.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PolicyDispatchBenchmark
+{
+    private static final NodeRef NODE_REF = new NodeRef("workspace://SpacesStore/benchmark");
+
+    private ClassPolicyDelegate<OnBenchmarkEventPolicy> delegate;
+    private Set<QName> nodeClasses;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository)
+    {
+        PolicyComponent policyComponent = repository.getBean("policyComponent");
+        delegate = policyComponent.registerClassPolicy(OnBenchmarkEventPolicy.class);
+        policyComponent.bindClassBehaviour(
+                OnBenchmarkEventPolicy.QNAME,
+                ContentModel.TYPE_CONTENT,
+                new JavaBehaviour(this, "onBenchmarkEvent"));
+
+        nodeClasses = new HashSet<QName>();
+        nodeClasses.add(ContentModel.TYPE_CONTENT);
+        nodeClasses.add(ContentModel.ASPECT_AUDITABLE);
+        nodeClasses.add(ContentModel.ASPECT_TITLED);
+        nodeClasses.add(ContentModel.ASPECT_VERSIONABLE);
+    }
+
+    /**
+     * The bound behaviour, which does nothing.
+     */
+    public void onBenchmarkEvent(NodeRef nodeRef)
+    {
+    }
+
+    @Benchmark
+    public void dispatchForType()
+    {
+        delegate.get(ContentModel.TYPE_CONTENT).onBenchmarkEvent(NODE_REF);
+    }
+
+    @Benchmark
+    public void dispatchForClasses()
+    {
+        delegate.get(nodeClasses).onBenchmarkEvent(NODE_REF);
+    }
+
+    /**
+     * A policy that exists only for the benchmark.
+     */
+    public interface OnBenchmarkEventPolicy extends ClassPolicy
+    {
+        public static final String NAMESPACE = NamespaceService.ALFRESCO_URI;
+        public static final QName QNAME = QName.createQName(NAMESPACE, "onBenchmarkEvent");
+
+        public void onBenchmarkEvent(NodeRef nodeRef);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.File;
+
+import javax.transaction.UserTransaction;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.TempFileProvider;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * An embedded repository, started once per benchmark fork.
+ * <p>
+ * Unless the usual <tt>db.*</tt> and <tt>dir.root</tt> system properties are given, the repository
+ * runs against a new H2 database in a temporary directory, so that results do not depend on the
+ * state of an existing installation.  Search is switched off, since no benchmark needs an index.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+public class RepositoryState
+{
+    private static final String H2_PARAMS = "MODE=PostgreSQL;AUTO_SERVER=TRUE;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000;MVCC=TRUE";
+
+    private ApplicationContext ctx;
+    private ServiceRegistry serviceRegistry;
+
+    @Setup(Level.Trial)
+    public void startRepository()
+    {
+        File dirRoot = new File(TempFileProvider.getTempDir(), "benchmark-" + System.currentTimeMillis());
+        setDefault("dir.root", dirRoot.getAbsolutePath());
+        setDefault("db.driver", "org.h2.jdbcx.JdbcDataSource");
+        setDefault("db.url", "jdbc:h2:" + new File(dirRoot, "h2_data/alfresco").getAbsolutePath() + ";" + H2_PARAMS);
+        setDefault("db.username", "alfresco");
+        setDefault("db.password", "alfresco");
+        setDefault("db.pool.initial", "4");
+        setDefault("index.subsystem.name", "noindex");
+
+        ctx = ApplicationContextHelper.getApplicationContext();
+        serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRepository()
+    {
+        ApplicationContextHelper.closeApplicationContext();
+        ctx = null;
+        serviceRegistry = null;
+    }
+
+    private static void setDefault(String name, String value)
+    {
+        if (System.getProperty(name) == null)
+        {
+            System.setProperty(name, value);
+        }
+    }
+
+    public ApplicationContext getApplicationContext()
+    {
+        return ctx;
+    }
+
+    public ServiceRegistry getServiceRegistry()
+    {
+        return serviceRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getBean(String name)
+    {
+        return (T) ctx.getBean(name);
+    }
+
+    /**
+     * Run fixture code as the system user in its own read-write transaction.
+     */
+    public <R> R doAsSystemInTransaction(final RetryingTransactionCallback<R> callback)
+    {
+        final TransactionService transactionService = serviceRegistry.getTransactionService();
+        return AuthenticationUtil.runAs(new RunAsWork<R>()
+        {
+            @Override
+            public R doWork() throws Exception
+            {
+                return transactionService.getRetryingTransactionHelper().doInTransaction(callback, false, true);
+            }
+        }, AuthenticationUtil.getSystemUserName());
+    }
+
+    /**
+     * Begin a transaction that is held open by the calling benchmark thread, so that
+     * the measured calls are not dominated by transaction demarcation.
+     *
+     * @param readOnly      <tt>true</tt> for a read-only transaction
+     * @return              the transaction, which must be completed by the same thread
+     */
+    public UserTransaction beginTransaction(boolean readOnly) throws Exception
+    {
+        UserTransaction txn = serviceRegistry.getTransactionService().getNonPropagatingUserTransaction(readOnly);
+        txn.begin();
+        return txn;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.repo.content.transform.RuntimeExecutableContentTransformerWorker;
+import org.alfresco.repo.content.transform.TransformerProcessPool;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.TransformationOptions;
+import org.alfresco.util.TempFileProvider;
+import org.alfresco.util.exec.RuntimeExec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Small copy transformations through a {@link RuntimeExecutableContentTransformerWorker}, either
+ * starting a new process for each one or handing them to a shell helper process from a
+ * {@link TransformerProcessPool}. The helper process is not used on Windows.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RuntimeExecTransformerBenchmark
+{
+    /** <tt>true</tt> to use a helper process rather than a process per transformation */
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private RuntimeExecutableContentTransformerWorker worker;
+    private TransformerProcessPool pool;
+    private TransformationOptions options;
+    private int count;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository) throws Exception
+    {
+        worker = new RuntimeExecutableContentTransformerWorker();
+        RuntimeExec transformCommand = new RuntimeExec();
+        Map<String, String> commandMap = new HashMap<String, String>(5);
+        commandMap.put("Mac OS X", "mv -f ${source} ${target}");
+        commandMap.put("Linux", "mv -f ${source} ${target}");
+        commandMap.put(".*", "cmd /c copy /Y \"${source}\" \"${target}\"");
+        transformCommand.setCommandMap(commandMap);
+        transformCommand.setErrorCodes("1, 2");
+        worker.setTransformCommand(transformCommand);
+        worker.setMimetypeService(repository.getServiceRegistry().getMimetypeService());
+        worker.afterPropertiesSet();
+
+        if (pooled && !System.getProperty("os.name").startsWith("Windows"))
+        {
+            RuntimeExec startCommand = new RuntimeExec();
+            Map<String, String[]> startCommandMap = new HashMap<String, String[]>(1);
+            startCommandMap.put(".*", new String[] {"sh", "-c",
+                    "while read -r line; do if eval \"$line\"; then echo PASS; else echo FAIL; fi; done"});
+            startCommand.setCommandsAndArguments(startCommandMap);
+
+            pool = new TransformerProcessPool();
+            pool.setStartCommand(startCommand);
+            pool.setSkipArguments(0);
+            pool.setPoolSize(1);
+            pool.setMaxJobsPerProcess(0);
+            worker.setProcessPool(pool);
+        }
+        options = new TransformationOptions();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (pool != null)
+        {
+            pool.destroy();
+        }
+    }
+
+    @Benchmark
+    public long copy() throws Exception
+    {
+        File sourceFile = TempFileProvider.createTempFile("benchmark_", ".txt");
+        ContentWriter sourceWriter = new FileContentWriter(sourceFile);
+        sourceWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        sourceWriter.putContent("<A>" + (count++) + "</A>");
+        ContentReader reader = sourceWriter.getReader();
+
+        File targetFile = TempFileProvider.createTempFile("benchmark_", ".xml");
+        ContentWriter writer = new FileContentWriter(targetFile);
+        writer.setMimetype(MimetypeMap.MIMETYPE_XML);
+
+        worker.transform(reader, writer, options);
+
+        sourceFile.delete();
+        long size = targetFile.length();
+        targetFile.delete();
+        return size;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.index.TrackingDataInput;
+import org.alfresco.repo.index.TrackingDataOutput;
+import org.alfresco.util.GUID;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing and reading a page of the SOLR tracking nodes response in JSON, with the fields of the
+ * <tt>solr.lib.ftl</tt> templates but without their indentation, and in the binary form of
+ * {@link TrackingDataOutput}. The JSON is read as the SOLR client reads it. The sizes of both forms are
+ * printed when the trial starts.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TrackingDataBenchmark
+{
+    private static final String STORE = "workspace://SpacesStore/";
+    private static final int NODES_PER_TXN = 10;
+
+    @Param({"1000"})
+    public int nodeCount;
+
+    private String[] uuids;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        uuids = new String[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+        {
+            uuids[i] = GUID.generate();
+        }
+        json = writeJson();
+        binary = writeBinary();
+        System.out.println(nodeCount + " nodes: " + json.length + " bytes of JSON, " + binary.length + " bytes of binary");
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * nodeCount);
+        Writer writer = new OutputStreamWriter(bytes, "UTF-8");
+        writer.write("{\"nodes\":[");
+        for (int i = 0; i < nodeCount; i++)
+        {
+            if (i > 0)
+            {
+                writer.write(',');
+            }
+            writer.write("{\"id\":" + (1000000L + i));
+            writer.write(",\"nodeRef\":\"" + STORE + uuids[i] + "\"");
+            writer.write(",\"txnId\":" + (50000L + i / NODES_PER_TXN));
+            writer.write(",\"status\":\"u\"");
+            writer.write(",\"aclId\":" + (i % 20));
+            writer.write(",\"tenant\":\"\"}");
+        }
+        writer.write("]}");
+        writer.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeBinary() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * nodeCount);
+        TrackingDataOutput out = new TrackingDataOutput(bytes);
+        for (int i = 0; i < nodeCount; i++)
+        {
+            out.writeBoolean(true);
+            out.writeLong(1000000L + i);
+            out.writeNodeRef(STORE + uuids[i]);
+            out.writeLong(50000L + i / NODES_PER_TXN);
+            out.writeBoolean(false);
+            out.writeNullableLong(Long.valueOf(i % 20));
+            out.writeString(null);
+            out.writeToken("");
+        }
+        out.writeBoolean(false);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public long readJson() throws IOException, JSONException
+    {
+        JSONObject response = new JSONObject(new JSONTokener(new InputStreamReader(new ByteArrayInputStream(json), "UTF-8")));
+        JSONArray nodes = response.getJSONArray("nodes");
+        long sum = 0;
+        for (int i = 0; i < nodes.length(); i++)
+        {
+            JSONObject node = nodes.getJSONObject(i);
+            sum += node.getLong("id");
+            sum += node.getString("nodeRef").length();
+            sum += node.getLong("txnId");
+            sum += node.getString("status").length();
+            sum += node.has("aclId") ? node.getLong("aclId") : 0;
+            sum += node.has("shardPropertyValue") ? node.getString("shardPropertyValue").length() : 0;
+            sum += node.getString("tenant").length();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readBinary() throws IOException
+    {
+        TrackingDataInput in = new TrackingDataInput(new ByteArrayInputStream(binary));
+        long sum = 0;
+        while (in.readBoolean())
+        {
+            sum += in.readLong();
+            sum += in.readNodeRef().length();
+            sum += in.readLong();
+            sum += in.readBoolean() ? 1 : 0;
+            Long aclId = in.readNullableLong();
+            sum += aclId == null ? 0 : aclId;
+            String shardPropertyValue = in.readString();
+            sum += shardPropertyValue == null ? 0 : shardPropertyValue.length();
+            sum += in.readToken().length();
+        }
+        return sum;
+    }
+}
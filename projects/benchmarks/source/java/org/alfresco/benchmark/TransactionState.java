@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import javax.transaction.UserTransaction;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A read-only transaction and authentication held by each benchmark thread for the length of an
+ * iteration, for benchmarks of calls that are normally made within an existing transaction.
+ * <p>
+ * The transaction runs as the system user; subclasses can choose a different user.
+ *
+ * @since 5.2
+ */
+@State(Scope.Thread)
+public class TransactionState
+{
+    private UserTransaction txn;
+
+    @Setup(Level.Iteration)
+    public void begin(RepositoryState repository) throws Exception
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser(getRunAsUser());
+        txn = repository.beginTransaction(true);
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() throws Exception
+    {
+        try
+        {
+            txn.commit();
+        }
+        finally
+        {
+            txn = null;
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
+
+    /**
+     * @return the user that the transaction runs as
+     */
+    protected String getRunAsUser()
+    {
+        return AuthenticationUtil.getSystemUserName();
+    }
+}
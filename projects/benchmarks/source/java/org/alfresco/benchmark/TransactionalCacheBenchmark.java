@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.InMemoryCacheStatistics;
+import org.alfresco.repo.cache.TransactionalCache;
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transactions that read and write a {@link TransactionalCache}, including the transfer of
+ * changes to the shared cache when they commit.  Statistics collection can be switched on to
+ * measure its overhead, and the <tt>contended</tt> variants run the same transactions from several
+ * threads at once against the one shared cache.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransactionalCacheBenchmark
+{
+    private static final int NUM_KEYS = 10000;
+    private static final int OPS_PER_TXN = 20;
+    private static final int CONTENDING_THREADS = 4;
+
+    @Param({"false", "true"})
+    public boolean statsEnabled;
+
+    private TransactionalCache<Serializable, Object> cache;
+    private RetryingTransactionHelper txnHelper;
+
+    @Setup(Level.Trial)
+    public void setUp(RepositoryState repository) throws Exception
+    {
+        InMemoryCacheStatistics cacheStats = new InMemoryCacheStatistics();
+        cacheStats.setApplicationContext(repository.getApplicationContext());
+
+        cache = new TransactionalCache<Serializable, Object>();
+        cache.setName("benchmarkCache");
+        cache.setSharedCache(new DefaultSimpleCache<Serializable, ValueHolder<Object>>(NUM_KEYS * 2, "benchmarkSharedCache"));
+        cache.setMaxCacheSize(OPS_PER_TXN * 2);
+        cache.setTenantAware(false);
+        cache.setCacheStats(cacheStats);
+        cache.setCacheStatsEnabled(statsEnabled);
+        cache.afterPropertiesSet();
+
+        txnHelper = repository.getServiceRegistry().getTransactionService().getRetryingTransactionHelper();
+        txnHelper.setMaxRetries(0);
+
+        // Warm the shared cache
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                for (int i = 0; i < NUM_KEYS; i++)
+                {
+                    cache.put(i, "value-" + i);
+                }
+                return null;
+            }
+        }, false, true);
+    }
+
+    /**
+     * A read-only transaction that finds all of its values in the shared cache.
+     */
+    @Benchmark
+    public Object readOnlyGets()
+    {
+        final int start = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            @Override
+            public Object execute() throws Throwable
+            {
+                Object last = null;
+                for (int i = 0; i < OPS_PER_TXN; i++)
+                {
+                    last = cache.get((start + i) % NUM_KEYS);
+                }
+                return last;
+            }
+        }, true, true);
+    }
+
+    /**
+     * A read-write transaction that reads values and replaces some of them, so that the commit
+     * writes through to the shared cache.
+     */
+    @Benchmark
+    public Object getAndPutAtCommit()
+    {
+        final int start = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            @Override
+            public Object execute() throws Throwable
+            {
+                Object last = null;
+                for (int i = 0; i < OPS_PER_TXN; i++)
+                {
+                    int key = (start + i) % NUM_KEYS;
+                    last = cache.get(key);
+                    if (i % 4 == 0)
+                    {
+                        cache.put(key, "value-" + key);
+                    }
+                }
+                return last;
+            }
+        }, false, true);
+    }
+
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public Object readOnlyGetsContended()
+    {
+        return readOnlyGets();
+    }
+
+    /**
+     * Concurrent commits that update overlapping keys of the shared cache.
+     */
+    @Benchmark
+    @Threads(CONTENDING_THREADS)
+    public Object getAndPutAtCommitContended()
+    {
+        return getAndPutAtCommit();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Alfresco Data model classes
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Reads the compact binary form of the SOLR tracking responses written by {@link TrackingDataOutput}.
+ * <p/>
+ * The stream is not buffered here.
+ * 
+ * @since 5.2
+ */
+public class TrackingDataInput
+{
+    private final InputStream in;
+    private final List<String> tokens = new ArrayList<String>(128);
+    private final List<QName> qnames = new ArrayList<QName>(128);
+
+    public TrackingDataInput(InputStream in)
+    {
+        this.in = in;
+    }
+
+    public long readLong() throws IOException
+    {
+        long v = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = read();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed varint in tracking data");
+    }
+
+    public Long readNullableLong() throws IOException
+    {
+        return readBoolean() ? readLong() : null;
+    }
+
+    public boolean readBoolean() throws IOException
+    {
+        return read() != 0;
+    }
+
+    public String readString() throws IOException
+    {
+        long length = readLong();
+        if (length == -1L)
+        {
+            return null;
+        }
+        if (length < 0 || length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Invalid string length in tracking data: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length)
+        {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0)
+            {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, TrackingDataOutput.UTF8);
+    }
+
+    public String readToken() throws IOException
+    {
+        int index = readTokenIndex();
+        return index < 0 ? null : tokens.get(index);
+    }
+
+    public QName readQName() throws IOException
+    {
+        int index = readTokenIndex();
+        if (index < 0)
+        {
+            return null;
+        }
+        QName qname = qnames.get(index);
+        if (qname == null)
+        {
+            qname = QName.createQName(tokens.get(index));
+            qnames.set(index, qname);
+        }
+        return qname;
+    }
+
+    public String readNodeRef() throws IOException
+    {
+        String store = readToken();
+        return store == null ? null : store + readString();
+    }
+
+    private int readTokenIndex() throws IOException
+    {
+        long code = readLong();
+        if (code == TrackingDataOutput.TOKEN_NULL)
+        {
+            return -1;
+        }
+        else if (code == TrackingDataOutput.TOKEN_NEW)
+        {
+            tokens.add(readString());
+            qnames.add(null);
+            return tokens.size() - 1;
+        }
+        else if (code < 0 || code >= tokens.size())
+        {
+            throw new IOException("Unknown token in tracking data: " + code);
+        }
+        return (int) code;
+    }
+
+    private int read() throws IOException
+    {
+        int b = in.read();
+        if (b < 0)
+        {
+            throw new EOFException();
+        }
+        return b;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Alfresco Data model classes
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Writes the compact binary form of the SOLR tracking responses.
+ * <p/>
+ * Numbers are written as zig-zag encoded varints and strings as a varint length followed by their
+ * UTF-8 bytes. Values that repeat throughout a response, such as QNames, tenants and authorities,
+ * are written as tokens: the first occurrence carries the string and later ones refer back to it.
+ * {@link TrackingDataInput} reads the same encoding.
+ * <p/>
+ * The stream is not buffered here.
+ * 
+ * @since 5.2
+ */
+public class TrackingDataOutput
+{
+    /** The content type used to ask for, and to identify, the binary form */
+    public static final String MIMETYPE = "application/vnd.alfresco.tracking";
+
+    /** Property value kinds: no value, a plain string and JSON text for structured values */
+    public static final int PROPERTY_NULL = 0;
+    public static final int PROPERTY_STRING = 1;
+    public static final int PROPERTY_JSON = 2;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final long TOKEN_NULL = -1L;
+    static final long TOKEN_NEW = -2L;
+
+    private final OutputStream out;
+    private final Map<String, Integer> tokens = new HashMap<String, Integer>(128);
+
+    public TrackingDataOutput(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    public void writeLong(long value) throws IOException
+    {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0)
+        {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    public void writeNullableLong(Long value) throws IOException
+    {
+        writeBoolean(value != null);
+        if (value != null)
+        {
+            writeLong(value);
+        }
+    }
+
+    public void writeBoolean(boolean value) throws IOException
+    {
+        out.write(value ? 1 : 0);
+    }
+
+    public void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeLong(-1L);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        writeLong(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write a value that is expected to be repeated within the stream
+     */
+    public void writeToken(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeLong(TOKEN_NULL);
+            return;
+        }
+        Integer index = tokens.get(value);
+        if (index != null)
+        {
+            writeLong(index);
+        }
+        else
+        {
+            tokens.put(value, tokens.size());
+            writeLong(TOKEN_NEW);
+            writeString(value);
+        }
+    }
+
+    public void writeQName(QName qname) throws IOException
+    {
+        writeToken(qname == null ? null : qname.toString());
+    }
+
+    /**
+     * Write a node reference as its store, which repeats, and its ID
+     */
+    public void writeNodeRef(String nodeRef) throws IOException
+    {
+        if (nodeRef == null)
+        {
+            writeToken(null);
+            return;
+        }
+        int split = nodeRef.lastIndexOf('/');
+        writeToken(nodeRef.substring(0, split + 1));
+        writeString(nodeRef.substring(split + 1));
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * Alfresco Data model classes
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.alfresco.model.ContentModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round trips values through {@link TrackingDataOutput} and {@link TrackingDataInput}.
+ */
+public class TrackingDataTest
+{
+    @Test
+    public void testLongs() throws IOException
+    {
+        long[] values = new long[] {0L, 1L, -1L, 63L, 64L, 300L, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingDataOutput out = new TrackingDataOutput(bytes);
+        for (long value : values)
+        {
+            out.writeLong(value);
+        }
+        out.writeNullableLong(null);
+        out.writeNullableLong(42L);
+
+        TrackingDataInput in = new TrackingDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values)
+        {
+            Assert.assertEquals(value, in.readLong());
+        }
+        Assert.assertNull(in.readNullableLong());
+        Assert.assertEquals(Long.valueOf(42L), in.readNullableLong());
+    }
+
+    @Test
+    public void testSmallLongsTakeOneByte() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingDataOutput out = new TrackingDataOutput(bytes);
+        out.writeLong(63L);
+        out.writeLong(-64L);
+        Assert.assertEquals(2, bytes.size());
+    }
+
+    @Test
+    public void testStringsAndTokens() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingDataOutput out = new TrackingDataOutput(bytes);
+        out.writeString("workspace://SpacesStore/\u00e9t\u00e9");
+        out.writeString(null);
+        out.writeString("");
+        out.writeToken("GROUP_EVERYONE");
+        int afterFirstToken = bytes.size();
+        out.writeToken("GROUP_EVERYONE");
+        Assert.assertEquals("A repeated token should be a single back reference", afterFirstToken + 1, bytes.size());
+        out.writeToken(null);
+        out.writeQName(ContentModel.PROP_NAME);
+        out.writeQName(ContentModel.PROP_NAME);
+        out.writeQName(null);
+        out.writeNodeRef("workspace://SpacesStore/3a8f0c1e");
+        out.writeNodeRef("workspace://SpacesStore/3a8f0c1f");
+        out.writeNodeRef(null);
+        out.writeBoolean(true);
+        out.writeBoolean(false);
+
+        TrackingDataInput in = new TrackingDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals("workspace://SpacesStore/\u00e9t\u00e9", in.readString());
+        Assert.assertNull(in.readString());
+        Assert.assertEquals("", in.readString());
+        Assert.assertEquals("GROUP_EVERYONE", in.readToken());
+        Assert.assertEquals("GROUP_EVERYONE", in.readToken());
+        Assert.assertNull(in.readToken());
+        Assert.assertEquals(ContentModel.PROP_NAME, in.readQName());
+        Assert.assertEquals(ContentModel.PROP_NAME, in.readQName());
+        Assert.assertNull(in.readQName());
+        Assert.assertEquals("workspace://SpacesStore/3a8f0c1e", in.readNodeRef());
+        Assert.assertEquals("workspace://SpacesStore/3a8f0c1f", in.readNodeRef());
+        Assert.assertNull(in.readNodeRef());
+        Assert.assertTrue(in.readBoolean());
+        Assert.assertFalse(in.readBoolean());
+    }
+
+    @Test
+    public void testTruncatedStream() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new TrackingDataOutput(bytes).writeString("truncated");
+        byte[] data = bytes.toByteArray();
+        byte[] truncated = new byte[data.length - 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        try
+        {
+            new TrackingDataInput(new ByteArrayInputStream(truncated)).readString();
+            Assert.fail("Expected an EOFException");
+        }
+        catch (EOFException e)
+        {
+            // expected
+        }
+    }
+}
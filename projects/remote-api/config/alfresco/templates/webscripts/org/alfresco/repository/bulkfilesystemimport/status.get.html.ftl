@@ -184,6 +184,12 @@
           [#if importStatus.entriesScannedPerSecond??]
           ${importStatus.entriesScannedPerSecond} entries scanned / sec<br/>
           [/#if]
+          [#if importStatus.directoriesAnalysedPerSecond??]
+          ${importStatus.directoriesAnalysedPerSecond} directories analysed / sec<br/>
+          [/#if]
+          [#if importStatus.metadataFilesParsedPerSecond??]
+          ${importStatus.metadataFilesParsedPerSecond} metadata files parsed / sec<br/>
+          [/#if]
           [#if importStatus.filesReadPerSecond??]
           ${importStatus.filesReadPerSecond} files read / sec<br/>
           [/#if]
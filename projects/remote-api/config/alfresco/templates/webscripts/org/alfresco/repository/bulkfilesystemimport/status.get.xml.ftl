@@ -38,6 +38,8 @@
     <FilesScanned>${importStatus.numberOfFilesScanned?c}</FilesScanned>
     <FoldersScanned>${importStatus.numberOfFoldersScanned?c}</FoldersScanned>
     <UnreadableEntries>${importStatus.numberOfUnreadableEntries?c}</UnreadableEntries>
+    <DirectoriesAnalysed>${importStatus.numberOfDirectoriesAnalysed?c}</DirectoriesAnalysed>
+    <MetadataFilesParsed>${importStatus.numberOfMetadataFilesParsed?c}</MetadataFilesParsed>
     <ContentFilesRead>${importStatus.numberOfContentFilesRead?c}</ContentFilesRead>
     <ContentBytesRead>${importStatus.numberOfContentBytesRead?c}</ContentBytesRead>
     <MetadataFilesRead>${importStatus.numberOfMetadataFilesRead?c}</MetadataFilesRead>
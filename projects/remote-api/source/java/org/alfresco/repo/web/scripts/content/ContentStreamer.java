@@ -36,6 +36,7 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.alfresco.model.ContentModel;
@@ -62,6 +63,7 @@ import org.springframework.extensions.webscripts.Cache;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
 import org.springframework.extensions.webscripts.WebScriptResponse;
+import org.springframework.extensions.webscripts.servlet.WebScriptServletRuntime;
 import org.springframework.util.FileCopyUtils;
 
 
@@ -373,6 +375,7 @@ public class ContentStreamer implements ResourceLoaderAware
         }
         
         res.setHeader(HEADER_ACCEPT_RANGES, "bytes");
+        HttpServletRequest httpReq = WebScriptServletRuntime.getHttpServletRequest(req);
         try
         {
             boolean processedRange = false;
@@ -415,6 +418,7 @@ public class ContentStreamer implements ResourceLoaderAware
                   }
                   else {
                       HttpRangeProcessor rangeProcessor = new HttpRangeProcessor(contentService);
+                      rangeProcessor.setRequest(httpReq);
                       processedRange = rangeProcessor.processRange(
                             res, reader, range.substring(6), nodeRef, propertyQName,
                             mimetype, req.getHeader(HEADER_USER_AGENT));
@@ -437,10 +441,14 @@ public class ContentStreamer implements ResourceLoaderAware
                // set caching
                setResponseCache(res, modified, eTag, model);
                
+               // hand file content to the container's sendfile support if it has any, otherwise
                // get the content and stream directly to the response output stream
                // assuming the repository is capable of streaming in chunks, this should allow large files
                // to be streamed directly to the browser response stream.
-               reader.getContent( res.getOutputStream() );
+               if (!HttpRangeProcessor.sendFile(httpReq, reader, 0L, size - 1L))
+               {
+                  reader.getContent( res.getOutputStream() );
+               }
             }
         }
         catch (SocketException e1)
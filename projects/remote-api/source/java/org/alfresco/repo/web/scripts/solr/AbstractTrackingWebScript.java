@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.alfresco.repo.index.TrackingDataOutput;
+import org.springframework.extensions.webscripts.AbstractWebScript;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.Container;
+import org.springframework.extensions.webscripts.DeclarativeWebScript;
+import org.springframework.extensions.webscripts.Description;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Base for the SOLR tracking web scripts that can answer in the compact binary form as well as JSON.
+ * <p/>
+ * The model is built by {@link #executeImpl(WebScriptRequest, Status)} as it would be for a declarative
+ * web script. Clients that list {@link TrackingDataOutput#MIMETYPE} in their <tt>Accept</tt> header get it
+ * written by {@link #writeTrackingData(Map, TrackingDataOutput)}; everybody else is handed to a
+ * {@link DeclarativeWebScript} that renders the web script's JSON template, status and caching exactly as
+ * before, so older clients are unaffected.
+ * 
+ * @since 5.2
+ */
+public abstract class AbstractTrackingWebScript extends AbstractWebScript
+{
+    private final DeclarativeWebScript declarativeWebScript = new DeclarativeWebScript()
+    {
+        @Override
+        protected Map<String, Object> executeImpl(WebScriptRequest req, Status status, Cache cache)
+        {
+            return AbstractTrackingWebScript.this.executeImpl(req, status);
+        }
+    };
+
+    /**
+     * @return          <tt>true</tt> if the client has asked for the binary form
+     */
+    static boolean isTrackingDataAccepted(WebScriptRequest req)
+    {
+        String accept = req.getHeader("Accept");
+        return accept != null && accept.contains(TrackingDataOutput.MIMETYPE);
+    }
+
+    /**
+     * Open the response for writing the binary form
+     */
+    static TrackingDataOutput getTrackingDataOutput(WebScriptResponse res) throws IOException
+    {
+        res.setContentType(TrackingDataOutput.MIMETYPE);
+        return new TrackingDataOutput(new BufferedOutputStream(res.getOutputStream()));
+    }
+
+    @Override
+    public void init(Container container, Description description)
+    {
+        super.init(container, description);
+        declarativeWebScript.init(container, description);
+    }
+
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
+    {
+        if (isTrackingDataAccepted(req))
+        {
+            Map<String, Object> model = executeImpl(req, new Status());
+            TrackingDataOutput out = getTrackingDataOutput(res);
+            writeTrackingData(model, out);
+            out.flush();
+        }
+        else
+        {
+            declarativeWebScript.execute(req, res);
+        }
+    }
+
+    /**
+     * Build the model for the response
+     */
+    protected abstract Map<String, Object> executeImpl(WebScriptRequest req, Status status);
+
+    /**
+     * Write the model in the binary form
+     */
+    protected abstract void writeTrackingData(Map<String, Object> model, TrackingDataOutput out) throws IOException;
+}
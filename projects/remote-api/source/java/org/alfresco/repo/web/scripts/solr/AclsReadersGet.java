@@ -30,7 +30,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.alfresco.repo.index.TrackingDataOutput;
 import org.alfresco.repo.solr.AclReaders;
 import org.alfresco.repo.solr.SOLRTrackingComponent;
 import org.apache.commons.logging.Log;
@@ -39,7 +41,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
@@ -49,7 +50,7 @@ import org.springframework.extensions.webscripts.WebScriptRequest;
  *
  * @since 4.0
  */
-public class AclsReadersGet extends DeclarativeWebScript
+public class AclsReadersGet extends AbstractTrackingWebScript
 {
     protected static final Log logger = LogFactory.getLog(AclsReadersGet.class);
 
@@ -123,4 +124,33 @@ public class AclsReadersGet extends DeclarativeWebScript
         
         return model;
     }
+
+    /**
+     * Each ACL is preceded by <tt>true</tt> and <tt>false</tt> ends the list.
+     * The authorities are written as tokens as the same few appear on most ACLs.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void writeTrackingData(Map<String, Object> model, TrackingDataOutput out) throws IOException
+    {
+        for (AclReaders aclReaders : (List<AclReaders>) model.get("aclsReaders"))
+        {
+            out.writeBoolean(true);
+            out.writeLong(aclReaders.getAclId());
+            out.writeLong(aclReaders.getAclChangeSetId());
+            out.writeToken(aclReaders.getTenantDomain());
+            writeAuthorities(aclReaders.getReaders(), out);
+            writeAuthorities(aclReaders.getDenied(), out);
+        }
+        out.writeBoolean(false);
+    }
+
+    private void writeAuthorities(Set<String> authorities, TrackingDataOutput out) throws IOException
+    {
+        out.writeLong(authorities.size());
+        for (String authority : authorities)
+        {
+            out.writeToken(authority);
+        }
+    }
 }
@@ -35,6 +35,7 @@ import java.util.Set;
 
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.index.TrackingDataOutput;
 import org.alfresco.repo.search.impl.QueryParserUtils;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.solr.NodeParameters;
@@ -49,7 +50,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
@@ -63,7 +63,7 @@ import org.springframework.extensions.webscripts.WebScriptRequest;
  * 
  * @since 4.0
  */
-public class NodesGet extends DeclarativeWebScript
+public class NodesGet extends AbstractTrackingWebScript
 {
     protected static final Log logger = LogFactory.getLog(NodesGet.class);
     
@@ -222,6 +222,27 @@ public class NodesGet extends DeclarativeWebScript
         }
     }
 
+    /**
+     * Each node is preceded by <tt>true</tt> and <tt>false</tt> ends the list.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void writeTrackingData(Map<String, Object> model, TrackingDataOutput out) throws IOException
+    {
+        for (NodeRecord node : (List<NodeRecord>) model.get("nodes"))
+        {
+            out.writeBoolean(true);
+            out.writeLong(node.getId());
+            out.writeNodeRef(node.getNodeRef());
+            out.writeLong(node.getTxnId());
+            out.writeBoolean(node.isDeleted());
+            out.writeNullableLong(node.getAclId());
+            out.writeString(node.getShardPropertyValue());
+            out.writeToken(node.getTenant());
+        }
+        out.writeBoolean(false);
+    }
+
     public static class NodeRecord
     {
         private final Long id;
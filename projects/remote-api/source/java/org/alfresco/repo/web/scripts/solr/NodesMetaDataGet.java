@@ -27,6 +27,7 @@ package org.alfresco.repo.web.scripts.solr;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -37,6 +38,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.index.TrackingDataOutput;
 import org.alfresco.repo.search.IndexerException;
 import org.alfresco.repo.solr.MetaDataResultsFilter;
 import org.alfresco.repo.solr.NodeMetaData;
@@ -48,6 +50,8 @@ import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.namespace.NamespaceException;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
@@ -56,26 +60,27 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.extensions.surf.util.Content;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
-import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.AbstractWebScript;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
-// todo url parameter to remove whitespace in results - make it the default?
 /**
  * Support for SOLR: Get metadata for nodes given IDs, ranges of IDs, etc.
  * <p/>
+ * The response is written to the client as each node is loaded, rather than being collected
+ * and rendered once all the nodes are known, so the memory used does not grow with the size
+ * of the request.
  * 
  * @since 4.0
  */
-public class NodesMetaDataGet extends DeclarativeWebScript
+public class NodesMetaDataGet extends AbstractWebScript
 {
     protected static final Log logger = LogFactory.getLog(NodesMetaDataGet.class);
-    private static final int INITIAL_DEFAULT_SIZE = 100;
-    private static final int BATCH_SIZE = 50;
     
     private SOLRTrackingComponent solrTrackingComponent;
     private SOLRSerializer solrSerializer;
+    private NamespaceService namespaceService;
     
     public void setSolrTrackingComponent(SOLRTrackingComponent solrTrackingComponent)
     {
@@ -87,9 +92,16 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         this.solrSerializer = solrSerializer;
     }
 
+    public void setNamespaceService(NamespaceService namespaceService)
+    {
+        this.namespaceService = namespaceService;
+    }
+
     @Override
-    protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
     {
+        NodeMetaDataParameters params = new NodeMetaDataParameters();
+        MetaDataResultsFilter filter = new MetaDataResultsFilter();
         try
         {
             Content content = req.getContent();
@@ -117,28 +129,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             // 0 or Integer.MAX_VALUE => ignore
             int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
 
-            int size = 0;
-            if(maxResults != 0 && maxResults != Integer.MAX_VALUE)
-            {
-                size = maxResults;
-            }
-            else if(nodeIds != null)
-            {
-                size = nodeIds.size();
-            }
-            else if(fromNodeId != null && toNodeId != null)
-            {
-                if((toNodeId.longValue() - fromNodeId.longValue()) > Integer.MAX_VALUE)
-                {
-                    throw new WebScriptException("Too many nodes expected, try changing the criteria");
-                }
-                size = (int)(toNodeId - fromNodeId);
-            }
-
-            final boolean noSizeCalculated = (size == 0);
-
             // filters, defaults are 'true'
-            MetaDataResultsFilter filter = new MetaDataResultsFilter();
             if(o.has("includeAclId"))
             {
                 filter.setIncludeAclId(o.getBoolean("includeAclId"));
@@ -179,78 +170,405 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             {
                 filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
             }
-            
-            final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
-                new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
-            NodeMetaDataParameters params = new NodeMetaDataParameters();
+
             params.setNodeIds(nodeIds);
             params.setFromNodeId(fromNodeId);
             params.setToNodeId(toNodeId);
             params.setMaxResults(maxResults);
+        }
+        catch(IOException e)
+        {
+            throw new WebScriptException("IO exception parsing request", e);
+        }
+        catch(JSONException e)
+        {
+            throw new WebScriptException("Invalid JSON", e);
+        }
+
+        if(AbstractTrackingWebScript.isTrackingDataAccepted(req))
+        {
+            writeTrackingData(params, filter, AbstractTrackingWebScript.getTrackingDataOutput(res));
+            return;
+        }
+
+        res.setContentType("application/json");
+        res.setContentEncoding("UTF-8");
+        final Writer writer = res.getWriter();
+        writer.write("{\"nodes\":[");
 
-            solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+        final int[] count = new int[] {0};
+        solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
             {
-                private int counter = BATCH_SIZE;
-                private int numBatches = 0;
+                // Serializable -> String, QName -> String, etc
+                SerializedNodeMetaData serializedNodeMetaData;
+                try
+                {
+                    serializedNodeMetaData = new SerializedNodeMetaData(solrSerializer, nodeMetaData);
+                }
+                catch(Exception e)
+                {
+                    throw new AlfrescoRuntimeException("Problem converting to JSON using node " + nodeMetaData.getNodeRef().toString(), e); 
+                }
 
-                @Override
-                public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+                try
                 {
-                    // need to perform data structure conversions that are compatible with Freemarker
-                    // e.g. Serializable -> String, QName -> String (because map keys must be string, number)
-                    try
+                    if(count[0]++ > 0)
                     {
-                        FreemarkerNodeMetaData fNodeMetaData = new FreemarkerNodeMetaData(solrSerializer, nodeMetaData);
-                        nodesMetaData.add(fNodeMetaData);
-                    }
-                    catch(Exception e)
-                    {
-                        throw new AlfrescoRuntimeException("Problem converting to Freemarker using node " + nodeMetaData.getNodeRef().toString(), e); 
+                        writer.write(',');
                     }
+                    writeNodeMetaData(writer, serializedNodeMetaData);
+                }
+                catch(IOException e)
+                {
+                    throw new AlfrescoRuntimeException("Failed to write metadata for node " + nodeMetaData.getNodeRef().toString(), e);
+                }
+
+                return true;
+            }
+        });
+
+        writer.write("]}");
+        writer.flush();
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Result: \n\tRequest: " + req + "\n\tNodes: " + count[0]);
+        }
+    }
+
+    /**
+     * Write the nodes in the binary form, each preceded by <tt>true</tt>, with <tt>false</tt> ending the list.
+     */
+    void writeTrackingData(NodeMetaDataParameters params, MetaDataResultsFilter filter, final TrackingDataOutput out)
+            throws IOException
+    {
+        solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                try
+                {
+                    out.writeBoolean(true);
+                    writeNodeMetaData(out, nodeMetaData);
+                }
+                catch(IOException e)
+                {
+                    throw new AlfrescoRuntimeException("Failed to write metadata for node " + nodeMetaData.getNodeRef(), e);
+                }
+                catch(JSONException e)
+                {
+                    throw new AlfrescoRuntimeException("Problem converting metadata for node " + nodeMetaData.getNodeRef(), e);
+                }
+                return true;
+            }
+        });
+        out.writeBoolean(false);
+        out.flush();
+    }
 
-                    if(noSizeCalculated && --counter == 0)
+    /**
+     * Write a single node in the binary form. Collections are written as their size followed by the
+     * elements; a size of -1 stands for a collection that the JSON form leaves out.
+     */
+    private void writeNodeMetaData(TrackingDataOutput out, NodeMetaData nodeMetaData) throws IOException, JSONException
+    {
+        final String tenantDomain = nodeMetaData.getTenantDomain();
+        out.writeLong(nodeMetaData.getNodeId());
+        out.writeToken(tenantDomain);
+        out.writeNodeRef(nodeMetaData.getNodeRef() == null ? null : nodeMetaData.getNodeRef().toString());
+        out.writeQName(nodeMetaData.getNodeType());
+        out.writeNullableLong(nodeMetaData.getAclId());
+        out.writeNullableLong(nodeMetaData.getTxnId());
+
+        Map<QName, Serializable> props = nodeMetaData.getProperties();
+        out.writeLong(props == null ? -1 : props.size());
+        if(props != null)
+        {
+            for(final Map.Entry<QName, Serializable> prop : props.entrySet())
+            {
+                out.writeQName(prop.getKey());
+                if(prop.getValue() == null)
+                {
+                    out.writeLong(TrackingDataOutput.PROPERTY_NULL);
+                    continue;
+                }
+                // types may be in a tenant-specific dictionary registry
+                PropertyValue value = TenantUtil.runAsTenant(new TenantRunAsWork<PropertyValue>()
+                {
+                    @Override
+                    public PropertyValue doWork() throws Exception
                     {
-                        counter = BATCH_SIZE;
-                        nodesMetaData.ensureCapacity(++numBatches*BATCH_SIZE);
+                        return solrSerializer.serialize(prop.getKey(), prop.getValue());
                     }
+                }, tenantDomain);
+                if(value.isString())
+                {
+                    // the raw string rather than its JSON encoding
+                    out.writeLong(TrackingDataOutput.PROPERTY_STRING);
+                    out.writeString(prop.getValue() instanceof String ? (String)prop.getValue() : value.getValue());
+                }
+                else
+                {
+                    out.writeLong(TrackingDataOutput.PROPERTY_JSON);
+                    out.writeString(value.getValue());
+                }
+            }
+        }
+
+        Set<QName> aspects = nodeMetaData.getAspects();
+        out.writeLong(aspects == null ? -1 : aspects.size());
+        if(aspects != null)
+        {
+            for(QName aspect : aspects)
+            {
+                out.writeQName(aspect);
+            }
+        }
+
+        Collection<Pair<Path, QName>> paths = nodeMetaData.getPaths();
+        Set<String> ancestors = new HashSet<String>();
+        out.writeLong(paths == null ? -1 : paths.size());
+        if(paths != null)
+        {
+            for(Pair<Path, QName> pair : paths)
+            {
+                out.writeString(solrSerializer.serializeValue(String.class, pair.getFirst()));
+                out.writeQName(pair.getSecond());
+                for(NodeRef ancestor : SerializedNodeMetaData.getAncestors(pair.getFirst()))
+                {
+                    ancestors.add(ancestor.toString());
+                }
+            }
+        }
+        out.writeLong(ancestors.isEmpty() ? -1 : ancestors.size());
+        for(String ancestor : ancestors)
+        {
+            out.writeNodeRef(ancestor);
+        }
 
-                    return true;
+        Collection<Collection<String>> namePaths = nodeMetaData.getNamePaths();
+        out.writeLong(namePaths == null ? -1 : namePaths.size());
+        if(namePaths != null)
+        {
+            for(Collection<String> namePath : namePaths)
+            {
+                out.writeLong(namePath.size());
+                for(String element : namePath)
+                {
+                    out.writeString(element);
                 }
-            });
+            }
+        }
 
-            Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-            model.put("nodes", nodesMetaData);
-            model.put("filter", filter);
+        List<ChildAssociationRef> parentAssocs = nodeMetaData.getParentAssocs();
+        boolean hasParentAssocs = parentAssocs != null && parentAssocs.size() > 0;
+        writeChildAssocs(out, hasParentAssocs ? parentAssocs : null);
+        if(hasParentAssocs)
+        {
+            out.writeNullableLong(nodeMetaData.getParentAssocsCrc());
+        }
+        List<ChildAssociationRef> childAssocs = nodeMetaData.getChildAssocs();
+        writeChildAssocs(out, childAssocs != null && childAssocs.size() > 0 ? childAssocs : null);
 
-            if (logger.isDebugEnabled())
+        List<Long> childIds = nodeMetaData.getChildIds();
+        boolean hasChildIds = childIds != null && childIds.size() > 0;
+        out.writeLong(hasChildIds ? childIds.size() : -1);
+        if(hasChildIds)
+        {
+            for(Long childId : childIds)
             {
-                logger.debug("Result: \n\tRequest: " + req + "\n\tModel: " + model);
+                out.writeLong(childId);
             }
-            
-            return model;
         }
-        catch(IOException e)
+
+        out.writeString(nodeMetaData.getOwner());
+    }
+
+    private void writeChildAssocs(TrackingDataOutput out, List<ChildAssociationRef> assocs) throws IOException
+    {
+        out.writeLong(assocs == null ? -1 : assocs.size());
+        if(assocs != null)
         {
-            throw new WebScriptException("IO exception parsing request", e);
+            for(ChildAssociationRef assoc : assocs)
+            {
+                out.writeString(assoc.toString());
+            }
         }
-        catch(JSONException e)
+    }
+
+    /**
+     * Write the JSON for a single node, in the form read by the SOLR client.
+     */
+    void writeNodeMetaData(Writer writer, SerializedNodeMetaData nodeMetaData) throws IOException
+    {
+        writer.write("{\"id\":");
+        writer.write(String.valueOf(nodeMetaData.getNodeId()));
+        if(nodeMetaData.getTenantDomain() != null)
         {
-            throw new WebScriptException("Invalid JSON", e);
+            writeName(writer, "tenantDomain");
+            writer.write(JSONObject.quote(nodeMetaData.getTenantDomain()));
+        }
+        if(nodeMetaData.getNodeRef() != null)
+        {
+            writeName(writer, "nodeRef");
+            writer.write(JSONObject.quote(nodeMetaData.getNodeRef().toString()));
+        }
+        if(nodeMetaData.getNodeType() != null)
+        {
+            writeName(writer, "type");
+            writer.write(JSONObject.quote(getShortQName(nodeMetaData.getNodeType())));
+        }
+        if(nodeMetaData.getAclId() != null)
+        {
+            writeName(writer, "aclId");
+            writer.write(String.valueOf(nodeMetaData.getAclId()));
+        }
+        if(nodeMetaData.getTxnId() != null)
+        {
+            writeName(writer, "txnId");
+            writer.write(String.valueOf(nodeMetaData.getTxnId()));
+        }
+        if(nodeMetaData.getProperties() != null)
+        {
+            writeName(writer, "properties");
+            writer.write('{');
+            boolean first = true;
+            for(Map.Entry<String, String> property : nodeMetaData.getProperties().entrySet())
+            {
+                if(!first)
+                {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write(JSONObject.quote(property.getKey()));
+                writer.write(':');
+                // already JSON encoded
+                writer.write(property.getValue());
+            }
+            writer.write('}');
+        }
+        if(nodeMetaData.getAspects() != null)
+        {
+            List<String> aspects = new ArrayList<String>(nodeMetaData.getAspects().size());
+            for(QName aspect : nodeMetaData.getAspects())
+            {
+                aspects.add(JSONObject.quote(getShortQName(aspect)));
+            }
+            writeArray(writer, "aspects", aspects);
+        }
+        if(nodeMetaData.getPaths() != null)
+        {
+            writeArray(writer, "paths", nodeMetaData.getPaths());
+        }
+        if(nodeMetaData.getAncestors() != null && nodeMetaData.getAncestors().size() > 0)
+        {
+            writeArray(writer, "ancestors", quote(nodeMetaData.getAncestors()));
+        }
+        if(nodeMetaData.getNamePaths() != null)
+        {
+            writeArray(writer, "namePaths", nodeMetaData.getNamePaths());
+        }
+        if(nodeMetaData.getParentAssocs() != null && nodeMetaData.getParentAssocs().size() > 0)
+        {
+            writeArray(writer, "parentAssocs", quote(nodeMetaData.getParentAssocs()));
+            writeName(writer, "parentAssocsCrc");
+            writer.write(String.valueOf(nodeMetaData.getParentAssocsCrc()));
+        }
+        if(nodeMetaData.getChildAssocs() != null && nodeMetaData.getChildAssocs().size() > 0)
+        {
+            writeArray(writer, "childAssocs", quote(nodeMetaData.getChildAssocs()));
+        }
+        if(nodeMetaData.getChildIds() != null && nodeMetaData.getChildIds().size() > 0)
+        {
+            writeArray(writer, "childIds", nodeMetaData.getChildIds());
+        }
+        if(nodeMetaData.getOwner() != null)
+        {
+            writeName(writer, "owner");
+            writer.write(JSONObject.quote(nodeMetaData.getOwner()));
+        }
+        writer.write('}');
+    }
+
+    private void writeName(Writer writer, String name) throws IOException
+    {
+        writer.write(",\"");
+        writer.write(name);
+        writer.write("\":");
+    }
+
+    /**
+     * Write a named array whose elements are already valid JSON values
+     */
+    private void writeArray(Writer writer, String name, Collection<?> values) throws IOException
+    {
+        writeName(writer, name);
+        writer.write('[');
+        boolean first = true;
+        for(Object value : values)
+        {
+            if(!first)
+            {
+                writer.write(',');
+            }
+            first = false;
+            writer.write(String.valueOf(value));
+        }
+        writer.write(']');
+    }
+
+    private List<String> quote(Collection<?> values)
+    {
+        List<String> quoted = new ArrayList<String>(values.size());
+        for(Object value : values)
+        {
+            quoted.add(JSONObject.quote(value.toString()));
+        }
+        return quoted;
+    }
+
+    private String getShortQName(QName qname)
+    {
+        try
+        {
+            return qname.toPrefixString(namespaceService);
+        }
+        catch(NamespaceException e)
+        {
+            // no prefix registered, fall back to the full form
+            return qname.toString();
+        }
+    }
+
+    /**
+     * The JSON text for a serialized property value. Strings are quoted here, from the raw value
+     * where there is one, because the serializer does not escape every string it produces.
+     */
+    static String toJSON(Serializable value, PropertyValue propertyValue)
+    {
+        if(!propertyValue.isString())
+        {
+            return propertyValue.getValue();
         }
+        return JSONObject.quote(value instanceof String ? (String)value : propertyValue.getValue());
     }
 
     /**
-     * Bean to store node meta data for use by FreeMarker templates
+     * Node meta data with its values converted to the strings written to SOLR
      * 
      * @since 4.0
      */
-    public static class FreemarkerNodeMetaData
+    public static class SerializedNodeMetaData
     {
         private final Long nodeId;
         private final NodeRef nodeRef;
         private final QName nodeType;
         private final Long aclId;
-        private final Map<String, PropertyValue> properties;
+        private final Map<String, String> properties;
         private final Set<QName> aspects;
         private final List<String> paths;
         private final List<String> namePaths;
@@ -263,7 +581,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         private final Set<String> ancestors;
         private final String tenantDomain;
         
-        public FreemarkerNodeMetaData(final SOLRSerializer solrSerializer, final NodeMetaData nodeMetaData)
+        public SerializedNodeMetaData(final SOLRSerializer solrSerializer, final NodeMetaData nodeMetaData)
         		throws IOException, JSONException
         {
             this.nodeId = nodeMetaData.getNodeId();
@@ -323,7 +641,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             final Map<QName, Serializable> props = nodeMetaData.getProperties();
             if (props != null)
             {
-                final Map<String, PropertyValue> properties = new HashMap<String, PropertyValue>(props.size());
+                final Map<String, String> properties = new HashMap<String, String>(props.size());
                 for (final QName propName : props.keySet())
                 {
                 	// need to run this in tenant context because types may be in a tenant-specific
@@ -335,7 +653,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
                     	{
                     		Serializable value = props.get(propName);
                     		properties.put(solrSerializer.serializeValue(String.class, propName),
-                    				solrSerializer.serialize(propName, value));
+                    				toJSON(value, solrSerializer.serialize(propName, value)));
                     		return null;
                     	}
                     }, tenantDomain);
@@ -372,7 +690,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         {
             return aclId;
         }
-        public Map<String, PropertyValue> getProperties()
+        public Map<String, String> getProperties()
         {
             return properties;
         }
@@ -412,7 +730,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         {
             return tenantDomain;
         }
-        private ArrayList<NodeRef> getAncestors(Path path)
+        private static ArrayList<NodeRef> getAncestors(Path path)
         {
             ArrayList<NodeRef> ancestors = new ArrayList<NodeRef>(8);
             for (Iterator<Path.Element> elit = path.iterator(); elit.hasNext(); /**/)
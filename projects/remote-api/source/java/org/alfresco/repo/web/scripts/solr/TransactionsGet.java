@@ -25,10 +25,12 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.alfresco.repo.index.TrackingDataOutput;
 import org.alfresco.repo.index.shard.ShardMethodEnum;
 import org.alfresco.repo.index.shard.ShardState;
 import org.alfresco.repo.index.shard.ShardStateBuilder;
@@ -37,7 +39,6 @@ import org.alfresco.repo.solr.Transaction;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptRequest;
 
@@ -46,7 +47,7 @@ import org.springframework.extensions.webscripts.WebScriptRequest;
  *
  * @since 4.0
  */
-public class TransactionsGet extends DeclarativeWebScript
+public class TransactionsGet extends AbstractTrackingWebScript
 {
     protected static final Log logger = LogFactory.getLog(TransactionsGet.class);
 
@@ -163,4 +164,25 @@ public class TransactionsGet extends DeclarativeWebScript
         
         return model;
     }
+
+    /**
+     * Each transaction is preceded by <tt>true</tt> and followed by its ID, commit time, updates and
+     * deletes. <tt>false</tt> ends the list and is followed by the optional max commit time and max ID.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void writeTrackingData(Map<String, Object> model, TrackingDataOutput out) throws IOException
+    {
+        for (Transaction txn : (List<Transaction>) model.get("transactions"))
+        {
+            out.writeBoolean(true);
+            out.writeLong(txn.getId());
+            out.writeLong(txn.getCommitTimeMs());
+            out.writeLong(txn.getUpdates());
+            out.writeLong(txn.getDeletes());
+        }
+        out.writeBoolean(false);
+        out.writeNullableLong((Long) model.get("maxTxnCommitTime"));
+        out.writeNullableLong((Long) model.get("maxTxnId"));
+    }
 }
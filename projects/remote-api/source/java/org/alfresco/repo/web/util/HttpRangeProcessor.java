@@ -25,17 +25,24 @@
  */
 package org.alfresco.repo.web.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -59,7 +66,15 @@ public class HttpRangeProcessor
     private static final String MULTIPART_BYTERANGES_BOUNDRY_END = MULTIPART_BYTERANGES_BOUNDRY_SEP + "--";
     /** size of a multi-part byte range output buffer */
     private static final int CHUNKSIZE = 64*1024;
+    /** request attributes used by Tomcat to advertise and to trigger sendfile */
+    private static final String ATTR_SENDFILE_SUPPORT  = "org.apache.tomcat.sendfile.support";
+    private static final String ATTR_SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String ATTR_SENDFILE_START    = "org.apache.tomcat.sendfile.start";
+    private static final String ATTR_SENDFILE_END      = "org.apache.tomcat.sendfile.end";
+    /** smallest range worth handing to sendfile - matches the Tomcat DefaultServlet default */
+    private static final long SENDFILE_MIN_SIZE = 48*1024;
     private ContentService contentService;
+    private HttpServletRequest request;
     
     
     /**
@@ -72,6 +87,57 @@ public class HttpRangeProcessor
         this.contentService = contentService;
     }
 
+    /**
+     * Set the request being served.  When the servlet container supports sendfile, single
+     * ranges of file-backed content are then handed to the container rather than copied.
+     * 
+     * @param request the HTTP servlet request, may be <tt>null</tt>
+     */
+    public void setRequest(HttpServletRequest request)
+    {
+        this.request = request;
+    }
+
+    /**
+     * Hand a range of file-backed content to the servlet container to be sent with sendfile.
+     * <p>
+     * This is only possible when the container advertises sendfile support on the request
+     * and the content reader is a {@link FileContentReader}.  The response headers, including
+     * <tt>Content-Length</tt>, must already be set and nothing may be written to the response
+     * body if the content has been handed over.
+     * 
+     * @param req the HTTP servlet request, may be <tt>null</tt>
+     * @param reader the content reader
+     * @param start the first byte of the range
+     * @param end the last byte of the range (inclusive)
+     * @return <tt>true</tt> if the container will send the content, <tt>false</tt> if the
+     *         caller must stream it
+     */
+    public static boolean sendFile(HttpServletRequest req, ContentReader reader, long start, long end)
+    {
+        if (req == null || !Boolean.TRUE.equals(req.getAttribute(ATTR_SENDFILE_SUPPORT)))
+        {
+            return false;
+        }
+        if (!(reader instanceof FileContentReader) || (end - start) + 1L < SENDFILE_MIN_SIZE)
+        {
+            return false;
+        }
+        File file = ((FileContentReader) reader).getFile();
+        if (!file.exists())
+        {
+            return false;
+        }
+        // Tomcat takes an exclusive end position
+        req.setAttribute(ATTR_SENDFILE_FILENAME, file.getAbsolutePath());
+        req.setAttribute(ATTR_SENDFILE_START, Long.valueOf(start));
+        req.setAttribute(ATTR_SENDFILE_END, Long.valueOf(end + 1L));
+        
+        if (getLogger().isDebugEnabled())
+           getLogger().debug("Handed range " + start + "-" + end + " of " + file + " to sendfile");
+        return true;
+    }
+
     /**
      * Process a range header for a HttpServletResponse - handles single and multiple range requests.
      * 
@@ -217,7 +283,14 @@ public class HttpRangeProcessor
        if (getLogger().isDebugEnabled())
           getLogger().debug("Processing: Content-Range: " + contentRange);
        
+       if (sendFile(request, reader, r.start, r.end))
+       {
+          // the container sends the bytes once we return
+          return true;
+       }
+       
        InputStream is = null;
+       ReadableByteChannel channel = null;
        try
        {
           // output the binary data for the range
@@ -230,9 +303,20 @@ public class HttpRangeProcessor
           {
              os = webScriptResponse.getOutputStream();
           }
-          is = reader.getContentInputStream();
-          
-          streamRangeBytes(r, is, os, 0L);
+          if (reader instanceof FileContentReader)
+          {
+             channel = reader.getReadableChannel();
+          }
+          if (channel instanceof FileChannel)
+          {
+             // read directly from the range position rather than skipping through a stream
+             streamRangeBytes(r, (FileChannel) channel, os);
+          }
+          else
+          {
+             is = (channel != null ? Channels.newInputStream(channel) : reader.getContentInputStream());
+             streamRangeBytes(r, is, os, 0L);
+          }
           
           os.close();
           processedRange = true;
@@ -246,6 +330,7 @@ public class HttpRangeProcessor
        finally
        {
           if (is != null) is.close();
+          if (channel != null) channel.close();
        }
        
        return processedRange;
@@ -392,8 +477,22 @@ public class HttpRangeProcessor
           }
           
           InputStream is = null;
+          FileChannel channel = null;
           try
           {
+             // file content can be read at any position, so one channel serves all the ranges
+             if (reader instanceof FileContentReader)
+             {
+                ReadableByteChannel readerChannel = reader.getReadableChannel();
+                if (readerChannel instanceof FileChannel)
+                {
+                   channel = (FileChannel) readerChannel;
+                }
+                else
+                {
+                   readerChannel.close();
+                }
+             }
              for (Range r : ranges)
              {
                 if (logger.isDebugEnabled())
@@ -406,11 +505,18 @@ public class HttpRangeProcessor
                        r.outputHeader((ServletOutputStream) os);
                    
                    // output the binary data for the range
-                   // need a new reader for each new InputStream
-                   is = contentService.getReader(ref, property).getContentInputStream();
-                   streamRangeBytes(r, is, os, 0L);
-                   is.close();
-                   is = null;
+                   if (channel != null)
+                   {
+                      streamRangeBytes(r, channel, os);
+                   }
+                   else
+                   {
+                      // need a new reader for each new InputStream
+                      is = contentService.getReader(ref, property).getContentInputStream();
+                      streamRangeBytes(r, is, os, 0L);
+                      is.close();
+                      is = null;
+                   }
                    
                    // section marker and flush stream
                    if (os instanceof ServletOutputStream)
@@ -431,6 +537,10 @@ public class HttpRangeProcessor
              {
                 is.close();
              }
+             if (channel != null)
+             {
+                channel.close();
+             }
           }
           
           // end marker
@@ -443,6 +553,44 @@ public class HttpRangeProcessor
        return processedRange;
     }
     
+    /**
+     * Stream a range of bytes from the given FileChannel to the ServletOutputStream.
+     * The channel position is not used, so the same channel may serve any number of ranges.
+     * 
+     * @param r       Byte Range to process
+     * @param channel FileChannel onto the content
+     * @param os      ServletOutputStream
+     */
+    private void streamRangeBytes(final Range r, final FileChannel channel, final OutputStream os)
+       throws IOException
+    {
+       final Log logger = getLogger();
+       final boolean trace = logger.isTraceEnabled();
+       
+       long position = r.start;
+       long bytesLeft = (r.end - r.start) + 1L;
+       ByteBuffer buf = ByteBuffer.allocate(bytesLeft < CHUNKSIZE ? (int)bytesLeft : CHUNKSIZE);
+       while (bytesLeft != 0L)
+       {
+          buf.clear();
+          if (bytesLeft < buf.capacity())
+          {
+             buf.limit((int)bytesLeft);
+          }
+          int read = channel.read(buf, position);
+          if (read <= 0)
+          {
+             // Nothing left to download!
+             break;
+          }
+          os.write(buf.array(), 0, read);
+          
+          position += read;
+          bytesLeft -= (long)read;
+          if (trace) logger.trace("...wrote " + read + " bytes, with " + bytesLeft + " to go...");
+       }
+    }
+    
     /**
      * Stream a range of bytes from the given InputStream to the ServletOutputStream
      * 
@@ -458,8 +606,6 @@ public class HttpRangeProcessor
        final Log logger = getLogger();
        final boolean trace = logger.isTraceEnabled();
        
-       // TODO: investigate using getFileChannel() on ContentReader
-       
        if (r.start != 0L && r.start > offset)
        {
           long skipped = offset + is.skip(r.start - offset);
@@ -321,6 +321,7 @@ public class GetMethod extends WebDAVMethod
         if (byteRanges != null && byteRanges.startsWith(RANGE_HEADER_UNIT_SPECIFIER))
         {
             HttpRangeProcessor rangeProcessor = new HttpRangeProcessor(getContentService());
+            rangeProcessor.setRequest(m_request);
             String userAgent = m_request.getHeader(WebDAV.HEADER_USER_AGENT);
             
             if (m_returnContent)
@@ -344,8 +345,11 @@ public class GetMethod extends WebDAVMethod
                 m_response.setHeader(WebDAV.HEADER_CONTENT_LENGTH, Long.toString(reader.getSize()));
                 m_response.setHeader(WebDAV.HEADER_CONTENT_TYPE, reader.getMimetype());
                 m_davHelper.publishReadEvent(realNodeInfo, reader.getMimetype(), reader.getSize(), null, reader.getEncoding());
-                // copy the content to the response output stream
-                reader.getContent(m_response.getOutputStream());
+                // copy the content to the response output stream, unless the container can send the file itself
+                if (!HttpRangeProcessor.sendFile(m_request, reader, 0L, reader.getSize() - 1L))
+                {
+                    reader.getContent(m_response.getOutputStream());
+                }
             }
         }
     }
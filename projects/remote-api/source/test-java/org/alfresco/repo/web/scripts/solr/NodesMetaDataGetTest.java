@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.solr.NodeMetaData;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.web.scripts.solr.NodesMetaDataGet.SerializedNodeMetaData;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the JSON written by {@link NodesMetaDataGet} is valid and keeps the values it was given.
+ *
+ * @since 5.2
+ */
+public class NodesMetaDataGetTest
+{
+    private static final String AWKWARD = "He said \"hi\\there\"\n\tand left </script>";
+
+    private static final QName PROP_UNDEFINED = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "undefined");
+
+    private static final NodeRef ROOT = new NodeRef("workspace://SpacesStore/root");
+    private static final NodeRef FOLDER = new NodeRef("workspace://SpacesStore/folder");
+    private static final NodeRef DOC = new NodeRef("workspace://SpacesStore/doc");
+
+    private DictionaryService dictionaryService;
+    private SOLRSerializer solrSerializer;
+    private NodesMetaDataGet webScript;
+
+    @Before
+    public void setUp()
+    {
+        dictionaryService = mock(DictionaryService.class);
+        NamespaceService namespaceService = mock(NamespaceService.class);
+        when(namespaceService.getPrefixes(NamespaceService.CONTENT_MODEL_1_0_URI)).thenReturn(Collections.singleton("cm"));
+
+        solrSerializer = new SOLRSerializer();
+        solrSerializer.setDictionaryService(dictionaryService);
+        solrSerializer.setNamespaceService(namespaceService);
+        solrSerializer.init();
+
+        webScript = new NodesMetaDataGet();
+        webScript.setSolrSerializer(solrSerializer);
+        webScript.setNamespaceService(namespaceService);
+    }
+
+    @Test
+    public void stringsAreEscaped() throws Exception
+    {
+        defineProperty(ContentModel.PROP_NAME, DataTypeDefinition.TEXT, false);
+
+        NodeMetaData nodeMetaData = newNodeMetaData();
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, AWKWARD);
+        properties.put(PROP_UNDEFINED, AWKWARD);
+        nodeMetaData.setProperties(properties);
+        nodeMetaData.setOwner(AWKWARD);
+        Collection<Collection<String>> namePaths = new ArrayList<Collection<String>>();
+        namePaths.add(Arrays.asList("Company Home", AWKWARD));
+        nodeMetaData.setNamePaths(namePaths);
+
+        JSONObject json = write(nodeMetaData);
+
+        JSONObject jsonProperties = json.getJSONObject("properties");
+        assertEquals(AWKWARD, jsonProperties.getString(ContentModel.PROP_NAME.toString()));
+        assertEquals(AWKWARD, jsonProperties.getString(PROP_UNDEFINED.toString()));
+        assertEquals(AWKWARD, json.getString("owner"));
+        JSONArray namePath = json.getJSONArray("namePaths").getJSONObject(0).getJSONArray("namePath");
+        assertEquals("Company Home", namePath.getString(0));
+        assertEquals(AWKWARD, namePath.getString(1));
+    }
+
+    @Test
+    public void nullsAreLeftOutOrWrittenAsNull() throws Exception
+    {
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setNodeId(7L);
+        nodeMetaData.setTenantDomain(TenantService.DEFAULT_DOMAIN);
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(PROP_UNDEFINED, null);
+        nodeMetaData.setProperties(properties);
+        nodeMetaData.setParentAssocs(Collections.<ChildAssociationRef>emptyList(), null);
+
+        JSONObject json = write(nodeMetaData);
+
+        assertEquals(7L, json.getLong("id"));
+        assertTrue(json.getJSONObject("properties").isNull(PROP_UNDEFINED.toString()));
+        for (String key : new String[] {"nodeRef", "type", "aclId", "txnId", "aspects", "ancestors", "parentAssocs", "parentAssocsCrc", "childAssocs", "childIds", "owner"})
+        {
+            assertFalse(key, json.has(key));
+        }
+    }
+
+    @Test
+    public void pathsAncestorsAndAssociations() throws Exception
+    {
+        QName folderName = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "folder");
+        QName docName = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "doc");
+        ChildAssociationRef folderAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, ROOT, folderName, FOLDER);
+        ChildAssociationRef docAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, FOLDER, docName, DOC);
+        Path path = new Path();
+        path.append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, ROOT)));
+        path.append(new Path.ChildAssocElement(folderAssoc));
+        path.append(new Path.ChildAssocElement(docAssoc));
+
+        NodeMetaData nodeMetaData = newNodeMetaData();
+        List<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>();
+        paths.add(new Pair<Path, QName>(path, docName));
+        nodeMetaData.setPaths(paths);
+        nodeMetaData.setParentAssocs(Collections.singletonList(docAssoc), 42L);
+        nodeMetaData.setChildIds(Arrays.asList(3L, 4L));
+
+        JSONObject json = write(nodeMetaData);
+
+        assertEquals(DOC.toString(), json.getString("nodeRef"));
+        assertEquals("cm:content", json.getString("type"));
+        assertEquals("cm:titled", json.getJSONArray("aspects").getString(0));
+        JSONObject jsonPath = json.getJSONArray("paths").getJSONObject(0);
+        assertEquals(path.toString(), jsonPath.getString("path"));
+        assertEquals(docName.toString(), jsonPath.getString("qname"));
+        JSONArray ancestors = json.getJSONArray("ancestors");
+        Set<String> ancestorSet = new HashSet<String>();
+        for (int i = 0; i < ancestors.length(); i++)
+        {
+            ancestorSet.add(ancestors.getString(i));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(ROOT.toString(), FOLDER.toString())), ancestorSet);
+        assertEquals(docAssoc, new ChildAssociationRef(json.getJSONArray("parentAssocs").getString(0)));
+        assertEquals(42L, json.getLong("parentAssocsCrc"));
+        assertEquals(2, json.getJSONArray("childIds").length());
+        assertEquals(4L, json.getJSONArray("childIds").getLong(1));
+    }
+
+    @Test
+    public void multiValuedPropertiesAreArrays() throws Exception
+    {
+        defineProperty(ContentModel.PROP_NAME, DataTypeDefinition.TEXT, true);
+
+        NodeMetaData nodeMetaData = newNodeMetaData();
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, new ArrayList<String>(Arrays.asList("a", AWKWARD)));
+        nodeMetaData.setProperties(properties);
+
+        JSONArray values = write(nodeMetaData).getJSONObject("properties").getJSONArray(ContentModel.PROP_NAME.toString());
+        assertEquals(2, values.length());
+        assertEquals("a", values.getString(0));
+        assertEquals(AWKWARD, values.getString(1));
+    }
+
+    private NodeMetaData newNodeMetaData()
+    {
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setNodeId(1L);
+        nodeMetaData.setTenantDomain(TenantService.DEFAULT_DOMAIN);
+        nodeMetaData.setNodeRef(DOC);
+        nodeMetaData.setNodeType(ContentModel.TYPE_CONTENT);
+        nodeMetaData.setAspects(Collections.singleton(ContentModel.ASPECT_TITLED));
+        nodeMetaData.setAclId(2L);
+        nodeMetaData.setTxnId(3L);
+        return nodeMetaData;
+    }
+
+    private void defineProperty(QName propertyName, QName dataTypeName, boolean multiValued)
+    {
+        DataTypeDefinition dataType = mock(DataTypeDefinition.class);
+        when(dataType.getName()).thenReturn(dataTypeName);
+        PropertyDefinition propertyDef = mock(PropertyDefinition.class);
+        when(propertyDef.getDataType()).thenReturn(dataType);
+        when(propertyDef.isMultiValued()).thenReturn(multiValued);
+        when(dictionaryService.getProperty(propertyName)).thenReturn(propertyDef);
+    }
+
+    private JSONObject write(NodeMetaData nodeMetaData) throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        webScript.writeNodeMetaData(writer, new SerializedNodeMetaData(solrSerializer, nodeMetaData));
+        return new JSONObject(writer.toString());
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.httpclient.AlfrescoHttpClient;
+import org.alfresco.httpclient.Request;
+import org.alfresco.httpclient.Response;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.dictionary.NamespaceDAO;
+import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.node.TransactionEntity;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.index.TrackingDataOutput;
+import org.alfresco.repo.solr.AclReaders;
+import org.alfresco.repo.solr.MetaDataResultsFilter;
+import org.alfresco.repo.solr.NodeMetaData;
+import org.alfresco.repo.solr.NodeMetaDataParameters;
+import org.alfresco.repo.solr.SOLRTrackingComponent;
+import org.alfresco.repo.solr.SOLRTrackingComponent.NodeMetaDataQueryCallback;
+import org.alfresco.repo.solr.Transaction;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.web.scripts.solr.NodesGet.NodeRecord;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.Acl;
+import org.alfresco.solr.client.GetNodesParameters;
+import org.alfresco.solr.client.MultiPropertyValue;
+import org.alfresco.solr.client.SOLRAPIClient;
+import org.alfresco.solr.client.StringPropertyValue;
+import org.alfresco.solr.client.Transactions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Checks that what the tracking web scripts write in the binary form is read back unchanged by the
+ * {@link SOLRAPIClient}.
+ *
+ * @since 5.2
+ */
+public class TrackingDataRoundTripTest
+{
+    private static final QName PROP_KEYWORDS = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "keywords");
+
+    private static final NodeRef FOLDER = new NodeRef("workspace://SpacesStore/folder");
+    private static final NodeRef DOC = new NodeRef("workspace://SpacesStore/doc");
+
+    private DictionaryService dictionaryService;
+    private AlfrescoHttpClient httpClient;
+    private SOLRAPIClient client;
+    private SOLRTrackingComponent solrTrackingComponent;
+
+    @Before
+    public void setUp()
+    {
+        dictionaryService = mock(DictionaryService.class);
+        httpClient = mock(AlfrescoHttpClient.class);
+        client = new SOLRAPIClient(httpClient, dictionaryService, mock(NamespaceDAO.class));
+        solrTrackingComponent = mock(SOLRTrackingComponent.class);
+    }
+
+    @Test
+    public void transactions() throws Exception
+    {
+        List<Transaction> transactions = Arrays.asList(newTransaction(1L, 1000L, 3, 0), newTransaction(2L, 1000L, 0, 2),
+                    newTransaction(Long.MAX_VALUE, 1449000000000L, Integer.MAX_VALUE, 1));
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("transactions", transactions);
+        model.put("maxTxnCommitTime", 1449000000001L);
+        TransactionsGet webScript = new TransactionsGet();
+        respondWith(write(webScript, model));
+
+        Transactions read = client.getTransactions(null, null, null, null, 0);
+
+        assertEquals(transactions.size(), read.getTransactions().size());
+        for (int i = 0; i < transactions.size(); i++)
+        {
+            Transaction expected = transactions.get(i);
+            org.alfresco.solr.client.Transaction actual = read.getTransactions().get(i);
+            assertEquals(expected.getId().longValue(), actual.getId());
+            assertEquals(expected.getCommitTimeMs().longValue(), actual.getCommitTimeMs());
+            assertEquals(expected.getUpdates(), actual.getUpdates());
+            assertEquals(expected.getDeletes(), actual.getDeletes());
+        }
+        assertEquals(Long.valueOf(1449000000001L), read.getMaxTxnCommitTime());
+        assertNull(read.getMaxTxnId());
+    }
+
+    @Test
+    public void nodes() throws Exception
+    {
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getDomain("SpacesStore")).thenReturn(TenantService.DEFAULT_DOMAIN);
+        QNameDAO qnameDAO = mock(QNameDAO.class);
+        List<NodeRecord> nodes = new ArrayList<NodeRecord>();
+        nodes.add(new NodeRecord(newNode(5L, FOLDER, 7L, false, 9L, null), qnameDAO, tenantService));
+        nodes.add(new NodeRecord(newNode(6L, DOC, 8L, true, null, "shard"), qnameDAO, tenantService));
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("nodes", nodes);
+        respondWith(write(new NodesGet(), model));
+
+        List<org.alfresco.solr.client.Node> read = client.getNodes(new GetNodesParameters(), 0);
+
+        assertEquals(2, read.size());
+        assertEquals(5L, read.get(0).getId());
+        assertEquals(FOLDER.toString(), read.get(0).getNodeRef());
+        assertEquals(7L, read.get(0).getTxnId());
+        assertEquals(org.alfresco.solr.client.Node.SolrApiNodeStatus.UPDATED, read.get(0).getStatus());
+        assertEquals(9L, read.get(0).getAclId());
+        assertNull(read.get(0).getShardPropertyValue());
+        assertEquals(TenantService.DEFAULT_DOMAIN, read.get(0).getTenant());
+        assertEquals(6L, read.get(1).getId());
+        assertEquals(DOC.toString(), read.get(1).getNodeRef());
+        assertEquals(org.alfresco.solr.client.Node.SolrApiNodeStatus.DELETED, read.get(1).getStatus());
+        assertEquals("shard", read.get(1).getShardPropertyValue());
+    }
+
+    @Test
+    public void aclsReaders() throws Exception
+    {
+        List<AclReaders> aclsReaders = Arrays.asList(newAclReaders(1L, 10L, TenantService.DEFAULT_DOMAIN, "GROUP_EVERYONE", "admin"),
+                    newAclReaders(2L, 10L, "acme.com", "GROUP_EVERYONE"));
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("aclsReaders", aclsReaders);
+        respondWith(write(new AclsReadersGet(), model));
+
+        List<org.alfresco.solr.client.AclReaders> read = client.getAclReaders(Arrays.asList(new Acl(10L, 1L), new Acl(10L, 2L)));
+
+        assertEquals(2, read.size());
+        for (int i = 0; i < aclsReaders.size(); i++)
+        {
+            AclReaders expected = aclsReaders.get(i);
+            org.alfresco.solr.client.AclReaders actual = read.get(i);
+            assertEquals(expected.getAclId().longValue(), actual.getId());
+            assertEquals(expected.getAclChangeSetId(), actual.getAclChangeSetId());
+            assertEquals(expected.getTenantDomain(), actual.getTenantDomain());
+            assertEquals(expected.getReaders(), new HashSet<String>(actual.getReaders()));
+            assertEquals(expected.getDenied(), new HashSet<String>(actual.getDenied()));
+        }
+    }
+
+    @Test
+    public void nodesMetaData() throws Exception
+    {
+        defineProperty(ContentModel.PROP_NAME, DataTypeDefinition.TEXT, false);
+        defineProperty(PROP_KEYWORDS, DataTypeDefinition.TEXT, true);
+        NamespaceService namespaceService = mock(NamespaceService.class);
+        when(namespaceService.getPrefixes(NamespaceService.CONTENT_MODEL_1_0_URI)).thenReturn(Collections.singleton("cm"));
+        SOLRSerializer solrSerializer = new SOLRSerializer();
+        solrSerializer.setDictionaryService(dictionaryService);
+        solrSerializer.setNamespaceService(namespaceService);
+        solrSerializer.init();
+
+        final NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setNodeId(1L);
+        nodeMetaData.setTenantDomain(TenantService.DEFAULT_DOMAIN);
+        nodeMetaData.setNodeRef(DOC);
+        nodeMetaData.setNodeType(ContentModel.TYPE_CONTENT);
+        nodeMetaData.setAspects(Collections.singleton(ContentModel.ASPECT_TITLED));
+        nodeMetaData.setAclId(2L);
+        nodeMetaData.setTxnId(3L);
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, "doc \"1\"\n");
+        properties.put(PROP_KEYWORDS, new ArrayList<String>(Arrays.asList("a", "b")));
+        properties.put(ContentModel.PROP_TITLE, null);
+        nodeMetaData.setProperties(properties);
+        ChildAssociationRef parentAssoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, FOLDER, ContentModel.PROP_NAME, DOC);
+        nodeMetaData.setParentAssocs(Collections.singletonList(parentAssoc), 42L);
+        nodeMetaData.setChildIds(Arrays.asList(4L, 5L));
+        nodeMetaData.setOwner("admin");
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                ((NodeMetaDataQueryCallback) invocation.getArguments()[2]).handleNodeMetaData(nodeMetaData);
+                return null;
+            }
+        }).when(solrTrackingComponent).getNodesMetadata(any(NodeMetaDataParameters.class), any(MetaDataResultsFilter.class), any(NodeMetaDataQueryCallback.class));
+
+        NodesMetaDataGet webScript = new NodesMetaDataGet();
+        webScript.setSolrTrackingComponent(solrTrackingComponent);
+        webScript.setSolrSerializer(solrSerializer);
+        webScript.setNamespaceService(namespaceService);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        webScript.writeTrackingData(new NodeMetaDataParameters(), new MetaDataResultsFilter(), new TrackingDataOutput(bytes));
+        respondWith(bytes.toByteArray());
+
+        List<org.alfresco.solr.client.NodeMetaData> read = client.getNodesMetaData(new org.alfresco.solr.client.NodeMetaDataParameters(), 0);
+
+        assertEquals(1, read.size());
+        org.alfresco.solr.client.NodeMetaData actual = read.get(0);
+        assertEquals(1L, actual.getId());
+        assertEquals(TenantService.DEFAULT_DOMAIN, actual.getTenantDomain());
+        assertEquals(DOC, actual.getNodeRef());
+        assertEquals(ContentModel.TYPE_CONTENT, actual.getType());
+        assertEquals(Collections.singleton(ContentModel.ASPECT_TITLED), actual.getAspects());
+        assertEquals(2L, actual.getAclId());
+        assertEquals(3L, actual.getTxnId());
+        assertEquals("doc \"1\"\n", ((StringPropertyValue) actual.getProperties().get(ContentModel.PROP_NAME)).getValue());
+        MultiPropertyValue keywords = (MultiPropertyValue) actual.getProperties().get(PROP_KEYWORDS);
+        assertEquals(2, keywords.getValues().size());
+        assertEquals("b", ((StringPropertyValue) keywords.getValues().get(1)).getValue());
+        assertTrue(actual.getProperties().containsKey(ContentModel.PROP_TITLE));
+        assertNull(actual.getProperties().get(ContentModel.PROP_TITLE));
+        assertEquals(Collections.singletonList(parentAssoc), actual.getParentAssocs());
+        assertEquals(42L, actual.getParentAssocsCrc());
+        assertNull(actual.getChildAssocs());
+        assertEquals(Arrays.asList(4L, 5L), actual.getChildIds());
+        assertEquals("admin", actual.getOwner());
+        assertNull(actual.getAncestors());
+    }
+
+    private byte[] write(AbstractTrackingWebScript webScript, Map<String, Object> model) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingDataOutput out = new TrackingDataOutput(bytes);
+        webScript.writeTrackingData(model, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void respondWith(byte[] content) throws Exception
+    {
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getContentType()).thenReturn(TrackingDataOutput.MIMETYPE);
+        when(response.getContentAsStream()).thenReturn(new ByteArrayInputStream(content));
+        when(httpClient.sendRequest(any(Request.class))).thenReturn(response);
+    }
+
+    private Transaction newTransaction(Long id, Long commitTimeMs, int updates, int deletes)
+    {
+        Transaction txn = mock(Transaction.class);
+        when(txn.getId()).thenReturn(id);
+        when(txn.getCommitTimeMs()).thenReturn(commitTimeMs);
+        when(txn.getUpdates()).thenReturn(updates);
+        when(txn.getDeletes()).thenReturn(deletes);
+        return txn;
+    }
+
+    private Node newNode(Long id, NodeRef nodeRef, Long txnId, boolean deleted, Long aclId, String shardKey)
+    {
+        Node node = mock(Node.class);
+        TransactionEntity txn = new TransactionEntity();
+        txn.setId(txnId);
+        when(node.getId()).thenReturn(id);
+        when(node.getNodeRef()).thenReturn(nodeRef);
+        when(node.getTransaction()).thenReturn(txn);
+        when(node.getNodeStatus(any(QNameDAO.class))).thenReturn(new NodeRef.Status(id, nodeRef, "change", txnId, deleted));
+        when(node.getAclId()).thenReturn(aclId);
+        when(node.getShardKey()).thenReturn(shardKey);
+        return node;
+    }
+
+    private AclReaders newAclReaders(Long aclId, long aclChangeSetId, String tenantDomain, String... readers)
+    {
+        AclReaders aclReaders = new AclReaders();
+        aclReaders.setAclId(aclId);
+        aclReaders.setAclChangeSetId(aclChangeSetId);
+        aclReaders.setTenantDomain(tenantDomain);
+        aclReaders.setReaders(new HashSet<String>(Arrays.asList(readers)));
+        aclReaders.setDenied(new HashSet<String>(Collections.singleton("GROUP_DENIED")));
+        return aclReaders;
+    }
+
+    private void defineProperty(QName propertyName, QName dataTypeName, boolean multiValued)
+    {
+        DataTypeDefinition dataType = mock(DataTypeDefinition.class);
+        when(dataType.getName()).thenReturn(dataTypeName);
+        PropertyDefinition propertyDef = mock(PropertyDefinition.class);
+        when(propertyDef.getDataType()).thenReturn(dataType);
+        when(propertyDef.isMultiValued()).thenReturn(multiValued);
+        when(dictionaryService.getProperty(propertyName)).thenReturn(propertyDef);
+    }
+}
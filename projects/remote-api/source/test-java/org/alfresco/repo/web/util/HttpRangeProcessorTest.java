@@ -26,19 +26,28 @@
 package org.alfresco.repo.web.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TempFileProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 /**
@@ -51,6 +60,7 @@ public class HttpRangeProcessorTest
 {
     private HttpRangeProcessor httpRangeProcessor;
     private @Mock ContentReader reader;
+    private @Mock ContentService contentService;
     
     @Before
     public void setUp() throws Exception
@@ -96,4 +106,77 @@ public class HttpRangeProcessorTest
         reader.getContentInputStream().close();
     }
     
+    @Test
+    public void testFileRange() throws IOException
+    {
+        FileContentReader fileReader = createFileReader();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        boolean result = httpRangeProcessor.processRange(response, fileReader, "1005-1014", null, null, "text/plain", null);
+        
+        assertTrue(result);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("bytes 1005-1014/100000", response.getHeader("Content-Range"));
+        assertEquals("5678901234", response.getContentAsString());
+    }
+    
+    @Test
+    public void testFileMultiRange() throws IOException
+    {
+        NodeRef nodeRef = new NodeRef("workspace://SpacesStore/test");
+        FileContentReader fileReader = createFileReader();
+        when(contentService.getReader(nodeRef, ContentModel.PROP_CONTENT)).thenReturn(fileReader);
+        httpRangeProcessor = new HttpRangeProcessor(contentService);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        boolean result = httpRangeProcessor.processRange(
+                response, fileReader, "99995-99999,3-5", nodeRef, ContentModel.PROP_CONTENT, "text/plain", "Mozilla/5.0");
+        
+        assertTrue(result);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        String body = response.getContentAsString();
+        assertTrue(body, body.contains("Content-Range: bytes 99995-99999/100000\r\n\r\n56789\r\n"));
+        assertTrue(body, body.contains("Content-Range: bytes 3-5/100000\r\n\r\n345\r\n"));
+    }
+    
+    @Test
+    public void testSendFile() throws IOException
+    {
+        FileContentReader fileReader = createFileReader();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        // The container does not support sendfile
+        httpRangeProcessor.setRequest(request);
+        httpRangeProcessor.processRange(response, fileReader, "0-", null, null, "text/plain", null);
+        assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(100000, response.getContentAsByteArray().length);
+        
+        // The container supports sendfile
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        response = new MockHttpServletResponse();
+        fileReader = createFileReader();
+        httpRangeProcessor.processRange(response, fileReader, "100-99998", null, null, "text/plain", null);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        assertEquals("99899", response.getHeader("Content-Length"));
+        assertEquals(fileReader.getFile().getAbsolutePath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(100L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(99999L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+    
+    /**
+     * @return a reader onto 100000 bytes of the digits 0 to 9, repeated
+     */
+    private FileContentReader createFileReader()
+    {
+        File file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".txt");
+        StringBuilder content = new StringBuilder(100000);
+        for (int i = 0; i < 100000; i++)
+        {
+            content.append((char) ('0' + (i % 10)));
+        }
+        new FileContentWriter(file).putContent(content.toString());
+        return new FileContentReader(file);
+    }
 }
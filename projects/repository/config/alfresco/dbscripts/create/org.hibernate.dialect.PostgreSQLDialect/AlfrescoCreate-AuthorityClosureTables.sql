@@ -0,0 +1,29 @@
+--
+-- Title:      Create Authority Closure tables
+-- Database:   PostgreSQL
+-- Since:      V5.2 Schema 10005
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_authority_closure
+(
+    ancestor_node_id INT8 NOT NULL,
+    descendant_node_id INT8 NOT NULL,
+    depth INT4 NOT NULL,
+    path_count INT8 NOT NULL,
+    PRIMARY KEY (ancestor_node_id, descendant_node_id, depth)
+);
+CREATE INDEX idx_alf_authcl_desc ON alf_authority_closure (descendant_node_id, depth);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V5.2-AuthorityClosureTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V5.2-AuthorityClosureTables', 'Manually executed script upgrade V5.2: Authority closure tables',
+    0, 10004, -1, 10005, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
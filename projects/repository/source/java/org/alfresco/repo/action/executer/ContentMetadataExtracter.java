@@ -51,16 +51,19 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.metadata.AbstractMappingMetadataExtracter;
 import org.alfresco.repo.content.metadata.MetadataExtracter;
 import org.alfresco.repo.content.metadata.MetadataExtracterRegistry;
+import org.alfresco.repo.content.metadata.MetadataExtracterStatistics;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.dictionary.ClassDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
@@ -69,6 +72,8 @@ import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
 import org.alfresco.service.cmr.tagging.TaggingService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.EqualsHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -78,6 +83,11 @@ import org.apache.commons.logging.LogFactory;
  * Currently, the default {@linkplain org.alfresco.repo.content.metadata.MetadataExtracter.OverwritePolicy overwrite policy}
  * for each extracter is used. (TODO: Add overwrite policy as a parameter.)
  * 
+ * <p>
+ * When a batch size greater than one is set, asynchronous executions of the action queue
+ * the node instead, and the metadata of the queued nodes is extracted in batches - see
+ * {@link ContentMetadataExtracterQueue}.
+ * 
  * @see org.alfresco.repo.content.metadata.MetadataExtracter.OverwritePolicy
  * 
  * @author Jesper Steen Møller
@@ -95,6 +105,14 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
     private MetadataExtracterRegistry metadataExtracterRegistry;
     private boolean carryAspectProperties = true;
     private boolean enableStringTagging = false;
+    private MetadataExtracterStatistics statistics;
+    private TransactionService transactionService;
+    private ExecutorService batchExecutor;
+    private int batchSize = 1;
+    private long batchDelayMs = 200;
+    private int batchMaxQueued = 1000;
+    private int batchThreads = 2;
+    private volatile ContentMetadataExtracterQueue queue;
     
     public ContentMetadataExtracter()
     {
@@ -164,6 +182,95 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
         this.enableStringTagging = enableStringTagging;
     }
 
+    /**
+     * @param statistics    records the time taken to extract metadata for each mimetype
+     */
+    public void setStatistics(MetadataExtracterStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return the time taken to extract metadata for each mimetype
+     */
+    public MetadataExtracterStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @param transactionService    used to read and write the nodes of a batch
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param batchExecutor         the threads that extract the metadata of queued nodes
+     */
+    public void setBatchExecutor(ExecutorService batchExecutor)
+    {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * The maximum number of nodes whose extracted metadata is written in one transaction.
+     * 
+     * @param batchSize             <tt>1</tt> (default) to extract the metadata when the
+     *                              action is executed, without queuing the node
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param batchDelayMs          how long to wait for more nodes before processing
+     *                              a batch that is not full
+     */
+    public void setBatchDelayMs(long batchDelayMs)
+    {
+        this.batchDelayMs = batchDelayMs;
+    }
+
+    /**
+     * @param batchMaxQueued        the maximum number of nodes waiting. When full, the
+     *                              metadata is extracted when the action is executed.
+     */
+    public void setBatchMaxQueued(int batchMaxQueued)
+    {
+        this.batchMaxQueued = batchMaxQueued;
+    }
+
+    /**
+     * @param batchThreads          the maximum number of batches processed at once
+     */
+    public void setBatchThreads(int batchThreads)
+    {
+        this.batchThreads = batchThreads;
+    }
+
+    private ContentMetadataExtracterQueue getQueue()
+    {
+        if (batchSize <= 1 || batchExecutor == null || transactionService == null)
+        {
+            return null;
+        }
+        if (queue == null)
+        {
+            synchronized (this)
+            {
+                if (queue == null)
+                {
+                    queue = new ContentMetadataExtracterQueue(this, transactionService.getRetryingTransactionHelper(),
+                            batchExecutor, batchSize, batchDelayMs, batchMaxQueued, batchThreads);
+                }
+            }
+        }
+        return queue;
+    }
+
     /**
      * Iterates the values of the taggable property which the metadata
      * extractor should have already attempted to convert values to {@link NodeRef}s.
@@ -253,11 +360,35 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
      *      NodeRef)
      */
     public void executeImpl(Action ruleAction, NodeRef actionedUponNodeRef)
+    {
+        if (ruleAction.getExecuteAsychronously())
+        {
+            ContentMetadataExtracterQueue queue = getQueue();
+            if (queue != null && queue.add(actionedUponNodeRef))
+            {
+                return;
+            }
+        }
+        ExtractedMetadata extracted = extractMetadata(actionedUponNodeRef);
+        if (extracted != null)
+        {
+            applyMetadata(actionedUponNodeRef, extracted.nodeProperties, extracted.modifiedProperties);
+        }
+    }
+
+    /**
+     * Extracts the metadata of a node's content, without changing the node.
+     * 
+     * @param actionedUponNodeRef   the node
+     * @return                      the extracted metadata, or <tt>null</tt> if no
+     *                              properties need to be changed
+     */
+    public ExtractedMetadata extractMetadata(NodeRef actionedUponNodeRef)
     {
         if (!nodeService.exists(actionedUponNodeRef))
         {
             // Node is gone
-            return;
+            return null;
         }
         ContentReader reader = contentService.getReader(actionedUponNodeRef, ContentModel.PROP_CONTENT);
         // The reader may be null, e.g. for folders and the like
@@ -268,7 +399,7 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
                 logger.debug("no content or mimetype - do nothing");
             }
             // No content to extract data from
-            return;
+            return null;
         }
         String mimetype = reader.getMimetype();
         MetadataExtracter extracter = metadataExtracterRegistry.getExtracter(mimetype);
@@ -279,7 +410,7 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
                 logger.debug("no extracter for mimetype:" + mimetype);
             }
             // There is no extracter to use
-            return;
+            return null;
         }
         if (enableStringTagging && (extracter instanceof AbstractMappingMetadataExtracter))
         {
@@ -293,6 +424,7 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
         //       set on the extracter.
         // Give the node's properties to the extracter to be modified
         Map<QName, Serializable> modifiedProperties = null;
+        long start = System.currentTimeMillis();
         try
         {
             modifiedProperties = extracter.extract(
@@ -326,13 +458,64 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
             }
             modifiedProperties = new HashMap<QName, Serializable>(0);
         }
+        if (statistics != null)
+        {
+            statistics.recordTime(mimetype, System.currentTimeMillis() - start);
+        }
 
         // If none of the properties where changed, then there is nothing more to do
         if (modifiedProperties.size() == 0)
+        {
+            return null;
+        }
+        return new ExtractedMetadata(actionedUponNodeRef, reader.getContentUrl(), nodeProperties, modifiedProperties);
+    }
+
+    /**
+     * Writes metadata extracted earlier, possibly in another transaction, to the node.
+     * Properties that were not extracted keep their current values. Nothing is written
+     * if the node has gone or its content has changed since.
+     * 
+     * @param extracted             the result of {@link #extractMetadata(NodeRef)}
+     */
+    public void applyMetadata(ExtractedMetadata extracted)
+    {
+        NodeRef actionedUponNodeRef = extracted.nodeRef;
+        if (!nodeService.exists(actionedUponNodeRef))
         {
             return;
         }
-        
+        ContentData contentData = (ContentData) nodeService.getProperty(actionedUponNodeRef, ContentModel.PROP_CONTENT);
+        String contentUrl = contentData == null ? null : contentData.getContentUrl();
+        if (!EqualsHelper.nullSafeEquals(contentUrl, extracted.contentUrl))
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("content changed since the metadata was extracted: " + actionedUponNodeRef);
+            }
+            return;
+        }
+        Map<QName, Serializable> nodeProperties = nodeService.getProperties(actionedUponNodeRef);
+        for (QName propertyQName : extracted.modifiedProperties.keySet())
+        {
+            if (extracted.nodeProperties.containsKey(propertyQName))
+            {
+                nodeProperties.put(propertyQName, extracted.nodeProperties.get(propertyQName));
+            }
+            else
+            {
+                nodeProperties.remove(propertyQName);
+            }
+        }
+        applyMetadata(actionedUponNodeRef, nodeProperties, extracted.modifiedProperties);
+    }
+
+    /**
+     * Sets the node's properties, and adds the aspects of the extracted properties.
+     */
+    private void applyMetadata(NodeRef actionedUponNodeRef, Map<QName, Serializable> nodeProperties,
+                Map<QName, Serializable> modifiedProperties)
+    {
         // Check that all properties have the appropriate aspect applied
         Set<QName> requiredAspectQNames = new HashSet<QName>(3);
         Set<QName> aspectPropertyQNames = new HashSet<QName>(17);
@@ -413,4 +596,37 @@ public class ContentMetadataExtracter extends ActionExecuterAbstractBase
     {
         // None!
     }
+
+    /**
+     * Metadata extracted from a node's content, that has not yet been written to the node.
+     */
+    public static class ExtractedMetadata
+    {
+        private final NodeRef nodeRef;
+        private final String contentUrl;
+        private final Map<QName, Serializable> nodeProperties;
+        private final Map<QName, Serializable> modifiedProperties;
+
+        private ExtractedMetadata(NodeRef nodeRef, String contentUrl, Map<QName, Serializable> nodeProperties,
+                    Map<QName, Serializable> modifiedProperties)
+        {
+            this.nodeRef = nodeRef;
+            this.contentUrl = contentUrl;
+            this.nodeProperties = nodeProperties;
+            this.modifiedProperties = modifiedProperties;
+        }
+
+        public NodeRef getNodeRef()
+        {
+            return nodeRef;
+        }
+
+        /**
+         * @return the properties that were changed by the extraction
+         */
+        public Map<QName, Serializable> getModifiedProperties()
+        {
+            return modifiedProperties;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,322 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action.executer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.action.executer.ContentMetadataExtracter.ExtractedMetadata;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Collects the nodes whose metadata is to be extracted by a {@link ContentMetadataExtracter}
+ * into batches. The content of each node in a batch is parsed in a read-only transaction of
+ * its own, and the extracted properties of the whole batch are then written back in a single
+ * transaction, rather than one transaction per node.
+ * <p>
+ * A batch holds the nodes queued by one user. If writing the batch fails, each node is
+ * written in a transaction of its own, so that one failure does not lose the others.
+ *
+ * @since 5.2
+ */
+class ContentMetadataExtracterQueue
+{
+    private static Log logger = LogFactory.getLog(ContentMetadataExtracterQueue.class);
+
+    private final ContentMetadataExtracter extracter;
+    private final RetryingTransactionHelper transactionHelper;
+    private final ExecutorService executorService;
+    private final int batchSize;
+    private final long batchDelayMs;
+    private final int maxWorkers;
+
+    private final BlockingQueue<Entry> queue;
+    private final AtomicInteger workers = new AtomicInteger();
+
+    /**
+     * @param extracter         extracts and applies the metadata
+     * @param transactionHelper RetryingTransactionHelper
+     * @param executorService   the threads that process the batches
+     * @param batchSize         the maximum number of nodes in a batch
+     * @param batchDelayMs      how long to wait for a batch to fill
+     * @param maxQueued         the maximum number of nodes waiting
+     * @param maxWorkers        the maximum number of batches processed at once
+     */
+    ContentMetadataExtracterQueue(ContentMetadataExtracter extracter, RetryingTransactionHelper transactionHelper,
+                ExecutorService executorService, int batchSize, long batchDelayMs, int maxQueued, int maxWorkers)
+    {
+        this.extracter = extracter;
+        this.transactionHelper = transactionHelper;
+        this.executorService = executorService;
+        this.batchSize = batchSize;
+        this.batchDelayMs = batchDelayMs;
+        this.maxWorkers = Math.max(maxWorkers, 1);
+        this.queue = new LinkedBlockingQueue<Entry>(maxQueued);
+    }
+
+    /**
+     * Queues a node for extraction, as the current user.
+     *
+     * @param nodeRef       the node
+     * @return              <tt>false</tt> if the queue is full and the caller should
+     *                      extract the metadata itself
+     */
+    boolean add(NodeRef nodeRef)
+    {
+        if (!queue.offer(new Entry(nodeRef, AuthenticationUtil.getRunAsUser())))
+        {
+            return false;
+        }
+        startWorker();
+        return true;
+    }
+
+    /**
+     * @return the number of nodes waiting
+     */
+    int size()
+    {
+        return queue.size();
+    }
+
+    private void startWorker()
+    {
+        int current = workers.get();
+        while (current < maxWorkers)
+        {
+            if (workers.compareAndSet(current, current + 1))
+            {
+                try
+                {
+                    executorService.execute(new Worker());
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // An existing worker will take the node, or the next add will try again
+                    workers.decrementAndGet();
+                }
+                return;
+            }
+            current = workers.get();
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                List<Entry> batch;
+                while (!(batch = nextBatch()).isEmpty())
+                {
+                    processBatch(batch);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                workers.decrementAndGet();
+            }
+            // A node may have been queued after the last poll, while this worker was still counted
+            if (!queue.isEmpty())
+            {
+                startWorker();
+            }
+        }
+
+        private List<Entry> nextBatch() throws InterruptedException
+        {
+            List<Entry> batch = new ArrayList<Entry>(batchSize);
+            queue.drainTo(batch, batchSize);
+            if (batch.isEmpty())
+            {
+                return batch;
+            }
+            long deadline = System.currentTimeMillis() + batchDelayMs;
+            while (batch.size() < batchSize)
+            {
+                long wait = deadline - System.currentTimeMillis();
+                Entry entry = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                if (entry == null)
+                {
+                    break;
+                }
+                batch.add(entry);
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            return batch;
+        }
+    }
+
+    private void processBatch(List<Entry> batch)
+    {
+        Map<String, List<NodeRef>> nodesByUser = new LinkedHashMap<String, List<NodeRef>>();
+        for (Entry entry : batch)
+        {
+            List<NodeRef> nodeRefs = nodesByUser.get(entry.runAsUser);
+            if (nodeRefs == null)
+            {
+                nodeRefs = new ArrayList<NodeRef>();
+                nodesByUser.put(entry.runAsUser, nodeRefs);
+            }
+            nodeRefs.add(entry.nodeRef);
+        }
+        for (Map.Entry<String, List<NodeRef>> entry : nodesByUser.entrySet())
+        {
+            final List<NodeRef> nodeRefs = entry.getValue();
+            try
+            {
+                AuthenticationUtil.runAs(new RunAsWork<Void>()
+                {
+                    @Override
+                    public Void doWork() throws Exception
+                    {
+                        processNodes(nodeRefs);
+                        return null;
+                    }
+                }, entry.getKey());
+            }
+            catch (Throwable e)
+            {
+                logger.error("Failed to extract metadata for " + nodeRefs, e);
+            }
+        }
+    }
+
+    private void processNodes(List<NodeRef> nodeRefs)
+    {
+        long start = System.currentTimeMillis();
+
+        // Parse outside the transaction that writes the properties
+        final List<ExtractedMetadata> extracted = new ArrayList<ExtractedMetadata>(nodeRefs.size());
+        for (final NodeRef nodeRef : nodeRefs)
+        {
+            ExtractedMetadata metadata;
+            try
+            {
+                metadata = transactionHelper.doInTransaction(new RetryingTransactionCallback<ExtractedMetadata>()
+                {
+                    @Override
+                    public ExtractedMetadata execute() throws Throwable
+                    {
+                        return extracter.extractMetadata(nodeRef);
+                    }
+                }, true, true);
+            }
+            catch (RuntimeException e)
+            {
+                // Carry on with the rest of the batch
+                logger.error("Failed to extract the metadata of " + nodeRef, e);
+                continue;
+            }
+            if (metadata != null)
+            {
+                extracted.add(metadata);
+            }
+        }
+        if (extracted.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            transactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    for (ExtractedMetadata metadata : extracted)
+                    {
+                        extracter.applyMetadata(metadata);
+                    }
+                    return null;
+                }
+            }, false, true);
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Failed to write the metadata of a batch of " + extracted.size() +
+                        " nodes, writing them one at a time: " + e.getMessage());
+            for (final ExtractedMetadata metadata : extracted)
+            {
+                try
+                {
+                    transactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+                    {
+                        @Override
+                        public Void execute() throws Throwable
+                        {
+                            extracter.applyMetadata(metadata);
+                            return null;
+                        }
+                    }, false, true);
+                }
+                catch (RuntimeException e2)
+                {
+                    logger.error("Failed to write the metadata of " + metadata.getNodeRef(), e2);
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Extracted the metadata of " + extracted.size() + " of " + nodeRefs.size() +
+                        " nodes in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private static class Entry
+    {
+        private final NodeRef nodeRef;
+        private final String runAsUser;
+
+        private Entry(NodeRef nodeRef, String runAsUser)
+        {
+            this.nodeRef = nodeRef;
+            this.runAsUser = runAsUser;
+        }
+    }
+}
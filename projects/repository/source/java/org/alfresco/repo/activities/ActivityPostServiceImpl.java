@@ -352,10 +352,11 @@ public class ActivityPostServiceImpl implements ActivityPostService
                 }
             });
             
-            // hash the userid to generate a job task node
+            // hash the site (or the userid, for posts outside a site) to generate a job task node,
+            // so that the posts of a site are processed by the same node and share its site members
             int nodeCount = estGridSize;
-            int userHashCode = userId.hashCode();
-            int nodeHash = (userHashCode % nodeCount) + 1;
+            String partitionKey = (network != null && network.length() > 0) ? network : userId;
+            int nodeHash = ((partitionKey.hashCode() & Integer.MAX_VALUE) % nodeCount) + 1;
             
             activityPost.setJobTaskNode(nodeHash);
             
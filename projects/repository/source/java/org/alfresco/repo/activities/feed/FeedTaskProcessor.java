@@ -38,12 +38,17 @@ import java.net.URL;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.repo.activities.post.lookup.PostLookup;
 import org.alfresco.repo.domain.activities.ActivitiesDAO;
@@ -93,15 +98,96 @@ public abstract class FeedTaskProcessor
     
     private boolean userNamesAreCaseSensitive = false;
     
+    // site -> site members, shared by the runs within the snapshot timeout (if any)
+    private long siteMembersSnapshotMillis = 0L;
+    private final ConcurrentMap<String, SiteMembersSnapshot> siteMembersSnapshots = new ConcurrentHashMap<String, SiteMembersSnapshot>();
+    
+    private final AtomicLong numPostsProcessed = new AtomicLong();
+    private final AtomicLong numFeedEntriesGenerated = new AtomicLong();
+    private final AtomicLong processingMillis = new AtomicLong();
+    private final AtomicLong numSiteMembersLoads = new AtomicLong();
+    private final AtomicLong numSiteMembersSnapshotHits = new AtomicLong();
+    private final AtomicLong numFeedControlsLoads = new AtomicLong();
+    
     public void setUserNamesAreCaseSensitive(boolean userNamesAreCaseSensitive)
     {
         this.userNamesAreCaseSensitive = userNamesAreCaseSensitive;
     }
     
+    /**
+     * Set how long the members of a site are reused across runs before they are fetched again.
+     * Snapshots are not told about membership changes, so for up to this long a new member may miss,
+     * and a former member may receive, the site's activities.  Zero fetches them once per run.
+     * Default: 0.
+     */
+    public void setSiteMembersSnapshotMillis(long siteMembersSnapshotMillis)
+    {
+        this.siteMembersSnapshotMillis = siteMembersSnapshotMillis;
+    }
+    
+    /**
+     * @return the number of activity posts processed since startup
+     */
+    public long getPostsProcessed()
+    {
+        return numPostsProcessed.get();
+    }
+    
+    /**
+     * @return the number of feed entries generated since startup
+     */
+    public long getFeedEntriesGenerated()
+    {
+        return numFeedEntriesGenerated.get();
+    }
+    
+    /**
+     * @return the time spent processing activity posts since startup, summed over all threads
+     */
+    public long getProcessingMillis()
+    {
+        return processingMillis.get();
+    }
+    
+    /**
+     * @return the number of feed entries generated per second of processing time
+     */
+    public double getFeedEntriesPerSecond()
+    {
+        long millis = processingMillis.get();
+        return (millis == 0L) ? 0.0 : numFeedEntriesGenerated.get() * 1000.0 / millis;
+    }
+    
+    /**
+     * @return the number of times site members were fetched
+     */
+    public long getSiteMembersLoads()
+    {
+        return numSiteMembersLoads.get();
+    }
+    
+    /**
+     * @return the number of times site members were reused from an earlier run
+     */
+    public long getSiteMembersSnapshotHits()
+    {
+        return numSiteMembersSnapshotHits.get();
+    }
+    
+    /**
+     * @return the number of bulk fetches of user feed controls
+     */
+    public long getFeedControlsLoads()
+    {
+        return numFeedControlsLoads.get();
+    }
+    
     public void process(int jobTaskNode, long minSeq, long maxSeq, RepoCtx ctx) throws Exception
     {
         long startTime = System.currentTimeMillis();
         
+        purgeSiteMembersSnapshots(startTime);
+        
         if (logger.isDebugEnabled())
         {
             logger.debug("Process: jobTaskNode '" + jobTaskNode + "' from seq '" + minSeq + "' to seq '" + maxSeq + "' on this node from grid job.");
@@ -226,6 +312,10 @@ public abstract class FeedTaskProcessor
                     }
                     
                     int excludedConnections = 0;
+                    List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(recipients.size());
+                    
+                    // Get the feed controls of users not seen yet in this run, in bulk
+                    loadFeedControls(recipients, userFeedControls);
                     
                     for (String recipient : recipients)
                     {
@@ -234,11 +324,6 @@ public abstract class FeedTaskProcessor
                         {
                             // Get user's feed controls
                             feedControls = userFeedControls.get(recipient);
-                            if (feedControls == null)
-                            {
-                                feedControls = getFeedControls(recipient);
-                                userFeedControls.put(recipient, feedControls);
-                            }
                         }
                         
                         // filter based on opt-out feed controls (if any)
@@ -291,10 +376,7 @@ public abstract class FeedTaskProcessor
                                         feed.setPostId(activityPost.getId());
                                         feed.setFeedDate(new Date());
                                         
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
-                                        
-                                        totalGenerated++;
+                                        feeds.add(feed);
                                     }
                                 }
                                 else
@@ -308,6 +390,13 @@ public abstract class FeedTaskProcessor
                         }
                     }
                     
+                    // Insert activity feeds
+                    if (feeds.size() > 0)
+                    {
+                        insertFeedEntries(feeds);
+                        totalGenerated += feeds.size();
+                    }
+                    
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
                     
                     commitTransaction();
@@ -331,6 +420,9 @@ public abstract class FeedTaskProcessor
         finally
         {
             int postCnt = activityPosts == null ? 0 : activityPosts.size();
+            numPostsProcessed.addAndGet(postCnt);
+            numFeedEntriesGenerated.addAndGet(totalGenerated);
+            processingMillis.addAndGet(System.currentTimeMillis() - startTime);
             
             // TODO i18n info message
             StringBuilder sb = new StringBuilder();
@@ -353,15 +445,23 @@ public abstract class FeedTaskProcessor
             Set<String> connectedUsers = siteConnectedUsers.get(siteId);
             if (connectedUsers == null)
             {
-                try
-                {
-                    // Repository callback to get site members
-                    connectedUsers = getSiteMembers(ctx, siteId, tenantDomain);
-                    connectedUsers.add(""); // add empty posting userid - to represent site feed !
-                }
-                catch(Exception e)
+                // Reuse the site members fetched by a recent run, if any
+                connectedUsers = getSiteMembersSnapshot(siteId);
+                if (connectedUsers == null)
                 {
-                    throw new Exception("Failed to get site members: "+e);
+                    try
+                    {
+                        // Repository callback to get site members
+                        connectedUsers = getSiteMembers(ctx, siteId, tenantDomain);
+                        connectedUsers.add(""); // add empty posting userid - to represent site feed !
+                        numSiteMembersLoads.incrementAndGet();
+                    }
+                    catch(Exception e)
+                    {
+                        throw new Exception("Failed to get site members: "+e);
+                    }
+                    connectedUsers = Collections.unmodifiableSet(connectedUsers);
+                    putSiteMembersSnapshot(siteId, connectedUsers);
                 }
                 
                 // Cache them for future use (across activity posts handled) by this same invocation
@@ -431,6 +531,73 @@ public abstract class FeedTaskProcessor
         return recipients;
     }
     
+    private Set<String> getSiteMembersSnapshot(String siteId)
+    {
+        SiteMembersSnapshot snapshot = siteMembersSnapshots.get(siteId);
+        if (snapshot == null || snapshot.isExpired(System.currentTimeMillis()))
+        {
+            return null;
+        }
+        numSiteMembersSnapshotHits.incrementAndGet();
+        return snapshot.members;
+    }
+    
+    private void putSiteMembersSnapshot(String siteId, Set<String> members)
+    {
+        if (siteMembersSnapshotMillis > 0L)
+        {
+            siteMembersSnapshots.put(siteId, new SiteMembersSnapshot(members, System.currentTimeMillis() + siteMembersSnapshotMillis));
+        }
+    }
+    
+    private void purgeSiteMembersSnapshots(long now)
+    {
+        for (Map.Entry<String, SiteMembersSnapshot> entry : siteMembersSnapshots.entrySet())
+        {
+            if (entry.getValue().isExpired(now))
+            {
+                siteMembersSnapshots.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    /**
+     * The members of a site, as fetched by a run that finished no longer ago than the snapshot timeout
+     */
+    private static class SiteMembersSnapshot
+    {
+        private final Set<String> members;
+        private final long expiresAt;
+        
+        private SiteMembersSnapshot(Set<String> members, long expiresAt)
+        {
+            this.members = members;
+            this.expiresAt = expiresAt;
+        }
+        
+        private boolean isExpired(long now)
+        {
+            return now >= expiresAt;
+        }
+    }
+    
+    private void loadFeedControls(Set<String> recipients, Map<String, List<FeedControlEntity>> userFeedControls) throws SQLException
+    {
+        List<String> connectedUsers = new ArrayList<String>();
+        for (String recipient : recipients)
+        {
+            if (! recipient.equals("") && ! userFeedControls.containsKey(recipient))
+            {
+                connectedUsers.add(recipient);
+            }
+        }
+        if (connectedUsers.size() > 0)
+        {
+            userFeedControls.putAll(getFeedControls(connectedUsers));
+            numFeedControlsLoads.incrementAndGet();
+        }
+    }
+    
     public abstract void startTransaction() throws SQLException;
 
     public abstract void commitTransaction() throws SQLException;
@@ -445,6 +612,33 @@ public abstract class FeedTaskProcessor
 
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Select the feed controls of several users.  Override to use a single query; this default
+     * selects them one user at a time.
+     */
+    public List<FeedControlEntity> selectUserFeedControls(Collection<String> userIds) throws SQLException
+    {
+        List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        for (String userId : userIds)
+        {
+            feedControls.addAll(selectUserFeedControls(userId));
+        }
+        return feedControls;
+    }
+
+    /**
+     * Insert the feed entries of an activity post.  Override to use multi-row inserts; this default
+     * inserts them one at a time.
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed); // ignore returned feedId
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
@@ -661,6 +855,57 @@ public abstract class FeedTaskProcessor
         return selectUserFeedControls(connectedUser);
     }
 
+    /**
+     * Get the feed controls of several users at once
+     * 
+     * @return the feed controls (possibly empty) keyed by each of the given users
+     */
+    protected Map<String, List<FeedControlEntity>> getFeedControls(Collection<String> connectedUsers) throws SQLException
+    {
+        // feed user id -> connected users
+        Map<String, List<String>> connectedUsersByFeedUserId = new HashMap<String, List<String>>(connectedUsers.size() * 2);
+        for (String connectedUser : connectedUsers)
+        {
+            //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+            String feedUserId = userNamesAreCaseSensitive ? connectedUser : connectedUser.toLowerCase();
+            List<String> users = connectedUsersByFeedUserId.get(feedUserId);
+            if (users == null)
+            {
+                users = new ArrayList<String>(1);
+                connectedUsersByFeedUserId.put(feedUserId, users);
+            }
+            users.add(connectedUser);
+        }
+        
+        Map<String, List<FeedControlEntity>> feedControlsByFeedUserId = new HashMap<String, List<FeedControlEntity>>();
+        for (FeedControlEntity feedControl : selectUserFeedControls(connectedUsersByFeedUserId.keySet()))
+        {
+            String feedUserId = userNamesAreCaseSensitive ? feedControl.getFeedUserId() : feedControl.getFeedUserId().toLowerCase();
+            List<FeedControlEntity> feedControls = feedControlsByFeedUserId.get(feedUserId);
+            if (feedControls == null)
+            {
+                feedControls = new ArrayList<FeedControlEntity>(1);
+                feedControlsByFeedUserId.put(feedUserId, feedControls);
+            }
+            feedControls.add(feedControl);
+        }
+        
+        Map<String, List<FeedControlEntity>> result = new HashMap<String, List<FeedControlEntity>>(connectedUsers.size() * 2);
+        for (Map.Entry<String, List<String>> entry : connectedUsersByFeedUserId.entrySet())
+        {
+            List<FeedControlEntity> feedControls = feedControlsByFeedUserId.get(entry.getKey());
+            if (feedControls == null)
+            {
+                feedControls = Collections.emptyList();
+            }
+            for (String connectedUser : entry.getValue())
+            {
+                result.put(connectedUser, feedControls);
+            }
+        }
+        return result;
+    }
+
     protected boolean acceptActivity(ActivityPostEntity activityPost, List<FeedControlEntity> feedControls)
     {
         if (feedControls == null)
@@ -54,6 +54,7 @@ public class LocalFeedGenerator extends AbstractFeedGenerator
 
     private int batchSize = 1000;
     private int numThreads = 4;
+    private int numPartitions = 1;
     
     public void setFeedTaskProcessor(FeedTaskProcessor feedTaskProcessor)
     {
@@ -70,10 +71,68 @@ public class LocalFeedGenerator extends AbstractFeedGenerator
         this.numThreads = numThreads;
     }
 
+    /**
+     * Set the number of partitions (job task nodes) that activity posts are spread over by site.
+     * The posts of each partition are processed as separate jobs, so that the threads work on
+     * different sites.  Default: 1.
+     */
+    public void setNumPartitions(int numPartitions)
+    {
+        this.numPartitions = numPartitions;
+    }
+
     @Override
     public int getEstimatedGridSize()
     {
-        return 1;
+        return numPartitions;
+    }
+    
+    /**
+     * @return the number of activity posts processed since startup
+     */
+    public long getPostsProcessed()
+    {
+        return feedTaskProcessor.getPostsProcessed();
+    }
+    
+    /**
+     * @return the number of feed entries generated since startup
+     */
+    public long getFeedEntriesGenerated()
+    {
+        return feedTaskProcessor.getFeedEntriesGenerated();
+    }
+    
+    /**
+     * @return the number of feed entries generated per second of processing time
+     */
+    public double getFeedEntriesPerSecond()
+    {
+        return feedTaskProcessor.getFeedEntriesPerSecond();
+    }
+    
+    /**
+     * @return the number of times site members were fetched
+     */
+    public long getSiteMembersLoads()
+    {
+        return feedTaskProcessor.getSiteMembersLoads();
+    }
+    
+    /**
+     * @return the number of times site members were reused from an earlier job
+     */
+    public long getSiteMembersSnapshotHits()
+    {
+        return feedTaskProcessor.getSiteMembersSnapshotHits();
+    }
+    
+    /**
+     * @return the number of bulk fetches of user feed controls
+     */
+    public long getFeedControlsLoads()
+    {
+        return feedTaskProcessor.getFeedControlsLoads();
     }
     
     public void init() throws Exception
@@ -159,7 +218,7 @@ public class LocalFeedGenerator extends AbstractFeedGenerator
                 long size = maxSequence - minSequence + 1;
                 long remain = size % batchSize;
                 long workSize = (remain == 0) ? (size / batchSize) : (size / batchSize + 1);
-                return (int) workSize;
+                return (int) workSize * maxNodeHash;
             }
 
             @Override
@@ -170,19 +229,21 @@ public class LocalFeedGenerator extends AbstractFeedGenerator
                     return Collections.emptyList();
                 }
                 
-                JobSettings js = new JobSettings();
-                js.setMinSeq(skip);
-                js.setMaxSeq(skip + batchSize - 1);
-                js.setJobTaskNode(maxNodeHash);
-                js.setWebScriptsCtx(getWebScriptsCtx());
+                // One JobSettings object per partition (job task node) of the sequence range. FeedTaskProcessor fetches list activity posts by itself before processing.
+                List<JobSettings> result = new ArrayList<JobSettings>(maxNodeHash);
+                for (int jobTaskNode = 1; jobTaskNode <= maxNodeHash; jobTaskNode++)
+                {
+                    JobSettings js = new JobSettings();
+                    js.setMinSeq(skip);
+                    js.setMaxSeq(skip + batchSize - 1);
+                    js.setJobTaskNode(jobTaskNode);
+                    js.setWebScriptsCtx(getWebScriptsCtx());
+                    result.add(js);
+                }
                 
                 skip += batchSize;
                 hasMore = skip > maxSequence ? false : true;
                 
-                // One JobSettings object will be returned. Because FeedTaskProcessor fetches list activity posts by itself before processing.
-                List<JobSettings> result = new ArrayList<JobSettings>(1);
-                result.add(js);
-                
                 return result;
             }
         };
@@ -200,6 +261,16 @@ public class LocalFeedGenerator extends AbstractFeedGenerator
                 null,
                 logger, 1).process(worker, true);
         
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Feed generation totals: " + getPostsProcessed() + " posts, " +
+                        getFeedEntriesGenerated() + " feed entries (" +
+                        String.format("%.1f", getFeedEntriesPerSecond()) + " per second), " +
+                        getSiteMembersLoads() + " site member loads, " +
+                        getSiteMembersSnapshotHits() + " site member snapshot hits, " +
+                        getFeedControlsLoads() + " feed control loads");
+        }
+        
         return true;
     }
         
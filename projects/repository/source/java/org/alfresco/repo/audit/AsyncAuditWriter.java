@@ -0,0 +1,1233 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes audit entries to the database in the background, on behalf of the {@link AuditComponentImpl}.
+ * <p>
+ * Entries recorded in a transaction are appended to a journal, and forced to disk, before the
+ * transaction commits.  Once it has committed a commit record is forced to the journal and the
+ * entries are queued for a single writer thread that persists them through the {@link AuditDAO} in
+ * batches, one transaction per batch.  Entries of transactions that roll back are marked as discarded
+ * in the journal.  A journal file is removed once all of its entries have been written, so entries
+ * that were still queued when the server stopped are written after {@link #init() startup}.  Entries
+ * with a commit record are written then.  The others belong to transactions that were still committing
+ * when the server stopped, and may or may not have committed: each entry carries the ID of the
+ * <b>alf_transaction</b> row written by its transaction, and the entry is written if that row exists.
+ * Entries are written at least once: a batch that was written just before a crash, but not yet cleared
+ * from the journal, is written again.
+ * <p>
+ * To cap the lag between an audited event and its entry in the database, no more entries are
+ * accepted while the queue holds {@link #setMaxQueueSize(int) too many} entries or its oldest entry
+ * has waited {@link #setMaxLagMillis(long) too long}.  The audit component then writes them
+ * synchronously, as it does when this writer is not configured.
+ * <p>
+ * Queued entries are not visible to audit queries until they have been written, so the entries of
+ * {@link #setSynchronousApplications(String) applications} that are read back as soon as their
+ * transaction has committed are always written synchronously.
+ * <p>
+ * The names of the journal files start with the {@link #setServerName(String) server name}, and each
+ * server only recovers its own files, so servers of a cluster can share the journal directory.
+ *
+ * @since 5.2
+ */
+public class AsyncAuditWriter
+{
+    private static final Log logger = LogFactory.getLog(AsyncAuditWriter.class);
+
+    private static final String KEY_TXN_ENTRIES = "AsyncAuditWriter.entries";
+    private static final String JOURNAL_FILE_PREFIX = "audit-";
+    private static final String JOURNAL_FILE_EXT = ".journal";
+    private static final byte RECORD_ENTRY = 1;
+    private static final byte RECORD_DISCARD = 2;
+    private static final byte RECORD_COMMIT = 3;
+
+    private boolean enabled;
+    private AuditDAO auditDAO;
+    private NodeDAO nodeDAO;
+    private TransactionService transactionService;
+    private File journalDir;
+    private String serverName;
+    private Set<String> synchronousApplications = Collections.emptySet();
+    private int batchSize = 500;
+    private long flushIntervalMillis = 1000L;
+    private long maxLagMillis = 60000L;
+    private int maxQueueSize = 100000;
+    private long maxJournalFileSize = 16L * 1024L * 1024L;
+    private long retryDelayMillis = 1000L;
+    private long maxRetryDelayMillis = 60000L;
+    private int maxAttempts = 10;
+
+    private final TransactionListenerAdapter transactionListener = new AuditEntryTransactionListener();
+    private final BlockingQueue<QueuedAuditEntry> queue = new LinkedBlockingQueue<QueuedAuditEntry>();
+    private final Object journalLock = new Object();
+    private String journalFilePrefix;
+    private JournalFile currentJournalFile;
+    private long nextJournalFileNumber;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile Thread writerThread;
+    private volatile boolean running;
+    private volatile long inFlightSince;
+
+    private final AtomicLong numEntriesWritten = new AtomicLong();
+    private final AtomicLong numBatchesWritten = new AtomicLong();
+    private final AtomicLong numFailedAttempts = new AtomicLong();
+    private final AtomicLong numAbandonedEntries = new AtomicLong();
+    private final AtomicLong numSynchronousEntries = new AtomicLong();
+    private volatile long lastBatchMillis;
+
+    /**
+     * Set whether new entries are queued.  When disabled, the writer still writes the entries left
+     * in the journal by an earlier run.  Default: <tt>false</tt>.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Set the DAO used to persist the audit entries
+     */
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * Set the DAO used to tie queued entries to the transaction that recorded them, so that entries
+     * of transactions that committed just before a crash are recovered.  Without it, entries without
+     * a commit record are discarded on startup.
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * Set the service used to start the transactions that write batches
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Set the directory holding the journal of queued entries
+     */
+    public void setJournalDir(File journalDir)
+    {
+        this.journalDir = journalDir;
+    }
+
+    /**
+     * Set the name that distinguishes this server's journal files from those of other servers
+     * sharing the journal directory.  It must not change between restarts, or the entries left in the
+     * journal are not recovered.  Default: the host name.
+     */
+    public void setServerName(String serverName)
+    {
+        this.serverName = serverName;
+    }
+
+    /**
+     * Set the names of the audit applications whose entries are always written synchronously.
+     * These are applications whose entries are read back, as a queue of work, as soon as their
+     * transaction has committed.
+     *
+     * @param applicationNames      a comma-separated list of audit application names
+     */
+    public void setSynchronousApplications(String applicationNames)
+    {
+        Set<String> names = new HashSet<String>(7);
+        if (applicationNames != null)
+        {
+            for (String name : applicationNames.split(","))
+            {
+                if (name.trim().length() > 0)
+                {
+                    names.add(name.trim());
+                }
+            }
+        }
+        this.synchronousApplications = names;
+    }
+
+    /**
+     * Set the maximum number of entries written in one transaction.  Default: 500.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set how long the writer waits for a full batch before writing the entries it has.  Default: 1s.
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis)
+    {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Set the age of the oldest queued entry beyond which new entries are written synchronously.
+     * Default: 60s.
+     */
+    public void setMaxLagMillis(long maxLagMillis)
+    {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * Set the number of queued entries beyond which new entries are written synchronously.
+     * Default: 100000.
+     */
+    public void setMaxQueueSize(int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Set the size at which a new journal file is started.  Default: 16MB.
+     */
+    public void setMaxJournalFileSize(long maxJournalFileSize)
+    {
+        this.maxJournalFileSize = maxJournalFileSize;
+    }
+
+    /**
+     * Set the delay before a failed entry is retried.  The delay doubles with each failure.
+     * Default: 1s.
+     */
+    public void setRetryDelayMillis(long retryDelayMillis)
+    {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Set the upper limit of the retry delay.  Default: 60s.
+     */
+    public void setMaxRetryDelayMillis(long maxRetryDelayMillis)
+    {
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    /**
+     * Set the number of times an entry is attempted before it is left in the journal until the
+     * next startup.  Default: 10.
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Recover the entries left in the journal and start the writer thread.
+     */
+    public void init()
+    {
+        if (journalDir == null)
+        {
+            throw new AlfrescoRuntimeException("AsyncAuditWriter requires a journal directory.");
+        }
+        journalDir.mkdirs();
+        journalFilePrefix = JOURNAL_FILE_PREFIX + getJournalServerName() + "-";
+        int recovered = recover();
+        if (!enabled && recovered == 0)
+        {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(new Writer(), "AsyncAuditWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer thread once it has finished its current batch.  Entries that have not been
+     * written remain in the journal and are written the next time the writer is started.
+     */
+    public void shutdown()
+    {
+        running = false;
+        Thread thread = writerThread;
+        if (thread != null)
+        {
+            try
+            {
+                thread.join(flushIntervalMillis + 30000L);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+        synchronized (journalLock)
+        {
+            if (currentJournalFile != null)
+            {
+                currentJournalFile.closeQuietly();
+                currentJournalFile = null;
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * @return              the server name, made safe for use in file names
+     */
+    private String getJournalServerName()
+    {
+        String name = serverName;
+        if (name == null || name.trim().length() == 0)
+        {
+            try
+            {
+                name = InetAddress.getLocalHost().getHostName();
+            }
+            catch (UnknownHostException e)
+            {
+                throw new AlfrescoRuntimeException("AsyncAuditWriter requires a server name when the host name is unknown.", e);
+            }
+        }
+        return name.trim().replaceAll("[^A-Za-z0-9._]", "_");
+    }
+
+    /**
+     * Queue an audit entry to be written once the current transaction has committed.
+     *
+     * @param applicationName   the name of the audit application
+     * @return                  <tt>true</tt> if the entry has been queued or <tt>false</tt> if the
+     *                          writer is disabled, is too far behind or does not queue entries of the
+     *                          application, in which case the caller must write the entry itself
+     */
+    public boolean queueAuditEntry(String applicationName, Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        if (!enabled || synchronousApplications.contains(applicationName))
+        {
+            return false;
+        }
+        AlfrescoTransactionSupport.checkTransactionReadState(true);
+        if (!running || isBehind())
+        {
+            numSynchronousEntries.incrementAndGet();
+            return false;
+        }
+        List<QueuedAuditEntry> txnEntries = TransactionalResourceHelper.getList(KEY_TXN_ENTRIES);
+        if (txnEntries.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(transactionListener);
+        }
+        Map<String, Serializable> valuesCopy = (values == null) ? null : new HashMap<String, Serializable>(values);
+        // The transaction row only exists once the transaction has committed, so it tells recovery
+        //  whether the entry is to be written
+        Long txnId = (nodeDAO == null) ? null : nodeDAO.getCurrentTransactionId(true);
+        txnEntries.add(new QueuedAuditEntry(nextSequence.getAndIncrement(), applicationId, time, username, valuesCopy, txnId));
+        return true;
+    }
+
+    /**
+     * @return              <tt>true</tt> if entries are currently being refused to cap the lag
+     */
+    public boolean isBehind()
+    {
+        return queue.size() >= maxQueueSize || getLagMillis() >= maxLagMillis;
+    }
+
+    /**
+     * @return              the number of committed entries waiting to be written
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return              the time that the oldest entry not yet written has been waiting
+     */
+    public long getLagMillis()
+    {
+        long oldest = inFlightSince;
+        QueuedAuditEntry head = queue.peek();
+        if (head != null && (oldest == 0L || head.queuedAt < oldest))
+        {
+            oldest = head.queuedAt;
+        }
+        return (oldest == 0L) ? 0L : Math.max(0L, System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @return              the number of entries written since startup
+     */
+    public long getEntriesWritten()
+    {
+        return numEntriesWritten.get();
+    }
+
+    /**
+     * @return              the number of batches written since startup
+     */
+    public long getBatchesWritten()
+    {
+        return numBatchesWritten.get();
+    }
+
+    /**
+     * @return              the time taken to write the last batch
+     */
+    public long getLastBatchMillis()
+    {
+        return lastBatchMillis;
+    }
+
+    /**
+     * @return              the number of failed attempts to write a batch or a single entry
+     */
+    public long getFailedAttempts()
+    {
+        return numFailedAttempts.get();
+    }
+
+    /**
+     * @return              the number of entries left in the journal until the next startup
+     *                      after failing {@link #setMaxAttempts(int) repeatedly}
+     */
+    public long getAbandonedEntries()
+    {
+        return numAbandonedEntries.get();
+    }
+
+    /**
+     * @return              the number of entries refused, and so written synchronously
+     */
+    public long getSynchronousEntries()
+    {
+        return numSynchronousEntries.get();
+    }
+
+    /**
+     * Append entries to the journal and force it to disk.  Entries already in the journal are skipped.
+     */
+    void journal(List<QueuedAuditEntry> entries)
+    {
+        List<QueuedAuditEntry> toJournal = new ArrayList<QueuedAuditEntry>(entries.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 256);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (QueuedAuditEntry entry : entries)
+            {
+                if (entry.journalFile == null)
+                {
+                    writeEntryRecord(out, entry);
+                    toJournal.add(entry);
+                }
+            }
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize audit entries: " + entries, e);
+        }
+        if (toJournal.isEmpty())
+        {
+            return;
+        }
+        synchronized (journalLock)
+        {
+            try
+            {
+                if (currentJournalFile == null || currentJournalFile.size >= maxJournalFileSize)
+                {
+                    startJournalFile();
+                }
+                currentJournalFile.append(bytes.toByteArray(), true);
+            }
+            catch (IOException e)
+            {
+                throw new AlfrescoRuntimeException("Failed to journal audit entries in " + journalDir, e);
+            }
+            for (QueuedAuditEntry entry : toJournal)
+            {
+                entry.journalFile = currentJournalFile;
+            }
+            currentJournalFile.pending += toJournal.size();
+        }
+    }
+
+    /**
+     * Mark journalled entries as committed, in the same journal files as the entries, and force the
+     * records to disk.  Only committed entries are recovered after a restart.
+     */
+    void markCommitted(List<QueuedAuditEntry> entries)
+    {
+        Map<JournalFile, List<QueuedAuditEntry>> entriesByFile = groupByJournalFile(entries);
+        synchronized (journalLock)
+        {
+            for (Map.Entry<JournalFile, List<QueuedAuditEntry>> fileEntries : entriesByFile.entrySet())
+            {
+                JournalFile journalFile = fileEntries.getKey();
+                try
+                {
+                    appendSequenceRecord(journalFile, RECORD_COMMIT, fileEntries.getValue(), true);
+                }
+                catch (IOException e)
+                {
+                    // The entries are still queued, but are lost if the server stops before they are written
+                    logger.error("Failed to mark audit entries of a committed transaction in " + journalFile.file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark journalled entries as discarded, in the same journal files as the entries.
+     */
+    void discard(List<QueuedAuditEntry> entries)
+    {
+        Map<JournalFile, List<QueuedAuditEntry>> entriesByFile = groupByJournalFile(entries);
+        synchronized (journalLock)
+        {
+            for (Map.Entry<JournalFile, List<QueuedAuditEntry>> fileEntries : entriesByFile.entrySet())
+            {
+                JournalFile journalFile = fileEntries.getKey();
+                List<QueuedAuditEntry> discarded = fileEntries.getValue();
+                try
+                {
+                    appendSequenceRecord(journalFile, RECORD_DISCARD, discarded, false);
+                }
+                catch (IOException e)
+                {
+                    // The entries will be written on the next startup
+                    logger.error("Failed to discard audit entries of a rolled back transaction in " + journalFile.file, e);
+                    continue;
+                }
+                release(journalFile, discarded.size());
+            }
+        }
+        for (QueuedAuditEntry entry : entries)
+        {
+            entry.journalFile = null;
+        }
+    }
+
+    /**
+     * Append a record listing the sequence numbers of entries.  Must be called holding the journal lock.
+     */
+    private static void appendSequenceRecord(JournalFile journalFile, byte recordType, List<QueuedAuditEntry> entries, boolean force) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + entries.size() * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(recordType);
+        out.writeInt(entries.size());
+        for (QueuedAuditEntry entry : entries)
+        {
+            out.writeLong(entry.sequence);
+        }
+        out.flush();
+        journalFile.append(bytes.toByteArray(), force);
+    }
+
+    /**
+     * Queue committed entries for the writer thread.
+     */
+    void enqueue(List<QueuedAuditEntry> entries)
+    {
+        long now = System.currentTimeMillis();
+        for (QueuedAuditEntry entry : entries)
+        {
+            entry.queuedAt = now;
+            queue.add(entry);
+        }
+    }
+
+    /**
+     * Release the journal records of entries that have been written.
+     */
+    private void written(List<QueuedAuditEntry> entries)
+    {
+        Map<JournalFile, List<QueuedAuditEntry>> entriesByFile = groupByJournalFile(entries);
+        synchronized (journalLock)
+        {
+            for (Map.Entry<JournalFile, List<QueuedAuditEntry>> fileEntries : entriesByFile.entrySet())
+            {
+                release(fileEntries.getKey(), fileEntries.getValue().size());
+            }
+        }
+    }
+
+    private Map<JournalFile, List<QueuedAuditEntry>> groupByJournalFile(List<QueuedAuditEntry> entries)
+    {
+        Map<JournalFile, List<QueuedAuditEntry>> entriesByFile = new LinkedHashMap<JournalFile, List<QueuedAuditEntry>>(7);
+        for (QueuedAuditEntry entry : entries)
+        {
+            if (entry.journalFile == null)
+            {
+                continue;
+            }
+            List<QueuedAuditEntry> fileEntries = entriesByFile.get(entry.journalFile);
+            if (fileEntries == null)
+            {
+                fileEntries = new ArrayList<QueuedAuditEntry>(entries.size());
+                entriesByFile.put(entry.journalFile, fileEntries);
+            }
+            fileEntries.add(entry);
+        }
+        return entriesByFile;
+    }
+
+    /**
+     * Remove a journal file once it will not receive more entries and all of its entries are done with.
+     * Must be called holding the journal lock.
+     */
+    private void release(JournalFile journalFile, int count)
+    {
+        journalFile.pending -= count;
+        if (journalFile.pending <= 0 && journalFile != currentJournalFile)
+        {
+            journalFile.closeQuietly();
+            if (!journalFile.file.delete())
+            {
+                logger.warn("Failed to delete audit journal file: " + journalFile.file);
+            }
+        }
+    }
+
+    /**
+     * Start a new journal file for new entries.  Must be called holding the journal lock.
+     */
+    private void startJournalFile() throws IOException
+    {
+        JournalFile previous = currentJournalFile;
+        String name = String.format("%s%016d%s", journalFilePrefix, nextJournalFileNumber++, JOURNAL_FILE_EXT);
+        currentJournalFile = new JournalFile(new File(journalDir, name));
+        if (previous != null)
+        {
+            // Remove it if it has no entries left
+            release(previous, 0);
+        }
+    }
+
+    /**
+     * Load the entries left in this server's journal files and queue them for writing.
+     *
+     * @return              the number of entries recovered
+     */
+    private int recover()
+    {
+        File[] files = journalDir.listFiles();
+        if (files == null)
+        {
+            return 0;
+        }
+        Arrays.sort(files);
+        List<QueuedAuditEntry> recovered = new ArrayList<QueuedAuditEntry>();
+        long maxSequence = -1L;
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!name.startsWith(journalFilePrefix) || !name.endsWith(JOURNAL_FILE_EXT))
+            {
+                continue;
+            }
+            try
+            {
+                long fileNumber = Long.parseLong(name.substring(journalFilePrefix.length(), name.length() - JOURNAL_FILE_EXT.length()));
+                nextJournalFileNumber = Math.max(nextJournalFileNumber, fileNumber + 1);
+            }
+            catch (NumberFormatException e)
+            {
+                continue;
+            }
+            try
+            {
+                List<QueuedAuditEntry> fileEntries = readJournalFile(file);
+                for (QueuedAuditEntry entry : fileEntries)
+                {
+                    maxSequence = Math.max(maxSequence, entry.sequence);
+                }
+                recovered.addAll(fileEntries);
+            }
+            catch (IOException e)
+            {
+                logger.error("Unable to read audit journal file: " + file, e);
+            }
+        }
+        nextSequence.set(maxSequence + 1);
+        enqueue(recovered);
+        if (recovered.size() > 0 && logger.isInfoEnabled())
+        {
+            logger.info("Recovered " + recovered.size() + " audit entries from the journal in " + journalDir);
+        }
+        return recovered.size();
+    }
+
+    /**
+     * Read the committed entries of a journal file.  A record only partly written before a crash
+     * belongs to a transaction that did not commit, so it is cut from the file.  Entries without a
+     * commit record are kept if their transaction is found in the database.  If that cannot be checked,
+     * no entries are read from the file, which is left until the next startup.
+     */
+    private List<QueuedAuditEntry> readJournalFile(File file) throws IOException
+    {
+        byte[] content = new byte[(int) file.length()];
+        InputStream is = new FileInputStream(file);
+        try
+        {
+            new DataInputStream(is).readFully(content);
+        }
+        finally
+        {
+            is.close();
+        }
+        Map<Long, QueuedAuditEntry> entries = new LinkedHashMap<Long, QueuedAuditEntry>();
+        Set<Long> committed = new HashSet<Long>();
+        ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+        DataInputStream in = new DataInputStream(bytes);
+        int validLength = 0;
+        try
+        {
+            while (bytes.available() > 0)
+            {
+                byte recordType = in.readByte();
+                if (recordType == RECORD_ENTRY)
+                {
+                    QueuedAuditEntry entry = readEntryRecord(in);
+                    entries.put(entry.sequence, entry);
+                }
+                else if (recordType == RECORD_DISCARD)
+                {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++)
+                    {
+                        entries.remove(in.readLong());
+                    }
+                }
+                else if (recordType == RECORD_COMMIT)
+                {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++)
+                    {
+                        committed.add(in.readLong());
+                    }
+                }
+                else
+                {
+                    throw new IOException("Unknown record type " + recordType);
+                }
+                validLength = content.length - bytes.available();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Discarding incomplete record at offset " + validLength + " of audit journal file: " + file);
+        }
+        Set<Long> unresolvedTxnIds = new HashSet<Long>();
+        for (QueuedAuditEntry entry : entries.values())
+        {
+            if (!committed.contains(entry.sequence) && entry.txnId != null)
+            {
+                unresolvedTxnIds.add(entry.txnId);
+            }
+        }
+        if (!unresolvedTxnIds.isEmpty())
+        {
+            Set<Long> committedTxnIds;
+            try
+            {
+                committedTxnIds = getCommittedTxnIds(unresolvedTxnIds);
+            }
+            catch (Throwable e)
+            {
+                logger.error("Unable to check the transactions of audit entries without a commit record; leaving audit journal file until the next startup: " + file, e);
+                return new ArrayList<QueuedAuditEntry>(0);
+            }
+            int resolved = 0;
+            for (QueuedAuditEntry entry : entries.values())
+            {
+                if (entry.txnId != null && committedTxnIds.contains(entry.txnId) && committed.add(entry.sequence))
+                {
+                    resolved++;
+                }
+            }
+            if (resolved > 0 && logger.isInfoEnabled())
+            {
+                logger.info("Recovering " + resolved + " audit entries of committed transactions without a commit record in audit journal file: " + file);
+            }
+        }
+        int uncommitted = entries.size();
+        entries.keySet().retainAll(committed);
+        uncommitted -= entries.size();
+        if (uncommitted > 0)
+        {
+            logger.warn("Discarding " + uncommitted + " audit entries of transactions that did not commit in audit journal file: " + file);
+        }
+
+        JournalFile journalFile = new JournalFile(file);
+        if (validLength < content.length)
+        {
+            journalFile.truncate(validLength);
+        }
+        journalFile.pending = entries.size();
+        List<QueuedAuditEntry> result = new ArrayList<QueuedAuditEntry>(entries.values());
+        for (QueuedAuditEntry entry : result)
+        {
+            entry.journalFile = journalFile;
+        }
+        synchronized (journalLock)
+        {
+            release(journalFile, 0);
+        }
+        return result;
+    }
+
+    /**
+     * @return              the IDs of the given transactions that are in the database
+     */
+    private Set<Long> getCommittedTxnIds(final Set<Long> txnIds)
+    {
+        RetryingTransactionCallback<Set<Long>> callback = new RetryingTransactionCallback<Set<Long>>()
+        {
+            public Set<Long> execute() throws Throwable
+            {
+                Set<Long> committedTxnIds = new HashSet<Long>(txnIds.size() * 2);
+                for (Long txnId : txnIds)
+                {
+                    if (nodeDAO.getTxnById(txnId) != null)
+                    {
+                        committedTxnIds.add(txnId);
+                    }
+                }
+                return committedTxnIds;
+            }
+        };
+        return transactionService.getRetryingTransactionHelper().doInTransaction(callback, true, true);
+    }
+
+    private static void writeEntryRecord(DataOutputStream out, QueuedAuditEntry entry) throws IOException
+    {
+        ByteArrayOutputStream valueBytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream oos = new ObjectOutputStream(valueBytes);
+        oos.writeObject(entry.values);
+        oos.close();
+
+        out.writeByte(RECORD_ENTRY);
+        out.writeLong(entry.sequence);
+        out.writeLong(entry.applicationId);
+        out.writeLong(entry.time);
+        out.writeBoolean(entry.username != null);
+        if (entry.username != null)
+        {
+            out.writeUTF(entry.username);
+        }
+        out.writeBoolean(entry.txnId != null);
+        if (entry.txnId != null)
+        {
+            out.writeLong(entry.txnId);
+        }
+        out.writeInt(valueBytes.size());
+        valueBytes.writeTo(out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static QueuedAuditEntry readEntryRecord(DataInputStream in) throws IOException
+    {
+        long sequence = in.readLong();
+        long applicationId = in.readLong();
+        long time = in.readLong();
+        String username = in.readBoolean() ? in.readUTF() : null;
+        Long txnId = in.readBoolean() ? in.readLong() : null;
+        byte[] valueBytes = new byte[in.readInt()];
+        in.readFully(valueBytes);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(valueBytes));
+        try
+        {
+            Map<String, Serializable> values = (Map<String, Serializable>) ois.readObject();
+            return new QueuedAuditEntry(sequence, applicationId, time, username, values, txnId);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Unable to read audit values", e);
+        }
+        finally
+        {
+            ois.close();
+        }
+    }
+
+    /**
+     * Write entries in a single transaction
+     */
+    private void writeEntries(final List<QueuedAuditEntry> entries)
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (QueuedAuditEntry entry : entries)
+                {
+                    auditDAO.createAuditEntry(entry.applicationId, entry.time, entry.username, entry.values);
+                }
+                return null;
+            }
+        };
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        txnHelper.doInTransaction(callback, false, true);
+    }
+
+    /**
+     * Write a batch.  If the batch fails, its entries are written one at a time so that an entry that
+     * cannot be written does not hold up the others.
+     *
+     * @return              the entries that could not be written
+     */
+    private List<QueuedAuditEntry> writeBatch(List<QueuedAuditEntry> batch)
+    {
+        long start = System.currentTimeMillis();
+        try
+        {
+            writeEntries(batch);
+            numEntriesWritten.addAndGet(batch.size());
+            numBatchesWritten.incrementAndGet();
+            lastBatchMillis = System.currentTimeMillis() - start;
+            written(batch);
+            return new ArrayList<QueuedAuditEntry>(0);
+        }
+        catch (Throwable e)
+        {
+            numFailedAttempts.incrementAndGet();
+            if (batch.size() == 1)
+            {
+                logger.warn("Failed to write audit entry: " + batch.get(0), e);
+                return batch;
+            }
+            logger.warn("Failed to write a batch of " + batch.size() + " audit entries; writing them individually.", e);
+        }
+        List<QueuedAuditEntry> failed = new ArrayList<QueuedAuditEntry>();
+        for (QueuedAuditEntry entry : batch)
+        {
+            List<QueuedAuditEntry> single = new ArrayList<QueuedAuditEntry>(1);
+            single.add(entry);
+            try
+            {
+                writeEntries(single);
+                numEntriesWritten.incrementAndGet();
+                written(single);
+            }
+            catch (Throwable e)
+            {
+                numFailedAttempts.incrementAndGet();
+                logger.warn("Failed to write audit entry: " + entry, e);
+                failed.add(entry);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Drains the queue, one batch at a time.  Entries that fail are retried ahead of the queue, with a
+     * growing delay, until they reach the maximum number of attempts.
+     */
+    private class Writer implements Runnable
+    {
+        private final LinkedList<QueuedAuditEntry> retries = new LinkedList<QueuedAuditEntry>();
+        private long retryDelay = retryDelayMillis;
+
+        public void run()
+        {
+            while (running)
+            {
+                try
+                {
+                    List<QueuedAuditEntry> batch = nextBatch();
+                    if (batch.isEmpty())
+                    {
+                        continue;
+                    }
+                    inFlightSince = batch.get(0).queuedAt;
+                    List<QueuedAuditEntry> failed = writeBatch(batch);
+                    inFlightSince = 0L;
+                    if (failed.isEmpty())
+                    {
+                        retryDelay = retryDelayMillis;
+                        continue;
+                    }
+                    for (QueuedAuditEntry entry : failed)
+                    {
+                        if (++entry.attempts >= maxAttempts)
+                        {
+                            // Leave it in the journal
+                            numAbandonedEntries.incrementAndGet();
+                            logger.error("Giving up on audit entry after " + entry.attempts + " attempts until the next startup: " + entry);
+                        }
+                        else
+                        {
+                            retries.add(entry);
+                        }
+                    }
+                    Thread.sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, maxRetryDelayMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    inFlightSince = 0L;
+                    return;
+                }
+                catch (Throwable e)
+                {
+                    inFlightSince = 0L;
+                    logger.error("Unexpected error in the audit writer", e);
+                }
+            }
+        }
+
+        /**
+         * Take entries to retry first.  Otherwise wait until enough entries are queued to fill a batch
+         * or the first entry has waited for the flush interval.
+         */
+        private List<QueuedAuditEntry> nextBatch() throws InterruptedException
+        {
+            List<QueuedAuditEntry> batch = new ArrayList<QueuedAuditEntry>(batchSize);
+            while (!retries.isEmpty() && batch.size() < batchSize)
+            {
+                batch.add(retries.removeFirst());
+            }
+            if (!batch.isEmpty())
+            {
+                return batch;
+            }
+            QueuedAuditEntry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+            if (first == null)
+            {
+                return batch;
+            }
+            batch.add(first);
+            long deadline = first.queuedAt + flushIntervalMillis;
+            while (batch.size() < batchSize && running)
+            {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0L)
+                {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    break;
+                }
+                QueuedAuditEntry next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (next == null)
+                {
+                    break;
+                }
+                batch.add(next);
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Journals the transaction's entries before it commits and hands them over to the writer
+     * once it has.
+     */
+    private class AuditEntryTransactionListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            List<QueuedAuditEntry> txnEntries = TransactionalResourceHelper.getList(KEY_TXN_ENTRIES);
+            journal(txnEntries);
+        }
+
+        @Override
+        public void beforeCompletion()
+        {
+            // Pick up entries recorded by other listeners' beforeCommit
+            List<QueuedAuditEntry> txnEntries = TransactionalResourceHelper.getList(KEY_TXN_ENTRIES);
+            if (!txnEntries.isEmpty() && txnEntries.get(0).journalFile != null)
+            {
+                journal(txnEntries);
+            }
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            List<QueuedAuditEntry> txnEntries = TransactionalResourceHelper.getList(KEY_TXN_ENTRIES);
+            markCommitted(txnEntries);
+            enqueue(txnEntries);
+        }
+
+        @Override
+        public void afterRollback()
+        {
+            List<QueuedAuditEntry> txnEntries = TransactionalResourceHelper.getList(KEY_TXN_ENTRIES);
+            discard(txnEntries);
+        }
+    }
+
+    /**
+     * An open journal file and the number of its entries that have not been written or discarded.
+     * Guarded by the journal lock.
+     */
+    private static class JournalFile
+    {
+        private final File file;
+        private FileOutputStream out;
+        private long size;
+        private int pending;
+
+        private JournalFile(File file)
+        {
+            this.file = file;
+            this.size = file.length();
+        }
+
+        private void append(byte[] bytes, boolean force) throws IOException
+        {
+            if (out == null)
+            {
+                out = new FileOutputStream(file, true);
+            }
+            out.write(bytes);
+            if (force)
+            {
+                out.getChannel().force(false);
+            }
+            size += bytes.length;
+        }
+
+        private void truncate(long length) throws IOException
+        {
+            FileOutputStream truncating = new FileOutputStream(file, true);
+            try
+            {
+                truncating.getChannel().truncate(length);
+            }
+            finally
+            {
+                truncating.close();
+            }
+            size = length;
+        }
+
+        private void closeQuietly()
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Failed to close audit journal file: " + file, e);
+                }
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * An audit entry waiting to be written
+     */
+    static class QueuedAuditEntry
+    {
+        private final long sequence;
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        private final Long txnId;
+        private JournalFile journalFile;
+        private volatile long queuedAt;
+        private int attempts;
+
+        QueuedAuditEntry(long sequence, Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this(sequence, applicationId, time, username, values, null);
+        }
+
+        QueuedAuditEntry(long sequence, Long applicationId, long time, String username, Map<String, Serializable> values, Long txnId)
+        {
+            this.sequence = sequence;
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+            this.txnId = txnId;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "QueuedAuditEntry [sequence=" + sequence +
+                    ", applicationId=" + applicationId +
+                    ", time=" + time +
+                    ", username=" + username +
+                    ", txnId=" + txnId +
+                    ", values=" + values + "]";
+        }
+    }
+}
@@ -86,6 +86,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AsyncAuditWriter asyncAuditWriter;
     
     /**
      * Default constructor
@@ -142,6 +143,16 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the optional writer that persists audit entries after the transaction has committed.
+     * Without it, or when it refuses an entry, entries are written in the current transaction.
+     * @since 5.2
+     */
+    public void setAsyncAuditWriter(AsyncAuditWriter asyncAuditWriter)
+    {
+        this.asyncAuditWriter = asyncAuditWriter;
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -853,7 +864,11 @@ public class AuditComponentImpl implements AuditComponent
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
             if (!justGatherPreCallData)
             {
-                entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                // Queued entries only get an ID once they have been written
+                if (asyncAuditWriter == null || !asyncAuditWriter.queueAuditEntry(application.getApplicationName(), applicationId, time, username, auditData))
+                {
+                    entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                }
             }
             // Done
             if (logger.isDebugEnabled())
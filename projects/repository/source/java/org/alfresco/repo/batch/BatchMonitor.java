@@ -26,6 +26,7 @@
 package org.alfresco.repo.batch;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * An interface that allows the monitoring of metrics relating to a potentially long-running batch process.
@@ -103,4 +104,27 @@ public interface BatchMonitor
      * @return the end time
      */
     public Date getEndTime();
+
+    /**
+     * Gets the number of entries that new batches are given.  This only varies if the batch size
+     * is adapted to the rate of transaction retries and commit times.
+     * 
+     * @return the current batch size
+     */
+    public int getCurrentBatchSize();
+
+    /**
+     * Gets the total number of times that batch transactions were retried.
+     * 
+     * @return the total number of retries
+     */
+    public int getTotalRetries();
+
+    /**
+     * Gets the throughput and retry metrics of each worker thread.
+     * 
+     * @return a snapshot of the metrics of each worker, ordered by worker name
+     * @since 5.2
+     */
+    public List<BatchWorkerStatistics> getWorkerStatistics();
 }
@@ -35,13 +35,19 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.node.integrity.IntegrityException;
@@ -63,6 +69,10 @@ import org.springframework.context.ApplicationEventPublisher;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p>
+ * Optionally, batches can be run by a work-stealing pool, in which a batch that has to be retried is split in two so
+ * that a single conflicting entry does not hold up the rest of its batch; and the batch size can be adapted, shrinking
+ * when batches are retried or slow to commit and growing when they commit quickly.
  * 
  * @author dward
  */
@@ -91,6 +101,39 @@ public class BatchProcessor<T> implements BatchMonitor
 
     /** The number of entries we process at a time in a transaction. */
     private final int batchSize;
+
+    /** Are batches run by a work-stealing pool, which splits batches that are retried? */
+    private boolean workStealing;
+
+    /** Is the batch size adapted to retries and commit times? */
+    private boolean adaptiveBatchSize;
+
+    /** The smallest batch size when adapting the batch size. */
+    private int minBatchSize;
+
+    /** The largest batch size when adapting the batch size. */
+    private int maxBatchSize;
+
+    /** The time, in milliseconds, that a batch should take when adapting the batch size. */
+    private long targetBatchTime;
+
+    /** The number of entries given to new batches. */
+    private int currentBatchSize;
+
+    /** The work-stealing pool, while processing with one. */
+    private ForkJoinPool workStealingPool;
+
+    /** The number of batches queued or running in the work-stealing pool. */
+    private int outstandingBatches;
+
+    /** The ID of the next batch. */
+    private int nextBatchId;
+
+    /** The total number of transaction retries. */
+    private int totalRetries;
+
+    /** The metrics of each worker thread, by thread name. */
+    private final Map<String, BatchWorkerStatistics> workerStatistics = new TreeMap<String, BatchWorkerStatistics>();
     
     /** The current entry id. */
     private String currentEntryId;
@@ -218,6 +261,10 @@ public class BatchProcessor<T> implements BatchMonitor
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.currentBatchSize = batchSize;
+        this.minBatchSize = 1;
+        this.maxBatchSize = batchSize * 4;
+        this.targetBatchTime = 1000L;
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -235,6 +282,65 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Run batches with a work-stealing pool rather than a fixed pool with a queue.  A batch that has to be retried
+     * is then split: the retry keeps the first half of the batch and the second half becomes a new batch that any
+     * idle worker can take.  This has no effect unless transactions are split and there is more than one worker
+     * thread.
+     * 
+     * @param workStealing
+     *            <tt>true</tt> to use a work-stealing pool (default <tt>false</tt>)
+     * @since 5.2
+     */
+    public void setWorkStealing(boolean workStealing)
+    {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * Adapt the batch size while processing.  The batch size is halved when a batch has to be retried, reduced when
+     * a batch takes longer than the {@link #setTargetBatchTime(long) target time} and increased when it takes less
+     * than half of that time.  The batch size given to the constructor is the starting size.
+     * 
+     * @param adaptiveBatchSize
+     *            <tt>true</tt> to adapt the batch size (default <tt>false</tt>)
+     * @since 5.2
+     */
+    public void setAdaptiveBatchSize(boolean adaptiveBatchSize)
+    {
+        this.adaptiveBatchSize = adaptiveBatchSize;
+    }
+
+    /**
+     * @param minBatchSize
+     *            the smallest batch size when adapting the batch size (default 1)
+     * @since 5.2
+     */
+    public void setMinBatchSize(int minBatchSize)
+    {
+        this.minBatchSize = Math.max(1, minBatchSize);
+    }
+
+    /**
+     * @param maxBatchSize
+     *            the largest batch size when adapting the batch size (default four times the starting batch size)
+     * @since 5.2
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param targetBatchTime
+     *            the time, in milliseconds, that a batch should take when adapting the batch size (default 1000)
+     * @since 5.2
+     */
+    public void setTargetBatchTime(long targetBatchTime)
+    {
+        this.targetBatchTime = targetBatchTime;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -326,6 +432,35 @@ public class BatchProcessor<T> implements BatchMonitor
         return this.startTime;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getCurrentBatchSize()
+    {
+        return this.currentBatchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getTotalRetries()
+    {
+        return this.totalRetries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized List<BatchWorkerStatistics> getWorkerStatistics()
+    {
+        List<BatchWorkerStatistics> statistics = new ArrayList<BatchWorkerStatistics>(this.workerStatistics.size());
+        for (BatchWorkerStatistics workerStats : this.workerStatistics.values())
+        {
+            statistics.add(new BatchWorkerStatistics(workerStats));
+        }
+        return statistics;
+    }
+
     /**
      * Invokes the worker for each entry in the collection, managing transactions and collating success / failure
      * information.
@@ -361,8 +496,22 @@ public class BatchProcessor<T> implements BatchMonitor
             }
         }
 
-        // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
-        ExecutorService executorService = splitTxns && this.workerThreads > 1 ?
+        if (this.maxBatchSize < this.minBatchSize)
+        {
+            this.maxBatchSize = this.minBatchSize;
+        }
+
+        // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs,
+        // or a work-stealing pool that is throttled by the number of outstanding batches
+        boolean useWorkStealing = this.workStealing && splitTxns && this.workerThreads > 1;
+        if (useWorkStealing)
+        {
+            synchronized (this)
+            {
+                this.workStealingPool = createWorkStealingPool();
+            }
+        }
+        ExecutorService executorService = useWorkStealing ? this.workStealingPool : splitTxns && this.workerThreads > 1 ?
                 new ThreadPoolExecutor(
                         this.workerThreads, this.workerThreads, 0L, TimeUnit.MILLISECONDS,
                         new ArrayBlockingQueue<Runnable>(this.workerThreads * this.batchSize * 10)
@@ -387,28 +536,35 @@ public class BatchProcessor<T> implements BatchMonitor
         try
         {
             Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
-            int id=0;
-            List<T> batch = new ArrayList<T>(this.batchSize);
+            int nextBatchSize = getCurrentBatchSize();
+            List<T> batch = new ArrayList<T>(nextBatchSize);
             while (iterator.hasNext())
             {
                 batch.add(iterator.next());
                 boolean hasNext = iterator.hasNext();
-                if (batch.size() >= this.batchSize || !hasNext)
+                if (batch.size() >= nextBatchSize || !hasNext)
                 {
-                    final TxnCallback callback = new TxnCallback(id++, worker, batch, splitTxns);
-                    if (hasNext)
-                    {
-                        batch = new ArrayList<T>(this.batchSize);
-                    }
-                    
+                    final TxnCallback callback = new TxnCallback(nextBatchId(), worker, batch, splitTxns);
                     if (executorService == null)
                     {
                         callback.run();
                     }
+                    else if (useWorkStealing)
+                    {
+                        scheduleBatch(callback, true);
+                    }
                     else
                     {
                         executorService.execute(callback);
                     }
+
+                    // Size the next batch once this one has been handed over, so that a batch run in this thread
+                    // has already adapted the size
+                    if (hasNext)
+                    {
+                        nextBatchSize = getCurrentBatchSize();
+                        batch = new ArrayList<T>(nextBatchSize);
+                    }
                 }
             }
             return count;
@@ -417,9 +573,20 @@ public class BatchProcessor<T> implements BatchMonitor
         {
             if (executorService != null)
             {
-                executorService.shutdown();
                 try
                 {
+                    try
+                    {
+                        if (useWorkStealing)
+                        {
+                            // Batches split on retry are added by the workers, so wait for them all before shutting down
+                            awaitOutstandingBatches();
+                        }
+                    }
+                    finally
+                    {
+                        executorService.shutdown();
+                    }
                     executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
                 }
                 catch (InterruptedException e)
@@ -428,6 +595,7 @@ public class BatchProcessor<T> implements BatchMonitor
             }
             synchronized (this)
             {
+                this.workStealingPool = null;
                 reportProgress(true);
                 this.endTime = new Date();
                 if (this.logger.isInfoEnabled())
@@ -452,6 +620,133 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Creates a work-stealing pool whose threads are named after the process.  Batches are taken in the order in
+     * which they were queued.
+     */
+    private ForkJoinPool createWorkStealingPool()
+    {
+        ForkJoinWorkerThreadFactory workerThreadFactory = new ForkJoinWorkerThreadFactory()
+        {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(BatchProcessor.this.processName + "-" + this.threadNumber.getAndIncrement());
+                return thread;
+            }
+        };
+        return new ForkJoinPool(this.workerThreads, workerThreadFactory, null, true);
+    }
+
+    private synchronized int nextBatchId()
+    {
+        return this.nextBatchId++;
+    }
+
+    /**
+     * Queues a batch with the work-stealing pool.
+     * 
+     * @param callback
+     *            the batch
+     * @param throttle
+     *            <code>true</code> to wait while there are too many outstanding batches. Workers must not wait, so
+     *            the batches that they split off are not throttled.
+     */
+    private void scheduleBatch(TxnCallback callback, boolean throttle)
+    {
+        ForkJoinPool pool;
+        synchronized (this)
+        {
+            while (throttle && this.outstandingBatches >= this.workerThreads * 10)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new AlfrescoRuntimeException("Interrupted while queuing a batch for " + getProcessName(), e);
+                }
+            }
+            this.outstandingBatches++;
+            pool = this.workStealingPool;
+        }
+        callback.scheduled = true;
+        pool.execute(callback);
+    }
+
+    private synchronized void batchFinished()
+    {
+        this.outstandingBatches--;
+        notifyAll();
+    }
+
+    private synchronized void awaitOutstandingBatches() throws InterruptedException
+    {
+        while (this.outstandingBatches > 0)
+        {
+            wait();
+        }
+    }
+
+    /**
+     * Records the metrics of a completed batch against the current worker thread and adapts the batch size to them.
+     * 
+     * @param entries
+     *            the number of entries in the batch
+     * @param attempts
+     *            the number of times the batch transaction was attempted
+     * @param time
+     *            the time taken, in milliseconds
+     */
+    private synchronized void batchCompleted(int entries, int attempts, long time)
+    {
+        String workerName = Thread.currentThread().getName();
+        BatchWorkerStatistics workerStats = this.workerStatistics.get(workerName);
+        if (workerStats == null)
+        {
+            workerStats = new BatchWorkerStatistics(workerName);
+            this.workerStatistics.put(workerName, workerStats);
+        }
+        int retries = Math.max(0, attempts - 1);
+        workerStats.record(entries, retries, time);
+        this.totalRetries += retries;
+
+        if (!this.adaptiveBatchSize || entries == 0)
+        {
+            return;
+        }
+        int newBatchSize = this.currentBatchSize;
+        if (retries > 0)
+        {
+            // Conflicts: back off quickly
+            newBatchSize = this.currentBatchSize / 2;
+        }
+        else if (time > this.targetBatchTime)
+        {
+            newBatchSize = this.currentBatchSize * 3 / 4;
+        }
+        else if (time < this.targetBatchTime / 2 && entries >= this.currentBatchSize)
+        {
+            // Only grow on batches that were full-sized, so that small split or final batches don't count
+            newBatchSize = this.currentBatchSize + Math.max(1, this.currentBatchSize / 4);
+        }
+        newBatchSize = Math.min(this.maxBatchSize, Math.max(this.minBatchSize, newBatchSize));
+        if (newBatchSize != this.currentBatchSize)
+        {
+            if (this.logger.isDebugEnabled())
+            {
+                this.logger.debug(getProcessName() + ": Batch size changed from " + this.currentBatchSize + " to "
+                        + newBatchSize + " after a batch of " + entries + " entries took " + time + "ms with "
+                        + retries + " retries");
+            }
+            this.currentBatchSize = newBatchSize;
+        }
+    }
+
     /**
      * Reports the current progress.
      * 
@@ -652,8 +947,14 @@ public class BatchProcessor<T> implements BatchMonitor
         /** The worker. */
         private final BatchProcessWorker<T> worker;
 
-        /** The batch. */
-        private final List<T> batch;
+        /** The batch, which is shortened if it is split. */
+        private List<T> batch;
+
+        /** The number of times the batch transaction has been attempted. */
+        private int attempts;
+
+        /** Was the batch queued with the work-stealing pool? */
+        private volatile boolean scheduled;
 
         /** If <code>true</code>, the worker invocation is made in a new transaction. */
         private final boolean splitTxns;
@@ -680,6 +981,12 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 return null;
             }
+            this.attempts++;
+            if (this.attempts > 1 && this.splitTxns && this.batch.size() > 1
+                    && BatchProcessor.this.workStealingPool != null)
+            {
+                splitBatch();
+            }
             
             // Bind this instance to the transaction
             AlfrescoTransactionSupport.bindListener(this);
@@ -744,6 +1051,21 @@ public class BatchProcessor<T> implements BatchMonitor
         }
 
         public void run()
+        {
+            try
+            {
+                runBatch();
+            }
+            finally
+            {
+                if (this.scheduled)
+                {
+                    batchFinished();
+                }
+            }
+        }
+
+        private void runBatch()
         {
             try
             {
@@ -755,6 +1077,7 @@ public class BatchProcessor<T> implements BatchMonitor
 
             
             final BatchProcessor<T>.TxnCallback callback = this;
+            long startTime = System.currentTimeMillis();
             try
             {
                 Throwable tt = null;
@@ -768,6 +1091,10 @@ public class BatchProcessor<T> implements BatchMonitor
                     // Keep this and rethrow
                     tt = t;
                 }
+                finally
+                {
+                    batchCompleted(this.batch.size(), this.attempts, System.currentTimeMillis() - startTime);
+                }
                 worker.afterProcess();
                 // Throw if there was a processing exception
                 if (tt != null)
@@ -808,6 +1135,22 @@ public class BatchProcessor<T> implements BatchMonitor
             commitProgress();
         }
 
+        /**
+         * Splits the batch before a retry, keeping the first half and queuing the second half as a new batch.
+         */
+        private void splitBatch()
+        {
+            int half = this.batch.size() / 2;
+            List<T> remainder = new ArrayList<T>(this.batch.subList(half, this.batch.size()));
+            this.batch = new ArrayList<T>(this.batch.subList(0, half));
+            if (BatchProcessor.this.logger.isDebugEnabled())
+            {
+                BatchProcessor.this.logger.debug(Thread.currentThread().getName() + " Splitting batch " + this.id
+                        + " for retry: " + remainder.size() + " entries moved to a new batch");
+            }
+            scheduleBatch(new TxnCallback(nextBatchId(), this.worker, remainder, this.splitTxns), false);
+        }
+
         /**
          * Resets the callback state for a retry.
          */
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+/**
+ * Metrics for the batches run by one worker thread of a batch process.
+ * 
+ * @see BatchMonitor#getWorkerStatistics()
+ * @since 5.2
+ */
+public class BatchWorkerStatistics
+{
+    private final String workerName;
+    private int batches;
+    private int entries;
+    private int retries;
+    private long totalTime;
+
+    BatchWorkerStatistics(String workerName)
+    {
+        this.workerName = workerName;
+    }
+
+    BatchWorkerStatistics(BatchWorkerStatistics copy)
+    {
+        this.workerName = copy.workerName;
+        this.batches = copy.batches;
+        this.entries = copy.entries;
+        this.retries = copy.retries;
+        this.totalTime = copy.totalTime;
+    }
+
+    /**
+     * Record a batch that has been completed, successfully or not.
+     * 
+     * @param batchEntries          the number of entries in the batch
+     * @param batchRetries          the number of times the batch transaction was retried
+     * @param batchTime             the time taken, including retries, in milliseconds
+     */
+    void record(int batchEntries, int batchRetries, long batchTime)
+    {
+        this.batches++;
+        this.entries += batchEntries;
+        this.retries += batchRetries;
+        this.totalTime += batchTime;
+    }
+
+    /**
+     * @return the name of the worker thread
+     */
+    public String getWorkerName()
+    {
+        return workerName;
+    }
+
+    /**
+     * @return the number of batches completed by the worker
+     */
+    public int getBatches()
+    {
+        return batches;
+    }
+
+    /**
+     * @return the number of entries in the batches completed by the worker
+     */
+    public int getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * @return the number of times that the worker had to retry a batch transaction
+     */
+    public int getRetries()
+    {
+        return retries;
+    }
+
+    /**
+     * @return the time that the worker has spent processing batches, in milliseconds
+     */
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    /**
+     * @return the number of entries processed per second of the worker's processing time
+     */
+    public double getEntriesPerSecond()
+    {
+        return totalTime == 0L ? 0.0 : entries * 1000.0 / totalTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("BatchWorkerStatistics")
+          .append("[ worker=").append(workerName)
+          .append(", batches=").append(batches)
+          .append(", entries=").append(entries)
+          .append(", retries=").append(retries)
+          .append(", totalTime=").append(totalTime)
+          .append("]");
+        return sb.toString();
+    }
+}
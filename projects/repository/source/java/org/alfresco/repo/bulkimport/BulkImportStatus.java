@@ -71,6 +71,10 @@ public interface BulkImportStatus
     long getNumberOfMetadataVersionFilesRead();
     long getNumberOfMetadataVersionBytesRead();
     
+    // Pipeline stage information
+    long getNumberOfDirectoriesAnalysed();
+    long getNumberOfMetadataFilesParsed();
+    
     // Write-side information
     long getNumberOfSpaceNodesCreated();
     long getNumberOfSpaceNodesReplaced();
@@ -93,4 +97,6 @@ public interface BulkImportStatus
     public Long getEntriesScannedPerSecond();
     public Long getBytesWrittenPerSecond();
     public Long getNodesCreatedPerSecond();
+    public Long getDirectoriesAnalysedPerSecond();
+    public Long getMetadataFilesParsedPerSecond();
 }
@@ -84,6 +84,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
     private AtomicLong    numberOfMetadataVersionFilesRead        = new AtomicLong();
     private AtomicLong    numberOfMetadataVersionBytesRead        = new AtomicLong();
     
+    // Pipeline stage information
+    private AtomicLong    numberOfDirectoriesAnalysed             = new AtomicLong();
+    private AtomicLong    numberOfMetadataFilesParsed             = new AtomicLong();
+    
     // Write-side information
     private AtomicLong    numberOfSpaceNodesCreated               = new AtomicLong();
     private AtomicLong    numberOfSpaceNodesReplaced              = new AtomicLong();
@@ -242,6 +246,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
         this.numberOfMetadataVersionFilesRead.set(0);
         this.numberOfMetadataVersionBytesRead.set(0);
         
+        // Pipeline stage information
+        this.numberOfDirectoriesAnalysed.set(0);
+        this.numberOfMetadataFilesParsed.set(0);
+        
         // Write-side information
         this.numberOfSpaceNodesCreated.set(0);
         this.numberOfSpaceNodesReplaced.set(0);
@@ -362,6 +370,20 @@ public class BulkImportStatusImpl implements BulkImportStatus
         numberOfUnreadableEntries.incrementAndGet();
     }
     
+    // Pipeline stage information
+    public long getNumberOfDirectoriesAnalysed()             { return(numberOfDirectoriesAnalysed.longValue()); }
+    public long getNumberOfMetadataFilesParsed()             { return(numberOfMetadataFilesParsed.longValue()); }
+    
+    public void incrementNumberOfDirectoriesAnalysed()
+    {
+        numberOfDirectoriesAnalysed.incrementAndGet();
+    }
+    
+    public void incrementNumberOfMetadataFilesParsed()
+    {
+        numberOfMetadataFilesParsed.incrementAndGet();
+    }
+    
     public void incrementImportableItemsSkipped(final ImportableItem importableItem, final boolean isDirectory)
     {
         if (importableItem.getHeadRevision().contentFileExists())
@@ -549,6 +571,32 @@ public class BulkImportStatusImpl implements BulkImportStatus
 		}
     }
 
+    public Long getDirectoriesAnalysedPerSecond()
+    {
+    	Long duration = getDuration();
+    	if(duration != null)
+    	{
+	    	return numberOfDirectoriesAnalysed.longValue() / duration;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
+    public Long getMetadataFilesParsedPerSecond()
+    {
+    	Long duration = getDuration();
+    	if(duration != null)
+    	{
+	    	return numberOfMetadataFilesParsed.longValue() / duration;
+    	}
+    	else
+    	{
+    		return null;
+    	}
+    }
+
     // Private helper methods
     private final Date copyDate(final Date date)
     {
@@ -620,6 +668,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getFilesReadPerSecond());
     	sb.append("\nNodes created/sec : ");
     	sb.append(getNodesCreatedPerSecond());
+    	sb.append("\nDirectories analysed/sec : ");
+    	sb.append(getDirectoriesAnalysedPerSecond());
+    	sb.append("\nMetadata files parsed/sec : ");
+    	sb.append(getMetadataFilesParsedPerSecond());
     	sb.append("\nNumber of files scanned : ");
     	sb.append(getNumberOfFilesScanned());
     	sb.append("\nNumber of folders scanned : ");
@@ -634,6 +686,10 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getNumberOfMetadataVersionFilesRead());
     	sb.append("\nNumber of unreadable entries : ");
     	sb.append(getNumberOfUnreadableEntries());
+    	sb.append("\nNumber of directories analysed : ");
+    	sb.append(getNumberOfDirectoriesAnalysed());
+    	sb.append("\nNumber of metadata files parsed : ");
+    	sb.append(getNumberOfMetadataFilesParsed());
     	
     	sb.append("\nNumber of content nodes created : ");
     	sb.append(getNumberOfContentNodesCreated());
@@ -33,13 +33,20 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.bulkimport.AnalysedDirectory;
 import org.alfresco.repo.bulkimport.DirectoryAnalyser;
 import org.alfresco.repo.bulkimport.ImportFilter;
@@ -47,6 +54,9 @@ import org.alfresco.repo.bulkimport.ImportableItem;
 import org.alfresco.repo.bulkimport.ImportableItem.FileType;
 import org.alfresco.repo.bulkimport.MetadataLoader;
 import org.alfresco.repo.dictionary.constraint.NameChecker;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.service.cmr.dictionary.Constraint;
 import org.alfresco.service.cmr.dictionary.ConstraintDefinition;
 import org.alfresco.service.cmr.dictionary.ConstraintException;
@@ -76,6 +86,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
     private List<ImportFilter> importFilters;
     private NameChecker nameChecker;
     private DictionaryService dictionaryService;
+    private ExecutorService metadataExecutor;
 
     
     public DirectoryAnalyserImpl(MetadataLoader metadataLoader, BulkImportStatusImpl importStatus, List<ImportFilter> importFilters,
@@ -100,6 +111,17 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
     {
         this.nameChecker = nameChecker;
     }
+    
+    /**
+     * Sets the pool used to parse and validate the metadata files of a directory in parallel.
+     * If not set, the metadata is parsed by the thread analysing the directory.
+     * 
+     * @param metadataExecutor ExecutorService
+     */
+    public void setMetadataExecutor(ExecutorService metadataExecutor)
+    {
+        this.metadataExecutor = metadataExecutor;
+    }
 
 	public void setMetadataLoader(MetadataLoader metadataLoader)
 	{
@@ -238,11 +260,12 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
         {
             ImportableItem importableItem = iter.next();
 
-            if (!importableItem.isValid() || !isMetadataValid(importableItem))
+            if (!importableItem.isValid())
             {
                 iter.remove();
             }
         }
+        removeItemsWithInvalidMetadata(result.getImportableItems());
         
         iter = result.getImportableDirectories().iterator();
         while (iter.hasNext())
@@ -255,6 +278,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
             }
         }
 
+        importStatus.incrementNumberOfDirectoriesAnalysed();
         if (log.isDebugEnabled())
         {
         	log.debug("Finished analysing directory " + FileUtils.getFileName(directoryFile) + ".");
@@ -263,6 +287,80 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
         return result;
     }
     
+    private void removeItemsWithInvalidMetadata(Collection<ImportableItem> importableItems)
+    {
+        List<ImportableItem> itemsWithMetadata = new ArrayList<ImportableItem>();
+        for (ImportableItem importableItem : importableItems)
+        {
+            if (importableItem.getHeadRevision().metadataFileExists())
+            {
+                itemsWithMetadata.add(importableItem);
+            }
+        }
+        
+        if (metadataExecutor == null || itemsWithMetadata.size() < 2)
+        {
+            for (ImportableItem importableItem : itemsWithMetadata)
+            {
+                if (!isMetadataValid(importableItem))
+                {
+                    importableItems.remove(importableItem);
+                }
+            }
+            return;
+        }
+        
+        // Parse the metadata files in parallel, as the same user and tenant as this thread
+        final String currentUser = AuthenticationUtil.getRunAsUser();
+        final String currentDomain = TenantUtil.getCurrentDomain();
+        Map<ImportableItem, Future<Boolean>> validations = new LinkedHashMap<ImportableItem, Future<Boolean>>();
+        for (final ImportableItem importableItem : itemsWithMetadata)
+        {
+            validations.put(importableItem, metadataExecutor.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    if (currentUser == null)
+                    {
+                        return isMetadataValid(importableItem);
+                    }
+                    return TenantUtil.runAsUserTenant(new TenantRunAsWork<Boolean>()
+                    {
+                        @Override
+                        public Boolean doWork() throws Exception
+                        {
+                            return isMetadataValid(importableItem);
+                        }
+                    }, currentUser, currentDomain);
+                }
+            }));
+        }
+        for (Map.Entry<ImportableItem, Future<Boolean>> validation : validations.entrySet())
+        {
+            try
+            {
+                if (!validation.getValue().get())
+                {
+                    importableItems.remove(validation.getKey());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while parsing metadata files", e);
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new AlfrescoRuntimeException("Failed to parse metadata file for " + validation.getKey(), e.getCause());
+            }
+        }
+    }
+    
     private List<Path> listFiles(Path sourceDirectory, DirectoryStream.Filter<Path> filter)
     {
         List<Path> files = new ArrayList<Path>();
@@ -291,6 +389,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
         {
             MetadataLoader.Metadata result = new MetadataLoader.Metadata();
             metadataLoader.loadMetadata(importableItem.getHeadRevision(), result);
+            importStatus.incrementNumberOfMetadataFilesParsed();
             
             Map<QName, Serializable> metadataProperties = result.getProperties();
             for (QName propertyName : metadataProperties.keySet())
@@ -26,6 +26,7 @@
 package org.alfresco.repo.bulkimport.impl;
 
 import java.io.File;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.batch.BatchProcessor;
@@ -35,12 +36,36 @@ import org.alfresco.repo.bulkimport.NodeImporter;
 
 /**
  * A multi threaded bulk importer that imports by striping across filesystem levels.
+ * <p/>
+ * The import is a pipeline of three stages with their own thread pools: directories are listed on the
+ * <i>scannerExecutor</i>, their metadata files are parsed on the directory analyser's metadata pool, and
+ * nodes are created by the {@link BatchProcessor} threads.
  * 
  * @since 4.0
  *
  */
 public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemImporter
 {
+    private ExecutorService scannerExecutor;
+    private int scanAhead = 0;
+
+    /**
+     * @param scannerExecutor       the pool used to list and analyse directories ahead of the node creation
+     */
+    public void setScannerExecutor(ExecutorService scannerExecutor)
+    {
+        this.scannerExecutor = scannerExecutor;
+    }
+
+    /**
+     * @param scanAhead             the number of directories to analyse ahead of the node creation;
+     *                              <tt>0</tt> to analyse them on the thread feeding the node creation
+     */
+    public void setScanAhead(int scanAhead)
+    {
+        this.scanAhead = scanAhead;
+    }
+
 	/**
      * Method that does the work of importing a filesystem using the BatchProcessor.
      * 
@@ -56,18 +81,26 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
     	final File sourceFolder = nodeImporter.getSourceFolder();
         final int batchSize = getBatchSize(bulkImportParameters);
         final int loggingInterval = getLoggingInterval(bulkImportParameters);
-    	final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize);
+    	final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, bulkImportParameters.getTarget(), sourceFolder, batchSize,
+    	        scannerExecutor, scanAhead);
         final BatchProcessor<ImportableItem> batchProcessor = getBatchProcessor(bulkImportParameters, tracker.getWorkProvider(), loggingInterval);
         final BatchProcessor.BatchProcessWorker<ImportableItem> worker = getWorker(bulkImportParameters, lockToken, nodeImporter, tracker);
 
-		do
-		{
-			batchProcessor.process(worker, true);
-			if(batchProcessor.getLastError() != null)
-			{
-				throw new AlfrescoRuntimeException(batchProcessor.getLastError());
-			}
-		}
-		while(tracker.moreLevels());
+        try
+        {
+    		do
+    		{
+    			batchProcessor.process(worker, true);
+    			if(batchProcessor.getLastError() != null)
+    			{
+    				throw new AlfrescoRuntimeException(batchProcessor.getLastError());
+    			}
+    		}
+    		while(tracker.moreLevels());
+        }
+        finally
+        {
+            tracker.cancelScanAhead();
+        }
     }
 }
@@ -29,18 +29,31 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.bulkimport.AnalysedDirectory;
 import org.alfresco.repo.bulkimport.DirectoryAnalyser;
 import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.service.cmr.repository.NodeRef;
 
 /**
  * A filesystem walker that returns all files and directories in subsequent levels of a filesystem tree; it returns all directories
  * and files in a given level, at which point it moves on to the next level and starts returning directories and files in that level.
+ * <p/>
+ * If a scanner pool is supplied, directories are listed and analysed on that pool, up to <i>scanAhead</i> directories ahead of
+ * the directory whose items are being handed out.  The look-ahead continues into the next level, whose directories don't depend
+ * on any node created in the current level, so the node-creation threads rarely wait for a directory listing.
  * 
  * @since 4.0
  *
@@ -55,10 +68,31 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 	private Map<Integer, List<ImportableItem>> directoriesToProcess = new HashMap<Integer, List<ImportableItem>>(10);
 	private List<ImportableItem> toProcess = new ArrayList<ImportableItem>();
 
+	// directories submitted to the scanner pool, by level, in submission order
+	private Map<Integer, LinkedList<Future<AnalysedDirectory>>> directoriesBeingAnalysed = new HashMap<Integer, LinkedList<Future<AnalysedDirectory>>>(10);
+	private ExecutorService scannerExecutor;
+	private int scanAhead;
+	private String currentUser;
+	private String currentDomain;
+
 	public StripingFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize)
+	{
+		this(directoryAnalyser, target, sourceFolder, batchSize, null, 0);
+	}
+
+	/**
+	 * @param scannerExecutor		the pool to analyse directories on, or <tt>null</tt> to analyse them on the calling thread
+	 * @param scanAhead				the maximum number of directories being analysed, or analysed but not yet handed out
+	 */
+	public StripingFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize,
+			ExecutorService scannerExecutor, int scanAhead)
 	{
 		this.directoryAnalyser = directoryAnalyser;
 		this.batchSize = batchSize;
+		this.scannerExecutor = (scanAhead > 0) ? scannerExecutor : null;
+		this.scanAhead = scanAhead;
+		this.currentUser = AuthenticationUtil.getRunAsUser();
+		this.currentDomain = TenantUtil.getCurrentDomain();
 
 		// not really an importable item but the interface requires it to be in this form
 		rootFolder = new ImportableItem();
@@ -127,24 +161,122 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 		}
 	}
 	
-	public boolean moreLevels()
+	public synchronized boolean moreLevels()
 	{
-		return getDirectoriesToProcess(currentLevel).size() > 0;
+		return numDirectoriesToProcess() > 0;
 	}
 	
-	public int numDirectoriesToProcess()
+	public synchronized int numDirectoriesToProcess()
 	{
-		return getDirectoriesToProcess(currentLevel).size();
+		return getDirectoriesToProcess(currentLevel).size() + getDirectoriesBeingAnalysed(currentLevel).size();
 	}
 
-	protected List<ImportableItem> getImportableItems(int count)
+	private LinkedList<Future<AnalysedDirectory>> getDirectoriesBeingAnalysed(int level)
 	{
-		while(toProcess.size() < count)
+		LinkedList<Future<AnalysedDirectory>> dirs = directoriesBeingAnalysed.get(level);
+		if(dirs == null)
+		{
+			dirs = new LinkedList<Future<AnalysedDirectory>>();
+			directoriesBeingAnalysed.put(level, dirs);
+		}
+
+		return dirs;
+	}
+
+	/**
+	 * Keep the scanner pool busy with the directories of the current level, then with those of the next level
+	 */
+	private void scanAhead()
+	{
+		int inProgress = getDirectoriesBeingAnalysed(currentLevel).size() + getDirectoriesBeingAnalysed(currentLevel+1).size();
+		for(int level = currentLevel; level <= currentLevel+1 && inProgress < scanAhead; level++)
+		{
+			List<ImportableItem> dirs = getDirectoriesToProcess(level);
+			while(dirs.size() > 0 && inProgress < scanAhead)
+			{
+				final ImportableItem directory = dirs.remove(0);
+				getDirectoriesBeingAnalysed(level).add(scannerExecutor.submit(new Callable<AnalysedDirectory>()
+				{
+					@Override
+					public AnalysedDirectory call() throws Exception
+					{
+						if(currentUser == null)
+						{
+							return getImportableItemsInDirectory(directory);
+						}
+						return TenantUtil.runAsUserTenant(new TenantRunAsWork<AnalysedDirectory>()
+						{
+							@Override
+							public AnalysedDirectory doWork() throws Exception
+							{
+								return getImportableItemsInDirectory(directory);
+							}
+						}, currentUser, currentDomain);
+					}
+				}));
+				inProgress++;
+			}
+		}
+	}
+
+	/**
+	 * @return the next analysed directory of the current level, or <tt>null</tt> if there are none left
+	 */
+	protected AnalysedDirectory getNextAnalysedDirectory()
+	{
+		if(scannerExecutor == null)
 		{
 			ImportableItem directory = getDirectoryToProcess();
-			if(directory != null)
+			return (directory != null ? getImportableItemsInDirectory(directory) : null);
+		}
+
+		scanAhead();
+		Future<AnalysedDirectory> analysis = getDirectoriesBeingAnalysed(currentLevel).poll();
+		if(analysis == null)
+		{
+			return null;
+		}
+		try
+		{
+			return analysis.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new AlfrescoRuntimeException("Interrupted while analysing directories", e);
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException)e.getCause();
+			}
+			throw new AlfrescoRuntimeException("Failed to analyse directory", e.getCause());
+		}
+	}
+
+	/**
+	 * Stop analysing directories ahead, e.g. because the import failed
+	 */
+	public synchronized void cancelScanAhead()
+	{
+		for(LinkedList<Future<AnalysedDirectory>> analyses : directoriesBeingAnalysed.values())
+		{
+			for(Future<AnalysedDirectory> analysis : analyses)
+			{
+				analysis.cancel(false);
+			}
+			analyses.clear();
+		}
+	}
+
+	protected synchronized List<ImportableItem> getImportableItems(int count)
+	{
+		while(toProcess.size() < count)
+		{
+			AnalysedDirectory analysedDirectory = getNextAnalysedDirectory();
+			if(analysedDirectory != null)
 			{
-				AnalysedDirectory analysedDirectory = getImportableItemsInDirectory(directory);
 				addItemsToProcess(analysedDirectory.getImportableDirectories());
 				addItemsToProcess(analysedDirectory.getImportableItems());
 
@@ -156,6 +288,11 @@ public class StripingFilesystemTracker extends AbstractFilesystemTracker
 				break;
 			}
 		}
+		if(scannerExecutor != null)
+		{
+			// start on the directories found above while the items are imported
+			scanAhead();
+		}
 
 		int size = (toProcess.size() >= count ? count : toProcess.size());
 		List<ImportableItem> result = new ArrayList<ImportableItem>(size);
@@ -93,4 +93,23 @@ public interface CacheStatistics
      * @return Map of OpType to OperationStats
      */
     Map<OpType, OperationStats> allStats(String cacheName);
+    
+    /**
+     * Record the number of bytes currently held by a cache that is able to measure
+     * its own footprint, e.g. {@link OffHeapSimpleCache}. The value replaces any
+     * previously recorded value for the cache.
+     * 
+     * @param cacheName  The cache name.
+     * @param usedBytes  The number of bytes in use.
+     */
+    void updateMemoryUsage(String cacheName, long usedBytes);
+    
+    /**
+     * Retrieve the number of bytes most recently reported as being held by the cache.
+     * 
+     * @param cacheName  The cache name.
+     * @return Bytes in use.
+     * @throws NoStatsForCache if the cache has never reported its memory usage.
+     */
+    long memoryUsage(String cacheName);
 }
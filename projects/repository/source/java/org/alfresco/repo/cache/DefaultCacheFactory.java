@@ -35,6 +35,10 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p>
+ * A cache may instead be held outside of the Java heap by setting {name}.store-type to
+ * <tt>off-heap</tt>, in which case an {@link OffHeapSimpleCache} bounded by {name}.maxBytes
+ * is created.
  * 
  * @author Matt Ward
  */
@@ -42,14 +46,50 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final String STORE_TYPE_HEAP = "heap";
+    private static final String STORE_TYPE_OFF_HEAP = "off-heap";
     
+    private CacheStatistics cacheStatistics;
+    
+    /**
+     * Set the statistics service that {@link OffHeapSimpleCache off-heap caches} report to.
+     * 
+     * @param cacheStatistics CacheStatistics (optional)
+     */
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
     
     @Override
     public SimpleCache<K, V> createCache(String cacheName)
     {
+        String storeType = getProperty(cacheName, "store-type", STORE_TYPE_HEAP);
+        if (storeType.equals(STORE_TYPE_OFF_HEAP))
+        {
+            return createOffHeapCache(cacheName);
+        }
+        else if (!storeType.equals(STORE_TYPE_HEAP))
+        {
+            throw new IllegalArgumentException("Unsupported store-type '" + storeType + "' for cache " + cacheName);
+        }
         return createLocalCache(cacheName);
     }
     
+    private SimpleCache<K, V> createOffHeapCache(String cacheName)
+    {
+        long maxBytes = maxBytes(cacheName);
+        int ttlSecs = ttlSeconds(cacheName);
+        int maxIdleSeconds = maxIdleSeconds(cacheName);
+        OffHeapSimpleCache<K, V> cache = new OffHeapSimpleCache<K, V>(maxBytes, ttlSecs, maxIdleSeconds, cacheName);
+        cache.setCacheStats(cacheStatistics);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Creating cache: " + cache);
+        }
+        return cache;
+    }
+    
     private SimpleCache<K, V> createLocalCache(String cacheName)
     {
         int maxItems = maxItems(cacheName);
@@ -71,6 +111,17 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         return maxItems.intValue();
     }
     
+    private long maxBytes(String cacheName)
+    {
+        String maxBytesStr = getProperty(cacheName, "maxBytes", "0");
+        long maxBytes = Long.parseLong(maxBytesStr);
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("Property " + cacheName + ".maxBytes must be set for an off-heap cache");
+        }
+        return maxBytes;
+    }
+    
     private boolean useMaxItems(String cacheName)
     {
         String evictionPolicy = getProperty(cacheName, "eviction-policy", EVICT_NONE);
@@ -29,12 +29,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.alfresco.repo.cache.TransactionStats.OpType;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -42,99 +39,60 @@ import org.springframework.context.ApplicationContextAware;
 /**
  * Simple non-persistent implementation of {@link CacheStatistics}. Statistics
  * are empty at repository startup.
+ * <p>
+ * Statistics are accumulated in striped {@link LongAdder counters} rather than under a lock,
+ * so that many threads may add to the statistics of the same cache without contending.
+ * Reads are not atomic across counters: a count and total time read while a transaction's
+ * statistics are being added may each include or exclude that transaction.
  * 
  * @since 5.0
  * @author Matt Ward
  */
 public class InMemoryCacheStatistics implements CacheStatistics, ApplicationContextAware
 {
-    /** Read/Write locks by cache name */
-    private final ConcurrentMap<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
-    private Map<String, Map<OpType, OperationStats>> cacheToStatsMap = new HashMap<>();
+    private final ConcurrentMap<String, CacheCounters> cacheToStatsMap = new ConcurrentHashMap<>();
+    /** Most recently reported memory usage (in bytes) by cache name */
+    private final ConcurrentMap<String, Long> memoryUsageMap = new ConcurrentHashMap<>();
     private ApplicationContext applicationContext;
     
     
     @Override
     public long count(String cacheName, OpType opType)
     {
-        ReadLock readLock = getReadLock(cacheName);
-        readLock.lock();
-        try
-        {
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            if (cacheStats == null)
-            {
-                throw new NoStatsForCache(cacheName);
-            }
-            OperationStats opStats = cacheStats.get(opType);
-            return opStats.getCount();
-        }
-        finally
-        {
-            readLock.unlock();
-        }
+        return getCounters(cacheName).count(opType);
     }
 
     @Override
     public double meanTime(String cacheName, OpType opType)
     {
-        ReadLock readLock = getReadLock(cacheName);
-        readLock.lock();
-        try
-        {
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            if (cacheStats == null)
-            {
-                throw new NoStatsForCache(cacheName);
-            }
-            OperationStats opStats = cacheStats.get(opType);
-            return opStats.meanTime();
-        }
-        finally
-        {
-            readLock.unlock();
-        }
+        return getCounters(cacheName).getStats(opType).meanTime();
     }
 
     @Override
     public void add(String cacheName, TransactionStats txStats)
     {
         boolean registerCacheStats = false;
-        WriteLock writeLock = getWriteLock(cacheName);
-        writeLock.lock();
-        try
+        // Are we adding new stats for a previously unseen cache?
+        CacheCounters counters = cacheToStatsMap.get(cacheName);
+        if (counters == null)
         {
-            // Are we adding new stats for a previously unseen cache?
-            registerCacheStats = !cacheToStatsMap.containsKey(cacheName);
-            if (registerCacheStats)
+            // There are no statistics yet for this cache. 
+            CacheCounters newCounters = new CacheCounters();
+            counters = cacheToStatsMap.putIfAbsent(cacheName, newCounters);
+            if (counters == null)
             {
-                // There are no statistics yet for this cache. 
-                cacheToStatsMap.put(cacheName, new HashMap<OpType, OperationStats>());
-            }
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            
-            for (OpType opType : OpType.values())
-            {                
-                SummaryStatistics txOpSummary = txStats.getTimings(opType);
-                long count = txOpSummary.getN();
-                double totalTime = txOpSummary.getSum();
-                    
-                OperationStats oldStats = cacheStats.get(opType);
-                OperationStats newStats;
-                if (oldStats == null)
-                {
-                    newStats = new OperationStats(totalTime, count);
-                }
-                else
-                {
-                    newStats = new OperationStats(oldStats, totalTime, count);
-                }
-                cacheStats.put(opType, newStats);
+                counters = newCounters;
+                registerCacheStats = true;
             }
         }
-        finally
+        
+        for (OpType opType : OpType.values())
         {
-            writeLock.unlock();
+            long count = txStats.getCount(opType);
+            if (count > 0)
+            {
+                counters.add(opType, count, txStats.getTotalTime(opType));
+            }
         }
         
         if (registerCacheStats)
@@ -148,65 +106,48 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
     @Override
     public double hitMissRatio(String cacheName)
     {
-        ReadLock readLock = getReadLock(cacheName);
-        readLock.lock();
-        try
-        {
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            if (cacheStats == null)
-            {
-                throw new NoStatsForCache(cacheName);
-            }
-            long hits = cacheStats.get(OpType.GET_HIT).getCount();
-            long misses = cacheStats.get(OpType.GET_MISS).getCount();
-            return (double)hits / (hits+misses);
-        }
-        finally
-        {
-            readLock.unlock();
-        }
+        CacheCounters counters = getCounters(cacheName);
+        long hits = counters.count(OpType.GET_HIT);
+        long misses = counters.count(OpType.GET_MISS);
+        return (double)hits / (hits+misses);
     }
     
     @Override
     public long numGets(String cacheName)
     {
-        ReadLock readLock = getReadLock(cacheName);
-        readLock.lock();
-        try
-        {
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            if (cacheStats == null)
-            {
-                throw new NoStatsForCache(cacheName);
-            }
-            long hits = cacheStats.get(OpType.GET_HIT).getCount();
-            long misses = cacheStats.get(OpType.GET_MISS).getCount();
-            return hits+misses;
-        }
-        finally
-        {
-            readLock.unlock();
-        }
+        CacheCounters counters = getCounters(cacheName);
+        long hits = counters.count(OpType.GET_HIT);
+        long misses = counters.count(OpType.GET_MISS);
+        return hits+misses;
     }
     
     @Override
     public Map<OpType, OperationStats> allStats(String cacheName)
     {
-        ReadLock readLock = getReadLock(cacheName);
-        readLock.lock();
-        try
+        CacheCounters counters = getCounters(cacheName);
+        Map<OpType, OperationStats> cacheStats = new HashMap<>();
+        for (OpType opType : OpType.values())
         {
-            Map<OpType, OperationStats> cacheStats = cacheToStatsMap.get(cacheName);
-            if (cacheStats == null)
-            {
-                throw new NoStatsForCache(cacheName);
-            }
-            return new HashMap<>(cacheStats);
+            cacheStats.put(opType, counters.getStats(opType));
         }
-        finally
+        return cacheStats;
+    }
+
+    @Override
+    public void updateMemoryUsage(String cacheName, long usedBytes)
+    {
+        memoryUsageMap.put(cacheName, usedBytes);
+    }
+    
+    @Override
+    public long memoryUsage(String cacheName)
+    {
+        Long usedBytes = memoryUsageMap.get(cacheName);
+        if (usedBytes == null)
         {
-            readLock.unlock();
+            throw new NoStatsForCache(cacheName);
         }
+        return usedBytes;
     }
 
     @Override
@@ -217,37 +158,60 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
     
     
     /**
-     * Gets a {@link ReentrantReadWriteLock} for a specific cache, lazily
-     * creating the lock if necessary. Locks may be created per cache
-     * (rather than hashing to a smaller pool) since the number of
-     * caches is not too large.
+     * Gets the counters for a specific cache.
      * 
-     * @param cacheName  Cache name to obtain lock for.
-     * @return ReentrantReadWriteLock
+     * @param cacheName  Cache name to obtain counters for.
+     * @return CacheCounters
+     * @throws NoStatsForCache if no statistics have been added for the cache
      */
-    private ReentrantReadWriteLock getLock(String cacheName)
+    private CacheCounters getCounters(String cacheName)
     {
-        if (!locks.containsKey(cacheName))
+        CacheCounters counters = cacheToStatsMap.get(cacheName);
+        if (counters == null)
         {
-            ReentrantReadWriteLock newLock = new ReentrantReadWriteLock();
-            if (locks.putIfAbsent(cacheName, newLock) == null)
-            {
-                // Lock was successfully added to map.
-                return newLock;
-            };
+            throw new NoStatsForCache(cacheName);
         }
-        return locks.get(cacheName);
+        return counters;
     }
     
-    private ReadLock getReadLock(String cacheName)
-    {
-        ReadLock readLock = getLock(cacheName).readLock();
-        return readLock;
-    }
     
-    private WriteLock getWriteLock(String cacheName)
+    /**
+     * The running totals for each operation type of a single cache.
+     */
+    private static final class CacheCounters
     {
-        WriteLock writeLock = getLock(cacheName).writeLock();
-        return writeLock;
+        private final LongAdder[] counts;
+        private final LongAdder[] totalTimes;
+        
+        private CacheCounters()
+        {
+            int numOpTypes = OpType.values().length;
+            counts = new LongAdder[numOpTypes];
+            totalTimes = new LongAdder[numOpTypes];
+            for (int i = 0; i < numOpTypes; i++)
+            {
+                counts[i] = new LongAdder();
+                totalTimes[i] = new LongAdder();
+            }
+        }
+        
+        private void add(OpType opType, long count, long totalTime)
+        {
+            counts[opType.ordinal()].add(count);
+            totalTimes[opType.ordinal()].add(totalTime);
+        }
+        
+        private long count(OpType opType)
+        {
+            return counts[opType.ordinal()].sum();
+        }
+        
+        private OperationStats getStats(OpType opType)
+        {
+            // Read the time first, so that a concurrent add cannot give a time without its count
+            long totalTime = totalTimes[opType.ordinal()].sum();
+            long count = counts[opType.ordinal()].sum();
+            return new OperationStats(totalTime, count);
+        }
     }
 }
@@ -0,0 +1,596 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that keeps its values outside of the Java heap.
+ * <p>
+ * Values are serialized and copied into direct {@link ByteBuffer buffers}; only the keys and a
+ * small amount of bookkeeping remain on the heap. The cache is bounded by the number of bytes held
+ * rather than by the number of items: when a put takes the cache over its byte budget, the least
+ * recently used entries are evicted until the cache fits again.
+ * <p>
+ * The key space is split into a fixed number of independently locked segments, each of which
+ * owns an equal share of the byte budget. Values larger than a segment's share are not cached.
+ * <p>
+ * Hit, miss, put and removal counts are reported to a {@link CacheStatistics} instance (if one
+ * is provided) in batches, together with the number of bytes currently in use.
+ *
+ * @since 5.2
+ */
+public final class OffHeapSimpleCache<K extends Serializable, V extends Object>
+    implements SimpleCache<K, V>, BeanNameAware
+{
+    private static final Log log = LogFactory.getLog(OffHeapSimpleCache.class);
+
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+    /** Number of operations a segment records before they are passed on to the {@link CacheStatistics} */
+    private static final int STATS_FLUSH_THRESHOLD = 1000;
+
+    private final Segment<K>[] segments;
+    private final long maxBytes;
+    private final int ttlSecs;
+    private final int maxIdleSecs;
+    private String cacheName;
+    private CacheStatistics cacheStats;
+
+    /**
+     * Construct a cache using the specified byte budget and name.
+     *
+     * @param maxBytes The maximum number of bytes of serialized values to hold off-heap.
+     * @param ttlSecs Cache items will expire once this time has passed after creation (0 = never)
+     * @param maxIdleSecs Cache items will expire when not accessed for this period (0 = never)
+     * @param cacheName An arbitrary cache name.
+     */
+    public OffHeapSimpleCache(long maxBytes, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        this(maxBytes, DEFAULT_SEGMENT_COUNT, ttlSecs, maxIdleSecs, cacheName);
+    }
+
+    /**
+     * Construct a cache using the specified byte budget, segment count and name.
+     *
+     * @param maxBytes The maximum number of bytes of serialized values to hold off-heap.
+     * @param segmentCount The number of independently locked segments the budget is divided between.
+     * @param ttlSecs Cache items will expire once this time has passed after creation (0 = never)
+     * @param maxIdleSecs Cache items will expire when not accessed for this period (0 = never)
+     * @param cacheName An arbitrary cache name.
+     */
+    public OffHeapSimpleCache(long maxBytes, int segmentCount, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        }
+        if (segmentCount <= 0)
+        {
+            throw new IllegalArgumentException("segmentCount must be positive, but was " + segmentCount);
+        }
+        this.maxBytes = maxBytes;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        setBeanName(cacheName);
+
+        long segmentBytes = Math.max(1L, maxBytes / segmentCount);
+        @SuppressWarnings("unchecked")
+        Segment<K>[] segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment<K>(segmentBytes, ttlSecs * 1000L, maxIdleSecs * 1000L);
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * Provide the statistics service that hits, misses and memory usage are reported to.
+     *
+     * @param cacheStats CacheStatistics (may be <tt>null</tt> to disable reporting)
+     */
+    public void setCacheStats(CacheStatistics cacheStats)
+    {
+        this.cacheStats = cacheStats;
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        Segment<K> segment = segmentFor(key);
+        synchronized (segment)
+        {
+            return segment.getLive(key, false) != null;
+        }
+    }
+
+    /**
+     * @return Returns a snapshot of the keys currently held by the cache
+     */
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<K>();
+        for (Segment<K> segment : segments)
+        {
+            synchronized (segment)
+            {
+                keys.addAll(segment.entries.keySet());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        Segment<K> segment = segmentFor(key);
+        ByteBuffer buffer;
+        TransactionStats toFlush;
+        synchronized (segment)
+        {
+            long startNanos = System.nanoTime();
+            OffHeapEntry entry = segment.getLive(key, true);
+            long endNanos = System.nanoTime();
+            if (entry == null)
+            {
+                segment.stats.record(startNanos, endNanos, OpType.GET_MISS);
+                buffer = null;
+            }
+            else
+            {
+                segment.stats.record(startNanos, endNanos, OpType.GET_HIT);
+                buffer = entry.buffer.duplicate();
+            }
+            toFlush = segment.takeStatsIfDue();
+        }
+        flushStats(toFlush);
+
+        // Deserialize outside of the segment lock; the buffer is never written to once published
+        return buffer == null ? null : deserialize(buffer);
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        putAndCheckUpdate(key, value);
+    }
+
+    /**
+     * <code>put</code> method that may be used to check for updates in a thread-safe manner.
+     * Values are compared using their serialized form.
+     *
+     * @return <code>true</code> if the put resulted in a change in value, <code>false</code> otherwise.
+     */
+    public boolean putAndCheckUpdate(K key, V value)
+    {
+        // Serialize outside of the segment lock
+        byte[] bytes = serialize(value);
+        if (log.isDebugEnabled() && bytes.length > maxBytes / segments.length)
+        {
+            log.debug("Value of " + bytes.length + " bytes exceeds the segment budget and will not be cached: " + cacheName);
+        }
+        Segment<K> segment = segmentFor(key);
+        boolean updated;
+        TransactionStats toFlush;
+        synchronized (segment)
+        {
+            long startNanos = System.nanoTime();
+            updated = segment.put(key, bytes);
+            long endNanos = System.nanoTime();
+            segment.stats.record(startNanos, endNanos, OpType.PUT);
+            toFlush = segment.takeStatsIfDue();
+        }
+        flushStats(toFlush);
+        return updated;
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        Segment<K> segment = segmentFor(key);
+        TransactionStats toFlush;
+        synchronized (segment)
+        {
+            long startNanos = System.nanoTime();
+            segment.remove(key);
+            long endNanos = System.nanoTime();
+            segment.stats.record(startNanos, endNanos, OpType.REMOVE);
+            toFlush = segment.takeStatsIfDue();
+        }
+        flushStats(toFlush);
+    }
+
+    @Override
+    public void clear()
+    {
+        long startNanos = System.nanoTime();
+        for (Segment<K> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+        long endNanos = System.nanoTime();
+
+        TransactionStats toFlush;
+        Segment<K> segment = segments[0];
+        synchronized (segment)
+        {
+            segment.stats.record(startNanos, endNanos, OpType.CLEAR);
+            toFlush = segment.takeStatsIfDue();
+        }
+        flushStats(toFlush);
+    }
+
+    /**
+     * Pass on any statistics that have not yet been reported to the {@link CacheStatistics}.
+     */
+    public void flushStatistics()
+    {
+        for (Segment<K> segment : segments)
+        {
+            TransactionStats toFlush;
+            synchronized (segment)
+            {
+                toFlush = segment.takeStats();
+            }
+            flushStats(toFlush);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapSimpleCache[maxBytes=" + maxBytes + ", segments=" + segments.length + ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * Gets the maximum number of bytes of serialized values that the cache will hold.
+     *
+     * @return maxBytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes of serialized values currently held.
+     *
+     * @return the current off-heap usage in bytes
+     */
+    public long getUsedBytes()
+    {
+        long usedBytes = 0L;
+        for (Segment<K> segment : segments)
+        {
+            synchronized (segment)
+            {
+                usedBytes += segment.usedBytes;
+            }
+        }
+        return usedBytes;
+    }
+
+    /**
+     * Gets the number of entries currently held.
+     *
+     * @return the number of entries
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment<K> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the time-to-live setting in seconds.
+     *
+     * @return ttlSecs
+     */
+    public int getTTLSecs()
+    {
+        return this.ttlSecs;
+    }
+
+    /**
+     * Get the time-to-idle setting in seconds.
+     *
+     * @return maxIdleSecs
+     */
+    public int getMaxIdleSecs()
+    {
+        return this.maxIdleSecs;
+    }
+
+    /**
+     * Retrieve the name of this cache.
+     *
+     * @return the cacheName
+     */
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    /**
+     * Since there are many cache instances, it is useful to be able to associate
+     * a name with each one.
+     *
+     * @param cacheName Set automatically by Spring, but can be set manually if required.
+     */
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    private Segment<K> segmentFor(K key)
+    {
+        int hash = key == null ? 0 : key.hashCode();
+        // Spread the bits so that keys with poor low-order hash bits still use all the segments
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    private void flushStats(TransactionStats toFlush)
+    {
+        if (toFlush == null || cacheStats == null || cacheName == null)
+        {
+            return;
+        }
+        cacheStats.add(cacheName, toFlush);
+        cacheStats.updateMemoryUsage(cacheName, getUsedBytes());
+    }
+
+    private byte[] serialize(V value)
+    {
+        if (value != null && !(value instanceof Serializable))
+        {
+            throw new IllegalArgumentException(
+                    "Values stored in an off-heap cache must be Serializable: " + value.getClass().getName());
+        }
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            return bos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Failed to serialize value for cache " + cacheName, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V deserialize(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try
+        {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try
+            {
+                return (V) ois.readObject();
+            }
+            finally
+            {
+                ois.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Failed to deserialize value from cache " + cacheName, e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalStateException("Failed to deserialize value from cache " + cacheName, e);
+        }
+    }
+
+    /**
+     * Serialized value held in direct memory, along with the timestamps needed for expiry.
+     */
+    private static final class OffHeapEntry
+    {
+        private final ByteBuffer buffer;
+        private final long createdMs;
+        private long lastAccessMs;
+
+        private OffHeapEntry(byte[] bytes, long nowMs)
+        {
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            direct.flip();
+            this.buffer = direct.asReadOnlyBuffer();
+            this.createdMs = nowMs;
+            this.lastAccessMs = nowMs;
+        }
+
+        private int size()
+        {
+            return buffer.capacity();
+        }
+    }
+
+    /**
+     * A share of the cache, guarded by its own monitor. Entries are kept in access order so that
+     * the eldest entry is always the least recently used one.
+     */
+    private static final class Segment<K>
+    {
+        private final long maxBytes;
+        private final long ttlMs;
+        private final long maxIdleMs;
+        private final LinkedHashMap<K, OffHeapEntry> entries = new LinkedHashMap<K, OffHeapEntry>(64, 0.75f, true);
+        private long usedBytes;
+        private TransactionStats stats = new TransactionStats();
+        private int pendingOps;
+
+        private Segment(long maxBytes, long ttlMs, long maxIdleMs)
+        {
+            this.maxBytes = maxBytes;
+            this.ttlMs = ttlMs;
+            this.maxIdleMs = maxIdleMs;
+        }
+
+        /**
+         * @param touch     <tt>true</tt> to reset the idle time of the entry
+         * @return          the unexpired entry for the key or <tt>null</tt>
+         */
+        private OffHeapEntry getLive(K key, boolean touch)
+        {
+            OffHeapEntry entry = entries.get(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            long nowMs = System.currentTimeMillis();
+            if (isExpired(entry, nowMs))
+            {
+                remove(key);
+                return null;
+            }
+            if (touch)
+            {
+                entry.lastAccessMs = nowMs;
+            }
+            return entry;
+        }
+
+        private boolean isExpired(OffHeapEntry entry, long nowMs)
+        {
+            if (ttlMs > 0 && nowMs - entry.createdMs >= ttlMs)
+            {
+                return true;
+            }
+            if (maxIdleMs > 0 && nowMs - entry.lastAccessMs >= maxIdleMs)
+            {
+                return true;
+            }
+            return false;
+        }
+
+        private boolean put(K key, byte[] bytes)
+        {
+            OffHeapEntry prior = entries.remove(key);
+            boolean updated = false;
+            if (prior != null)
+            {
+                usedBytes -= prior.size();
+                updated = !prior.buffer.equals(ByteBuffer.wrap(bytes));
+            }
+            if (bytes.length > maxBytes)
+            {
+                // Too large to ever fit
+                return updated;
+            }
+            // Make room before allocating so that the budget is never exceeded
+            evict(maxBytes - bytes.length);
+            OffHeapEntry entry = new OffHeapEntry(bytes, System.currentTimeMillis());
+            entries.put(key, entry);
+            usedBytes += entry.size();
+            return updated;
+        }
+
+        /**
+         * Evict least recently used entries until no more than the given number of bytes are in use.
+         */
+        private void evict(long targetBytes)
+        {
+            Iterator<OffHeapEntry> it = entries.values().iterator();
+            while (usedBytes > targetBytes && it.hasNext())
+            {
+                OffHeapEntry eldest = it.next();
+                it.remove();
+                usedBytes -= eldest.size();
+            }
+        }
+
+        private void remove(K key)
+        {
+            OffHeapEntry prior = entries.remove(key);
+            if (prior != null)
+            {
+                usedBytes -= prior.size();
+            }
+        }
+
+        private void clear()
+        {
+            entries.clear();
+            usedBytes = 0L;
+        }
+
+        private TransactionStats takeStatsIfDue()
+        {
+            if (++pendingOps < STATS_FLUSH_THRESHOLD)
+            {
+                return null;
+            }
+            return takeStats();
+        }
+
+        private TransactionStats takeStats()
+        {
+            if (pendingOps == 0)
+            {
+                return null;
+            }
+            TransactionStats taken = stats;
+            stats = new TransactionStats();
+            pendingOps = 0;
+            return taken;
+        }
+    }
+}
@@ -25,20 +25,20 @@
  */
 package org.alfresco.repo.cache;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
-
 /**
  * Only to be used within a single transaction/thread.
+ * <p>
+ * Only the count and total time of each operation type are kept, so that recording an
+ * operation is cheap enough for statistics to be left enabled on busy caches.
  * 
  * @since 5.0
  * @author Matt Ward
  */
 public class TransactionStats
 {
-    private Map<OpType, SummaryStatistics> timings = new HashMap<>();
+    private static final int NUM_OP_TYPES = OpType.values().length;
+    private final long[] counts = new long[NUM_OP_TYPES];
+    private final long[] totalTimes = new long[NUM_OP_TYPES];
     
     /**
      * Cache operation type.
@@ -54,19 +54,24 @@ public class TransactionStats
     
     public long getCount(OpType op)
     {
-        SummaryStatistics stats = getTimings(op);
-        return stats.getN();
+        return counts[op.ordinal()];
     }
     
-    public SummaryStatistics getTimings(OpType op)
+    /**
+     * @return the total time in nanoseconds spent in operations of the given type
+     */
+    public long getTotalTime(OpType op)
     {
-        SummaryStatistics opTimings = timings.get(op);
-        if (opTimings == null)
-        {
-            opTimings = new SummaryStatistics();
-            timings.put(op, opTimings);
-        }
-        return opTimings;
+        return totalTimes[op.ordinal()];
+    }
+    
+    /**
+     * @return the mean time in nanoseconds of operations of the given type, or NaN if there were none
+     */
+    public double getMeanTime(OpType op)
+    {
+        long count = counts[op.ordinal()];
+        return count == 0 ? Double.NaN : (double) totalTimes[op.ordinal()] / count;
     }
     
     public void record(long start, long end, OpType op)
@@ -75,13 +80,7 @@ public class TransactionStats
         {
             throw new IllegalArgumentException("End time [" + end + "] occurs before start time [" + start + "].");
         }
-        double timeTaken = end - start;
-        addTiming(op, timeTaken);
-    }
-
-    private void addTiming(OpType op, double time)
-    {
-        SummaryStatistics opTimings = getTimings(op);
-        opTimings.addValue(time);
+        counts[op.ordinal()]++;
+        totalTimes[op.ordinal()] += end - start;
     }
 }
@@ -492,9 +492,9 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     public static <KEY extends Serializable, VAL> void putSharedCacheValue(SimpleCache<KEY, ValueHolder<VAL>> sharedCache, KEY key, VAL value, TransactionStats stats)
     {
         ValueHolder<VAL> wrapper = new ValueHolder<VAL>(value);
-        final long startNanos = System.nanoTime(); // TODO: enabled?
+        final long startNanos = stats != null ? System.nanoTime() : 0;
         sharedCache.put(key, wrapper);
-        final long endNanos = System.nanoTime();
+        final long endNanos = stats != null ? System.nanoTime() : 0;
         if (stats != null)
         {
             stats.record(startNanos, endNanos, OpType.PUT);
@@ -977,11 +977,14 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 // transfer any removed items
                 for (Serializable key : txnData.removedItemsCache)
                 {
-                    final long startNanos = System.nanoTime();
+                    final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
                     sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
+                    final long endNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+                    if (cacheStatsEnabled)
+                    {
+                        TransactionStats stats = txnData.stats;
+                        stats.record(startNanos, endNanos, OpType.REMOVE);
+                    }
                 }
                 if (isDebugEnabled)
                 {
@@ -1049,11 +1052,14 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 // transfer any removed items
                 for (Serializable key : txnData.removedItemsCache)
                 {
-                    final long startNanos = System.nanoTime();
+                    final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
                     sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
+                    final long endNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+                    if (cacheStatsEnabled)
+                    {
+                        TransactionStats stats = txnData.stats;
+                        stats.record(startNanos, endNanos, OpType.REMOVE);
+                    }
                 }
                 if (isDebugEnabled)
                 {
@@ -1071,7 +1077,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 {
                     bucket.doPostCommit(
                             sharedCache,
-                            key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly, txnData.stats);
+                            key, this.isMutable, this.allowEqualsChecks, txnData.isReadOnly,
+                            cacheStatsEnabled ? txnData.stats : null);
                 }
                 catch (Exception e)
                 {
@@ -1139,11 +1146,14 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 // transfer any removed items
                 for (Serializable key : txnData.removedItemsCache)
                 {
-                    final long startNanos = System.nanoTime();
+                    final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
                     sharedCache.remove(key);
-                    final long endNanos = System.nanoTime();
-                    TransactionStats stats = txnData.stats;
-                    stats.record(startNanos, endNanos, OpType.REMOVE);
+                    final long endNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+                    if (cacheStatsEnabled)
+                    {
+                        TransactionStats stats = txnData.stats;
+                        stats.record(startNanos, endNanos, OpType.REMOVE);
+                    }
                 }
                 if (isDebugEnabled)
                 {
@@ -27,6 +27,13 @@ package org.alfresco.repo.cache.lookup;
 
 import java.io.Serializable;
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -161,6 +168,27 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         int deleteByValue(V1 value);
     }
     
+    /**
+     * Optional extension for lookups that are able to find several entities in a single call to
+     * the persistence layer.  Callbacks that do not implement this interface still work with
+     * {@link EntityLookupCache#getByKeys(Collection)}, but each cache miss is resolved using an
+     * individual {@link EntityLookupCallbackDAO#findByKey(Serializable) findByKey} call.
+     * 
+     * @since 5.2
+     */
+    public static interface BatchEntityLookupCallbackDAO<K1 extends Serializable, V1 extends Object, VK1 extends Serializable>
+            extends EntityLookupCallbackDAO<K1, V1, VK1>
+    {
+        /**
+         * Find the entities for the given keys.  Keys that do not reference an entity are simply
+         * left out of the results.
+         * 
+         * @param keys          the keys (IDs) used to identify the entities (never <tt>null</tt> or empty)
+         * @return              Returns the entities that were found, in any order
+         */
+        List<Pair<K1, V1>> findByKeys(List<K1> keys);
+    }
+    
     /**
      * Adaptor for implementations that support immutable entities.  The update and delete operations
      * throw {@link UnsupportedOperationException}.
@@ -328,6 +356,121 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
         // Resolve it
         Pair<K, V> entityPair = entityLookup.findByKey(key);
+        cacheKeyLookup(key, entityPair);
+        // Done
+        return entityPair;
+    }
+    
+    /**
+     * Find the entities associated with the given keys.  All keys that are not in the cache are
+     * resolved together: a {@link BatchEntityLookupCallbackDAO batch-capable callback} will be
+     * asked for all of them in a single call; any other callback is used key by key.
+     * <p/>
+     * Keys that do not reference an entity are left out of the results, exactly as if
+     * {@link #getByKey(Serializable)} had returned <tt>null</tt> for them.
+     * 
+     * @param keys                  The entity keys, which may be valid or invalid (<tt>null</tt> not allowed)
+     * @return                      Returns the key-value pairs found, in the iteration order of the given keys
+     *                              and without duplicates
+     * 
+     * @since 5.2
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getByKeys(Collection<K> keys)
+    {
+        Set<K> uniqueKeys = new LinkedHashSet<K>(keys);
+        if (uniqueKeys.contains(null))
+        {
+            throw new IllegalArgumentException("An entity lookup key may not be null");
+        }
+        Map<K, Pair<K, V>> entityPairsByKey = new HashMap<K, Pair<K, V>>(uniqueKeys.size() * 2);
+        List<K> missingKeys = new ArrayList<K>(uniqueKeys.size());
+        if (cache == null)
+        {
+            // Handle missing cache
+            missingKeys.addAll(uniqueKeys);
+        }
+        else
+        {
+            // Look in the cache
+            for (K key : uniqueKeys)
+            {
+                V value = (V) cache.get(new CacheRegionKey(cacheRegion, key));
+                if (value == null)
+                {
+                    missingKeys.add(key);
+                }
+                else if (value.equals(VALUE_NOT_FOUND))
+                {
+                    // We checked before
+                }
+                else if (value.equals(VALUE_NULL))
+                {
+                    entityPairsByKey.put(key, new Pair<K, V>(key, null));
+                }
+                else
+                {
+                    entityPairsByKey.put(key, new Pair<K, V>(key, value));
+                }
+            }
+        }
+        // Resolve the misses
+        if (missingKeys.size() > 0)
+        {
+            List<Pair<K, V>> entityPairs;
+            if (entityLookup instanceof BatchEntityLookupCallbackDAO)
+            {
+                entityPairs = ((BatchEntityLookupCallbackDAO<K, V, VK>) entityLookup).findByKeys(missingKeys);
+            }
+            else
+            {
+                entityPairs = new ArrayList<Pair<K, V>>(missingKeys.size());
+                for (K key : missingKeys)
+                {
+                    Pair<K, V> entityPair = entityLookup.findByKey(key);
+                    if (entityPair != null)
+                    {
+                        entityPairs.add(entityPair);
+                    }
+                }
+            }
+            for (Pair<K, V> entityPair : entityPairs)
+            {
+                entityPairsByKey.put(entityPair.getFirst(), entityPair);
+            }
+            if (cache != null)
+            {
+                for (K key : missingKeys)
+                {
+                    cacheKeyLookup(key, entityPairsByKey.get(key));
+                }
+            }
+        }
+        // Keep the client's ordering
+        List<Pair<K, V>> results = new ArrayList<Pair<K, V>>(entityPairsByKey.size());
+        for (K key : uniqueKeys)
+        {
+            Pair<K, V> entityPair = entityPairsByKey.get(key);
+            if (entityPair != null)
+            {
+                results.add(entityPair);
+            }
+        }
+        // Done
+        return results;
+    }
+    
+    /**
+     * Cache the result of a lookup by key, including the value-key mapping where the value
+     * has a good key.
+     * 
+     * @param key                   the key that was looked up
+     * @param entityPair            the entity found or <tt>null</tt> if there was none
+     */
+    @SuppressWarnings("unchecked")
+    private void cacheKeyLookup(K key, Pair<K, V> entityPair)
+    {
+        CacheRegionKey keyCacheKey = new CacheRegionKey(cacheRegion, key);
         if (entityPair == null)
         {
             // Cache "not found"
@@ -335,7 +478,7 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
         else
         {
-            value = entityPair.getSecond();
+            V value = entityPair.getSecond();
             // Get the value key
             VK valueKey = (value == null) ? (VK)VALUE_NULL : entityLookup.getValueKey(value);
             // Check if the value has a good key
@@ -349,8 +492,6 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
                     keyCacheKey,
                     (value == null ? VALUE_NULL : value));
         }
-        // Done
-        return entityPair;
     }
     
     /**
@@ -0,0 +1,929 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A persistent index of the files held by a {@link ContentCacheImpl}, recording the size, last access
+ * time and content URL of every cache file.
+ * <p>
+ * The index is kept in a memory-mapped file below the cache root made up of fixed size records, so
+ * each change is a write to a single record and the index is read back sequentially on startup - there
+ * is no need to rescan the cache directories. Only 64-bit hashes of the paths and content URLs are held
+ * on the heap, in open-addressing tables of slot numbers; a match is confirmed against the record. The
+ * least recently used order is not held at all: it is worked out from the records when the files are
+ * {@link #processFiles(FileHandler) visited}, which the cleaner does far less often than files are read.
+ * <p>
+ * Lookups and {@link #touch(File) touches} share a read lock, so reads of the cache do not wait for each
+ * other; only adding, detaching and removing files take the write lock.
+ * <p>
+ * Changes to the records are left to the operating system to write out, which survives the server
+ * process stopping but not the machine stopping. The records are forced to disk by {@link #force()},
+ * which the cleaner calls after each run, and on {@link #close()}.
+ * <p>
+ * Where a content URL is too long to fit into a record the file is indexed without it, so it can
+ * still be cleaned up but its content cannot be found through the index after a restart.
+ * <p>
+ * When the index is first created any files already in the cache are added to it, without their content
+ * URLs, so that they are visited by the cleaner.
+ *
+ * @since 5.2
+ */
+public class CacheFileIndex
+{
+    private static final Log log = LogFactory.getLog(CacheFileIndex.class);
+    private static final String INDEX_FILENAME = "cache-index.dat";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* Record layout: status, size, last access, path length, URL length, path and URL bytes */
+    private static final int RECORD_SIZE = 256;
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 2 + 2;
+    private static final int RECORDS_PER_SEGMENT = 65536;
+    private static final long SEGMENT_SIZE = (long) RECORD_SIZE * RECORDS_PER_SEGMENT;
+    private static final int OFFSET_SIZE = 1;
+    private static final int OFFSET_LAST_ACCESS = 1 + 8;
+    private static final int OFFSET_PATH_LENGTH = 1 + 8 + 8;
+    private static final int OFFSET_URL_LENGTH = 1 + 8 + 8 + 2;
+    private static final int NO_SLOT = -1;
+
+    private static final byte STATUS_FREE = 0;
+    /** The file holds content for its URL */
+    private static final byte STATUS_ACTIVE = 1;
+    /** The URL has been removed from the cache, but the file has yet to be cleaned up */
+    private static final byte STATUS_DETACHED = 2;
+
+    private File cacheRoot;
+    private String cacheRootPath;
+    private RandomAccessFile indexFile;
+    private FileChannel channel;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private final SlotTable slotsByPath = new SlotTable();
+    private final SlotTable slotsByUrl = new SlotTable();
+    private final Deque<Integer> freeSlots = new ArrayDeque<Integer>();
+    private int nextSlot;
+    private long totalSize;
+
+    /**
+     * Specify the directory of the cache whose files are indexed
+     *
+     * @param cacheRoot File
+     */
+    public void setCacheRoot(File cacheRoot)
+    {
+        this.cacheRoot = cacheRoot;
+        this.cacheRootPath = cacheRoot.getAbsolutePath() + File.separator;
+    }
+
+    /**
+     * Lifecycle method: maps the index file, creating it if required, and loads the entries.
+     */
+    public void open()
+    {
+        if (cacheRoot == null)
+        {
+            throw new IllegalStateException("cacheRoot must be set before opening the index.");
+        }
+        if (!cacheRoot.exists())
+        {
+            cacheRoot.mkdirs();
+        }
+        File file = new File(cacheRoot, INDEX_FILENAME);
+        boolean created = !file.exists();
+        lock.writeLock().lock();
+        try
+        {
+            try
+            {
+                indexFile = new RandomAccessFile(file, "rw");
+                channel = indexFile.getChannel();
+                long numSegments = (channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+                for (int i = 0; i < numSegments; i++)
+                {
+                    mapSegment();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Unable to open cache index " + file, e);
+            }
+
+            int numSlots = segments.size() * RECORDS_PER_SEGMENT;
+            for (int slot = 0; slot < numSlots; slot++)
+            {
+                ByteBuffer record = record(slot);
+                byte status = record.get();
+                if (status == STATUS_FREE)
+                {
+                    continue;
+                }
+                slotsByPath.add(hash(record, HEADER_SIZE, record.getShort(OFFSET_PATH_LENGTH)), slot);
+                if (status == STATUS_ACTIVE)
+                {
+                    slotsByUrl.add(hash(record, HEADER_SIZE + record.getShort(OFFSET_PATH_LENGTH), record.getShort(OFFSET_URL_LENGTH)), slot);
+                }
+                totalSize += record.getLong(OFFSET_SIZE);
+                nextSlot = slot + 1;
+            }
+            for (int slot = 0; slot < nextSlot; slot++)
+            {
+                if (record(slot).get() == STATUS_FREE)
+                {
+                    freeSlots.push(slot);
+                }
+            }
+            if (created)
+            {
+                indexExistingFiles(cacheRoot);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        if (log.isInfoEnabled())
+        {
+            log.info("Loaded cache index " + file + ": " + size() + " files, " + getTotalSize() + " bytes");
+        }
+    }
+
+    /**
+     * Lifecycle method: writes out and unmaps the index.
+     */
+    public void close()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            for (MappedByteBuffer segment : segments)
+            {
+                segment.force();
+            }
+            segments.clear();
+            slotsByPath.clear();
+            slotsByUrl.clear();
+            freeSlots.clear();
+            nextSlot = 0;
+            totalSize = 0;
+            try
+            {
+                if (indexFile != null)
+                {
+                    indexFile.close();
+                }
+            }
+            catch (IOException e)
+            {
+                log.warn("Unable to close cache index", e);
+            }
+            indexFile = null;
+            channel = null;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Force the changes made to the index out to disk.
+     */
+    public void force()
+    {
+        lock.readLock().lock();
+        try
+        {
+            for (MappedByteBuffer segment : segments)
+            {
+                segment.force();
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record a new cache file, replacing any existing entry for the same file.
+     *
+     * @param cacheFile the cache file
+     * @param contentUrl the URL of the content held by the file, or <tt>null</tt> if not known
+     * @param size the size of the file
+     * @return <tt>true</tt> if the file was indexed
+     */
+    public boolean put(File cacheFile, String contentUrl, long size)
+    {
+        String path = relativePath(cacheFile);
+        byte[] pathBytes = path == null ? null : path.getBytes(UTF8);
+        if (pathBytes == null || HEADER_SIZE + pathBytes.length > RECORD_SIZE)
+        {
+            if (log.isDebugEnabled())
+            {
+                log.debug("Not indexing cache file " + cacheFile + " for " + contentUrl);
+            }
+            return false;
+        }
+        byte[] urlBytes = contentUrl == null ? new byte[0] : contentUrl.getBytes(UTF8);
+        byte status = contentUrl == null ? STATUS_DETACHED : STATUS_ACTIVE;
+        if (HEADER_SIZE + pathBytes.length + urlBytes.length > RECORD_SIZE)
+        {
+            if (log.isDebugEnabled())
+            {
+                log.debug("Content URL too long to index, cache file " + cacheFile + " for " + contentUrl);
+            }
+            urlBytes = new byte[0];
+            status = STATUS_DETACHED;
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            int existing = findPath(pathBytes);
+            if (existing != NO_SLOT)
+            {
+                removeSlot(existing);
+            }
+            int previous = status == STATUS_ACTIVE ? findUrl(urlBytes) : NO_SLOT;
+            if (previous != NO_SLOT)
+            {
+                // The URL is now held by the new file
+                detachSlot(previous);
+            }
+
+            int slot = allocateSlot();
+            long now = System.currentTimeMillis();
+            ByteBuffer record = record(slot);
+            record.position(record.position() + 1);
+            record.putLong(size);
+            record.putLong(now);
+            record.putShort((short) pathBytes.length);
+            record.putShort((short) urlBytes.length);
+            record.put(pathBytes);
+            record.put(urlBytes);
+            // Only mark the record as in use once it is complete
+            record(slot).put(status);
+
+            slotsByPath.add(hash(pathBytes), slot);
+            if (status == STATUS_ACTIVE)
+            {
+                slotsByUrl.add(hash(urlBytes), slot);
+            }
+            totalSize += size;
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record that a cache file has been read. Touches only take the read lock, so concurrent reads
+     * of the cache are not serialized here.
+     *
+     * @param cacheFile the cache file
+     */
+    public void touch(File cacheFile)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int slot = slotFor(cacheFile);
+            if (slot != NO_SLOT)
+            {
+                // Concurrent touches of the same record all write much the same time
+                record(slot).putLong(OFFSET_LAST_ACCESS, System.currentTimeMillis());
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record that a content URL is no longer held by the cache. The file stays indexed until
+     * it is removed with {@link #remove(File)}.
+     *
+     * @param contentUrl the content URL
+     */
+    public void detach(String contentUrl)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            int slot = findUrl(contentUrl.getBytes(UTF8));
+            if (slot != NO_SLOT)
+            {
+                detachSlot(slot);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record that none of the content URLs are held by the cache any longer.
+     */
+    public void detachAll()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            for (int slot = 0; slot < nextSlot; slot++)
+            {
+                ByteBuffer record = record(slot);
+                if (record.get(0) == STATUS_ACTIVE)
+                {
+                    record.put(0, STATUS_DETACHED);
+                }
+            }
+            slotsByUrl.clear();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the entry of a cache file that has been deleted.
+     *
+     * @param cacheFile the cache file
+     */
+    public void remove(File cacheFile)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            int slot = slotFor(cacheFile);
+            if (slot != NO_SLOT)
+            {
+                removeSlot(slot);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param contentUrl the content URL
+     * @return the cache file holding the content, or <tt>null</tt> if none is indexed
+     */
+    public File getCacheFile(String contentUrl)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int slot = findUrl(contentUrl.getBytes(UTF8));
+            return slot == NO_SLOT ? null : fileForSlot(slot);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param cacheFile the cache file
+     * @return the URL of the content held by the file, or <tt>null</tt> if the file is not indexed
+     *         or the URL could not be recorded
+     */
+    public String getContentUrl(File cacheFile)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int slot = slotFor(cacheFile);
+            if (slot == NO_SLOT)
+            {
+                return null;
+            }
+            ByteBuffer record = record(slot);
+            int pathLength = record.getShort(OFFSET_PATH_LENGTH);
+            int urlLength = record.getShort(OFFSET_URL_LENGTH);
+            record.position(HEADER_SIZE + pathLength);
+            return urlLength == 0 ? null : readString(record, urlLength);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param cacheFile the cache file
+     * @return <tt>true</tt> if the file is indexed
+     */
+    public boolean contains(File cacheFile)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return slotFor(cacheFile) != NO_SLOT;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param cacheFile the cache file
+     * @return the recorded size of the file, or <tt>-1</tt> if the file is not indexed
+     */
+    public long getSize(File cacheFile)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int slot = slotFor(cacheFile);
+            return slot == NO_SLOT ? -1L : record(slot).getLong(OFFSET_SIZE);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param cacheFile the cache file
+     * @return the time the file was last written or read, or <tt>-1</tt> if the file is not indexed
+     */
+    public long getLastAccess(File cacheFile)
+    {
+        lock.readLock().lock();
+        try
+        {
+            int slot = slotFor(cacheFile);
+            return slot == NO_SLOT ? -1L : record(slot).getLong(OFFSET_LAST_ACCESS);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed files
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return slotsByPath.size;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the total size of the indexed files
+     */
+    public long getTotalSize()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return totalSize;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the least recently used file by reading all the records.
+     *
+     * @return the least recently used cache file, or <tt>null</tt> if the index is empty
+     */
+    public File getLeastRecentlyUsed()
+    {
+        lock.readLock().lock();
+        try
+        {
+            long[] accessKeys = accessKeys();
+            if (accessKeys.length == 0)
+            {
+                return null;
+            }
+            long min = accessKeys[0];
+            for (long key : accessKeys)
+            {
+                min = Math.min(min, key);
+            }
+            return fileForSlot(slotOf(min));
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit the indexed files, least recently used first, in the order they had when the walk started.
+     * The handler may remove files from the index as they are visited; files that are read or replaced
+     * while the walk is in progress are skipped.
+     *
+     * @param handler FileHandler
+     */
+    public void processFiles(FileHandler handler)
+    {
+        long[] accessKeys;
+        lock.readLock().lock();
+        try
+        {
+            accessKeys = accessKeys();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(accessKeys);
+        for (long key : accessKeys)
+        {
+            File file = null;
+            lock.readLock().lock();
+            try
+            {
+                int slot = slotOf(key);
+                ByteBuffer record = slot < nextSlot ? record(slot) : null;
+                if (record != null && record.get(0) != STATUS_FREE && accessKey(record.getLong(OFFSET_LAST_ACCESS), slot) == key)
+                {
+                    file = fileForSlot(slot);
+                }
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+            if (file != null)
+            {
+                handler.handle(file);
+            }
+        }
+    }
+
+
+    /**
+     * Must be called holding the write lock.
+     */
+    private void indexExistingFiles(File dir)
+    {
+        File[] files = dir.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                indexExistingFiles(file);
+            }
+            else if (file.getName().endsWith(ContentCacheImpl.CACHE_FILE_EXT))
+            {
+                put(file, null, file.length());
+            }
+        }
+    }
+
+    /**
+     * @return the packed (last access seconds, slot) values of the records in use
+     */
+    private long[] accessKeys()
+    {
+        long[] accessKeys = new long[slotsByPath.size];
+        int count = 0;
+        for (int slot = 0; slot < nextSlot && count < accessKeys.length; slot++)
+        {
+            ByteBuffer record = record(slot);
+            if (record.get(0) != STATUS_FREE)
+            {
+                accessKeys[count++] = accessKey(record.getLong(OFFSET_LAST_ACCESS), slot);
+            }
+        }
+        return count == accessKeys.length ? accessKeys : Arrays.copyOf(accessKeys, count);
+    }
+
+    private void detachSlot(int slot)
+    {
+        ByteBuffer record = record(slot);
+        int pathLength = record.getShort(OFFSET_PATH_LENGTH);
+        slotsByUrl.remove(hash(record, HEADER_SIZE + pathLength, record.getShort(OFFSET_URL_LENGTH)), slot);
+        record.put(0, STATUS_DETACHED);
+    }
+
+    private void removeSlot(int slot)
+    {
+        ByteBuffer record = record(slot);
+        byte status = record.get(0);
+        int pathLength = record.getShort(OFFSET_PATH_LENGTH);
+        int urlLength = record.getShort(OFFSET_URL_LENGTH);
+
+        record.put(0, STATUS_FREE);
+        slotsByPath.remove(hash(record, HEADER_SIZE, pathLength), slot);
+        if (status == STATUS_ACTIVE)
+        {
+            slotsByUrl.remove(hash(record, HEADER_SIZE + pathLength, urlLength), slot);
+        }
+        totalSize -= record.getLong(OFFSET_SIZE);
+        freeSlots.push(slot);
+    }
+
+    private int allocateSlot()
+    {
+        if (!freeSlots.isEmpty())
+        {
+            return freeSlots.pop();
+        }
+        if (nextSlot == segments.size() * RECORDS_PER_SEGMENT)
+        {
+            try
+            {
+                mapSegment();
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Unable to extend cache index", e);
+            }
+        }
+        return nextSlot++;
+    }
+
+    private void mapSegment() throws IOException
+    {
+        long position = segments.size() * SEGMENT_SIZE;
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+    }
+
+    /**
+     * @return a buffer positioned at the start of the record for the slot
+     */
+    private ByteBuffer record(int slot)
+    {
+        ByteBuffer record = segments.get(slot / RECORDS_PER_SEGMENT).duplicate();
+        int offset = (slot % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+        record.position(offset);
+        record.limit(offset + RECORD_SIZE);
+        return record.slice();
+    }
+
+    private File fileForSlot(int slot)
+    {
+        ByteBuffer record = record(slot);
+        int pathLength = record.getShort(OFFSET_PATH_LENGTH);
+        record.position(HEADER_SIZE);
+        return new File(cacheRoot, readString(record, pathLength));
+    }
+
+    private int slotFor(File cacheFile)
+    {
+        String path = relativePath(cacheFile);
+        return path == null ? NO_SLOT : findPath(path.getBytes(UTF8));
+    }
+
+    private int findPath(byte[] pathBytes)
+    {
+        SlotTable table = slotsByPath;
+        long hash = hash(pathBytes);
+        for (int i = table.indexOf(hash); table.slots[i] != NO_SLOT; i = (i + 1) & table.mask)
+        {
+            ByteBuffer record = record(table.slots[i]);
+            if (table.hashes[i] == hash && record.getShort(OFFSET_PATH_LENGTH) == pathBytes.length &&
+                        matches(record, HEADER_SIZE, pathBytes))
+            {
+                return table.slots[i];
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private int findUrl(byte[] urlBytes)
+    {
+        SlotTable table = slotsByUrl;
+        long hash = hash(urlBytes);
+        for (int i = table.indexOf(hash); table.slots[i] != NO_SLOT; i = (i + 1) & table.mask)
+        {
+            ByteBuffer record = record(table.slots[i]);
+            if (table.hashes[i] == hash && record.getShort(OFFSET_URL_LENGTH) == urlBytes.length &&
+                        matches(record, HEADER_SIZE + record.getShort(OFFSET_PATH_LENGTH), urlBytes))
+            {
+                return table.slots[i];
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private static boolean matches(ByteBuffer record, int offset, byte[] bytes)
+    {
+        if (offset + bytes.length > RECORD_SIZE)
+        {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (record.get(offset + i) != bytes[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String relativePath(File cacheFile)
+    {
+        String path = cacheFile.getAbsolutePath();
+        return path.startsWith(cacheRootPath) ? path.substring(cacheRootPath.length()) : null;
+    }
+
+    private static String readString(ByteBuffer record, int length)
+    {
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the bytes.
+     */
+    private static long hash(byte[] bytes)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes)
+        {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long hash(ByteBuffer record, int offset, int length)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++)
+        {
+            hash = (hash ^ (record.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long accessKey(long lastAccess, int slot)
+    {
+        return ((lastAccess / 1000L) << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static int slotOf(long accessKey)
+    {
+        return (int) accessKey;
+    }
+
+    /**
+     * Open-addressing table from hashes to slots, with linear probing. Different keys may share a
+     * hash, so a hash may map to several slots and the caller checks the records for a match.
+     */
+    private static final class SlotTable
+    {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] hashes;
+        private int[] slots;
+        private int mask;
+        private int size;
+
+        private SlotTable()
+        {
+            clear();
+        }
+
+        private int indexOf(long hash)
+        {
+            int h = (int) (hash ^ (hash >>> 32));
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void add(long hash, int slot)
+        {
+            if ((size + 1) * 2 > slots.length)
+            {
+                resize(slots.length * 2);
+            }
+            insert(hash, slot);
+            size++;
+        }
+
+        private void insert(long hash, int slot)
+        {
+            int i = indexOf(hash);
+            while (slots[i] != NO_SLOT)
+            {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            slots[i] = slot;
+        }
+
+        private void remove(long hash, int slot)
+        {
+            int i = indexOf(hash);
+            while (slots[i] != slot)
+            {
+                if (slots[i] == NO_SLOT)
+                {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the probe run back into the gap
+            int gap = i;
+            for (int j = (gap + 1) & mask; slots[j] != NO_SLOT; j = (j + 1) & mask)
+            {
+                int home = indexOf(hashes[j]);
+                if (((j - home) & mask) >= ((j - gap) & mask))
+                {
+                    hashes[gap] = hashes[j];
+                    slots[gap] = slots[j];
+                    gap = j;
+                }
+            }
+            slots[gap] = NO_SLOT;
+            size--;
+        }
+
+        private void resize(int capacity)
+        {
+            long[] oldHashes = hashes;
+            int[] oldSlots = slots;
+            hashes = new long[capacity];
+            slots = new int[capacity];
+            Arrays.fill(slots, NO_SLOT);
+            mask = capacity - 1;
+            for (int i = 0; i < oldSlots.length; i++)
+            {
+                if (oldSlots[i] != NO_SLOT)
+                {
+                    insert(oldHashes[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private void clear()
+        {
+            hashes = new long[INITIAL_CAPACITY];
+            slots = new int[INITIAL_CAPACITY];
+            Arrays.fill(slots, NO_SLOT);
+            mask = INITIAL_CAPACITY - 1;
+            size = 0;
+        }
+    }
+}
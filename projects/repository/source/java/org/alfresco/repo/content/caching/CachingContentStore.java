@@ -25,15 +25,18 @@
  */
 package org.alfresco.repo.content.caching;
 
+import java.io.File;
 import java.util.Date;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
 import org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategy;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentStore;
 import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -58,6 +61,10 @@ import org.springframework.context.ApplicationEventPublisherAware;
  * <p>
  * This store handles the {@link FileContentStore#SPOOF_PROTOCOL} and can be used to wrap stores
  * that do not handle the protocol out of the box e.g. the S3 connector's store.
+ * <p>
+ * In write-behind mode, new content is committed once it is in the cache and is copied to the
+ * backing store in the background by a {@link WriteBehindUploader}.  Until the copy is complete,
+ * the content is served from the cache file, which the cache will not delete.
  * 
  * @author Matt Ward
  */
@@ -71,6 +78,8 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     private ContentCache cache;
     private QuotaManagerStrategy quota = new UnlimitedQuotaStrategy();
     private boolean cacheOnInbound;
+    private boolean writeBehind;
+    private WriteBehindUploader uploader;
     private int maxCacheTries = 2;
     private ApplicationEventPublisher eventPublisher;
     private String beanName;
@@ -100,6 +109,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
      */
     public void init()
     {
+        if (writeBehind && (uploader == null || !cacheOnInbound))
+        {
+            throw new AlfrescoRuntimeException("Write-behind mode requires cacheOnInbound and an uploader: " + beanName);
+        }
         eventPublisher.publishEvent(new CachingContentStoreCreatedEvent(this));
     }
     
@@ -136,7 +149,8 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     /**
      * {@inheritDoc}
      * <p>
-     * For {@link #SPOOF_PROTOCOL spoofed} URLs, the URL always exists.
+     * For {@link #SPOOF_PROTOCOL spoofed} URLs, the URL always exists.  Content waiting to be
+     * written behind to the backing store also exists.
      */
     @Override
     public boolean exists(String contentUrl)
@@ -145,6 +159,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         {
             return true;
         }
+        else if (uploader != null && uploader.isPending(contentUrl))
+        {
+            return true;
+        }
         else
         {
             return backingStore.exists(contentUrl);
@@ -187,6 +205,16 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             readLock.unlock();
         }
         
+        if (uploader != null)
+        {
+            // The backing store may not have the content yet, even if the cache lookup has lost track of it
+            File pendingFile = uploader.getPendingFile(contentUrl);
+            if (pendingFile != null)
+            {
+                return new FileContentReader(pendingFile, contentUrl);
+            }
+        }
+        
         return cacheAndRead(contentUrl);
     }    
     
@@ -307,6 +335,13 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
                     bsWriter.setEncoding(cacheWriter.getEncoding());
                     bsWriter.setLocale(cacheWriter.getLocale());
                     bsWriter.setMimetype(cacheWriter.getMimetype());
+                    if (writeBehind)
+                    {
+                        // The cache file is kept until the uploader has copied it to the backing store
+                        uploader.submit(url, bsWriter);
+                        quota.afterWritingCacheFile(cacheWriter.getSize());
+                        return;
+                    }
                     bsWriter.putContent(cacheWriter.getReader());
                     boolean contentUrlChanged = !url.equals(bsWriter.getContentUrl());
                     
@@ -359,6 +394,22 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             return false;
         }
 
+        if (uploader != null && uploader.cancel(contentUrl))
+        {
+            // The content never reached the backing store
+            WriteLock writeLock = readWriteLock(contentUrl).writeLock();
+            writeLock.lock();
+            try
+            {
+                cache.remove(contentUrl);
+                return true;
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
         ReentrantReadWriteLock readWriteLock = readWriteLock(contentUrl);
         ReadLock readLock = readWriteLock.readLock();
         readLock.lock();
@@ -449,6 +500,32 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return this.cacheOnInbound;
     }
 
+    /**
+     * Sets whether new content is copied to the backing store in the background, once it
+     * has been written to the cache.  Requires cacheOnInbound and an {@link #setUploader(WriteBehindUploader) uploader}.
+     * 
+     * @param writeBehind boolean
+     */
+    public void setWriteBehind(boolean writeBehind)
+    {
+        this.writeBehind = writeBehind;
+    }
+
+    public boolean isWriteBehind()
+    {
+        return this.writeBehind;
+    }
+
+    public void setUploader(WriteBehindUploader uploader)
+    {
+        this.uploader = uploader;
+    }
+
+    public WriteBehindUploader getUploader()
+    {
+        return this.uploader;
+    }
+
     public int getMaxCacheTries()
     {
         return this.maxCacheTries;
@@ -32,6 +32,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.filestore.FileContentReader;
@@ -48,23 +50,65 @@ import org.apache.commons.logging.LogFactory;
  * The one and only implementation of the ContentCache class. Binary content data itself
  * is stored on disk in the location specified by {@link #cacheRoot}.
  * <p>
- * The in-memory lookup table is provided by a SimpleCache implementation.
+ * The in-memory lookup table is provided by a SimpleCache implementation. If a {@link CacheFileIndex}
+ * is configured, cache files are also recorded there so that entries dropped from the lookup table, or
+ * lost on restart, can be restored and so that the cleaner can visit the files without a directory scan.
  * 
  * @author Matt Ward
  */
 public class ContentCacheImpl implements ContentCache
 {
     private static final Log log = LogFactory.getLog(ContentCacheImpl.class);
-    private static final String CACHE_FILE_EXT = ".bin";
+    static final String CACHE_FILE_EXT = ".bin";
     private static final String CACHE_FILE_TEMP_EXT = ".tmp";
     private File cacheRoot;
     private SimpleCache<Key, String> memoryStore;
+    private CacheFileIndex index;
+    private final Set<String> uploadPendingFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     
     
     @Override
     public boolean contains(String contentUrl)
     {
-        return memoryStore.contains(Key.forUrl(contentUrl));
+        return memoryStore.contains(Key.forUrl(contentUrl)) || restoreFromIndex(contentUrl);
+    }
+    
+    /**
+     * Put the lookup table entries for a content URL back in place from the index, if the
+     * index holds a cache file for the URL. A cache file whose length differs from the indexed
+     * size was not completely written before a crash, so it is dropped instead.
+     * 
+     * @param contentUrl String
+     * @return true if the entries were restored
+     */
+    private boolean restoreFromIndex(String contentUrl)
+    {
+        if (index == null)
+        {
+            return false;
+        }
+        File cacheFile = index.getCacheFile(contentUrl);
+        if (cacheFile == null || !cacheFile.exists())
+        {
+            return false;
+        }
+        if (cacheFile.length() != index.getSize(cacheFile))
+        {
+            if (log.isWarnEnabled())
+            {
+                log.warn("Dropping cache file " + cacheFile + " for " + contentUrl + ": its length " +
+                            cacheFile.length() + " does not match the indexed size " + index.getSize(cacheFile));
+            }
+            index.remove(cacheFile);
+            if (!isUploadPending(cacheFile))
+            {
+                cacheFile.delete();
+            }
+            return false;
+        }
+        memoryStore.put(Key.forUrl(contentUrl), cacheFile.getAbsolutePath());
+        memoryStore.put(Key.forCacheFile(cacheFile), contentUrl);
+        return true;
     }
 
     /**
@@ -98,7 +142,13 @@ public class ContentCacheImpl implements ContentCache
      */
     public String getCacheFilePath(String contentUrl)
     {
-        return memoryStore.get(Key.forUrl(contentUrl));
+        Key url = Key.forUrl(contentUrl);
+        String path = memoryStore.get(url);
+        if (path == null && restoreFromIndex(contentUrl))
+        {
+            path = memoryStore.get(url);
+        }
+        return path;
     }
     
     /**
@@ -109,14 +159,19 @@ public class ContentCacheImpl implements ContentCache
      */
     public String getContentUrl(File file)
     {
-        return memoryStore.get(Key.forCacheFile(file));
+        String url = memoryStore.get(Key.forCacheFile(file));
+        if (url == null && index != null)
+        {
+            url = index.getContentUrl(file);
+        }
+        return url;
     }
     
     @Override
     public ContentReader getReader(String contentUrl)
     {
         Key url = Key.forUrl(contentUrl);
-        if (memoryStore.contains(url))
+        if (memoryStore.contains(url) || restoreFromIndex(contentUrl))
         {
             String path = memoryStore.get(url);
             
@@ -128,6 +183,10 @@ public class ContentCacheImpl implements ContentCache
             File cacheFile = new File(path);
             if (cacheFile.exists())
             {
+                if (index != null)
+                {
+                    index.touch(cacheFile);
+                }
                 return new FileContentReader(cacheFile, contentUrl);
             }
         }
@@ -157,6 +216,10 @@ public class ContentCacheImpl implements ContentCache
     {
         memoryStore.put(Key.forUrl(contentUrl), cacheFile.getAbsolutePath());
         memoryStore.put(Key.forCacheFile(cacheFile), contentUrl);
+        if (index != null)
+        {
+            index.put(cacheFile, contentUrl, cacheFile.length());
+        }
     }
     
     /**
@@ -179,6 +242,10 @@ public class ContentCacheImpl implements ContentCache
         String path = getCacheFilePath(contentUrl);
         memoryStore.remove(Key.forUrl(contentUrl));
         memoryStore.remove(Key.forCacheFile(path));
+        if (index != null)
+        {
+            index.detach(contentUrl);
+        }
     }
     
     /**
@@ -187,13 +254,54 @@ public class ContentCacheImpl implements ContentCache
     public void removeAll()
     {
         memoryStore.clear();
+        if (index != null)
+        {
+            index.detachAll();
+        }
     }
     
     @Override
     public void deleteFile(String url)
     {
         File cacheFile = new File(getCacheFilePath(url));
-        cacheFile.delete();
+        if (isUploadPending(cacheFile))
+        {
+            // The cache holds the only copy of the content
+            return;
+        }
+        if (cacheFile.delete() && index != null)
+        {
+            index.remove(cacheFile);
+        }
+    }
+    
+    /**
+     * Mark a cache file as holding content that has not yet been written to the backing store.
+     * Such files must not be deleted from the cache.
+     * 
+     * @param cacheFile the cache file
+     * @param pending <tt>true</tt> while the content is waiting to be uploaded
+     * @see WriteBehindUploader
+     */
+    public void setUploadPending(File cacheFile, boolean pending)
+    {
+        if (pending)
+        {
+            uploadPendingFiles.add(cacheFile.getAbsolutePath());
+        }
+        else
+        {
+            uploadPendingFiles.remove(cacheFile.getAbsolutePath());
+        }
+    }
+    
+    /**
+     * @param cacheFile the cache file
+     * @return <tt>true</tt> if the file holds content that has not yet been written to the backing store
+     */
+    public boolean isUploadPending(File cacheFile)
+    {
+        return uploadPendingFiles.contains(cacheFile.getAbsolutePath());
     }
 
     @Override
@@ -307,6 +415,24 @@ public class ContentCacheImpl implements ContentCache
         this.memoryStore = memoryStore;
     }
     
+    /**
+     * Configure ContentCache with a persistent index of the cache files (optional).
+     * 
+     * @param index the index, opened on the same cacheRoot
+     */
+    public void setIndex(CacheFileIndex index)
+    {
+        this.index = index;
+    }
+    
+    /**
+     * @return the index of the cache files, or <tt>null</tt> if none is in use
+     */
+    public CacheFileIndex getIndex()
+    {
+        return this.index;
+    }
+    
     /**
      * Specify the directory where cache files will be written.
      * 
@@ -337,12 +463,20 @@ public class ContentCacheImpl implements ContentCache
     }
 
     /**
-     * Ask the ContentCacheImpl to visit all the content files in the cache.
+     * Ask the ContentCacheImpl to visit all the content files in the cache. When an index is in
+     * use the indexed files are visited, least recently used first, without scanning the cache directories.
      * @param handler FileHandler
      */
     public void processFiles(FileHandler handler)
     {
-        handleDir(cacheRoot, handler);
+        if (index != null)
+        {
+            index.processFiles(handler);
+        }
+        else
+        {
+            handleDir(cacheRoot, handler);
+        }
     }
 
     /**
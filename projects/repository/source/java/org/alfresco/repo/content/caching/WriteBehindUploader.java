@@ -0,0 +1,545 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Copies content that a {@link CachingContentStore} in write-behind mode has written to the
+ * {@link ContentCacheImpl cache} on to the backing store, in the background.
+ * <p>
+ * Each upload is recorded in a journal file before the writer is released, so uploads that had
+ * not completed when the server stopped are resumed by {@link #init()}.  Failed uploads are
+ * retried with an exponential back-off until they succeed.  Until then, the cache file is
+ * protected from deletion and the caching store serves readers from it.
+ * <p>
+ * The backing store must keep the content URL that it hands out with its writers, since the
+ * URL has already been committed by the time the upload takes place.
+ * <p>
+ * Content waiting to be uploaded is only on this server's disk.  Other servers in a cluster
+ * see the committed URL but cannot read the content until the upload completes, and the content
+ * is lost with the disk if the server is never restarted.
+ *
+ * @since 5.2
+ */
+public class WriteBehindUploader
+{
+    private static final Log log = LogFactory.getLog(WriteBehindUploader.class);
+    private static final String JOURNAL_FILE_EXT = ".upload";
+    private static final String JOURNAL_DIR = "write-behind";
+    private static final String PROP_CONTENT_URL = "contentUrl";
+    private static final String PROP_CACHE_FILE = "cacheFile";
+    private static final String PROP_CREATED = "created";
+
+    private ContentStore backingStore;
+    private ContentCacheImpl cache;
+    private File journalDir;
+    private int uploadThreads = 2;
+    private long retryDelayMillis = 1000L;
+    private long maxRetryDelayMillis = 300000L;
+    private ScheduledExecutorService executor;
+    private final ConcurrentMap<String, PendingUpload> pending = new ConcurrentHashMap<String, PendingUpload>();
+    private final AtomicLong numUploaded = new AtomicLong();
+    private final AtomicLong numFailedAttempts = new AtomicLong();
+    private volatile long lastUploadLagMillis;
+
+
+    /**
+     * Start the upload threads and resume any uploads left in the journal.
+     */
+    public void init()
+    {
+        if (journalDir == null)
+        {
+            journalDir = new File(cache.getCacheRoot(), JOURNAL_DIR);
+        }
+        journalDir.mkdirs();
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("WriteBehindUploader");
+        executor = Executors.newScheduledThreadPool(uploadThreads, threadFactory);
+
+        recover();
+    }
+
+    /**
+     * Stop the upload threads.  Uploads that have not completed remain in the journal and are
+     * resumed the next time the uploader is started.
+     */
+    public void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reload the uploads recorded in the journal.
+     */
+    private void recover()
+    {
+        File[] journalFiles = journalDir.listFiles();
+        if (journalFiles == null)
+        {
+            return;
+        }
+        int count = 0;
+        for (File journalFile : journalFiles)
+        {
+            if (!journalFile.getName().endsWith(JOURNAL_FILE_EXT))
+            {
+                continue;
+            }
+            Properties props = new Properties();
+            try
+            {
+                InputStream in = new FileInputStream(journalFile);
+                try
+                {
+                    props.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                log.error("Unable to read write-behind journal file: " + journalFile, e);
+                continue;
+            }
+            String contentUrl = props.getProperty(PROP_CONTENT_URL);
+            String cacheFilePath = props.getProperty(PROP_CACHE_FILE);
+            String created = props.getProperty(PROP_CREATED);
+            if (contentUrl == null || cacheFilePath == null || created == null)
+            {
+                // Written partially before a crash, so the writer never completed
+                log.warn("Discarding incomplete write-behind journal file: " + journalFile);
+                journalFile.delete();
+                continue;
+            }
+            File cacheFile = new File(cacheFilePath);
+            if (!cacheFile.exists())
+            {
+                log.error("Cache file for content not yet uploaded to the backing store is missing: \n" +
+                            "   url: " + contentUrl + "\n" +
+                            "   file: " + cacheFile);
+                journalFile.delete();
+                continue;
+            }
+            PendingUpload upload = new PendingUpload(contentUrl, cacheFile, journalFile, Long.parseLong(created), null);
+            register(upload);
+            executor.execute(upload);
+            count++;
+        }
+        if (count > 0 && log.isInfoEnabled())
+        {
+            log.info("Resumed " + count + " uploads to backing store " + backingStore);
+        }
+    }
+
+    /**
+     * Queue content that has been written to the cache for upload to the backing store.  The cache
+     * file and the journal entry for the upload are forced to disk before this method returns, so
+     * that the content survives a crash once the transaction that references it has committed.
+     *
+     * @param contentUrl            the URL of the content, as issued by the backing store
+     * @param backingStoreWriter    the backing store writer that issued the URL
+     * @throws ContentIOException   if the content is not in the cache or the upload cannot be recorded
+     */
+    public void submit(String contentUrl, ContentWriter backingStoreWriter)
+    {
+        String cacheFilePath = cache.getCacheFilePath(contentUrl);
+        if (cacheFilePath == null)
+        {
+            throw new ContentIOException("Content written in write-behind mode is not in the cache: " + contentUrl);
+        }
+        File cacheFile = new File(cacheFilePath);
+        try
+        {
+            forceFile(cacheFile);
+            forceDirectory(cacheFile.getParentFile());
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Unable to force content written in write-behind mode to disk: " + contentUrl, e);
+        }
+        File journalFile = new File(journalDir, GUID.generate() + JOURNAL_FILE_EXT);
+        PendingUpload upload = new PendingUpload(
+                    contentUrl,
+                    cacheFile,
+                    journalFile,
+                    System.currentTimeMillis(),
+                    backingStoreWriter);
+        writeJournal(upload);
+        register(upload);
+        executor.execute(upload);
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Queued upload of " + contentUrl + " to backing store (" + pending.size() + " pending)");
+        }
+    }
+
+    private void writeJournal(PendingUpload upload)
+    {
+        Properties props = new Properties();
+        props.setProperty(PROP_CONTENT_URL, upload.contentUrl);
+        props.setProperty(PROP_CACHE_FILE, upload.cacheFile.getAbsolutePath());
+        props.setProperty(PROP_CREATED, Long.toString(upload.created));
+        try
+        {
+            journalDir.mkdirs();
+            FileOutputStream out = new FileOutputStream(upload.journalFile);
+            try
+            {
+                props.store(out, null);
+                // The content only exists locally until the upload completes
+                out.getFD().sync();
+            }
+            finally
+            {
+                out.close();
+            }
+            // ... and so must the journal file's directory entry
+            forceDirectory(journalDir);
+        }
+        catch (IOException e)
+        {
+            upload.journalFile.delete();
+            throw new ContentIOException("Unable to record write-behind upload of " + upload.contentUrl, e);
+        }
+    }
+
+    private static void forceFile(File file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try
+        {
+            channel.force(true);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Force a directory's entries to disk, where the platform allows directories to be opened
+     */
+    private static void forceDirectory(File dir)
+    {
+        try
+        {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try
+            {
+                channel.force(true);
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // e.g. Windows does not allow it, and its file systems do not need it
+            if (log.isDebugEnabled())
+            {
+                log.debug("Unable to force directory to disk: " + dir, e);
+            }
+        }
+    }
+
+    private void register(PendingUpload upload)
+    {
+        pending.put(upload.contentUrl, upload);
+        cache.setUploadPending(upload.cacheFile, true);
+    }
+
+    private void unregister(PendingUpload upload)
+    {
+        cache.setUploadPending(upload.cacheFile, false);
+        upload.journalFile.delete();
+    }
+
+    /**
+     * @param contentUrl    the content URL
+     * @return              <tt>true</tt> if the content has not yet reached the backing store
+     */
+    public boolean isPending(String contentUrl)
+    {
+        return pending.containsKey(contentUrl);
+    }
+
+    /**
+     * @param contentUrl    the content URL
+     * @return              the cache file holding content that has not yet reached the backing store,
+     *                      or <tt>null</tt> if the content is not waiting to be uploaded
+     */
+    public File getPendingFile(String contentUrl)
+    {
+        PendingUpload upload = pending.get(contentUrl);
+        return (upload == null ? null : upload.cacheFile);
+    }
+
+    /**
+     * Abandon the upload of content that is being deleted.
+     *
+     * @param contentUrl    the content URL
+     * @return              <tt>true</tt> if an upload was pending
+     */
+    public boolean cancel(String contentUrl)
+    {
+        PendingUpload upload = pending.remove(contentUrl);
+        if (upload == null)
+        {
+            return false;
+        }
+        upload.cancelled = true;
+        unregister(upload);
+        return true;
+    }
+
+    /**
+     * @return the number of uploads waiting to complete
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * @return the size of the content waiting to be uploaded
+     */
+    public long getPendingBytes()
+    {
+        long bytes = 0L;
+        for (PendingUpload upload : pending.values())
+        {
+            bytes += upload.cacheFile.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the time since the oldest pending upload was queued, or <tt>0</tt> if nothing is pending
+     */
+    public long getUploadLagMillis()
+    {
+        long oldest = Long.MAX_VALUE;
+        for (PendingUpload upload : pending.values())
+        {
+            oldest = Math.min(oldest, upload.created);
+        }
+        return (oldest == Long.MAX_VALUE ? 0L : System.currentTimeMillis() - oldest);
+    }
+
+    /**
+     * @return the time between queuing and completion of the last successful upload
+     */
+    public long getLastUploadLagMillis()
+    {
+        return lastUploadLagMillis;
+    }
+
+    /**
+     * @return the number of uploads that have completed
+     */
+    public long getNumUploaded()
+    {
+        return numUploaded.get();
+    }
+
+    /**
+     * @return the number of upload attempts that have failed and been rescheduled
+     */
+    public long getNumFailedAttempts()
+    {
+        return numFailedAttempts.get();
+    }
+
+    @Required
+    public void setBackingStore(ContentStore backingStore)
+    {
+        this.backingStore = backingStore;
+    }
+
+    @Required
+    public void setCache(ContentCacheImpl cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @param journalDir    the directory holding the journal of pending uploads.  This must be on
+     *                      durable storage; by default a directory below the cache root is used.
+     */
+    public void setJournalDir(File journalDir)
+    {
+        this.journalDir = journalDir;
+    }
+
+    public File getJournalDir()
+    {
+        return this.journalDir;
+    }
+
+    public void setUploadThreads(int uploadThreads)
+    {
+        this.uploadThreads = uploadThreads;
+    }
+
+    /**
+     * @param retryDelayMillis  the delay before the first retry of a failed upload.  The delay doubles
+     *                          with each further failure.
+     */
+    public void setRetryDelayMillis(long retryDelayMillis)
+    {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * @param maxRetryDelayMillis   the longest delay between retries of a failed upload
+     */
+    public void setMaxRetryDelayMillis(long maxRetryDelayMillis)
+    {
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+
+    /**
+     * A single piece of content waiting to be copied to the backing store.
+     */
+    private class PendingUpload implements Runnable
+    {
+        private final String contentUrl;
+        private final File cacheFile;
+        private final File journalFile;
+        private final long created;
+        private ContentWriter backingStoreWriter;
+        private int attempts;
+        private volatile boolean cancelled;
+
+        private PendingUpload(String contentUrl, File cacheFile, File journalFile, long created, ContentWriter backingStoreWriter)
+        {
+            this.contentUrl = contentUrl;
+            this.cacheFile = cacheFile;
+            this.journalFile = journalFile;
+            this.created = created;
+            this.backingStoreWriter = backingStoreWriter;
+        }
+
+        @Override
+        public void run()
+        {
+            if (cancelled)
+            {
+                return;
+            }
+            try
+            {
+                ContentWriter writer = backingStoreWriter;
+                backingStoreWriter = null;
+                if (writer == null)
+                {
+                    // A retried or resumed upload, so start again on the same URL
+                    if (backingStore.exists(contentUrl))
+                    {
+                        backingStore.delete(contentUrl);
+                    }
+                    writer = backingStore.getWriter(new ContentContext(null, contentUrl));
+                }
+                writer.putContent(cacheFile);
+                if (!contentUrl.equals(writer.getContentUrl()))
+                {
+                    // Leave the upload in the journal so the content stays in the cache
+                    log.error("Backing store changed the URL of content uploaded in write-behind mode: \n" +
+                                "   url: " + contentUrl + "\n" +
+                                "   backing store url: " + writer.getContentUrl());
+                    return;
+                }
+            }
+            catch (Throwable e)
+            {
+                attempts++;
+                numFailedAttempts.incrementAndGet();
+                long delay = Math.min(retryDelayMillis << Math.min(attempts - 1, 20), maxRetryDelayMillis);
+                if (log.isWarnEnabled())
+                {
+                    log.warn("Failed to upload " + contentUrl + " to backing store after " + attempts +
+                                " attempts; retrying in " + delay + "ms", e);
+                }
+                if (!cancelled && !executor.isShutdown())
+                {
+                    executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+
+            if (pending.remove(contentUrl, this))
+            {
+                unregister(this);
+                numUploaded.incrementAndGet();
+                lastUploadLagMillis = System.currentTimeMillis() - created;
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Uploaded " + contentUrl + " to backing store, lag " + lastUploadLagMillis + "ms");
+                }
+            }
+            else if (cancelled)
+            {
+                // The content was deleted while it was being uploaded
+                backingStore.delete(contentUrl);
+            }
+        }
+    }
+}
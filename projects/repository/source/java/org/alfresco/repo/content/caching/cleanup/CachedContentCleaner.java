@@ -28,9 +28,11 @@ package org.alfresco.repo.content.caching.cleanup;
 import java.io.File;
 import java.util.Date;
 
+import org.alfresco.repo.content.caching.CacheFileIndex;
 import org.alfresco.repo.content.caching.CacheFileProps;
 import org.alfresco.repo.content.caching.ContentCacheImpl;
 import org.alfresco.repo.content.caching.FileHandler;
+import org.alfresco.repo.content.caching.Key;
 import org.alfresco.repo.content.caching.quota.UsageTracker;
 import org.alfresco.util.Deleter;
 import org.apache.commons.io.FileUtils;
@@ -43,6 +45,9 @@ import org.springframework.context.ApplicationEventPublisherAware;
 /**
  * Cleans up redundant cache files from the cached content file store. Once references to cache files are
  * no longer in the in-memory cache, the binary content files can be removed.
+ * <p>
+ * If the cache keeps a {@link CacheFileIndex}, the files are visited in least recently used order from the
+ * index rather than by scanning the cache directories, and the disk usage is taken from the index.
  * 
  * @author Matt Ward
  */
@@ -126,6 +131,15 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         cache.processFiles(this);
         timeFinished = new Date(); 
         
+        CacheFileIndex index = cache.getIndex();
+        if (index != null)
+        {
+            // Files read during the run are not visited, so use the index's total
+            newDiskUsage = index.getTotalSize();
+            // The index is otherwise only forced to disk when it is closed
+            index.force();
+        }
+        
         if (usageTracker != null)
         {
             usageTracker.setCurrentUsageBytes(newDiskUsage);
@@ -179,7 +193,15 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         CacheFileProps props = null;
         boolean deleted = false;
         
-        if (targetReductionBytes > 0 && sizeFilesDeleted < targetReductionBytes)
+        if (cache.isUploadPending(cachedContentFile))
+        {
+            // Write-behind content that has not reached the backing store yet - it still counts towards usage.
+            if (log.isDebugEnabled())
+            {
+                log.debug("Upload to backing store pending - ignoring " + cachedContentFile);
+            }
+        }
+        else if (targetReductionBytes > 0 && sizeFilesDeleted < targetReductionBytes)
         {
             if (log.isDebugEnabled())
             {
@@ -198,6 +220,12 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
                     log.debug("File is older than " + minFileAgeMillis + 
                                 "ms - considering for cleanup: " + cachedContentFile);
                 }
+                if (cache.getIndex() != null && !cachedContentFile.exists())
+                {
+                    // Removed from disk by some other means
+                    cache.getIndex().remove(cachedContentFile);
+                    return;
+                }
                 props = new CacheFileProps(cachedContentFile);        
                 String url = cache.getContentUrl(cachedContentFile);
                 if (url == null)
@@ -207,7 +235,8 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
                     url = props.getContentUrl();
                 }   
                 
-                if (url == null || !cache.contains(url))
+                // Only the in-memory lookup table tells whether the content is still in use
+                if (url == null || !cache.contains(Key.forUrl(url)))
                 {
                     // If the url is null, it might still be in the cache, but we were unable to determine it
                     // from the reverse lookup or the properties file. Delete the file as it is most likely orphaned.
@@ -224,7 +253,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
             }
         }
         
-        if (!deleted)
+        if (!deleted && cache.getIndex() == null)
         {
             if (props == null)
             {
@@ -240,7 +269,8 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
     /**
      * Is the file old enough to be considered for cleanup/deletion? The file must be older than minFileAgeMillis
      * to be considered for deletion - the state of the cache and the file's associated properties file will not
-     * be examined unless the file is old enough.
+     * be examined unless the file is old enough. Where the file is indexed, its last access time is used in
+     * place of its modification time.
      *  
      * @return true if the file is older than minFileAgeMillis, false otherwise.
      */
@@ -253,7 +283,13 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         else
         {
             long now = System.currentTimeMillis();
-            return (file.lastModified() < (now - minFileAgeMillis));
+            CacheFileIndex index = cache.getIndex();
+            long lastAccess = index == null ? -1L : index.getLastAccess(file);
+            if (lastAccess < 0)
+            {
+                lastAccess = file.lastModified();
+            }
+            return (lastAccess < (now - minFileAgeMillis));
         }
     }
 
@@ -323,6 +359,11 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         props.delete();
         long fileSize = cacheFile.length();
         boolean deleted = cacheFile.delete();
+        CacheFileIndex index = cache.getIndex();
+        if (index != null && (deleted || !cacheFile.exists()))
+        {
+            index.remove(cacheFile);
+        }
         if (deleted)
         {
             if (log.isTraceEnabled())
@@ -32,6 +32,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.alfresco.repo.content.caching.CacheFileIndex;
 import org.alfresco.repo.content.caching.ContentCacheImpl;
 import org.alfresco.repo.content.caching.cleanup.CachedContentCleaner;
 import org.alfresco.repo.content.filestore.FileContentReader;
@@ -57,6 +58,9 @@ import org.springframework.beans.factory.annotation.Required;
  * Upon startup, if the cache-usage.ser file exists then the current usage is seeded with that value and the cleaner
  * is invoked in a new thread so that the value can be updated more accurately (perhaps some files were deleted
  * manually after shutdown for example).
+ * <p>
+ * If the cache keeps a {@link CacheFileIndex} the current usage is taken from the index instead, and no cleaner
+ * run is needed on startup. Aggressive cleaning then removes the least recently used files first.
  * 
  * @author Matt Ward
  */
@@ -98,6 +102,15 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
             }
         }
         
+        CacheFileIndex index = cache.getIndex();
+        if (index != null)
+        {
+            // The index is kept up to date, so there's no need to rescan the cache
+            setCurrentUsageBytes(index.getTotalSize());
+            lastCleanupStart.set(System.currentTimeMillis() - normalCleanThresholdSec);
+            return;
+        }
+        
         loadDiskUsage();
         // Set the time to start the normal clean
         lastCleanupStart.set(System.currentTimeMillis() - normalCleanThresholdSec);
@@ -0,0 +1,394 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * A {@link FileContentStore} that stores each distinct binary only once.
+ * <p>
+ * Content is digested while it is written.  When the writer's channel is closed, the new
+ * file is moved to a URL derived from the digest, e.g.
+ * <code>store://sha256/ab/cd/abcd...ef.bin</code>, or discarded if a file with that digest
+ * is already present.  The writer's content URL is updated before any
+ * {@link org.alfresco.service.cmr.repository.ContentStreamListener listeners} are called,
+ * so the {@link org.alfresco.service.cmr.repository.ContentData ContentData} recorded
+ * against the node carries the shared URL.
+ * <p>
+ * There is no separate reference count: every <b>alf_content_data</b> row that carries
+ * the same URL shares a single <b>alf_content_url</b> row and the existing orphan
+ * tracking only marks that row once the last reference to it has gone.  The store must
+ * therefore <b>not</b> be combined with eager orphan cleanup, which deletes binaries
+ * as soon as the referencing transaction commits, and the content store cleaner should
+ * be given a non-zero protection period.
+ * <p>
+ * Within a transaction:
+ * <ul>
+ *   <li>A binary created by the transaction is deleted if the transaction rolls back, and is
+ *       registered with the {@link #setEagerContentStoreCleaner(EagerContentStoreCleaner) eager cleaner}
+ *       like any other new content.  Until the transaction completes, other transactions writing
+ *       the same content keep their own file rather than share it.</li>
+ *   <li>A writer that finds the binary already present keeps its own file until the transaction
+ *       completes.  Just before commit, when the transaction's reference to the URL is in the
+ *       database and the content store cleaner can no longer remove it, the binary is checked
+ *       and restored from that file if the cleaner deleted it in the meantime.</li>
+ * </ul>
+ * Uncommitted binaries are only known to this server, so servers that share the store can
+ * still briefly share a binary that is then rolled back.
+ * <p>
+ * Writers onto an explicitly-requested URL are not deduplicated.
+ *
+ * @since 5.2
+ */
+public class DeduplicatingFileContentStore extends FileContentStore
+{
+    /** The directory under the store root holding deduplicated binaries */
+    public static final String DIGEST_DIRECTORY = "sha256";
+    /** The digest algorithm used to derive content URLs */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Digests of the binaries created by the transaction
+     */
+    private static final String KEY_CREATED_DIGESTS = "DeduplicatingFileContentStore.CreatedDigests.";
+    /**
+     * Files written by the transaction whose content was already present, by digest URL
+     */
+    private static final String KEY_STANDBY_FILES = "DeduplicatingFileContentStore.StandbyFiles.";
+
+    private static final Log logger = LogFactory.getLog(DeduplicatingFileContentStore.class);
+
+    /** Digests of binaries created by transactions that have not completed */
+    private final Set<String> pendingDigests = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final String createdDigestsKey = KEY_CREATED_DIGESTS + getRootLocation();
+    private final String standbyFilesKey = KEY_STANDBY_FILES + getRootLocation();
+    private final DigestTransactionListener transactionListener = new DigestTransactionListener();
+    private EagerContentStoreCleaner eagerContentStoreCleaner;
+
+    /**
+     * Private: for Spring-constructed instances only.
+     *
+     * @param rootDirectoryStr
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     */
+    /*package*/ DeduplicatingFileContentStore(String rootDirectoryStr)
+    {
+        super(rootDirectoryStr);
+    }
+
+    /**
+     * Public constructor for programmatic use.
+     *
+     * @param context
+     *            application context through which events can be published
+     * @param rootDirectoryStr
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, String rootDirectoryStr)
+    {
+        super(context, rootDirectoryStr);
+    }
+
+    /**
+     * Public constructor for programmatic use.
+     *
+     * @param context
+     *            application context through which events can be published
+     * @param rootDirectory
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory)
+    {
+        super(context, rootDirectory);
+    }
+
+    /**
+     * @param eagerContentStoreCleaner  the cleaner that deletes binaries created by transactions that roll back
+     */
+    public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+    {
+        this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Deduplicating" + super.toString();
+    }
+
+    /**
+     * Returns a writer that moves its content to a digest-derived URL when closed.
+     * Writers onto a specific URL are handed straight to the {@link FileContentStore}.
+     */
+    @Override
+    public ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        if (newContentUrl != null)
+        {
+            return super.getWriterInternal(existingContentReader, newContentUrl);
+        }
+        try
+        {
+            // The content is written to an ordinary new file and moved once the digest is known
+            File file = createNewFile();
+            String contentUrl = makeContentUrl(file);
+            DeduplicatingFileContentWriter writer = new DeduplicatingFileContentWriter(
+                    this,
+                    file,
+                    contentUrl,
+                    existingContentReader);
+            if (contentLimitProvider != null)
+            {
+                writer.setContentLimitProvider(contentLimitProvider);
+            }
+            writer.setAllowRandomAccess(isAllowRandomAccess());
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Created deduplicating content writer: \n" +
+                        "   writer: " + writer);
+            }
+            return writer;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to get writer", e);
+        }
+    }
+
+    /**
+     * Build the content URL for a binary with the given digest
+     *
+     * @param digest        the hex-encoded digest of the content
+     * @return              Returns the content URL that the content is stored against
+     */
+    public static String makeDigestContentUrl(String digest)
+    {
+        StringBuilder sb = new StringBuilder(20 + digest.length());
+        sb.append(FileContentStore.STORE_PROTOCOL)
+          .append(ContentStore.PROTOCOL_DELIMITER)
+          .append(DIGEST_DIRECTORY).append('/')
+          .append(digest, 0, 2).append('/')
+          .append(digest, 2, 4).append('/')
+          .append(digest).append(".bin");
+        return sb.toString();
+    }
+
+    /**
+     * Moves a fully-written file to the URL derived from its digest.  If the content is
+     * already present, the given file is deleted instead, or kept until the transaction
+     * completes.  If the content is present but belongs to another transaction that has
+     * not completed, the file stays where it is.
+     *
+     * @param file          the file that has been written
+     * @param digest        the hex-encoded digest of the file's content
+     * @return              Returns the URL that the content is now stored against
+     * @throws IOException  if the file could not be moved
+     */
+    /*package*/ String storeDigestedFile(File file, String digest) throws IOException
+    {
+        boolean inTxn = AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE;
+        Set<String> createdDigests = inTxn ? TransactionalResourceHelper.<String>getSet(createdDigestsKey) : Collections.<String>emptySet();
+        String contentUrl = makeDigestContentUrl(digest);
+        File digestFile = makeFile(contentUrl);
+        boolean created = false;
+        // Creating a binary and marking it as pending must appear atomic to other writers
+        synchronized (pendingDigests)
+        {
+            if (pendingDigests.contains(digest) && !createdDigests.contains(digest))
+            {
+                // Another transaction's binary may yet be rolled back
+                String fileUrl = makeContentUrl(file);
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Content with the same digest is not yet committed: \n" +
+                            "   url: " + fileUrl + "\n" +
+                            "   digest url: " + contentUrl);
+                }
+                return fileUrl;
+            }
+            if (!digestFile.exists())
+            {
+                created = moveToDigestFile(file, digestFile);
+                if (created && inTxn)
+                {
+                    pendingDigests.add(digest);
+                    createdDigests.add(digest);
+                    AlfrescoTransactionSupport.bindListener(transactionListener);
+                }
+            }
+        }
+        if (created)
+        {
+            if (inTxn && eagerContentStoreCleaner != null)
+            {
+                eagerContentStoreCleaner.registerNewContentUrl(contentUrl);
+            }
+        }
+        else if (inTxn && !createdDigests.contains(digest))
+        {
+            // Keep the file in case the binary is cleaned up before the reference to it is committed
+            Map<String, File> standbyFiles = TransactionalResourceHelper.getMap(standbyFilesKey);
+            if (!standbyFiles.containsKey(contentUrl))
+            {
+                standbyFiles.put(contentUrl, file);
+                AlfrescoTransactionSupport.bindListener(transactionListener);
+            }
+            else
+            {
+                deleteDuplicate(file);
+            }
+        }
+        else
+        {
+            deleteDuplicate(file);
+        }
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Stored digested content: \n" +
+                    "   file: " + file + "\n" +
+                    "   url: " + contentUrl + "\n" +
+                    "   duplicate: " + !created);
+        }
+        return contentUrl;
+    }
+
+    /**
+     * @return              Returns <tt>true</tt> if the file was moved, or <tt>false</tt> if the
+     *                      digest file was created concurrently
+     */
+    private boolean moveToDigestFile(File file, File digestFile) throws IOException
+    {
+        File dir = digestFile.getParentFile();
+        if (!dir.exists())
+        {
+            makeDirectory(dir);
+        }
+        try
+        {
+            Files.move(file.toPath(), digestFile.toPath());
+            return true;
+        }
+        catch (FileAlreadyExistsException e)
+        {
+            // Beaten to it by a concurrent writer of the same content
+            return false;
+        }
+    }
+
+    private void deleteDuplicate(File file)
+    {
+        if (!file.delete())
+        {
+            logger.warn("Failed to delete duplicate content file: " + file);
+        }
+    }
+
+    /**
+     * Restores binaries that the transaction reuses and releases the transaction's binaries
+     * and standby files once it completes
+     */
+    private class DigestTransactionListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            Map<String, File> standbyFiles = TransactionalResourceHelper.getMap(standbyFilesKey);
+            for (Map.Entry<String, File> entry : standbyFiles.entrySet())
+            {
+                File digestFile = makeFile(entry.getKey());
+                if (digestFile.exists())
+                {
+                    continue;
+                }
+                try
+                {
+                    if (moveToDigestFile(entry.getValue(), digestFile))
+                    {
+                        logger.warn("Restored content deleted while the transaction was using it: " + entry.getKey());
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new ContentIOException("Failed to restore content: " + entry.getKey(), e);
+                }
+            }
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            transactionCompleted();
+        }
+
+        @Override
+        public void afterRollback()
+        {
+            // The eager cleaner deletes these as well, but they must be gone before other transactions may share them
+            Set<String> createdDigests = TransactionalResourceHelper.getSet(createdDigestsKey);
+            for (String digest : createdDigests)
+            {
+                delete(makeDigestContentUrl(digest));
+            }
+            transactionCompleted();
+        }
+
+        private void transactionCompleted()
+        {
+            Set<String> createdDigests = TransactionalResourceHelper.getSet(createdDigestsKey);
+            pendingDigests.removeAll(createdDigests);
+            Map<String, File> standbyFiles = TransactionalResourceHelper.getMap(standbyFilesKey);
+            for (File file : standbyFiles.values())
+            {
+                if (file.exists())
+                {
+                    deleteDuplicate(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Writer for the {@link DeduplicatingFileContentStore}.  Content is digested as it passes
+ * through the writable channel and, once the channel is closed, the file is handed back to
+ * the store and the writer takes on the content URL that the store returns, normally the
+ * digest-derived one.
+ * <p>
+ * The channel is never a {@link java.nio.channels.FileChannel}, so random access writes
+ * are spoofed by the {@link org.alfresco.repo.content.AbstractContentWriter base class}
+ * and the digest always sees the final content in order.
+ *
+ * @since 5.2
+ */
+public class DeduplicatingFileContentWriter extends FileContentWriter
+{
+    private final DeduplicatingFileContentStore store;
+
+    /**
+     * @param store the store that will take ownership of the file once written
+     * @param file the file for writing
+     * @param url the url of the file before the content has been digested
+     * @param existingContentReader a reader of a previous version of this content
+     */
+    /*package*/ DeduplicatingFileContentWriter(
+            DeduplicatingFileContentStore store,
+            File file,
+            String url,
+            ContentReader existingContentReader)
+    {
+        super(file, url, existingContentReader);
+        this.store = store;
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(DeduplicatingFileContentStore.DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Digest algorithm not available: " + DeduplicatingFileContentStore.DIGEST_ALGORITHM, e);
+        }
+        WritableByteChannel fileChannel = super.getDirectWritableChannel();
+        return new DigestingChannel(fileChannel, digest);
+    }
+
+    /**
+     * Called once the content is complete to relocate it to its digest-derived URL.
+     */
+    private void contentDigested(byte[] digest) throws IOException
+    {
+        String hex = new String(Hex.encodeHex(digest));
+        String contentUrl = store.storeDigestedFile(getFile(), hex);
+        setFile(store.makeFile(contentUrl));
+        setContentUrl(contentUrl);
+    }
+
+    /**
+     * Channel that digests all content written through it and relocates the written file
+     * once it has been closed.
+     */
+    private class DigestingChannel implements WritableByteChannel
+    {
+        private final WritableByteChannel delegate;
+        private final MessageDigest digest;
+        private boolean closed;
+
+        private DigestingChannel(WritableByteChannel delegate, MessageDigest digest)
+        {
+            this.delegate = delegate;
+            this.digest = digest;
+            this.closed = false;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            ByteBuffer written = src.duplicate();
+            int count = delegate.write(src);
+            written.limit(written.position() + count);
+            digest.update(written);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return !closed && delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            delegate.close();
+            contentDigested(digest.digest());
+        }
+    }
+}
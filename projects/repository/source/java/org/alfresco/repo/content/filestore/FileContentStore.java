@@ -197,6 +197,14 @@ public class FileContentStore
         this.allowRandomAccess = allowRandomAccess;
     }
 
+    /**
+     * @return Returns <tt>true</tt> if readers and writers may provide random access
+     */
+    /*package*/ boolean isAllowRandomAccess()
+    {
+        return allowRandomAccess;
+    }
+
     /**
      * File stores may optionally be declared read-only.  This is useful when configuring
      * a store, possibly temporarily, to act as a source of data but to preserve it against
@@ -274,7 +282,7 @@ public class FileContentStore
      * @param dir               the directory to create
      * @throws IOException      if an IO error occurs
      */
-    private synchronized void makeDirectory(File dir) throws IOException
+    /*package*/ synchronized void makeDirectory(File dir) throws IOException
     {
         /*
          * Once in this method, the only contention will be from other file stores or processes.
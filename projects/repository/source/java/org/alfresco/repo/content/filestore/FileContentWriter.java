@@ -111,6 +111,16 @@ public class FileContentWriter extends AbstractContentWriter
         return file;
     }
 
+    /**
+     * Allows derived writers to follow the content if it is moved once written.
+     * 
+     * @param file the file that now holds the content
+     */
+    /* package */ void setFile(File file)
+    {
+        this.file = file;
+    }
+
     /**
      * @return Returns the size of the underlying file or 
      */
@@ -149,6 +149,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private Map<String, MetadataExtracterLimits> mimetypeLimits;
     private ExecutorService executorService;
     protected MetadataExtracterConfig metadataExtracterConfig;
+    /** The raw keys wanted by the extraction in progress on each thread */
+    private final ThreadLocal<Set<String>> wantedRawKeys = new ThreadLocal<Set<String>>();
 
     /**
      * Default constructor.  If this is called, then {@link #isSupported(String)} should
@@ -281,7 +283,12 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
                 getBooleanProperty(beanName+'.'+mimetypeService.getExtension(mimetype)+".enabled", true));
     }
 
-    private boolean getBooleanProperty(String name, boolean defaultValue)
+    /**
+     * @param name          the name of a global property
+     * @param defaultValue  the value to use if the property is not set
+     * @return              the value of the global property
+     */
+    protected boolean getBooleanProperty(String name, boolean defaultValue)
     {
         boolean value = defaultValue;
         if (properties != null)
@@ -596,6 +603,45 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         return Collections.unmodifiableMap(mapping);
     }
 
+    /**
+     * Helper method for derived classes to find which of the mapped keys the extraction in
+     * progress still needs.  A key is not needed if the overwrite policy would keep the current
+     * value of every property it is mapped onto, so its value would not be written.  Outside of
+     * an extraction all the mapped keys are returned.
+     * 
+     * @return      the raw keys whose values would be written to the destination
+     */
+    protected final Set<String> getWantedRawKeys()
+    {
+        Set<String> rawKeys = wantedRawKeys.get();
+        return rawKeys == null ? getMapping().keySet() : rawKeys;
+    }
+
+    private Set<String> getWantedRawKeys(OverwritePolicy overwritePolicy, Map<QName, Serializable> destination)
+    {
+        Set<String> rawKeys = new HashSet<String>(mapping.size() * 2);
+        for (Map.Entry<String, Set<QName>> entry : mapping.entrySet())
+        {
+            for (QName systemQName : entry.getValue())
+            {
+                // Ask the policy whether it would put a value over the current one
+                Map<QName, Serializable> target = new HashMap<QName, Serializable>(3);
+                if (destination.containsKey(systemQName))
+                {
+                    target.put(systemQName, destination.get(systemQName));
+                }
+                Map<QName, Serializable> applied = overwritePolicy.applyProperties(
+                        Collections.<QName, Serializable>singletonMap(systemQName, systemQName.toString()), target);
+                if (applied.get(systemQName) != null)
+                {
+                    rawKeys.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return rawKeys;
+    }
+
     /**
      * Helper method for derived classes to obtain the embed mappings.
      * This should be called after initialization in order to guarantee the complete
@@ -1212,6 +1258,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
             // Check that the content has some meat
             if (reader.getSize() > 0 && reader.exists())
             {
+                wantedRawKeys.set(getWantedRawKeys(overwritePolicy, destination));
                 rawMetadata = extractRaw(reader, getLimits(reader.getMimetype()));
             }
             else
@@ -1276,6 +1323,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         }
         finally
         {
+            wantedRawKeys.remove();
             // check that the reader was closed (if used)
             if (reader.isChannelOpen())
             {
@@ -2008,15 +2056,18 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private class ExtractRawCallable implements Callable<Map<String,Serializable>>
     {
         private ContentReader contentReader;
+        private Set<String> rawKeys;
         
         public ExtractRawCallable(ContentReader reader)
         {
             this.contentReader = reader;
+            this.rawKeys = wantedRawKeys.get();
         }
         
         @Override
         public Map<String, Serializable> call() throws Exception
         {
+            wantedRawKeys.set(rawKeys);
             try
             {
                 return extractRaw(contentReader);
@@ -2025,6 +2076,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
             {
                 throw new ExtractRawCallableException(e);
             }
+            finally
+            {
+                wantedRawKeys.remove();
+            }
         }
     }
     
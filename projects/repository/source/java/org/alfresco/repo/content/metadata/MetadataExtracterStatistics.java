@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records how long metadata extraction takes for each source mimetype, so that slow
+ * document types can be found. The times are logged at INFO level at most once per
+ * {@link #setLogIntervalMs(long) log interval}, while extractions are taking place.
+ *
+ * @since 5.2
+ */
+public class MetadataExtracterStatistics
+{
+    private static Log logger = LogFactory.getLog(MetadataExtracterStatistics.class);
+
+    private final ConcurrentMap<String, Timing> timings = new ConcurrentHashMap<String, Timing>();
+    private long logIntervalMs;
+    private final AtomicLong nextLogTime = new AtomicLong();
+
+    /**
+     * @param logIntervalMs     the minimum time between logs of the recorded times in
+     *                          milliseconds, or 0 to not log them
+     */
+    public void setLogIntervalMs(long logIntervalMs)
+    {
+        this.logIntervalMs = logIntervalMs;
+    }
+
+    /**
+     * Records the time taken by one extraction.
+     *
+     * @param mimetype      the mimetype of the content
+     * @param timeMs        the time taken in milliseconds
+     */
+    public void recordTime(String mimetype, long timeMs)
+    {
+        Timing timing = timings.get(mimetype);
+        if (timing == null)
+        {
+            Timing newTiming = new Timing();
+            timing = timings.putIfAbsent(mimetype, newTiming);
+            if (timing == null)
+            {
+                timing = newTiming;
+            }
+        }
+        timing.record(timeMs);
+        logIfDue();
+    }
+
+    private void logIfDue()
+    {
+        if (logIntervalMs <= 0 || !logger.isInfoEnabled())
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long logTime = nextLogTime.get();
+        // The first extraction only starts the interval
+        if (now >= logTime && nextLogTime.compareAndSet(logTime, now + logIntervalMs) && logTime > 0)
+        {
+            logger.info("Metadata extraction times:\n" + this);
+        }
+    }
+
+    /**
+     * @return the mimetypes for which extractions have been recorded
+     */
+    public Set<String> getMimetypes()
+    {
+        return new TreeSet<String>(timings.keySet());
+    }
+
+    /**
+     * @param mimetype      the mimetype of the content
+     * @return              the number of extractions recorded
+     */
+    public long getCount(String mimetype)
+    {
+        Timing timing = timings.get(mimetype);
+        return timing == null ? 0 : timing.getCount();
+    }
+
+    /**
+     * @param mimetype      the mimetype of the content
+     * @return              the average time taken in milliseconds
+     */
+    public long getAverageTime(String mimetype)
+    {
+        Timing timing = timings.get(mimetype);
+        return timing == null ? 0 : timing.getAverageTime();
+    }
+
+    /**
+     * @param mimetype      the mimetype of the content
+     * @return              the longest time taken in milliseconds
+     */
+    public long getMaxTime(String mimetype)
+    {
+        Timing timing = timings.get(mimetype);
+        return timing == null ? 0 : timing.getMaxTime();
+    }
+
+    /**
+     * Discards the recorded times.
+     */
+    public void reset()
+    {
+        timings.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String mimetype : getMimetypes())
+        {
+            sb.append(mimetype)
+              .append(" count=").append(getCount(mimetype))
+              .append(" averageMs=").append(getAverageTime(mimetype))
+              .append(" maxMs=").append(getMaxTime(mimetype))
+              .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class Timing
+    {
+        private long count;
+        private long totalTime;
+        private long maxTime;
+
+        private synchronized void record(long timeMs)
+        {
+            count++;
+            totalTime += timeMs;
+            maxTime = Math.max(maxTime, timeMs);
+        }
+
+        private synchronized long getCount()
+        {
+            return count;
+        }
+
+        private synchronized long getAverageTime()
+        {
+            return count == 0 ? 0 : totalTime / count;
+        }
+
+        private synchronized long getMaxTime()
+        {
+            return maxTime;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.api.AlfrescoPublicApi;   
 import org.alfresco.repo.content.MimetypeMap;
@@ -113,6 +114,10 @@ public abstract class TikaPoweredMetadataExtracter
 
     private String extractorContext = null;
 
+    private static final String PROP_STOP_PARSING_WHEN_MAPPED = "content.metadataExtracter.stopParsingWhenMapped";
+    private Boolean stopParsingWhenMapped;
+    private final AtomicLong stoppedParseCount = new AtomicLong();
+
     private String metadataSeparator = ","; // Default separator.
 
     public String getMetadataSeparator()
@@ -125,6 +130,38 @@ public abstract class TikaPoweredMetadataExtracter
         this.metadataSeparator = metadataSeparator;
     }
 
+    /**
+     * Set whether parsing should stop when the body of the document is reached, if all the
+     * metadata that would be written to the node has already been found. Mapped properties
+     * that the overwrite policy would leave as they are need not be found. Most parsers
+     * have read the document properties by then, so the rest of the document need not be
+     * parsed. If not set, the global property
+     * <tt>content.metadataExtracter.stopParsingWhenMapped</tt> is used.
+     * 
+     * @param stopParsingWhenMapped     <tt>true</tt> to stop parsing early
+     */
+    public void setStopParsingWhenMapped(boolean stopParsingWhenMapped)
+    {
+        this.stopParsingWhenMapped = stopParsingWhenMapped;
+    }
+
+    protected boolean isStopParsingWhenMapped()
+    {
+        if (stopParsingWhenMapped != null)
+        {
+            return stopParsingWhenMapped;
+        }
+        return getBooleanProperty(PROP_STOP_PARSING_WHEN_MAPPED, false);
+    }
+
+    /**
+     * @return      the number of documents whose parse was stopped at the start of the body
+     */
+    public long getStoppedParseCount()
+    {
+        return stoppedParseCount.get();
+    }
+
     /**
      * Builds up a list of supported mime types by merging
      * an explicit list with any that Tika also claims to support
@@ -400,71 +437,37 @@ public abstract class TikaPoweredMetadataExtracter
                handler = new NullContentHandler(); 
             }
 
+            MappedMetadataContentHandler mappedHandler = null;
+            if (isStopParsingWhenMapped())
+            {
+               mappedHandler = new MappedMetadataContentHandler(handler, metadata, headers);
+               handler = mappedHandler;
+            }
+
             // Set POI properties context if available...
             if (contextPresented)
             {
                 AlfrescoPoiPatchUtils.setContext(extractorContext);
             }
 
-            parser.parse(is, handler, metadata, context);
-            
-            // First up, copy all the Tika metadata over
-            // This allows people to map any of the Tika
-            //  keys onto their own content model
-            for(String tikaKey : metadata.names()) 
+            try
             {
-               putRawValue(tikaKey, getMetadataValue(metadata, tikaKey), rawProperties);
+               parser.parse(is, handler, metadata, context);
             }
-            
-            // Now, map the common Tika metadata keys onto
-            //  the common Alfresco metadata keys. This allows
-            //  existing mapping properties files to continue
-            //  to work without needing any changes
-            
-            // The simple ones
-            putRawValue(KEY_AUTHOR, getMetadataValue(metadata, Metadata.AUTHOR), rawProperties);
-            putRawValue(KEY_TITLE, getMetadataValue(metadata, Metadata.TITLE), rawProperties);
-            putRawValue(KEY_COMMENTS, getMetadataValue(metadata, Metadata.COMMENTS), rawProperties);
-
-            // Tags
-            putRawValue(KEY_TAGS, getMetadataValues(metadata, KEY_TAGS), rawProperties);
-
-            // Get the subject and description, despite things not
-            //  being nearly as consistent as one might hope
-            String subject = getMetadataValue(metadata, Metadata.SUBJECT);
-            String description = getMetadataValue(metadata, Metadata.DESCRIPTION);
-            if(subject != null && description != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, description, rawProperties);
-               putRawValue(KEY_SUBJECT, subject, rawProperties);
-            } 
-            else if(subject != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, subject, rawProperties);
-               putRawValue(KEY_SUBJECT, subject, rawProperties);
-            } 
-            else if(description != null) 
-            {
-               putRawValue(KEY_DESCRIPTION, description, rawProperties);
-               putRawValue(KEY_SUBJECT, description, rawProperties);
-            }
-            
-            // Try for the dates two different ways too
-            if(metadata.get(Metadata.CREATION_DATE) != null) 
-            {
-               putRawValue(KEY_CREATED, metadata.get(Metadata.CREATION_DATE), rawProperties);
-            } 
-            else if(metadata.get(Metadata.DATE) != null) 
+            catch (Throwable e)
             {
-               putRawValue(KEY_CREATED, metadata.get(Metadata.DATE), rawProperties);
+               if (mappedHandler == null || !mappedHandler.isStop(e))
+               {
+                  throw e;
+               }
+               stoppedParseCount.incrementAndGet();
+               if (logger.isDebugEnabled())
+               {
+                  logger.debug("All mapped metadata found before the body of " + reader + ", parsing stopped");
+               }
             }
             
-            // If people created a specific instance 
-            //  (eg OfficeMetadataExtractor), then allow that
-            //  instance to map the Tika keys onto its 
-            //  existing namespace so that older properties
-            //  files continue to map correctly
-            rawProperties = extractSpecific(metadata, rawProperties, headers);
+            rawProperties = mapMetadata(metadata, rawProperties, headers);
         }
         finally
         {
@@ -482,6 +485,71 @@ public abstract class TikaPoweredMetadataExtracter
 
         return rawProperties;
     }
+
+    /**
+     * Maps the Tika metadata onto the raw properties.
+     */
+    private Map<String, Serializable> mapMetadata(Metadata metadata, Map<String, Serializable> rawProperties,
+                Map<String,String> headers)
+    {
+        // First up, copy all the Tika metadata over
+        // This allows people to map any of the Tika
+        //  keys onto their own content model
+        for(String tikaKey : metadata.names()) 
+        {
+           putRawValue(tikaKey, getMetadataValue(metadata, tikaKey), rawProperties);
+        }
+        
+        // Now, map the common Tika metadata keys onto
+        //  the common Alfresco metadata keys. This allows
+        //  existing mapping properties files to continue
+        //  to work without needing any changes
+        
+        // The simple ones
+        putRawValue(KEY_AUTHOR, getMetadataValue(metadata, Metadata.AUTHOR), rawProperties);
+        putRawValue(KEY_TITLE, getMetadataValue(metadata, Metadata.TITLE), rawProperties);
+        putRawValue(KEY_COMMENTS, getMetadataValue(metadata, Metadata.COMMENTS), rawProperties);
+
+        // Tags
+        putRawValue(KEY_TAGS, getMetadataValues(metadata, KEY_TAGS), rawProperties);
+
+        // Get the subject and description, despite things not
+        //  being nearly as consistent as one might hope
+        String subject = getMetadataValue(metadata, Metadata.SUBJECT);
+        String description = getMetadataValue(metadata, Metadata.DESCRIPTION);
+        if(subject != null && description != null) 
+        {
+           putRawValue(KEY_DESCRIPTION, description, rawProperties);
+           putRawValue(KEY_SUBJECT, subject, rawProperties);
+        } 
+        else if(subject != null) 
+        {
+           putRawValue(KEY_DESCRIPTION, subject, rawProperties);
+           putRawValue(KEY_SUBJECT, subject, rawProperties);
+        } 
+        else if(description != null) 
+        {
+           putRawValue(KEY_DESCRIPTION, description, rawProperties);
+           putRawValue(KEY_SUBJECT, description, rawProperties);
+        }
+        
+        // Try for the dates two different ways too
+        if(metadata.get(Metadata.CREATION_DATE) != null) 
+        {
+           putRawValue(KEY_CREATED, metadata.get(Metadata.CREATION_DATE), rawProperties);
+        } 
+        else if(metadata.get(Metadata.DATE) != null) 
+        {
+           putRawValue(KEY_CREATED, metadata.get(Metadata.DATE), rawProperties);
+        }
+        
+        // If people created a specific instance 
+        //  (eg OfficeMetadataExtractor), then allow that
+        //  instance to map the Tika keys onto its 
+        //  existing namespace so that older properties
+        //  files continue to map correctly
+        return extractSpecific(metadata, rawProperties, headers);
+    }
     
     @Override
     protected void embedInternal(Map<String, Serializable> properties, ContentReader reader, ContentWriter writer) throws Throwable
@@ -683,6 +751,76 @@ public abstract class TikaPoweredMetadataExtracter
       public void startPrefixMapping(String paramString1, String paramString2)
             throws SAXException {}
     }
+    /**
+     * Stops the parse when the body of the document starts, if all the
+     *  metadata wanted by the extraction has been found by then.
+     */
+    private class MappedMetadataContentHandler extends ContentHandlerDecorator
+    {
+       private final Metadata metadata;
+       private final Map<String,String> headers;
+       private final SAXException stop = new SAXException("All mapped metadata has been found");
+       private boolean checked;
+
+       private MappedMetadataContentHandler(ContentHandler handler, Metadata metadata, Map<String,String> headers)
+       {
+          super(handler);
+          this.metadata = metadata;
+          this.headers = headers;
+       }
+
+       @Override
+       public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException
+       {
+          if (!checked && "body".equals(localName))
+          {
+             checked = true;
+             if (isMapped())
+             {
+                throw stop;
+             }
+          }
+          super.startElement(uri, localName, name, atts);
+       }
+
+       private boolean isMapped()
+       {
+          Map<String, Serializable> rawProperties;
+          try
+          {
+             rawProperties = mapMetadata(metadata, newRawMap(), headers);
+          }
+          catch (RuntimeException e)
+          {
+             // Carry on parsing, and map the metadata at the end
+             return false;
+          }
+          for (String key : getWantedRawKeys())
+          {
+             if (rawProperties.get(key) == null)
+             {
+                return false;
+             }
+          }
+          return true;
+       }
+
+       /**
+        * Parsers may wrap the exception used to stop the parse.
+        */
+       private boolean isStop(Throwable e)
+       {
+          for (int depth = 0; e != null && depth < 10; depth++)
+          {
+             if (e == stop)
+             {
+                return true;
+             }
+             e = e.getCause();
+          }
+          return false;
+       }
+    }
     /**
      * A content handler that ignores all the content it finds.
      * Normally used when we only want the metadata, and don't
@@ -67,6 +67,8 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
 
     private ExecutorService executorService;
 
+    private TransformerScheduler transformerScheduler;
+
     private ContentTransformerRegistry registry;
     private boolean registerTransformer;
     private boolean retryTransformOnDifferentMimeType;
@@ -114,6 +116,15 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
         this.registry = registry;
     }
     
+    /**
+     * The scheduler that limits the number of transformations running at the same time.
+     * If not set, transformations start straight away.
+     */
+    public void setTransformerScheduler(TransformerScheduler transformerScheduler)
+    {
+        this.transformerScheduler = transformerScheduler;
+    }
+    
     /**
      * The metadata extracter config.
      */
@@ -241,6 +252,7 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
                 options = new TransformationOptions();
             }
             
+            boolean scheduled = false;
             try
             {
                 if (transformerDebug.isEnabled())
@@ -260,6 +272,15 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
                 // Pass on any limits to the reader
                 setReaderLimits(reader, writer, options);
 
+                // Wait for a place to run top level transformations. Nested transformations
+                // already have one. The wait is not included in the transformation time.
+                if (transformerScheduler != null && depth.get() == 1)
+                {
+                    waitToTransform(sourceMimetype, targetMimetype, options);
+                    scheduled = true;
+                    before = System.currentTimeMillis();
+                }
+
                 // Transform
                 // MNT-12238: CLONE - CLONE - Upload of PPTX causes very high memory usage leading to system instability
                 // Limiting transformation up to configured amount of milliseconds to avoid very high RAM consumption
@@ -405,6 +426,10 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
             }
             finally
             {
+                if (scheduled)
+                {
+                    transformerScheduler.release(this);
+                }
                 transformerDebug.popTransform();
                 
                 // check that the reader and writer are both closed
@@ -459,6 +484,32 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
         }
     }
 
+    /**
+     * Waits for the {@link TransformerScheduler} to allow this transformer to start, recording
+     * the queue depth and wait time in the statistics.
+     */
+    private void waitToTransform(String sourceMimetype, String targetMimetype, TransformationOptions options)
+    {
+        TransformerStatistics statistics = transformerConfig.getStatistics(this, sourceMimetype, targetMimetype, true);
+        TransformerStatistics summary = transformerConfig.getStatistics(null, sourceMimetype, targetMimetype, true);
+        statistics.recordQueueDepthChange(1);
+        summary.recordQueueDepthChange(1);
+        try
+        {
+            long waitTime = transformerScheduler.acquire(this, options);
+            if (waitTime > 0)
+            {
+                statistics.recordWaitTime(waitTime);
+                summary.recordWaitTime(waitTime);
+            }
+        }
+        finally
+        {
+            statistics.recordQueueDepthChange(-1);
+            summary.recordQueueDepthChange(-1);
+        }
+    }
+
     /**
      * Cancels <code>task</code> and closes content accessors
      * 
@@ -542,7 +593,8 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
     /**
      * Gets the <code>ExecutorService</code> to be used for timeout-aware extraction.
      * <p>
-     * If no <code>ExecutorService</code> has been defined a default of <code>Executors.newCachedThreadPool()</code> is used during {@link AbstractMappingMetadataExtracter#init()}.
+     * If no <code>ExecutorService</code> has been defined, the one shared through the {@link TransformerScheduler}
+     * is used, or failing that a default of <code>Executors.newCachedThreadPool()</code> is used during {@link AbstractMappingMetadataExtracter#init()}.
      * 
      * @return the defined or default <code>ExecutorService</code>
      */
@@ -550,7 +602,9 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
     {
         if (null == executorService)
         {
-            executorService = Executors.newCachedThreadPool();
+            executorService = transformerScheduler != null && transformerScheduler.getExecutorService() != null
+                    ? transformerScheduler.getExecutorService()
+                    : Executors.newCachedThreadPool();
         }
 
         return executorService;
@@ -577,16 +631,22 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
 
         private TransformationOptions options;
 
+        // Nested transformations on the pool thread must not be treated as top level ones
+        private int callerDepth;
+
         public TransformInternalCallable(ContentReader reader, ContentWriter writer, TransformationOptions options)
         {
             this.reader = reader;
             this.writer = writer;
             this.options = options;
+            this.callerDepth = depth.get();
         }
 
         @Override
         public Void call() throws Exception
         {
+            int poolDepth = depth.get();
+            depth.set(callerDepth);
             try
             {
                 transformInternal(reader, writer, options);
@@ -596,6 +656,10 @@ public abstract class AbstractContentTransformer2 extends AbstractContentTransfo
             {
                 throw new TransformInternalCallableException(e);
             }
+            finally
+            {
+                depth.set(poolDepth);
+            }
         }
     }
 
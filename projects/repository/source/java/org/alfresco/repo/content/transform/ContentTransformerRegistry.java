@@ -58,6 +58,8 @@ public class ContentTransformerRegistry
     
     private final TransformerSelector transformerSelector;
     
+    private volatile int changeCount;
+    
     /**
      * @param transformerSelector Transformer selector
      */
@@ -77,6 +79,7 @@ public class ContentTransformerRegistry
     {
         transformers.add(transformer);
         allTransformers.add(transformer);
+        changeCount++;
         // done
         if (logger.isDebugEnabled())
         {
@@ -93,6 +96,7 @@ public class ContentTransformerRegistry
     public synchronized void addComponentTransformer(ContentTransformer transformer)
     {
         allTransformers.add(transformer);
+        changeCount++;
     }
 
     /**
@@ -103,6 +107,17 @@ public class ContentTransformerRegistry
     {
         transformers.remove(transformer);
         allTransformers.remove(transformer);
+        changeCount++;
+    }
+    
+    /**
+     * @return a number that changes each time a transformer is added or removed, so that
+     *         anything derived from the registered transformers may be discarded.
+     * @since 5.2
+     */
+    public int getChangeCount()
+    {
+        return changeCount;
     }
 
     /**
@@ -64,6 +64,10 @@ import org.springframework.beans.factory.InitializingBean;
  * <p>
  * This transformer <b>requires</b> the setting of the <b>explicitTransformations</b>
  * property.
+ * <p>
+ * If a {@link #setProcessPool(TransformerProcessPool) processPool} is set, the transform
+ * command is passed to one of its long-lived helper processes rather than being executed
+ * as a new process, unless the pool is unavailable.
  * 
  * @see org.alfresco.util.exec.RuntimeExec
  * 
@@ -82,6 +86,7 @@ public class RuntimeExecutableContentTransformerWorker extends ContentTransforme
     private boolean available;
     private RuntimeExec checkCommand;
     private RuntimeExec transformCommand;
+    private TransformerProcessPool processPool;
 
     /** Stores the output from the check command */
     private String versionString;
@@ -123,6 +128,17 @@ public class RuntimeExecutableContentTransformerWorker extends ContentTransforme
     {
         this.transformCommand = transformCommand;
     }
+
+    /**
+     * Set the pool of helper processes that perform the transform command. Optional.
+     * 
+     * @param processPool the helper processes
+     * @since 5.2
+     */
+    public void setProcessPool(TransformerProcessPool processPool)
+    {
+        this.processPool = processPool;
+    }
     
     /**
      * A comma or space separated list of values that, if returned by the executed command,
@@ -261,10 +277,24 @@ public class RuntimeExecutableContentTransformerWorker extends ContentTransforme
 
         // execute the transformation command
         long timeoutMs = options.getTimeoutMs();
-        ExecutionResult result = null;
+        Object result = null;
+        boolean success;
         try
         {
-            result = transformCommand.execute(properties, timeoutMs);
+            TransformerProcessPool.Result pooledResult = processPool == null
+                    ? null
+                    : processPool.execute(transformCommand.getCommand(properties), timeoutMs);
+            if (pooledResult != null)
+            {
+                result = pooledResult;
+                success = pooledResult.isSuccess();
+            }
+            else
+            {
+                ExecutionResult executionResult = transformCommand.execute(properties, timeoutMs);
+                result = executionResult;
+                success = executionResult.getSuccess();
+            }
         }
         catch (Throwable e)
         {
@@ -272,7 +302,7 @@ public class RuntimeExecutableContentTransformerWorker extends ContentTransforme
         }
         
         // check
-        if (!result.getSuccess())
+        if (!success)
         {
             throw new ContentIOException("Transformation failed - status indicates an error: \n" + result);
         }
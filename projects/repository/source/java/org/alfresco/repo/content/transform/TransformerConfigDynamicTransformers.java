@@ -58,12 +58,28 @@ public class TransformerConfigDynamicTransformers extends TransformerPropertyNam
     private static final Log logger = LogFactory.getLog(TransformerConfigDynamicTransformers.class);
     int errorCount = 0;
     private final List<ContentTransformer> dynamicTransformers = new ArrayList<ContentTransformer>();
+    private TransformerScheduler transformerScheduler;
 
     public TransformerConfigDynamicTransformers(TransformerConfig transformerConfig, TransformerProperties transformerProperties,
             MimetypeService mimetypeService, ContentService contentService, ContentTransformerRegistry transformerRegistry,
             TransformerDebug transformerDebug, ModuleService moduleService, DescriptorService descriptorService,
             Properties globalProperties)
     {
+        this(transformerConfig, transformerProperties, mimetypeService, contentService, transformerRegistry,
+                transformerDebug, moduleService, descriptorService, globalProperties, null);
+    }
+
+    /**
+     * @param transformerScheduler limits the number of concurrent transformations by the dynamic
+     *        transformers. May be <code>null</code>.
+     * @since 5.2
+     */
+    public TransformerConfigDynamicTransformers(TransformerConfig transformerConfig, TransformerProperties transformerProperties,
+            MimetypeService mimetypeService, ContentService contentService, ContentTransformerRegistry transformerRegistry,
+            TransformerDebug transformerDebug, ModuleService moduleService, DescriptorService descriptorService,
+            Properties globalProperties, TransformerScheduler transformerScheduler)
+    {
+        this.transformerScheduler = transformerScheduler;
         createDynamicTransformers(transformerConfig, transformerProperties, mimetypeService, contentService,
                 transformerRegistry, transformerDebug, moduleService, descriptorService, globalProperties);
     }
@@ -311,6 +327,10 @@ public class TransformerConfigDynamicTransformers extends TransformerPropertyNam
         transformer.setTransformerDebug(transformerDebug);
         transformer.setTransformerConfig(transformerConfig);
         transformer.setRegistry(transformerRegistry);
+        if (transformerScheduler != null)
+        {
+            transformer.setTransformerScheduler(transformerScheduler);
+        }
 
         // baseContentTransformer
         transformer.setRegisterTransformer(true);
@@ -118,6 +118,8 @@ public class TransformerConfigImpl extends AbstractLifecycleBean implements Tran
     
     private TransformerConfigDynamicTransformers dynamicTransformers;
 
+    private TransformerScheduler transformerScheduler;
+
     private Map<String, Set<String>> strictMimetypeExceptions;
 
     /**
@@ -170,6 +172,15 @@ public class TransformerConfigImpl extends AbstractLifecycleBean implements Tran
         this.descriptorService = descriptorService;
     }
 
+    /**
+     * The scheduler used by dynamic transformers to limit concurrent transformations.
+     * @since 5.2
+     */
+    public void setTransformerScheduler(TransformerScheduler transformerScheduler)
+    {
+        this.transformerScheduler = transformerScheduler;
+    }
+
     /**
      * Called by spring after bean is initialised.
      */
@@ -179,7 +190,8 @@ public class TransformerConfigImpl extends AbstractLifecycleBean implements Tran
         transformerProperties = new TransformerProperties(subsystem, globalProperties);
         
         dynamicTransformers = new TransformerConfigDynamicTransformers(this, transformerProperties, mimetypeService,
-                contentService, transformerRegistry, transformerDebug, moduleService, descriptorService, globalProperties);
+                contentService, transformerRegistry, transformerDebug, moduleService, descriptorService, globalProperties,
+                transformerScheduler);
         statistics= new TransformerConfigStatistics(this, mimetypeService);
         limits = new TransformerConfigLimits(transformerProperties, mimetypeService);
         supported = new TransformerConfigSupported(transformerProperties, mimetypeService);
@@ -78,6 +78,19 @@ public interface TransformerConfigMBean
      */
     public String[] getTransformationDebugLog(int n);
     
+    /**
+     * Returns the hits, misses and size of the cache of transformers able to perform each
+     * transformation, used when selecting a transformer.
+     */
+    public String getSelectorCacheStatistics();
+    
+    /**
+     * Discards the cache of transformers able to perform each transformation, so that all
+     * transformers are asked again.
+     * @return a confirmation message
+     */
+    public String clearSelectorCache();
+    
     /**
      * Returns custom and default transformer propertiest.
      * @param listAll list both default and custom values, otherwise includes
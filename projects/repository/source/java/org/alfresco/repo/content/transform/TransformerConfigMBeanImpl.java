@@ -41,7 +41,9 @@ import org.alfresco.service.cmr.repository.MimetypeService;
 public class TransformerConfigMBeanImpl implements TransformerConfigMBean
 {
     private static final String NO_TRANSFORMATIONS_TO_REPORT = "No transformations to report";
+    private static final String NO_SELECTOR_CACHE = "The transformer selector does not cache transformers";
     private ContentTransformerRegistry transformerRegistry;
+    private TransformerSelector transformerSelector;
     private TransformerDebug transformerDebug;
     private TransformerConfig transformerConfig;
     private MimetypeService mimetypeService;
@@ -53,6 +55,11 @@ public class TransformerConfigMBeanImpl implements TransformerConfigMBean
         this.transformerRegistry = transformerRegistry;
     }
 
+    public void setTransformerSelector(TransformerSelector transformerSelector)
+    {
+        this.transformerSelector = transformerSelector;
+    }
+
     public void setTransformerDebug(TransformerDebug transformerDebug)
     {
         this.transformerDebug = transformerDebug;
@@ -256,6 +263,21 @@ public class TransformerConfigMBeanImpl implements TransformerConfigMBean
                 sb.append(" averageTime=");
                 sb.append(statistics.getAverageTime());
                 sb.append(" ms");
+                long waitCount = statistics.getWaitCount();
+                if (waitCount > 0)
+                {
+                    sb.append(" waits=");
+                    sb.append(waitCount);
+                    sb.append(" averageWaitTime=");
+                    sb.append(statistics.getAverageWaitTime());
+                    sb.append(" ms");
+                }
+                int queueDepth = statistics.getQueueDepth();
+                if (queueDepth > 0)
+                {
+                    sb.append(" queued=");
+                    sb.append(queueDepth);
+                }
             }
         }
     }
@@ -278,6 +300,34 @@ public class TransformerConfigMBeanImpl implements TransformerConfigMBean
                 : entries;
     }
 
+    @Override
+    public String getSelectorCacheStatistics()
+    {
+        if (!(transformerSelector instanceof TransformerSelectorImpl))
+        {
+            return NO_SELECTOR_CACHE;
+        }
+        TransformerSelectorImpl selector = (TransformerSelectorImpl) transformerSelector;
+        long hits = selector.getCacheHits();
+        long misses = selector.getCacheMisses();
+        long total = hits + misses;
+        return "hits=" + hits +
+               " misses=" + misses +
+               " hitRate=" + (total == 0 ? 0 : hits * 100 / total) + "%" +
+               " size=" + selector.getCacheSize();
+    }
+
+    @Override
+    public String clearSelectorCache()
+    {
+        if (!(transformerSelector instanceof TransformerSelectorImpl))
+        {
+            return NO_SELECTOR_CACHE;
+        }
+        ((TransformerSelectorImpl) transformerSelector).clearCache();
+        return "Selector cache cleared";
+    }
+
     @Override
     public String getProperties(boolean listAll)
     {
@@ -450,6 +500,13 @@ public class TransformerConfigMBeanImpl implements TransformerConfigMBean
                 "getTransformerNames()\n" +
                 "   Lists the names of all top level transformers\n" +
                 "\n" +
+                "getSelectorCacheStatistics()\n" +
+                "   Lists the hits, misses and size of the cache of transformers able to perform\n" +
+                "   each transformation, used when selecting a transformer\n" +
+                "\n" +
+                "clearSelectorCache()\n" +
+                "   Discards the cache of transformers able to perform each transformation\n" +
+                "\n" +
                 "testTransform(transformerName, sourceExtension, targetExtension, use)\n" +
                 "   Transforms a small test file from one mimetype to another and then shows the \n" +
                 "   debug of the transform, which would indicate if it was successful or even if \n" +
@@ -0,0 +1,487 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.util.exec.RuntimeExec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * A pool of long-lived helper processes used by a {@link RuntimeExecutableContentTransformerWorker}
+ * in place of starting a new process for every transformation.
+ * <p>
+ * Each helper is started with the {@link #setStartCommand(RuntimeExec) startCommand} and is sent
+ * one request per line on its standard input: the arguments of the worker's transform command,
+ * after substitution and without the leading {@link #setSkipArguments(int) skipArguments}
+ * (normally the executable), double quoted where needed. The helper replies on its standard
+ * output (or standard error) with any output it likes, ending with a line that starts with the
+ * {@link #setSuccessMarker(String) successMarker} or {@link #setFailureMarker(String) failureMarker}.
+ * This matches the batch mode of tools such as GraphicsMagick:
+ * <pre>
+ *   gm batch -feedback on -echo off -
+ * </pre>
+ * A helper is replaced once it has completed {@link #setMaxJobsPerProcess(int) maxJobsPerProcess}
+ * requests, when it has exited, or when a request fails or times out, so a misbehaving helper
+ * never handles another request. If a helper cannot be started the pool is marked as unavailable
+ * for {@link #setRetryStartMs(long) retryStartMs} and {@link #execute(String[], long)} returns
+ * <code>null</code>, so that the worker falls back to a new process per transformation.
+ *
+ * @since 5.2
+ */
+public class TransformerProcessPool implements DisposableBean
+{
+    private static final Log logger = LogFactory.getLog(TransformerProcessPool.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private RuntimeExec startCommand;
+    private int poolSize = 2;
+    private int maxJobsPerProcess = 100;
+    private int skipArguments = 1;
+    private String successMarker = "PASS";
+    private String failureMarker = "FAIL";
+    private long retryStartMs = 60000;
+
+    private final BlockingQueue<HelperProcess> idle = new LinkedBlockingQueue<HelperProcess>();
+    private Semaphore places;
+    private volatile long unavailableUntil;
+    private volatile boolean shutdown;
+    private final AtomicInteger started = new AtomicInteger();
+
+    /**
+     * @param startCommand the command that starts a helper process. Its properties are not substituted.
+     */
+    public void setStartCommand(RuntimeExec startCommand)
+    {
+        this.startCommand = startCommand;
+    }
+
+    /**
+     * @param poolSize the maximum number of helper processes. Requests wait for a free helper. Default 2.
+     */
+    public void setPoolSize(int poolSize)
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param maxJobsPerProcess the number of requests after which a helper process is replaced.
+     *        0 or less means it is never replaced while healthy. Default 100.
+     */
+    public void setMaxJobsPerProcess(int maxJobsPerProcess)
+    {
+        this.maxJobsPerProcess = maxJobsPerProcess;
+    }
+
+    /**
+     * @param skipArguments the number of leading arguments of the transform command that are
+     *        not sent to the helper. Default 1 (the executable).
+     */
+    public void setSkipArguments(int skipArguments)
+    {
+        this.skipArguments = skipArguments;
+    }
+
+    /**
+     * @param successMarker the start of the reply line that indicates a request succeeded. Default "PASS".
+     */
+    public void setSuccessMarker(String successMarker)
+    {
+        this.successMarker = successMarker;
+    }
+
+    /**
+     * @param failureMarker the start of the reply line that indicates a request failed. Default "FAIL".
+     */
+    public void setFailureMarker(String failureMarker)
+    {
+        this.failureMarker = failureMarker;
+    }
+
+    /**
+     * @param retryStartMs how long to fall back to a process per transformation after a helper
+     *        process fails to start. Default 60000.
+     */
+    public void setRetryStartMs(long retryStartMs)
+    {
+        this.retryStartMs = retryStartMs;
+    }
+
+    /**
+     * @return the number of helper processes started so far.
+     */
+    public int getStartedCount()
+    {
+        return started.get();
+    }
+
+    /**
+     * @return <code>true</code> if requests are currently passed to helper processes.
+     */
+    public boolean isAvailable()
+    {
+        return !shutdown && System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    /**
+     * Passes a transformation to a helper process.
+     *
+     * @param command the transform command after substitution, as it would have been executed.
+     * @param timeoutMs the maximum time to wait for the reply. 0 or less waits for ever.
+     * @return the result, or <code>null</code> if no helper process is available and the caller
+     *         should execute the command itself.
+     * @throws ContentIOException if the helper process did not reply in time or stopped.
+     */
+    public Result execute(String[] command, long timeoutMs)
+    {
+        if (!isAvailable())
+        {
+            return null;
+        }
+        if (startCommand == null)
+        {
+            throw new AlfrescoRuntimeException("Mandatory property 'startCommand' not set");
+        }
+
+        Semaphore places = getPlaces();
+        try
+        {
+            places.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ContentIOException("Interrupted waiting for a helper process", e);
+        }
+        HelperProcess helper = null;
+        boolean reusable = false;
+        try
+        {
+            helper = borrow();
+            if (helper == null)
+            {
+                return null;
+            }
+            Result result = helper.execute(toRequest(command), timeoutMs);
+            reusable = result.isSuccess() &&
+                    (maxJobsPerProcess <= 0 || helper.jobCount < maxJobsPerProcess);
+            return result;
+        }
+        finally
+        {
+            if (helper != null)
+            {
+                if (reusable && !shutdown)
+                {
+                    idle.add(helper);
+                }
+                else
+                {
+                    helper.destroy();
+                }
+            }
+            places.release();
+        }
+    }
+
+    /**
+     * Stops the idle helper processes. Helpers still in use are stopped when they are returned.
+     */
+    @Override
+    public void destroy()
+    {
+        shutdown = true;
+        HelperProcess helper;
+        while ((helper = idle.poll()) != null)
+        {
+            helper.destroy();
+        }
+    }
+
+    private synchronized Semaphore getPlaces()
+    {
+        if (places == null)
+        {
+            places = new Semaphore(Math.max(poolSize, 1), true);
+        }
+        return places;
+    }
+
+    /**
+     * Returns an idle helper that is still running or starts a new one.
+     */
+    private HelperProcess borrow()
+    {
+        HelperProcess helper;
+        while ((helper = idle.poll()) != null)
+        {
+            if (helper.isRunning())
+            {
+                return helper;
+            }
+            logger.debug("Discarding helper process that has exited: " + helper);
+            helper.destroy();
+        }
+
+        String[] command = startCommand.getCommand(new HashMap<String, String>());
+        try
+        {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            helper = new HelperProcess(builder.start(), started.incrementAndGet());
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Started helper process " + helper + ": " + Arrays.toString(command));
+            }
+            return helper;
+        }
+        catch (IOException e)
+        {
+            unavailableUntil = System.currentTimeMillis() + retryStartMs;
+            logger.error("Failed to start helper process " + Arrays.toString(command) +
+                    ". Using a new process for each transformation for the next " + retryStartMs + "ms", e);
+            return null;
+        }
+    }
+
+    private String toRequest(String[] command)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = skipArguments; i < command.length; i++)
+        {
+            String arg = command[i];
+            if (sb.length() > 0)
+            {
+                sb.append(' ');
+            }
+            if (arg.isEmpty() || arg.matches(".*[\\s\"'\\\\].*"))
+            {
+                sb.append('"').append(arg.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+            else
+            {
+                sb.append(arg);
+            }
+        }
+        String request = sb.toString();
+        if (request.indexOf('\n') >= 0 || request.indexOf('\r') >= 0)
+        {
+            throw new ContentIOException("Helper process requests may not contain line breaks: " + request);
+        }
+        return request;
+    }
+
+    /**
+     * The outcome of a request passed to a helper process.
+     */
+    public static class Result
+    {
+        private final boolean success;
+        private final String output;
+
+        Result(boolean success, String output)
+        {
+            this.success = success;
+            this.output = output;
+        }
+
+        public boolean isSuccess()
+        {
+            return success;
+        }
+
+        /**
+         * @return the lines written by the helper in reply to the request, including the final marker line.
+         */
+        public String getOutput()
+        {
+            return output;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (success ? "success" : "failure") + ": " + output;
+        }
+    }
+
+    /**
+     * A running helper process. The replies are read by a daemon thread, so that a request can
+     * time out without blocking on the process output.
+     */
+    private class HelperProcess implements Runnable
+    {
+        private final Process process;
+        private final int id;
+        private final Writer stdin;
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+        private int jobCount;
+
+        private HelperProcess(Process process, int id)
+        {
+            this.process = process;
+            this.id = id;
+            this.stdin = new OutputStreamWriter(process.getOutputStream(), UTF_8);
+            Thread reader = new Thread(this, "TransformerProcessPool-" + id);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
+                String line;
+                while ((line = stdout.readLine()) != null)
+                {
+                    lines.add(line);
+                }
+            }
+            catch (IOException e)
+            {
+                // The process has been destroyed
+            }
+        }
+
+        private Result execute(String request, long timeoutMs) throws ContentIOException
+        {
+            jobCount++;
+            lines.clear();
+            try
+            {
+                stdin.write(request);
+                stdin.write('\n');
+                stdin.flush();
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to send request to helper process " + this + ": " + request, e);
+            }
+
+            StringBuilder output = new StringBuilder();
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            try
+            {
+                while (true)
+                {
+                    String line;
+                    if (timeoutMs > 0)
+                    {
+                        long remaining = deadline - System.currentTimeMillis();
+                        line = remaining > 0 ? lines.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                        if (line == null)
+                        {
+                            throw new ContentIOException("Helper process " + this + " did not reply within " +
+                                    timeoutMs + "ms to: " + request + "\n" + output);
+                        }
+                    }
+                    else
+                    {
+                        line = lines.poll(1, TimeUnit.SECONDS);
+                        if (line == null)
+                        {
+                            if (!isRunning())
+                            {
+                                throw new ContentIOException("Helper process " + this + " stopped while handling: " +
+                                        request + "\n" + output);
+                            }
+                            continue;
+                        }
+                    }
+                    output.append(line).append('\n');
+                    if (line.startsWith(successMarker))
+                    {
+                        return new Result(true, output.toString());
+                    }
+                    if (line.startsWith(failureMarker))
+                    {
+                        return new Result(false, output.toString());
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ContentIOException("Interrupted waiting for helper process " + this, e);
+            }
+        }
+
+        private boolean isRunning()
+        {
+            try
+            {
+                process.exitValue();
+                return false;
+            }
+            catch (IllegalThreadStateException e)
+            {
+                return true;
+            }
+        }
+
+        private void destroy()
+        {
+            try
+            {
+                stdin.close();
+            }
+            catch (IOException e)
+            {
+                // Closing stdin is only to let the helper exit cleanly
+            }
+            process.destroy();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Stopped helper process " + this + " after " + jobCount + " requests");
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "#" + id;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.service.cmr.repository.ContentServiceTransientException;
+import org.alfresco.service.cmr.repository.TransformationOptions;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Limits the number of transformations that run at the same time, in total and for each
+ * transformer, so that a burst of requests (such as thumbnails for a bulk upload) queues
+ * rather than starting an unbounded number of ImageMagick, PDFBox or Tika transformations.<p>
+ * 
+ * Only top level transformations are scheduled, as the transformations done as part of
+ * a complex transformer already hold a place. Transformations for one of the
+ * {@code backgroundUses} (by default {@code index}, {@code asyncRule} and {@code doclib})
+ * only start while more than {@code reservedUserTransformations} places are free, so that
+ * user facing transformations are not starved by background work.<p>
+ * 
+ * A transformation is declined with a {@link ContentServiceTransientException}, which
+ * callers such as the asynchronous thumbnail action treat as something to retry later,
+ * if {@code maxQueuedTransformations} are already waiting or it has waited longer than
+ * {@code maxWaitMs}. Transformations for one of the {@code blockingUses} (by default
+ * {@code index}) are never declined but wait for as long as it takes, as their callers,
+ * such as the SOLR content requests, would record a decline as a failed transformation.
+ * A limit of zero or less is not applied.
+ * 
+ * @since 5.2
+ */
+public class TransformerScheduler
+{
+    private static final Log logger = LogFactory.getLog(TransformerScheduler.class);
+
+    private int maxConcurrentTransformations = 8;
+    private int maxConcurrentPerTransformer = 4;
+    private int reservedUserTransformations = 2;
+    private int maxQueuedTransformations = 200;
+    private long maxWaitMs = 60000;
+    private Set<String> backgroundUses = new HashSet<String>(Arrays.asList("index", "asyncRule", "doclib"));
+    private Set<String> blockingUses = Collections.singleton("index");
+    private Map<String, Integer> transformerLimits = Collections.emptyMap();
+    private ExecutorService executorService;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition placeFree = lock.newCondition();
+    private final Map<String, int[]> runningByTransformer = new HashMap<String, int[]>();
+    private int running;
+    private int queued;
+
+    /**
+     * @param maxConcurrentTransformations the number of top level transformations that may run at the same time.
+     */
+    public void setMaxConcurrentTransformations(int maxConcurrentTransformations)
+    {
+        this.maxConcurrentTransformations = maxConcurrentTransformations;
+    }
+
+    /**
+     * @param maxConcurrentPerTransformer the number of transformations that each transformer may run at the
+     *        same time, unless set in {@link #setTransformerLimits(String)}.
+     */
+    public void setMaxConcurrentPerTransformer(int maxConcurrentPerTransformer)
+    {
+        this.maxConcurrentPerTransformer = maxConcurrentPerTransformer;
+    }
+
+    /**
+     * @param reservedUserTransformations the number of places that background transformations may not use.
+     */
+    public void setReservedUserTransformations(int reservedUserTransformations)
+    {
+        this.reservedUserTransformations = reservedUserTransformations;
+    }
+
+    /**
+     * @param maxQueuedTransformations the number of transformations that may wait for a place, before
+     *        further transformations are declined.
+     */
+    public void setMaxQueuedTransformations(int maxQueuedTransformations)
+    {
+        this.maxQueuedTransformations = maxQueuedTransformations;
+    }
+
+    /**
+     * @param maxWaitMs how long a transformation may wait for a place before it is declined.
+     */
+    public void setMaxWaitMs(long maxWaitMs)
+    {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * @param backgroundUses a comma separated list of the uses ("index", "asyncRule"...) of
+     *        transformations that are not user facing.
+     */
+    public void setBackgroundUses(String backgroundUses)
+    {
+        this.backgroundUses = parseUses(backgroundUses);
+    }
+
+    /**
+     * @param blockingUses a comma separated list of the uses of transformations that wait
+     *        for a place however long it takes and however many are waiting, rather than
+     *        being declined.
+     */
+    public void setBlockingUses(String blockingUses)
+    {
+        this.blockingUses = parseUses(blockingUses);
+    }
+
+    private static Set<String> parseUses(String uses)
+    {
+        Set<String> set = new HashSet<String>();
+        for (String use : uses.split(","))
+        {
+            use = use.trim();
+            if (!use.isEmpty())
+            {
+                set.add(use);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @param transformerLimits a comma separated list of {@code <transformerName>=<limit>} pairs,
+     *        overriding {@code maxConcurrentPerTransformer} for the named transformers. The
+     *        {@code transformer.} prefix of the names is optional.
+     */
+    public void setTransformerLimits(String transformerLimits)
+    {
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        for (String pair : transformerLimits.split(","))
+        {
+            pair = pair.trim();
+            if (pair.isEmpty())
+            {
+                continue;
+            }
+            int i = pair.indexOf('=');
+            if (i <= 0)
+            {
+                throw new IllegalArgumentException("Expected <transformerName>=<limit> but found: " + pair);
+            }
+            String name = pair.substring(0, i).trim();
+            if (!name.startsWith(TransformerConfig.TRANSFORMER))
+            {
+                name = TransformerConfig.TRANSFORMER + name;
+            }
+            limits.put(name, Integer.valueOf(pair.substring(i + 1).trim()));
+        }
+        this.transformerLimits = limits;
+    }
+
+    /**
+     * @param executorService the threads used by transformers that run in their own thread
+     *        so that they may be interrupted on timeout.
+     */
+    public void setExecutorService(ExecutorService executorService)
+    {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @return the threads used by transformers that run in their own thread, or {@code null}.
+     */
+    public ExecutorService getExecutorService()
+    {
+        return executorService;
+    }
+
+    /**
+     * Waits for a place for the transformer to run a transformation, which must be given up by
+     * calling {@link #release(ContentTransformer)}.
+     * 
+     * @return the time in milliseconds spent waiting.
+     * @throws ContentServiceTransientException if too many transformations are already waiting, or
+     *         no place became free in time, unless the transformation is for one of the blocking uses.
+     */
+    public long acquire(ContentTransformer transformer, TransformationOptions options)
+    {
+        String name = transformer.getName();
+        String use = options == null ? null : options.getUse();
+        boolean background = use != null && backgroundUses.contains(use);
+        boolean blocking = use != null && blockingUses.contains(use);
+        long start = System.currentTimeMillis();
+        lock.lock();
+        try
+        {
+            if (!canRun(name, background))
+            {
+                if (!blocking && maxQueuedTransformations > 0 && queued >= maxQueuedTransformations)
+                {
+                    throw new ContentServiceTransientException("Transformation declined as " + queued +
+                            " transformations are already waiting: " + name);
+                }
+                queued++;
+                try
+                {
+                    boolean timed = !blocking && maxWaitMs > 0;
+                    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                    while (!canRun(name, background))
+                    {
+                        if (timed && remainingNanos <= 0)
+                        {
+                            throw new ContentServiceTransientException("Transformation declined after waiting " +
+                                    maxWaitMs + "ms: " + name);
+                        }
+                        if (timed)
+                        {
+                            remainingNanos = placeFree.awaitNanos(remainingNanos);
+                        }
+                        else
+                        {
+                            placeFree.await();
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ContentServiceTransientException("Interrupted waiting to transform: " + name, e);
+                }
+                finally
+                {
+                    queued--;
+                }
+            }
+            running++;
+            int[] count = runningByTransformer.get(name);
+            if (count == null)
+            {
+                count = new int[1];
+                runningByTransformer.put(name, count);
+            }
+            count[0]++;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        long waitTime = System.currentTimeMillis() - start;
+        if (waitTime > 0 && logger.isDebugEnabled())
+        {
+            logger.debug("Waited " + waitTime + "ms to run " + name + (background ? " (background)" : ""));
+        }
+        return waitTime;
+    }
+
+    /**
+     * Gives up the place taken by {@link #acquire(ContentTransformer, TransformationOptions)}.
+     */
+    public void release(ContentTransformer transformer)
+    {
+        String name = transformer.getName();
+        lock.lock();
+        try
+        {
+            running--;
+            int[] count = runningByTransformer.get(name);
+            if (count != null && --count[0] <= 0)
+            {
+                runningByTransformer.remove(name);
+            }
+            // Waiters may be held back by different limits, so wake them all to check
+            placeFree.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of transformations that are running.
+     */
+    public int getRunningCount()
+    {
+        lock.lock();
+        try
+        {
+            return running;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of transformations waiting for a place.
+     */
+    public int getQueuedCount()
+    {
+        lock.lock();
+        try
+        {
+            return queued;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private boolean canRun(String name, boolean background)
+    {
+        if (maxConcurrentTransformations > 0)
+        {
+            int places = maxConcurrentTransformations - (background ? reservedUserTransformations : 0);
+            if (running >= Math.max(places, 1))
+            {
+                return false;
+            }
+        }
+        Integer limit = transformerLimits.get(name);
+        int max = limit == null ? maxConcurrentPerTransformer : limit;
+        int[] count = runningByTransformer.get(name);
+        return max <= 0 || count == null || count[0] < max;
+    }
+}
@@ -28,6 +28,9 @@ package org.alfresco.repo.content.transform;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.TransformationOptions;
@@ -45,15 +48,41 @@ import org.alfresco.service.cmr.repository.TransformationOptions;
  * as has been done for transformers that would not have been used in the past as
  * there existed one or more 'explicit' transformers (a concept not used by this
  * TransformerSelector). By default a transformer has a priority of {@code 10}.
- * Old 'Explicit' transformers have been given a priority of {@code 5}.
+ * Old 'Explicit' transformers have been given a priority of {@code 5}.<p>
+ * 
+ * Asking every registered transformer is expensive, so the transformers able to perform a
+ * transformation (ignoring the source size) and their priorities are cached by source and
+ * target mimetype, use and options class. Only these candidates are asked again on each call,
+ * with the actual source size, before they are sorted. Cached entries are discarded when
+ * transformers are added to or removed from the registry and after {@code cacheTimeoutMs},
+ * so that transformers which become available (such as OpenOffice) are picked up. Changing
+ * transformer properties restarts the Transformers subsystem, which replaces this bean.
  * 
  * @author Alan Davis
  */
 public class TransformerSelectorImpl implements TransformerSelector
 {
+    private static final int MAX_CACHE_SIZE = 10000;
+
     private TransformerConfig transformerConfig;
     private ContentTransformerRegistry contentTransformerRegistry;
     private TransformerDebug transformerDebug;
+    private long cacheTimeoutMs = 60000;
+
+    private final ConcurrentMap<SelectionKey, Candidates> cache = new ConcurrentHashMap<SelectionKey, Candidates>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    // Selections made while another is in progress on the same thread (complex transformers looking
+    // for their first transformers) exclude the outer transformers, so their candidates are not cached.
+    private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>()
+    {
+        @Override
+        protected int[] initialValue()
+        {
+            return new int[1];
+        }
+    };
 
     public void setTransformerConfig(TransformerConfig transformerConfig)
     {
@@ -70,27 +99,113 @@ public class TransformerSelectorImpl implements TransformerSelector
         this.transformerDebug = transformerDebug;
     }
 
+    /**
+     * Sets how long the transformers found for a transformation are reused before all
+     * transformers are asked again. Zero or less turns off the cache.
+     */
+    public void setCacheTimeoutMs(long cacheTimeoutMs)
+    {
+        this.cacheTimeoutMs = cacheTimeoutMs;
+    }
+
+    /**
+     * @return the number of selections that only asked the cached transformers.
+     */
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return the number of selections that asked every transformer.
+     */
+    public long getCacheMisses()
+    {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the number of cached transformations.
+     */
+    public int getCacheSize()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Discards the cached transformers, so that every transformer is asked again.
+     */
+    public void clearCache()
+    {
+        cache.clear();
+    }
+
     @Override
     public List<ContentTransformer> selectTransformers(String sourceMimetype, long sourceSize,
             String targetMimetype, TransformationOptions options)
     {
-        // TODO cache results for reuse. This was a heavy operation in the past and still is.
-        
-        // TODO cache results of last few successful transforms as we tend to repeat some of them as part of compound transforms.
-        
+        int[] nesting = depth.get();
+        nesting[0]++;
+        try
+        {
+            List<TransformerSortData> possibleTransformers = findTransformers(sourceMimetype, sourceSize, targetMimetype, options, nesting[0] == 1);
+            possibleTransformers = blacklistTransformers(possibleTransformers, sourceMimetype, sourceSize, targetMimetype, options);
+            return sortTransformers(possibleTransformers);
+        }
+        finally
+        {
+            nesting[0]--;
+        }
+    }
+
+    /**
+     * Returns the list of possible transformers for the transformation, only asking the
+     * cached candidates if there are any.
+     */
+    private List<TransformerSortData> findTransformers(String sourceMimetype, long sourceSize,
+            String targetMimetype, TransformationOptions options, boolean cacheable)
+    {
+        if (cacheTimeoutMs <= 0)
+        {
+            List<ContentTransformer> transformers = contentTransformerRegistry.getTransformers();
+            return findTransformers(findCandidates(transformers, sourceMimetype, sourceSize, targetMimetype, options),
+                    sourceMimetype, sourceSize, targetMimetype, options, false);
+        }
+
+        SelectionKey key = new SelectionKey(sourceMimetype, targetMimetype, options);
+        int changeCount = contentTransformerRegistry.getChangeCount();
+        long now = System.currentTimeMillis();
+        Candidates candidates = cache.get(key);
+        if (candidates != null && candidates.changeCount == changeCount && candidates.expires > now)
+        {
+            cacheHits.incrementAndGet();
+            return findTransformers(candidates, sourceMimetype, sourceSize, targetMimetype, options, true);
+        }
+        cacheMisses.incrementAndGet();
+
+        // Ignore the size, so that the candidates may be reused for any source size
         List<ContentTransformer> transformers = contentTransformerRegistry.getTransformers();
-        List<TransformerSortData> possibleTransformers = findTransformers(transformers, sourceMimetype, sourceSize, targetMimetype, options);
-        possibleTransformers = blacklistTransformers(possibleTransformers, sourceMimetype, sourceSize, targetMimetype, options);
-        return sortTransformers(possibleTransformers);
+        candidates = findCandidates(transformers, sourceMimetype, -1, targetMimetype, options);
+        candidates.changeCount = changeCount;
+        candidates.expires = now + cacheTimeoutMs;
+        if (cacheable)
+        {
+            if (cache.size() >= MAX_CACHE_SIZE)
+            {
+                cache.clear();
+            }
+            cache.put(key, candidates);
+        }
+        return findTransformers(candidates, sourceMimetype, sourceSize, targetMimetype, options, sourceSize >= 0);
     }
 
     /**
-     * Returns the list of possible transformers for the transformation.
+     * Returns the transformers (and their priorities) that are able to perform the transformation.
      */
-    private List<TransformerSortData> findTransformers(List<ContentTransformer> allTransformers, String sourceMimetype,
+    private Candidates findCandidates(List<ContentTransformer> allTransformers, String sourceMimetype,
             long sourceSize, String targetMimetype, TransformationOptions options)
     {
-        List<TransformerSortData> transformers = new ArrayList<TransformerSortData>(8);
+        Candidates candidates = new Candidates();
         for (ContentTransformer transformer : allTransformers)
         {
             int priority = transformerConfig.getPriority(transformer, sourceMimetype, targetMimetype);
@@ -98,7 +213,28 @@ public class TransformerSelectorImpl implements TransformerSelector
                 transformer.isTransformable(sourceMimetype, sourceSize, targetMimetype, options) == true)
                 
             {
-                transformers.add(new TransformerSortData(transformer, sourceMimetype, targetMimetype, priority));
+                candidates.transformers.add(transformer);
+                candidates.priorities.add(priority);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the list of possible transformers for the transformation.
+     * @param recheck if {@code true} each candidate is asked again if it can perform the
+     *        transformation, as the source size or the transformer's availability may differ.
+     */
+    private List<TransformerSortData> findTransformers(Candidates candidates, String sourceMimetype,
+            long sourceSize, String targetMimetype, TransformationOptions options, boolean recheck)
+    {
+        List<TransformerSortData> transformers = new ArrayList<TransformerSortData>(candidates.transformers.size());
+        for (int i = 0; i < candidates.transformers.size(); i++)
+        {
+            ContentTransformer transformer = candidates.transformers.get(i);
+            if (!recheck || transformer.isTransformable(sourceMimetype, sourceSize, targetMimetype, options))
+            {
+                transformers.add(new TransformerSortData(transformer, sourceMimetype, targetMimetype, candidates.priorities.get(i)));
             }
         }
         return transformers;
@@ -166,6 +302,68 @@ public class TransformerSelectorImpl implements TransformerSelector
         return transformers;
     }
     
+    /**
+     * Identifies a transformation for which the candidate transformers are cached. The use and
+     * class of the options are included as transformers may check them.
+     */
+    private static class SelectionKey
+    {
+        private final String sourceMimetype;
+        private final String targetMimetype;
+        private final String use;
+        private final Class<?> optionsClass;
+
+        SelectionKey(String sourceMimetype, String targetMimetype, TransformationOptions options)
+        {
+            this.sourceMimetype = sourceMimetype;
+            this.targetMimetype = targetMimetype;
+            this.use = options == null ? null : options.getUse();
+            this.optionsClass = options == null ? null : options.getClass();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + (sourceMimetype == null ? 0 : sourceMimetype.hashCode());
+            result = prime * result + (targetMimetype == null ? 0 : targetMimetype.hashCode());
+            result = prime * result + (use == null ? 0 : use.hashCode());
+            result = prime * result + (optionsClass == null ? 0 : optionsClass.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof SelectionKey))
+            {
+                return false;
+            }
+            SelectionKey that = (SelectionKey) obj;
+            return equals(sourceMimetype, that.sourceMimetype) &&
+                   equals(targetMimetype, that.targetMimetype) &&
+                   equals(use, that.use) &&
+                   optionsClass == that.optionsClass;
+        }
+
+        private static boolean equals(String a, String b)
+        {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The transformers that were able to perform a transformation and their priorities.
+     */
+    private static class Candidates
+    {
+        private final List<ContentTransformer> transformers = new ArrayList<ContentTransformer>(8);
+        private final List<Integer> priorities = new ArrayList<Integer>(8);
+        private int changeCount;
+        private long expires;
+    }
+
     private class TransformerSortData implements Comparable<TransformerSortData>
     {
         private final ContentTransformer transformer;
@@ -96,4 +96,35 @@ public interface TransformerStatistics
      * Adds 1 to the error count of this TransformationData and its parents.
      */
     public void recordError(long transformationTime);
+
+    /**
+     * @return the number of transformations waiting for the transformer to be allowed to start them.
+     * @since 5.2
+     */
+    public int getQueueDepth();
+
+    /**
+     * @param change to be added to the number of waiting transformations of this TransformationData
+     *        and its parents.
+     * @since 5.2
+     */
+    public void recordQueueDepthChange(int change);
+
+    /**
+     * @return the number of transformations that had to wait before starting.
+     * @since 5.2
+     */
+    public long getWaitCount();
+
+    /**
+     * @return the average time transformations that had to wait, waited before starting.
+     * @since 5.2
+     */
+    public long getAverageWaitTime();
+
+    /**
+     * @param waitTime to be added to this TransformationData and its parents.
+     * @since 5.2
+     */
+    public void recordWaitTime(long waitTime);
 }
\ No newline at end of file
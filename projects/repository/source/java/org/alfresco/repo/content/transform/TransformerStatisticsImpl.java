@@ -47,6 +47,9 @@ public class TransformerStatisticsImpl implements TransformerStatistics
     private double averageTime;
     private long count = 0L;
     private long errorCount = 0L;
+    private int queueDepth;
+    private double averageWaitTime;
+    private long waitCount = 0L;
     
     public TransformerStatisticsImpl(MimetypeService mimetypeService, String sourceMimetype, String targetMimetype,
             ContentTransformer transformer, TransformerStatistics parent, long errorTime,
@@ -158,4 +161,49 @@ public class TransformerStatisticsImpl implements TransformerStatistics
     {
         return TransformerConfig.ANY.equals(sourceMimetype) && TransformerConfig.ANY.equals(targetMimetype);
     }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    @Override
+    public synchronized void recordQueueDepthChange(int change)
+    {
+        queueDepth += change;
+
+        if (parent != null)
+        {
+            parent.recordQueueDepthChange(change);
+        }
+    }
+
+    @Override
+    public long getWaitCount()
+    {
+        return waitCount;
+    }
+
+    @Override
+    public long getAverageWaitTime()
+    {
+        return (long)averageWaitTime;
+    }
+
+    @Override
+    public synchronized void recordWaitTime(long waitTime)
+    {
+        if (waitCount == Long.MAX_VALUE)
+        {
+            waitCount /= 2L;
+        }
+        waitCount++;
+        averageWaitTime += (((double) waitTime) - averageWaitTime) / (double) waitCount;
+
+        if (parent != null)
+        {
+            parent.recordWaitTime(waitTime);
+        }
+    }
 }
@@ -26,6 +26,7 @@
 package org.alfresco.repo.domain.activities;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -39,5 +40,10 @@ public interface FeedControlDAO
     
     public List<FeedControlEntity> selectFeedControls(String userId) throws SQLException;
     
+    /**
+     * Select the feed controls of several users at once
+     */
+    public List<FeedControlEntity> selectFeedControls(Collection<String> userIds) throws SQLException;
+    
     public long selectFeedControl(FeedControlEntity activityFeedControl) throws SQLException;
 }
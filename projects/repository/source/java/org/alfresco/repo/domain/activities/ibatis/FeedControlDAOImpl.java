@@ -26,6 +26,8 @@
 package org.alfresco.repo.domain.activities.ibatis;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.alfresco.repo.domain.activities.FeedControlDAO;
@@ -33,6 +35,8 @@ import org.alfresco.repo.domain.activities.FeedControlEntity;
 
 public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControlDAO
 {
+    private static final int MAX_USERS_PER_SELECT = 500;
+    
     public long insertFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         template.insert("alfresco.activities.insert.insert_activity_feedcontrol", activityFeedControl);
@@ -53,6 +57,26 @@ public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControl
         return template.selectList("alfresco.activities.select_activity_feedcontrols_for_user", params);
     }
     
+    public List<FeedControlEntity> selectFeedControls(Collection<String> feedUserIds) throws SQLException
+    {
+        List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        List<String> batch = new ArrayList<String>(Math.min(feedUserIds.size(), MAX_USERS_PER_SELECT));
+        for (String feedUserId : feedUserIds)
+        {
+            batch.add(feedUserId);
+            if (batch.size() >= MAX_USERS_PER_SELECT)
+            {
+                feedControls.addAll(template.<FeedControlEntity>selectList("alfresco.activities.select_activity_feedcontrols_for_users", batch));
+                batch = new ArrayList<String>(MAX_USERS_PER_SELECT);
+            }
+        }
+        if (batch.size() > 0)
+        {
+            feedControls.addAll(template.<FeedControlEntity>selectList("alfresco.activities.select_activity_feedcontrols_for_users", batch));
+        }
+        return feedControls;
+    }
+    
     public long selectFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         Long id = template.selectOne("alfresco.activities.select_activity_feedcontrol", activityFeedControl);
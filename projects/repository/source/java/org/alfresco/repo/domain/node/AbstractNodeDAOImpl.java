@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -55,6 +56,7 @@ import org.alfresco.repo.cache.NullCache;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.BatchEntityLookupCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -148,6 +150,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private NodeIndexer nodeIndexer; 
     
     private int cachingThreshold = 10;
+    /** The number of IDs looked up by each query of a multi-get */
+    private static final int FIND_BY_KEYS_BATCH_SIZE = 256;
 
     /**
      * Cache for the Store root nodes by StoreRef:<br/>
@@ -912,7 +916,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      * @author Derek Hulley
      * @since 3.4
      */
-    private class NodesCacheCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, Node, NodeRef>
+    private class NodesCacheCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<Long, Node, NodeRef>
+            implements BatchEntityLookupCallbackDAO<Long, Node, NodeRef>
     {
         /**
          * @throws UnsupportedOperationException        Nodes are created externally
@@ -940,6 +946,42 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             }
         }
 
+        /**
+         * @param nodeIds           the key node IDs
+         */
+        @Override
+        public List<Pair<Long, Node>> findByKeys(List<Long> nodeIds)
+        {
+            List<Pair<Long, Node>> results = new ArrayList<Pair<Long, Node>>(nodeIds.size());
+            // Keep the IN clauses within the limits of the database
+            SortedSet<Long> batch = new TreeSet<Long>();
+            for (Long nodeId : nodeIds)
+            {
+                batch.add(nodeId);
+                if (batch.size() >= FIND_BY_KEYS_BATCH_SIZE)
+                {
+                    findByKeys(batch, results);
+                    batch.clear();
+                }
+            }
+            if (batch.size() > 0)
+            {
+                findByKeys(batch, results);
+            }
+            return results;
+        }
+
+        private void findByKeys(SortedSet<Long> nodeIds, List<Pair<Long, Node>> results)
+        {
+            List<Node> nodes = selectNodesByIds(nodeIds);
+            for (Node node : nodes)
+            {
+                // Lock it to prevent 'accidental' modification
+                node.lock();
+                results.add(new Pair<Long, Node>(node.getId(), node));
+            }
+        }
+
         /**
          * @return                  Returns the Node's NodeRef
          */
@@ -1217,6 +1259,36 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
 
+    /**
+     * Get several node instances, regardless of whether they are considered <b>live</b> or <b>deleted</b>.
+     * Nodes missing from the cache are fetched in a single batch.
+     * 
+     * @param nodeIds               the node IDs to look for
+     * @return                      the nodes by ID, in the order given
+     * @throws ConcurrencyFailureException  if any valid node is not found
+     */
+    private Map<Long, Node> getNodesNotNull(Collection<Long> nodeIds)
+    {
+        List<Pair<Long, Node>> pairs = nodesCache.getByKeys(nodeIds);
+        Map<Long, Node> nodesById = new HashMap<Long, Node>(pairs.size() * 2);
+        for (Pair<Long, Node> pair : pairs)
+        {
+            nodesById.put(pair.getFirst(), pair.getSecond());
+        }
+        Map<Long, Node> nodes = new LinkedHashMap<Long, Node>(nodesById.size() * 2);
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesById.get(nodeId);
+            if (node == null)
+            {
+                // Produces the appropriate exception and cache cleanup
+                node = getNodeNotNull(nodeId, false);
+            }
+            nodes.put(nodeId, node);
+        }
+        return nodes;
+    }
+
     @Override
     public QName getNodeType(Long nodeId)
     {
@@ -2113,16 +2185,63 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     public Map<QName, Serializable> getNodeProperties(Long nodeId)
     {
         Map<QName, Serializable> props = getNodePropertiesCached(nodeId);
+        Node node = getNodeNotNull(nodeId, false);
+        boolean auditable = hasNodeAspect(nodeId, ContentModel.ASPECT_AUDITABLE);
+        props = getNodePropertiesImpl(node, props, auditable);
+        
+        // Done
+        if (isDebugEnabled)
+        {
+            logger.debug("Fetched properties for Node: \n" +
+                    "   Node:  " + nodeId + "\n" +
+                    "   Props: " + props);
+        }
+        return props;
+    }
+
+    @Override
+    public Map<Long, Map<QName, Serializable>> getNodeProperties(Collection<Long> nodeIds)
+    {
+        // Three batched lookups: nodes, then aspects and properties for the node versions
+        Collection<Node> nodes = getNodesNotNull(nodeIds).values();
+        Map<Long, Set<QName>> aspectsByNodeId = getNodeAspectsCached(nodes);
+        Map<Long, Map<QName, Serializable>> propsByNodeId = getNodePropertiesCached(nodes);
+        
+        Map<Long, Map<QName, Serializable>> results = new LinkedHashMap<Long, Map<QName, Serializable>>(nodes.size() * 2);
+        for (Node node : nodes)
+        {
+            Long nodeId = node.getId();
+            boolean auditable = aspectsByNodeId.get(nodeId).contains(ContentModel.ASPECT_AUDITABLE);
+            Map<QName, Serializable> props = getNodePropertiesImpl(node, propsByNodeId.get(nodeId), auditable);
+            results.put(nodeId, props);
+        }
+        // Done
+        if (isDebugEnabled)
+        {
+            logger.debug("Fetched properties for " + results.size() + " nodes.");
+        }
+        return results;
+    }
+    
+    /**
+     * Adds the properties that are not stored in the properties cache to a copy of the cached properties
+     * 
+     * @param node              the node
+     * @param cachedProps       the read-only cached property map for the node version
+     * @param auditable         <tt>true</tt> if the node has the <b>cm:auditable</b> aspect
+     * @return                  Returns the full, protected property map for the node
+     */
+    private Map<QName, Serializable> getNodePropertiesImpl(Node node, Map<QName, Serializable> cachedProps, boolean auditable)
+    {
         // Create a shallow copy to allow additions
-        props = new HashMap<QName, Serializable>(props);
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>(cachedProps);
         
-        Node node = getNodeNotNull(nodeId, false);
         // Handle sys:referenceable
         ReferenceablePropertiesEntity.addReferenceableProperties(node, props);
         // Handle sys:localized
         LocalizedPropertiesEntity.addLocalizedProperties(localeDAO, node, props);
         // Handle cm:auditable
-        if (hasNodeAspect(nodeId, ContentModel.ASPECT_AUDITABLE))
+        if (auditable)
         {
             AuditablePropertiesEntity auditableProperties = node.getAuditableProperties();
             if (auditableProperties == null)
@@ -2134,16 +2253,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         
         // Wrap to ensure that we only clone values if the client attempts to modify
         // the map or retrieve values that might, themselves, be mutable
-        props = new ValueProtectingMap<QName, Serializable>(props, NodePropertyValue.IMMUTABLE_CLASSES);
-        
-        // Done
-        if (isDebugEnabled)
-        {
-            logger.debug("Fetched properties for Node: \n" +
-                    "   Node:  " + nodeId + "\n" +
-                    "   Props: " + props);
-        }
-        return props;
+        return new ValueProtectingMap<QName, Serializable>(props, NodePropertyValue.IMMUTABLE_CLASSES);
     }
 
     @Override
@@ -2583,6 +2693,34 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return cachedProperties;
     }
     
+    /**
+     * @return              Returns the read-only cached property maps by node ID
+     */
+    private Map<Long, Map<QName, Serializable>> getNodePropertiesCached(Collection<Node> nodes)
+    {
+        List<NodeVersionKey> nodeVersionKeys = new ArrayList<NodeVersionKey>(nodes.size());
+        for (Node node : nodes)
+        {
+            nodeVersionKeys.add(node.getNodeVersionKey());
+        }
+        List<Pair<NodeVersionKey, Map<QName, Serializable>>> cacheEntries = propertiesCache.getByKeys(nodeVersionKeys);
+        Map<Long, Map<QName, Serializable>> cachedProperties = new HashMap<Long, Map<QName, Serializable>>(cacheEntries.size() * 2);
+        for (Pair<NodeVersionKey, Map<QName, Serializable>> cacheEntry : cacheEntries)
+        {
+            cachedProperties.put(cacheEntry.getFirst().getNodeId(), cacheEntry.getSecond());
+        }
+        for (Node node : nodes)
+        {
+            Long nodeId = node.getId();
+            if (!cachedProperties.containsKey(nodeId))
+            {
+                invalidateNodeCaches(nodeId);
+                throw new DataIntegrityViolationException("Invalid node ID: " + nodeId);
+            }
+        }
+        return cachedProperties;
+    }
+    
     /**
      * Update the node properties cache.  The incoming properties will be wrapped to be
      * unmodifiable.
@@ -2613,7 +2751,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      * @author Derek Hulley
      * @since 3.4
      */
-    private class PropertiesCallbackDAO extends EntityLookupCallbackDAOAdaptor<NodeVersionKey, Map<QName, Serializable>, Serializable>
+    private class PropertiesCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<NodeVersionKey, Map<QName, Serializable>, Serializable>
+            implements BatchEntityLookupCallbackDAO<NodeVersionKey, Map<QName, Serializable>, Serializable>
     {
         public Pair<NodeVersionKey, Map<QName, Serializable>> createValue(Map<QName, Serializable> value)
         {
@@ -2647,6 +2787,68 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             // Done
             return new Pair<NodeVersionKey, Map<QName, Serializable>>(nodeVersionKey, Collections.unmodifiableMap(props));
         }
+
+        @Override
+        public List<Pair<NodeVersionKey, Map<QName, Serializable>>> findByKeys(List<NodeVersionKey> nodeVersionKeys)
+        {
+            List<Pair<NodeVersionKey, Map<QName, Serializable>>> results =
+                    new ArrayList<Pair<NodeVersionKey, Map<QName, Serializable>>>(nodeVersionKeys.size());
+            // Keep the IN clauses within the limits of the database
+            for (int i = 0; i < nodeVersionKeys.size(); i += FIND_BY_KEYS_BATCH_SIZE)
+            {
+                int end = Math.min(i + FIND_BY_KEYS_BATCH_SIZE, nodeVersionKeys.size());
+                results.addAll(findByKeysBatch(nodeVersionKeys.subList(i, end)));
+            }
+            return results;
+        }
+
+        private List<Pair<NodeVersionKey, Map<QName, Serializable>>> findByKeysBatch(List<NodeVersionKey> nodeVersionKeys)
+        {
+            Set<Long> nodeIds = new HashSet<Long>(nodeVersionKeys.size() * 2);
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                nodeIds.add(nodeVersionKey.getNodeId());
+            }
+            // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
+            contentDataDAO.cacheContentDataForNodes(nodeIds);
+            Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsRawByNodeVersionKey = selectNodeProperties(nodeIds);
+            // Keep the versions that were found for each node to detect stale entries
+            Map<Long, NodeVersionKey> nodeVersionKeysFromDb = new HashMap<Long, NodeVersionKey>(propsRawByNodeVersionKey.size() * 2);
+            for (NodeVersionKey nodeVersionKeyFromDb : propsRawByNodeVersionKey.keySet())
+            {
+                nodeVersionKeysFromDb.put(nodeVersionKeyFromDb.getNodeId(), nodeVersionKeyFromDb);
+            }
+            
+            List<Pair<NodeVersionKey, Map<QName, Serializable>>> results =
+                    new ArrayList<Pair<NodeVersionKey, Map<QName, Serializable>>>(nodeVersionKeys.size());
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                Map<NodePropertyKey, NodePropertyValue> propsRaw = propsRawByNodeVersionKey.get(nodeVersionKey);
+                if (propsRaw == null)
+                {
+                    Long nodeId = nodeVersionKey.getNodeId();
+                    NodeVersionKey nodeVersionKeyFromDb = nodeVersionKeysFromDb.get(nodeId);
+                    if (nodeVersionKeyFromDb == null)
+                    {
+                        // This is OK.  The node has no properties
+                        propsRaw = Collections.emptyMap();
+                    }
+                    else
+                    {
+                        // We found properties associated with a different node version
+                        invalidateNodeCaches(nodeId);
+                        throw new DataIntegrityViolationException(
+                                "Detected stale node entry: " + nodeVersionKey +
+                                " (now " + nodeVersionKeyFromDb + ")");
+                    }
+                }
+                // Convert to public properties
+                Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propsRaw);
+                results.add(new Pair<NodeVersionKey, Map<QName, Serializable>>(nodeVersionKey, Collections.unmodifiableMap(props)));
+            }
+            // Done
+            return results;
+        }
     }
     
     /*
@@ -2664,6 +2866,26 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return nodeAspects;
     }
 
+    @Override
+    public Map<Long, Set<QName>> getNodeAspects(Collection<Long> nodeIds)
+    {
+        Collection<Node> nodes = getNodesNotNull(nodeIds).values();
+        Map<Long, Set<QName>> aspectsByNodeId = getNodeAspectsCached(nodes);
+        
+        Map<Long, Set<QName>> results = new LinkedHashMap<Long, Set<QName>>(nodes.size() * 2);
+        for (Node node : nodes)
+        {
+            Long nodeId = node.getId();
+            Set<QName> nodeAspects = new HashSet<QName>(aspectsByNodeId.get(nodeId));
+            // Nodes are always referenceable
+            nodeAspects.add(ContentModel.ASPECT_REFERENCEABLE);
+            // Nodes are always localized
+            nodeAspects.add(ContentModel.ASPECT_LOCALIZED);
+            results.put(nodeId, nodeAspects);
+        }
+        return results;
+    }
+
     @Override
     public boolean hasNodeAspect(Long nodeId, QName aspectQName)
     {
@@ -2843,6 +3065,34 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return new HashSet<QName>(cacheEntry.getSecond());
     }
     
+    /**
+     * @return              Returns the read-only cached aspect sets by node ID
+     */
+    private Map<Long, Set<QName>> getNodeAspectsCached(Collection<Node> nodes)
+    {
+        List<NodeVersionKey> nodeVersionKeys = new ArrayList<NodeVersionKey>(nodes.size());
+        for (Node node : nodes)
+        {
+            nodeVersionKeys.add(node.getNodeVersionKey());
+        }
+        List<Pair<NodeVersionKey, Set<QName>>> cacheEntries = aspectsCache.getByKeys(nodeVersionKeys);
+        Map<Long, Set<QName>> cachedAspects = new HashMap<Long, Set<QName>>(cacheEntries.size() * 2);
+        for (Pair<NodeVersionKey, Set<QName>> cacheEntry : cacheEntries)
+        {
+            cachedAspects.put(cacheEntry.getFirst().getNodeId(), cacheEntry.getSecond());
+        }
+        for (Node node : nodes)
+        {
+            Long nodeId = node.getId();
+            if (!cachedAspects.containsKey(nodeId))
+            {
+                invalidateNodeCaches(nodeId);
+                throw new DataIntegrityViolationException("Invalid node ID: " + nodeId);
+            }
+        }
+        return cachedAspects;
+    }
+    
     /**
      * Update the node aspects cache.  The incoming set will be wrapped to be unmodifiable.
      */
@@ -2870,7 +3120,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      * @author Derek Hulley
      * @since 3.4
      */
-    private class AspectsCallbackDAO extends EntityLookupCallbackDAOAdaptor<NodeVersionKey, Set<QName>, Serializable>
+    private class AspectsCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<NodeVersionKey, Set<QName>, Serializable>
+            implements BatchEntityLookupCallbackDAO<NodeVersionKey, Set<QName>, Serializable>
     {
         public Pair<NodeVersionKey, Set<QName>> createValue(Set<QName> value)
         {
@@ -2903,6 +3155,62 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             // Done
             return new Pair<NodeVersionKey, Set<QName>>(nodeVersionKey, Collections.unmodifiableSet(nodeAspectQNames));
         }
+
+        @Override
+        public List<Pair<NodeVersionKey, Set<QName>>> findByKeys(List<NodeVersionKey> nodeVersionKeys)
+        {
+            List<Pair<NodeVersionKey, Set<QName>>> results = new ArrayList<Pair<NodeVersionKey, Set<QName>>>(nodeVersionKeys.size());
+            // Keep the IN clauses within the limits of the database
+            for (int i = 0; i < nodeVersionKeys.size(); i += FIND_BY_KEYS_BATCH_SIZE)
+            {
+                int end = Math.min(i + FIND_BY_KEYS_BATCH_SIZE, nodeVersionKeys.size());
+                results.addAll(findByKeysBatch(nodeVersionKeys.subList(i, end)));
+            }
+            return results;
+        }
+
+        private List<Pair<NodeVersionKey, Set<QName>>> findByKeysBatch(List<NodeVersionKey> nodeVersionKeys)
+        {
+            Set<Long> nodeIds = new HashSet<Long>(nodeVersionKeys.size() * 2);
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                nodeIds.add(nodeVersionKey.getNodeId());
+            }
+            Map<NodeVersionKey, Set<QName>> nodeAspectQNameIdsByVersionKey = selectNodeAspects(nodeIds);
+            // Keep the versions that were found for each node to detect stale entries
+            Map<Long, NodeVersionKey> nodeVersionKeysFromDb = new HashMap<Long, NodeVersionKey>(nodeAspectQNameIdsByVersionKey.size() * 2);
+            for (NodeVersionKey nodeVersionKeyFromDb : nodeAspectQNameIdsByVersionKey.keySet())
+            {
+                nodeVersionKeysFromDb.put(nodeVersionKeyFromDb.getNodeId(), nodeVersionKeyFromDb);
+            }
+            
+            List<Pair<NodeVersionKey, Set<QName>>> results = new ArrayList<Pair<NodeVersionKey, Set<QName>>>(nodeVersionKeys.size());
+            for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+            {
+                Set<QName> nodeAspectQNames = nodeAspectQNameIdsByVersionKey.get(nodeVersionKey);
+                if (nodeAspectQNames == null)
+                {
+                    Long nodeId = nodeVersionKey.getNodeId();
+                    NodeVersionKey nodeVersionKeyFromDb = nodeVersionKeysFromDb.get(nodeId);
+                    if (nodeVersionKeyFromDb == null)
+                    {
+                        // This is OK.  The node has no aspects
+                        nodeAspectQNames = Collections.emptySet();
+                    }
+                    else
+                    {
+                        // We found aspects associated with a different node version
+                        invalidateNodeCaches(nodeId);
+                        throw new DataIntegrityViolationException(
+                                "Detected stale node entry: " + nodeVersionKey +
+                                " (now " + nodeVersionKeyFromDb + ")");
+                    }
+                }
+                results.add(new Pair<NodeVersionKey, Set<QName>>(nodeVersionKey, Collections.unmodifiableSet(nodeAspectQNames)));
+            }
+            // Done
+            return results;
+        }
     }
     
     /*
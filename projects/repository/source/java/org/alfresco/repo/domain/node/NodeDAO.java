@@ -346,6 +346,18 @@ public interface NodeDAO extends NodeBulkLoader
 
     public Map<QName, Serializable> getNodeProperties(Long nodeId);
     
+    /**
+     * Get the properties of several nodes at once.  Nodes and properties that are not yet
+     * cached are fetched using batched queries rather than one query per node.
+     * 
+     * @param nodeIds           the IDs of the nodes (all nodes must exist)
+     * @return                  Returns the properties by node ID, in the order of the given IDs
+     * @throws ConcurrencyFailureException  if any of the nodes does not exist
+     * 
+     * @since 5.2
+     */
+    public Map<Long, Map<QName, Serializable>> getNodeProperties(Collection<Long> nodeIds);
+    
     public boolean setNodeProperties(Long nodeId, Map<QName, Serializable> properties);
     
     public boolean addNodeProperty(Long nodeId, QName qname, Serializable value);
@@ -384,6 +396,18 @@ public interface NodeDAO extends NodeBulkLoader
     
     public Set<QName> getNodeAspects(Long nodeId);
     
+    /**
+     * Get the aspects of several nodes at once.  Nodes and aspects that are not yet
+     * cached are fetched using batched queries rather than one query per node.
+     * 
+     * @param nodeIds           the IDs of the nodes (all nodes must exist)
+     * @return                  Returns the aspects by node ID, in the order of the given IDs
+     * @throws ConcurrencyFailureException  if any of the nodes does not exist
+     * 
+     * @since 5.2
+     */
+    public Map<Long, Set<QName>> getNodeAspects(Collection<Long> nodeIds);
+    
     public boolean hasNodeAspect(Long nodeId, QName aspectQName);
     
     public boolean addNodeAspects(Long nodeId, Set<QName> aspectQNames);
@@ -0,0 +1,48 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+import java.util.Set;
+
+/**
+ * Callback for components that hold data derived from ACLs and need to discard it
+ * when the ACLs change.  Listeners are told about each ACL change set as it is
+ * committed, along with the IDs of the ACLs that were modified or deleted within it.
+ * 
+ * @see AclDAO#registerAclChangeSetListener(AclChangeSetListener)
+ * @since 5.2
+ */
+public interface AclChangeSetListener
+{
+    /**
+     * Called during <i>beforeCommit</i> of the transaction that made the changes, so that
+     * transactional caches can still record removals.
+     * 
+     * @param aclChangeSetId        the ID of the change set being committed
+     * @param aclIds                the IDs of all ACLs modified or deleted in the change set
+     */
+    void beforeAclChangeSetCommit(Long aclChangeSetId, Set<Long> aclIds);
+}
@@ -26,6 +26,7 @@
 package org.alfresco.repo.domain.permissions;
 
 import java.util.List;
+import java.util.Set;
 
 import org.alfresco.repo.security.permissions.ACLCopyMode;
 import org.alfresco.repo.security.permissions.AccessControlEntry;
@@ -46,6 +47,21 @@ public interface AclDAO
      * some cache data will be considered safe.
      */
     public void setCheckAclConsistency();
+    
+    /**
+     * Register a listener to be told which ACLs changed, as the change set containing
+     * the changes is committed.
+     * 
+     * @param listener          the listener to notify
+     */
+    public void registerAclChangeSetListener(AclChangeSetListener listener);
+    
+    /**
+     * Get the ACLs updated or deleted so far by the current transaction
+     * 
+     * @return                  the IDs of the changed ACLs
+     */
+    public Set<Long> getAclsChangedInCurrentTransaction();
 
     /**
      * Get an ACL (including entries)
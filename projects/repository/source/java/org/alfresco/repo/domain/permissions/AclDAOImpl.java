@@ -33,6 +33,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.SimpleCache;
@@ -53,6 +54,7 @@ import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityType;
@@ -80,6 +82,7 @@ public class AclDAOImpl implements AclDAO
     private NodeDAO nodeDAO;
     private TenantService tenantService;
     private SimpleCache<Serializable, AccessControlList> aclCache;
+    private final List<AclChangeSetListener> aclChangeSetListeners = new CopyOnWriteArrayList<AclChangeSetListener>();
     
     private enum WriteMode
     {
@@ -489,7 +492,7 @@ public class AclDAOImpl implements AclDAO
                 acl.setInheritsFrom(inheritsFrom);
             }
             acl.setAclChangeSetId(getCurrentChangeSetId());
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
             return new AclChangeImpl(id, id, acl.getAclType(), acl.getAclType());
         }
         else if ((acl.getAclChangeSetId() == getCurrentChangeSetId()) && (!requiresVersion) && (!acl.getRequiresVersion()))
@@ -526,7 +529,7 @@ public class AclDAOImpl implements AclDAO
             {
                 acl.setInheritsFrom(inheritsFrom);
             }
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
             return new AclChangeImpl(id, id, acl.getAclType(), acl.getAclType());
         }
         else
@@ -606,14 +609,14 @@ public class AclDAOImpl implements AclDAO
                     Long writableParentAcl = getWritable(parent, null, null, null, null, null, null, 0, WriteMode.COPY_ONLY, false).getAfter();
                     AclUpdateEntity parentAcl = aclCrudDAO.getAclForUpdate(writableParentAcl);
                     parentAcl.setInheritedAcl(created);
-                    aclCrudDAO.updateAcl(parentAcl);
+                    updateAclEntity(parentAcl);
                 }
             }
 
             // fix up old version
             acl.setLatest(Boolean.FALSE);
             acl.setRequiresVersion(Boolean.FALSE);
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
             return new AclChangeImpl(id, created, acl.getAclType(), newAcl.getAclType());
         }
     }
@@ -820,7 +823,7 @@ public class AclDAOImpl implements AclDAO
             for (AclUpdateEntity acl : acls)
             {
                 acl.setAclChangeSetId(getCurrentChangeSetId());
-                aclCrudDAO.updateAcl(acl);
+                updateAclEntity(acl);
             }
         }
 
@@ -865,7 +868,7 @@ public class AclDAOImpl implements AclDAO
         {
             // delete acl members & acl
             aclCrudDAO.deleteAclMembersByAcl(aclId);
-            aclCrudDAO.deleteAcl(aclId);
+            deleteAclEntity(aclId);
         }
         if (dbAcl.getAclType() == ACLType.SHARED)
         {
@@ -878,7 +881,7 @@ public class AclDAOImpl implements AclDAO
                 {
                     // delete acl members & acl
                     aclCrudDAO.deleteAclMembersByAcl(aclId);
-                    aclCrudDAO.deleteAcl(aclId);
+                    deleteAclEntity(aclId);
                 }
             }
         }
@@ -943,7 +946,7 @@ public class AclDAOImpl implements AclDAO
                 aclCrudDAO.deleteAclMembersByAcl(newId);
 
                 // delete 'unusedInherited' acl
-                aclCrudDAO.deleteAcl(unusedInherited.getId());
+                deleteAclEntity(unusedInherited.getId());
 
                 if (inherited.isVersioned())
                 {
@@ -951,13 +954,13 @@ public class AclDAOImpl implements AclDAO
                     if (inheritedForUpdate != null)
                     {
                         inheritedForUpdate.setLatest(Boolean.FALSE);
-                        aclCrudDAO.updateAcl(inheritedForUpdate);
+                        updateAclEntity(inheritedForUpdate);
                     }
                 }
                 else
                 {
                     // delete 'inherited' acl 
-                    aclCrudDAO.deleteAcl(inherited.getId());
+                    deleteAclEntity(inherited.getId());
                 }
             }
         }
@@ -976,13 +979,13 @@ public class AclDAOImpl implements AclDAO
         {
             acl.setLatest(Boolean.FALSE);
             acl.setAclChangeSetId(getCurrentChangeSetId());
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
         }
         else
         {
             // delete acl members & acl
             aclCrudDAO.deleteAclMembersByAcl(id);
-            aclCrudDAO.deleteAcl(acl.getId());
+            deleteAclEntity(acl.getId());
         }
 
         acls.add(new AclChangeImpl(id, null, acl.getAclType(), null));
@@ -1155,7 +1158,7 @@ public class AclDAOImpl implements AclDAO
         }
 
         acl.setAclChangeSetId(getCurrentChangeSetId());
-        aclCrudDAO.updateAcl(acl);
+        updateAclEntity(acl);
         return inheritedAclId;
     }
 
@@ -1332,7 +1335,7 @@ public class AclDAOImpl implements AclDAO
         case OLD:
             acl.setInherits(Boolean.TRUE);
             acl.setAclChangeSetId(getCurrentChangeSetId());
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
             changes.add(new AclChangeImpl(id, id, acl.getAclType(), acl.getAclType()));
             return changes;
         case SHARED:
@@ -1349,7 +1352,7 @@ public class AclDAOImpl implements AclDAO
                 acl = aclCrudDAO.getAclForUpdate(changes.get(0).getAfter());
                 acl.setInherits(Boolean.TRUE);
                 acl.setAclChangeSetId(getCurrentChangeSetId());
-                aclCrudDAO.updateAcl(acl);
+                updateAclEntity(acl);
             }
             else
             {
@@ -1379,7 +1382,7 @@ public class AclDAOImpl implements AclDAO
         case OLD:
             acl.setInherits(Boolean.FALSE);
             acl.setAclChangeSetId(getCurrentChangeSetId());
-            aclCrudDAO.updateAcl(acl);
+            updateAclEntity(acl);
             changes.add(new AclChangeImpl(id, id, acl.getAclType(), acl.getAclType()));
             return changes;
         case SHARED:
@@ -1412,14 +1415,14 @@ public class AclDAOImpl implements AclDAO
             aclToCopy = aclCrudDAO.getAclForUpdate(toCopy);
             aclToCopy.setRequiresVersion(true);
             aclToCopy.setAclChangeSetId(getCurrentChangeSetId());
-            aclCrudDAO.updateAcl(aclToCopy);
+            updateAclEntity(aclToCopy);
             inheritedId = getInheritedAccessControlList(toCopy);
             if ((inheritedId != null) && (!inheritedId.equals(toCopy)))
             {
                 AclUpdateEntity inheritedAcl = aclCrudDAO.getAclForUpdate(inheritedId);
                 inheritedAcl.setRequiresVersion(true);
                 inheritedAcl.setAclChangeSetId(getCurrentChangeSetId());
-                aclCrudDAO.updateAcl(inheritedAcl);
+                updateAclEntity(inheritedAcl);
             }
             return toCopy;
         case REDIRECT:
@@ -1585,7 +1588,7 @@ public class AclDAOImpl implements AclDAO
         final Long inheritsFrom = acl.getInheritsFrom();
         acl.setInherits(Boolean.FALSE);
         acl.setAclChangeSetId(getCurrentChangeSetId());
-        aclCrudDAO.updateAcl(acl);
+        updateAclEntity(acl);
 
         // Keep inherits from so we can reinstate if required
         // acl.setInheritsFrom(-1l);
@@ -1637,6 +1640,44 @@ public class AclDAOImpl implements AclDAO
     }
 
     private static final String RESOURCE_KEY_ACL_CHANGE_SET_ID = "acl.change.set.id";
+    private static final String RESOURCE_KEY_ACL_CHANGE_SET_ACL_IDS = "acl.change.set.acl.ids";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void registerAclChangeSetListener(AclChangeSetListener listener)
+    {
+        aclChangeSetListeners.add(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Long> getAclsChangedInCurrentTransaction()
+    {
+        Set<Long> aclIds = TransactionalResourceHelper.getSet(RESOURCE_KEY_ACL_CHANGE_SET_ACL_IDS);
+        return new HashSet<Long>(aclIds);
+    }
+
+    /**
+     * Persist changes to an ACL, recording it as part of the current change set
+     */
+    private void updateAclEntity(AclUpdateEntity acl)
+    {
+        TransactionalResourceHelper.<Long>getSet(RESOURCE_KEY_ACL_CHANGE_SET_ACL_IDS).add(acl.getId());
+        aclCrudDAO.updateAcl(acl);
+    }
+
+    /**
+     * Delete an ACL, recording it as part of the current change set
+     */
+    private void deleteAclEntity(long aclId)
+    {
+        TransactionalResourceHelper.<Long>getSet(RESOURCE_KEY_ACL_CHANGE_SET_ACL_IDS).add(aclId);
+        aclCrudDAO.deleteAcl(aclId);
+    }
 
     private UpdateChangeSetListener updateChangeSetListener = new UpdateChangeSetListener();
     /**
@@ -1663,6 +1704,18 @@ public class AclDAOImpl implements AclDAO
             // Update it
             long commitTimeMs = System.currentTimeMillis();
             aclCrudDAO.updateAclChangeSet(changeSetId, commitTimeMs);
+            
+            // Let interested parties know which ACLs are part of the change set
+            Set<Long> aclIds = TransactionalResourceHelper.getSet(RESOURCE_KEY_ACL_CHANGE_SET_ACL_IDS);
+            if (aclIds.isEmpty())
+            {
+                return;
+            }
+            Set<Long> changedAclIds = Collections.unmodifiableSet(new HashSet<Long>(aclIds));
+            for (AclChangeSetListener listener : aclChangeSetListeners)
+            {
+                listener.beforeAclChangeSetCommit(changeSetId, changedAclIds);
+            }
         }
     }
     /**
@@ -29,13 +29,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
 import org.alfresco.model.RenditionModel;
 import org.alfresco.repo.action.executer.ActionExecuter;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -48,6 +52,8 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -64,6 +70,11 @@ import org.slf4j.LoggerFactory;
  * 
  * The maximum total size of the content which can be downloaded is controlled
  * by the maximumContentSie property. -1 indicates no limit.
+ * 
+ * If the {@link ContentServiceHelper} is a {@link StreamingContentServiceHelper}, the
+ * archive is written directly to the content store rather than to a temporary file first.
+ * If a prefetch executor is set, content no larger than prefetchMaxSize is read ahead of
+ * being added to the archive.
  *
  * @author Alex Miller
  */
@@ -84,8 +95,15 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private NodeService nodeService;
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
+    private ContentService contentService;
+    private ExecutorService prefetchExecutor;
+    private EagerContentStoreCleaner eagerContentStoreCleaner;
 
     private long maximumContentSize = -1l;
+    private boolean streamArchive = true;
+    private List<String> storedMimetypes = new ArrayList<String>();
+    private long prefetchMaxSize = 1048576l;
+    private int prefetchWindow = 16;
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -100,6 +118,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
 
         private long size = 0;
         private long fileCount = 0;
+        private List<ContentData> contents = new ArrayList<ContentData>();
 
 
         @Override
@@ -107,6 +126,18 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         {
             size = size + contentData.getSize();
             fileCount = fileCount + 1;
+            if (content != null)
+            {
+                contents.add(contentData);
+            }
+        }
+
+        /**
+         * @return the content that will be added to the archive, in order
+         */
+        public List<ContentData> getContents()
+        {
+            return contents;
         }
 
         public long getSize()
@@ -167,6 +198,75 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.updateService = updateService;
     }
 
+    /**
+     * Set the content service used to read content ahead of it being added to an archive.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+
+    /**
+     * Set the threads used to read content ahead of it being added to an archive.
+     * If not set, content is only read as it is added.
+     */
+    public void setPrefetchExecutor(ExecutorService prefetchExecutor)
+    {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * Set the largest content (in bytes) that is read ahead. Defaults to 1MB.
+     */
+    public void setPrefetchMaxSize(long prefetchMaxSize)
+    {
+        this.prefetchMaxSize = prefetchMaxSize;
+    }
+
+    /**
+     * Set the maximum number of content items read ahead. Defaults to 16.
+     */
+    public void setPrefetchWindow(int prefetchWindow)
+    {
+        this.prefetchWindow = prefetchWindow;
+    }
+
+    /**
+     * Set the cleaner used to delete a streamed archive that was not completed.
+     */
+    public void setEagerContentStoreCleaner(EagerContentStoreCleaner eagerContentStoreCleaner)
+    {
+        this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+    }
+
+    /**
+     * Set whether the archive is written directly to the content store, where the
+     * content service helper supports it. Defaults to true.
+     */
+    public void setStreamArchive(boolean streamArchive)
+    {
+        this.streamArchive = streamArchive;
+    }
+
+    /**
+     * Set the comma separated mimetypes of already compressed content, which is stored
+     * in the archive without compressing it again. A trailing <code>*</code> matches any
+     * mimetype with that prefix, such as <code>video/*</code>.
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        List<String> mimetypes = new ArrayList<String>();
+        for (String mimetype : storedMimetypes.split(","))
+        {
+            mimetype = mimetype.trim();
+            if (mimetype.length() > 0)
+            {
+                mimetypes.add(mimetype);
+            }
+        }
+        this.storedMimetypes = mimetypes;
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -244,9 +344,16 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
 
     private void createDownload(final NodeRef actionedUponNodeRef, ExporterCrawlerParameters crawlerParameters, SizeEstimator estimator)
     {
+        if (streamArchive && contentServiceHelper instanceof StreamingContentServiceHelper)
+        {
+            streamDownload(actionedUponNodeRef, crawlerParameters, estimator);
+            return;
+        }
+
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        setUpExporter(handler, estimator);
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -258,10 +365,102 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.cancelPrefetch();
             tempFile.delete();
         }
     }
 
+    /**
+     * Writes the archive directly to the content store, so that it is only written once.
+     */
+    private void streamDownload(final NodeRef actionedUponNodeRef, ExporterCrawlerParameters crawlerParameters, SizeEstimator estimator)
+    {
+        final StreamingContentServiceHelper streamingHelper = (StreamingContentServiceHelper) contentServiceHelper;
+        final ContentWriter writer = streamingHelper.getWriter(actionedUponNodeRef);
+        OutputStream outputStream = writer.getContentOutputStream();
+        final ZipDownloadExporter handler = new ZipDownloadExporter(outputStream, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        setUpExporter(handler, estimator);
+        
+        boolean completed = false;
+        try {
+            exporterService.exportView(handler, crawlerParameters, null);
+            transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+                @Override
+                public Object execute() throws Throwable
+                {
+                    streamingHelper.updateContent(actionedUponNodeRef, writer);
+                    DownloadStatus status = new DownloadStatus(Status.DONE, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles(), handler.getBytesPerSecond());
+                    updateService.update(actionedUponNodeRef, status, handler.getNextSequenceNumber());
+                    return null;
+                }
+            }, false, true);
+            completed = true;
+        }
+        catch (DownloadCancelledException ex) 
+        {
+            downloadCancelled(actionedUponNodeRef, handler);
+        }
+        finally
+        {
+            handler.cancelPrefetch();
+            if (!completed)
+            {
+                discardArchive(writer, outputStream);
+            }
+        }
+    }
+
+    /**
+     * Deletes a streamed archive that was cancelled or failed. Nothing refers to its
+     * content, so it would otherwise stay in the content store.
+     */
+    private void discardArchive(final ContentWriter writer, OutputStream outputStream)
+    {
+        if (!writer.isClosed())
+        {
+            try
+            {
+                outputStream.close();
+            }
+            catch (IOException e)
+            {
+                log.debug("Failed to close abandoned archive", e);
+            }
+        }
+        if (eagerContentStoreCleaner == null)
+        {
+            return;
+        }
+        try
+        {
+            transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+                @Override
+                public Object execute() throws Throwable
+                {
+                    eagerContentStoreCleaner.registerOrphanedContentUrl(writer.getContentUrl(), true);
+                    return null;
+                }
+            }, false, true);
+        }
+        catch (RuntimeException e)
+        {
+            // Don't hide the reason that the archive was not completed
+            log.warn("Failed to delete abandoned archive " + writer.getContentUrl(), e);
+        }
+    }
+
+    private void setUpExporter(ZipDownloadExporter handler, SizeEstimator estimator)
+    {
+        handler.setStoredMimetypes(storedMimetypes);
+        if (prefetchExecutor != null && contentService != null && prefetchMaxSize > 0)
+        {
+            handler.setPrefetcher(new DownloadContentPrefetcher(contentService, transactionHelper, prefetchExecutor,
+                        estimator.getContents(), prefetchMaxSize, prefetchWindow));
+        }
+    }
+
 
     private void archiveCreationComplete(final NodeRef actionedUponNodeRef, final File tempFile,
                 final ZipDownloadExporter handler)
@@ -276,7 +475,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
                 try
                 {
                     contentServiceHelper.updateContent(actionedUponNodeRef, tempFile);
-                    DownloadStatus status = new DownloadStatus(Status.DONE, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles());
+                    DownloadStatus status = new DownloadStatus(Status.DONE, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles(), handler.getBytesPerSecond());
                     updateService.update(actionedUponNodeRef, status, handler.getNextSequenceNumber());
                     
                     return null;
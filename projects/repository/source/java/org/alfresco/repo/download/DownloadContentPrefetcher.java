@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Reads the content of the entries that a {@link ZipDownloadExporter} is about to add to an
+ * archive, on a small pool of threads, so that the time taken to open and read each item from
+ * the content store overlaps with the writing of the archive.
+ * <p>
+ * The upcoming entries are those found by the size estimate that precedes the export, in the
+ * same order. Only content no larger than maxSize is read, and at most window entries are
+ * held, which bounds the memory used. Larger content is read by the exporter as before.
+ *
+ * @since 5.2
+ */
+class DownloadContentPrefetcher
+{
+    private static final Logger log = LoggerFactory.getLogger(DownloadContentPrefetcher.class);
+
+    private final ContentService contentService;
+    private final RetryingTransactionHelper transactionHelper;
+    private final ExecutorService executorService;
+    private final long maxSize;
+    private final int window;
+    private final String runAsUser;
+
+    private final Iterator<ContentData> upcoming;
+    private final LinkedList<Prefetch> prefetches = new LinkedList<Prefetch>();
+    private int inFlight;
+
+    /**
+     * @param contentService ContentService used to read the content
+     * @param transactionHelper RetryingTransactionHelper
+     * @param executorService the threads that read the content
+     * @param upcoming the content that will be added to the archive, in order
+     * @param maxSize the largest content (in bytes) that is read ahead
+     * @param window the maximum number of entries read ahead
+     */
+    DownloadContentPrefetcher(ContentService contentService, RetryingTransactionHelper transactionHelper,
+                ExecutorService executorService, List<ContentData> upcoming, long maxSize, int window)
+    {
+        this.contentService = contentService;
+        this.transactionHelper = transactionHelper;
+        this.executorService = executorService;
+        this.upcoming = upcoming.iterator();
+        this.maxSize = maxSize;
+        this.window = Math.max(window, 1);
+        this.runAsUser = AuthenticationUtil.getRunAsUser();
+        fill();
+    }
+
+    /**
+     * Returns the content of the next entry, if it was read ahead.
+     *
+     * @param contentData the content the exporter is about to add
+     * @return the content, or <code>null</code> if it should be read by the caller
+     */
+    byte[] next(ContentData contentData)
+    {
+        String contentUrl = contentData == null ? null : contentData.getContentUrl();
+        Prefetch match = null;
+        if (contentUrl != null)
+        {
+            // Skip entries that have gone since the estimate, but leave the queue alone
+            // if the content was not in the estimate at all
+            int position = 0;
+            for (Prefetch prefetch : prefetches)
+            {
+                if (contentUrl.equals(prefetch.contentUrl))
+                {
+                    for (int i = 0; i <= position; i++)
+                    {
+                        Prefetch removed = prefetches.removeFirst();
+                        if (removed != prefetch)
+                        {
+                            removed.cancel();
+                        }
+                    }
+                    match = prefetch;
+                    break;
+                }
+                position++;
+            }
+        }
+        byte[] content = match == null ? null : match.get();
+        fill();
+        return content;
+    }
+
+    /**
+     * Stops reading ahead.
+     */
+    void cancel()
+    {
+        for (Prefetch prefetch : prefetches)
+        {
+            prefetch.cancel();
+        }
+        prefetches.clear();
+    }
+
+    private void fill()
+    {
+        while (inFlight < window && upcoming.hasNext())
+        {
+            ContentData contentData = upcoming.next();
+            Prefetch prefetch = new Prefetch(contentData.getContentUrl());
+            if (contentData.getSize() <= maxSize)
+            {
+                prefetch.submit();
+            }
+            prefetches.add(prefetch);
+        }
+    }
+
+    private class Prefetch implements Callable<byte[]>
+    {
+        private final String contentUrl;
+        private Future<byte[]> future;
+
+        private Prefetch(String contentUrl)
+        {
+            this.contentUrl = contentUrl;
+        }
+
+        private void submit()
+        {
+            try
+            {
+                future = executorService.submit(this);
+                inFlight++;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The exporter reads the content itself
+            }
+        }
+
+        private byte[] get()
+        {
+            if (future == null)
+            {
+                return null;
+            }
+            inFlight--;
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                return null;
+            }
+            catch (ExecutionException e)
+            {
+                log.debug("Failed to prefetch " + contentUrl, e.getCause());
+                return null;
+            }
+        }
+
+        private void cancel()
+        {
+            if (future != null)
+            {
+                future.cancel(true);
+                future = null;
+                inFlight--;
+            }
+        }
+
+        @Override
+        public byte[] call() throws Exception
+        {
+            return AuthenticationUtil.runAs(new RunAsWork<byte[]>()
+            {
+                @Override
+                public byte[] doWork() throws Exception
+                {
+                    return transactionHelper.doInTransaction(new RetryingTransactionCallback<byte[]>()
+                    {
+                        @Override
+                        public byte[] execute() throws Throwable
+                        {
+                            ContentReader reader = contentService.getRawReader(contentUrl);
+                            if (!reader.exists() || reader.getSize() > maxSize)
+                            {
+                                return null;
+                            }
+                            InputStream in = reader.getContentInputStream();
+                            return FileCopyUtils.copyToByteArray(in);
+                        }
+                    }, true, true);
+                }
+            }, runAsUser);
+        }
+    }
+}
@@ -41,6 +41,7 @@ public interface DownloadModel
     static final QName TYPE_DOWNLOAD            = QName.createQName(DOWNLOAD_MODEL_1_0_URI, "download");
 
     // Property QNames
+    static final QName PROP_BYTES_PER_SECOND    = QName.createQName(DOWNLOAD_MODEL_1_0_URI, "bytesPerSecond");
     static final QName PROP_CANCELLED           = QName.createQName(DOWNLOAD_MODEL_1_0_URI, "cancelled");
     static final QName PROP_DONE                = QName.createQName(DOWNLOAD_MODEL_1_0_URI, "done");
     static final QName PROP_FILES_ADDED         = QName.createQName(DOWNLOAD_MODEL_1_0_URI, "filesAdded");
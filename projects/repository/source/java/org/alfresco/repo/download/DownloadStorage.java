@@ -214,12 +214,14 @@ public class DownloadStorage
         Long total = (Long)properties.get(DownloadModel.PROP_TOTAL);
         Long filesAdded = (Long)properties.get(DownloadModel.PROP_FILES_ADDED);
         Long totalFiles = (Long)properties.get(DownloadModel.PROP_TOTAL_FILES);
+        Long bytesPerSecond = (Long)properties.get(DownloadModel.PROP_BYTES_PER_SECOND);
         
         return new DownloadStatus(DownloadStatus.Status.valueOf((String)properties.get(DownloadModel.PROP_STATUS)),
                                   done != null ? done.longValue() : 0l,
                                   total != null ? total.longValue() : 0l,
                                   filesAdded != null ? filesAdded.longValue() : 0l,
-                                  totalFiles != null ? totalFiles.longValue() : 0l);
+                                  totalFiles != null ? totalFiles.longValue() : 0l,
+                                  bytesPerSecond != null ? bytesPerSecond.longValue() : 0l);
     }
 
     public int getSequenceNumber(NodeRef nodeRef)
@@ -239,6 +241,7 @@ public class DownloadStorage
         nodeService.setProperty(nodeRef, DownloadModel.PROP_TOTAL, new Long(status.getTotal()));
         nodeService.setProperty(nodeRef, DownloadModel.PROP_FILES_ADDED, status.getFilesAdded());
         nodeService.setProperty(nodeRef, DownloadModel.PROP_TOTAL_FILES, status.getTotalFiles());
+        nodeService.setProperty(nodeRef, DownloadModel.PROP_BYTES_PER_SECOND, status.getBytesPerSecond());
     }
 
     /**
@@ -37,6 +37,7 @@ import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
 import org.springframework.util.FileCopyUtils;
 
 /**
@@ -44,16 +45,22 @@ import org.springframework.util.FileCopyUtils;
  * 
  * @author Alex Miller
  */
-public class LocalContentServiceHelper implements ContentServiceHelper
+public class LocalContentServiceHelper implements StreamingContentServiceHelper
 {
 
     private ContentService contentService;
+    private NodeService nodeService;
     
     public void setContentService(ContentService contentService)
     {
         this.contentService = contentService;
     }
 
+    public void setNodeService(NodeService nodeService)
+    {
+        this.nodeService = nodeService;
+    }
+
     @Override
     public void updateContent(final NodeRef downloadNode, final File archiveFile) throws ContentIOException, FileNotFoundException, IOException
     {
@@ -69,4 +76,36 @@ public class LocalContentServiceHelper implements ContentServiceHelper
             }
         });
     }
+
+    @Override
+    public ContentWriter getWriter(final NodeRef downloadNode)
+    {
+        return AuthenticationUtil.runAsSystem(new RunAsWork<ContentWriter>()
+        {
+            @Override
+            public ContentWriter doWork() throws Exception
+            {
+                // The node is only updated once the archive is complete
+                return contentService.getWriter(downloadNode, ContentModel.PROP_CONTENT, false);
+            }
+        });
+    }
+
+    @Override
+    public void updateContent(final NodeRef downloadNode, final ContentWriter writer) throws ContentIOException
+    {
+        AuthenticationUtil.runAsSystem(new RunAsWork<Object>()
+        {
+            @Override
+            public Object doWork() throws Exception
+            {
+                if (!writer.isClosed())
+                {
+                    throw new ContentIOException("The archive has not been closed: " + writer);
+                }
+                nodeService.setProperty(downloadNode, ContentModel.PROP_CONTENT, writer.getContentData());
+                return null;
+            }
+        });
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * A {@link ContentServiceHelper} that can write an archive directly to the content store,
+ * rather than the archive first being written to a temporary file.
+ *
+ * @since 5.2
+ */
+public interface StreamingContentServiceHelper extends ContentServiceHelper
+{
+    /**
+     * Implementations should return a writer for new content for downloadNode. The content
+     * does not become the content of the node until {@link #updateContent(NodeRef, ContentWriter)}
+     * is called.
+     * 
+     * @param downloadNode  NodeRef
+     * @return ContentWriter
+     */
+    public ContentWriter getWriter(NodeRef downloadNode);
+
+    /**
+     * Implementations should make the closed content written by writer the content of downloadNode.
+     * 
+     * @param downloadNode  NodeRef
+     * @param writer ContentWriter obtained from {@link #getWriter(NodeRef)}
+     * @throws ContentIOException
+     */
+    public void updateContent(NodeRef downloadNode, ContentWriter writer) throws ContentIOException;
+}
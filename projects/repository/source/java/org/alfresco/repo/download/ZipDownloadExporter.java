@@ -25,15 +25,20 @@
  */
 package org.alfresco.repo.download;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -57,6 +62,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p>
+ * Content with one of the {@link #setStoredMimetypes(Collection) stored mimetypes}, which is
+ * already compressed, is not compressed again. If a {@link DownloadContentPrefetcher} is set,
+ * small content is read ahead of being added to the archive.
  * 
  * @author Alex Miller
  */
@@ -84,6 +93,10 @@ public class ZipDownloadExporter extends BaseExporter
 
     private OutputStream outputStream;
 
+    private Collection<String> storedMimetypes = Collections.emptySet();
+    private DownloadContentPrefetcher prefetcher;
+    private long startTime;
+
     /**
      * Construct
      *
@@ -98,18 +111,42 @@ public class ZipDownloadExporter extends BaseExporter
      * @param totalFileCount long
      */
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
+    {
+        this(openFile(zipFile), checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, downloadNodeRef, total, totalFileCount);
+    }
+
+    /**
+     * Construct an exporter that writes the archive to a stream, which is closed at the end of the export.
+     *
+     * @param outputStream OutputStream
+     * @param checkOutCheckInService CheckOutCheckInService
+     * @param nodeService NodeService
+     * @param transactionHelper RetryingTransactionHelper
+     * @param updateService DownloadStatusUpdateService
+     * @param downloadStorage DownloadStorage
+     * @param downloadNodeRef NodeRef
+     * @param total long
+     * @param totalFileCount long
+     * @since 5.2
+     */
+    public ZipDownloadExporter(OutputStream outputStream, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.outputStream = outputStream;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    private static OutputStream openFile(File zipFile)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            return new FileOutputStream(zipFile);
         }
         catch (FileNotFoundException e)
         {
@@ -117,9 +154,32 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Set the mimetypes of content that is already compressed, so is stored in the archive
+     * without being compressed again. A mimetype ending in <code>*</code> matches all the
+     * mimetypes with that prefix.
+     *
+     * @param storedMimetypes Collection<String>
+     * @since 5.2
+     */
+    public void setStoredMimetypes(Collection<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
+    /**
+     * @param prefetcher reads the upcoming content ahead of it being added to the archive
+     * @since 5.2
+     */
+    void setPrefetcher(DownloadContentPrefetcher prefetcher)
+    {
+        this.prefetcher = prefetcher;
+    }
+
     @Override
     public void start(final ExporterContext context)
     {
+        startTime = System.currentTimeMillis();
         zipStream = new ZipArchiveOutputStream(outputStream);
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
@@ -159,14 +219,30 @@ public class ZipDownloadExporter extends BaseExporter
             return;
         }
         
+        byte[] prefetched = prefetcher == null ? null : prefetcher.next(contentData);
         try
         {
             // ALF-2016
             ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
+            boolean compressed = isCompressed(contentData == null ? null : contentData.getMimetype());
+            if (compressed && prefetched != null)
+            {
+                // The size and CRC must be known up front to store an entry in a stream
+                CRC32 crc = new CRC32();
+                crc.update(prefetched);
+                zipEntry.setMethod(ZipArchiveEntry.STORED);
+                zipEntry.setSize(prefetched.length);
+                zipEntry.setCrc(crc.getValue());
+            }
+            else
+            {
+                zipStream.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            }
             zipStream.putArchiveEntry(zipEntry);
             
-            // copy export stream to zip
-            copyStream(zipStream, content);
+            // copy export stream to zip; the exporter only opens the content stream when it is read,
+            // so a prefetched entry is not fetched a second time
+            copyStream(zipStream, prefetched != null ? new ByteArrayInputStream(prefetched) : content);
             
             zipStream.closeArchiveEntry();
             filesAddedCount = filesAddedCount + 1;
@@ -186,6 +262,7 @@ public class ZipDownloadExporter extends BaseExporter
     @Override
     public void end()
     {
+        cancelPrefetch();
         try
         {
             zipStream.close();
@@ -196,6 +273,37 @@ public class ZipDownloadExporter extends BaseExporter
         }
     }
 
+    /**
+     * Stops reading content ahead, if it is being read.
+     * 
+     * @since 5.2
+     */
+    public void cancelPrefetch()
+    {
+        if (prefetcher != null)
+        {
+            prefetcher.cancel();
+        }
+    }
+
+    private boolean isCompressed(String mimetype)
+    {
+        if (mimetype == null)
+        {
+            return false;
+        }
+        for (String storedMimetype : storedMimetypes)
+        {
+            if (storedMimetype.endsWith("*")
+                    ? mimetype.startsWith(storedMimetype.substring(0, storedMimetype.length() - 1))
+                    : mimetype.equals(storedMimetype))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String getPath()
     {
         if (path.size() < 1) 
@@ -274,7 +382,7 @@ public class ZipDownloadExporter extends BaseExporter
             @Override
             public Object execute() throws Throwable
             {
-                DownloadStatus status = new DownloadStatus(Status.IN_PROGRESS, done, total, filesAddedCount, totalFileCount);
+                DownloadStatus status = new DownloadStatus(Status.IN_PROGRESS, done, total, filesAddedCount, totalFileCount, getBytesPerSecond());
                 
                 updateService.update(downloadNodeRef, status, getNextSequenceNumber());
                 return null;
@@ -306,4 +414,14 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+
+    /**
+     * @return the average number of bytes of content added to the archive per second so far
+     * @since 5.2
+     */
+    public long getBytesPerSecond()
+    {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return startTime == 0 ? 0 : done * 1000 / Math.max(elapsed, 1);
+    }
 }
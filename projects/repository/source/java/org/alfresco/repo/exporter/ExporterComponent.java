@@ -666,7 +666,8 @@ public class ExporterComponent
                 }
                 else
                 {
-                    InputStream inputStream = reader.getContentInputStream();
+                    // Only opened if the exporter reads it, which it may not if it already has the content
+                    InputStream inputStream = new LazyContentInputStream(reader);
                     try
                     {
                         exporter.content(nodeRef, property, inputStream, reader.getContentData(), index);
@@ -1250,4 +1251,61 @@ public class ExporterComponent
 
     }
     
+    /**
+     * Content stream that opens the underlying reader on first use.
+     * 
+     * @since 5.2
+     */
+    private static class LazyContentInputStream extends InputStream
+    {
+        private final ContentReader reader;
+        private InputStream in;
+        
+        private LazyContentInputStream(ContentReader reader)
+        {
+            this.reader = reader;
+        }
+        
+        private InputStream getInputStream()
+        {
+            if (in == null)
+            {
+                in = reader.getContentInputStream();
+            }
+            return in;
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+            return getInputStream().read();
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return getInputStream().read(b, off, len);
+        }
+        
+        @Override
+        public long skip(long n) throws IOException
+        {
+            return getInputStream().skip(n);
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+            return getInputStream().available();
+        }
+        
+        @Override
+        public void close() throws IOException
+        {
+            if (in != null)
+            {
+                in.close();
+            }
+        }
+    }
 }
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -72,6 +74,22 @@ public abstract class AbstractLockStore<T extends ConcurrentMap<NodeRef, LockSta
         return lockState;
     }
 
+    @Override
+    public Map<NodeRef, LockState> getLockStates(Collection<NodeRef> nodeRefs)
+    {
+        ParameterCheck.mandatory("nodeRefs", nodeRefs);
+        Map<NodeRef, LockState> lockStates = new HashMap<NodeRef, LockState>(nodeRefs.size() * 2);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            LockState lockState = get(nodeRef);
+            if (lockState != null)
+            {
+                lockStates.put(nodeRef, lockState);
+            }
+        }
+        return lockStates;
+    }
+
     @Override
     public void set(NodeRef nodeRef, LockState lockState)
     {
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock.mem;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Hierarchical timing wheel holding the leases of the lock states in a {@link LockStoreImpl}.
+ * <p>
+ * Each lease is filed in the slot of the wheel level that covers its deadline, and leases are moved down
+ * a level as the lower wheel completes a turn, so scheduling a lease and finding the leases that are due
+ * both take constant time. Scheduling does not block; advancing the wheel is done by whichever thread
+ * notices that the clock has moved on, while other threads carry on without waiting for it.
+ * <p>
+ * When a lease falls due, its lock state is removed from the map - unless the node's state has been
+ * set again since, in which case the newer lease has superseded it. Leases are told apart by identity
+ * rather than by the equality of their lock states, so re-locking a node with an equal state is not undone
+ * by the old lease. Setting a node's state and expiring it are serialized on the lock returned by
+ * {@link #getLock(NodeRef)}.
+ *
+ * @since 5.2
+ */
+class LockExpiryWheel
+{
+    private static final int SLOT_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final int LOCK_STRIPES = 32;
+
+    private final ConcurrentMap<NodeRef, LockState> map;
+    private final long tickMillis;
+    private final Queue<Lease>[][] wheels;
+    private final ConcurrentMap<NodeRef, Lease> currentLeases;
+    private final Object[] locks;
+    private final AtomicBoolean advancing = new AtomicBoolean(false);
+    private volatile long currentTick;
+
+    /**
+     * @param map           the lock states to remove expired entries from
+     * @param tickMillis    the resolution of the wheel
+     */
+    @SuppressWarnings("unchecked")
+    LockExpiryWheel(ConcurrentMap<NodeRef, LockState> map, long tickMillis)
+    {
+        this.map = map;
+        this.tickMillis = tickMillis;
+        this.wheels = new Queue[LEVELS][WHEEL_SIZE];
+        for (int level = 0; level < LEVELS; level++)
+        {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++)
+            {
+                wheels[level][slot] = new ConcurrentLinkedQueue<Lease>();
+            }
+        }
+        this.currentLeases = new ConcurrentHashMap<NodeRef, Lease>(256, 0.75f, 32);
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            locks[i] = new Object();
+        }
+        this.currentTick = tick(System.currentTimeMillis());
+    }
+
+    /**
+     * @param nodeRef       the node
+     * @return              the lock to hold while setting the node's lock state and scheduling its lease
+     */
+    Object getLock(NodeRef nodeRef)
+    {
+        return locks[(nodeRef.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    /**
+     * Remove a node's lock state from the map once the deadline has passed. Any earlier lease on the
+     * node is cancelled. Must be called while holding the node's {@link #getLock(NodeRef) lock}.
+     *
+     * @param nodeRef       the node
+     * @param lockState     the lock state that was stored
+     * @param deadline      the time (in milliseconds) at which to remove the lock state
+     */
+    void schedule(NodeRef nodeRef, LockState lockState, long deadline)
+    {
+        // Round up, so that the lease is never removed early
+        Lease lease = new Lease(nodeRef, lockState, tick(deadline + tickMillis - 1));
+        // The superseded lease stays in its slot until it comes round, but no longer removes anything
+        currentLeases.put(nodeRef, lease);
+        file(lease);
+    }
+
+    /**
+     * Remove the lock states whose leases have fallen due. Returns immediately if another
+     * thread is already doing so.
+     */
+    void advance()
+    {
+        long now = tick(System.currentTimeMillis());
+        if (now <= currentTick || !advancing.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            for (long tick = currentTick + 1; tick <= now; tick++)
+            {
+                currentTick = tick;
+                // Cascade the leases of higher levels as the lower ones complete a turn
+                for (int level = LEVELS - 1; level > 0; level--)
+                {
+                    if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                    {
+                        drain(wheels[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK], tick);
+                    }
+                }
+                drain(wheels[0][(int) tick & SLOT_MASK], tick);
+            }
+        }
+        finally
+        {
+            advancing.set(false);
+        }
+    }
+
+    /**
+     * Discard all the leases.
+     */
+    void clear()
+    {
+        currentLeases.clear();
+        for (Queue<Lease>[] wheel : wheels)
+        {
+            for (Queue<Lease> slot : wheel)
+            {
+                slot.clear();
+            }
+        }
+    }
+
+    private void drain(Queue<Lease> slot, long tick)
+    {
+        // Only take the leases present now, as refiling may add to the same slot
+        for (int i = slot.size(); i > 0; i--)
+        {
+            Lease lease = slot.poll();
+            if (lease == null)
+            {
+                break;
+            }
+            if (lease.deadlineTick <= tick)
+            {
+                expire(lease);
+            }
+            else
+            {
+                file(lease);
+            }
+        }
+    }
+
+    private void expire(Lease lease)
+    {
+        synchronized (getLock(lease.nodeRef))
+        {
+            // Lease does not override equals, so only the node's current lease matches
+            if (currentLeases.remove(lease.nodeRef, lease))
+            {
+                map.remove(lease.nodeRef, lease.lockState);
+            }
+        }
+    }
+
+    private void file(Lease lease)
+    {
+        long now = currentTick;
+        // Leases that are already due go in the next slot, and leases beyond the span
+        //  of the wheel are refiled when their slot comes round
+        long tick = Math.max(lease.deadlineTick, now + 1);
+        tick = Math.min(tick, now + (1L << (SLOT_BITS * LEVELS)) - 1);
+        long delay = tick - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1))))
+        {
+            level++;
+        }
+        wheels[level][(int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK].add(lease);
+    }
+
+    private long tick(long millis)
+    {
+        return millis / tickMillis;
+    }
+
+    private static final class Lease
+    {
+        private final NodeRef nodeRef;
+        private final LockState lockState;
+        private final long deadlineTick;
+
+        private Lease(NodeRef nodeRef, LockState lockState, long deadlineTick)
+        {
+            this.nodeRef = nodeRef;
+            this.lockState = lockState;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -39,6 +41,15 @@ import org.alfresco.service.cmr.repository.NodeRef;
 public interface LockStore
 {
     LockState get(NodeRef nodeRef);
+    
+    /**
+     * Get the lock states of several nodes with one call, e.g. for a page of a folder listing.
+     * 
+     * @param nodeRefs  the nodes
+     * @return          the lock states held for the nodes; nodes without a lock state are left out
+     */
+    Map<NodeRef, LockState> getLockStates(Collection<NodeRef> nodeRefs);
+    
     void set(NodeRef nodeRef, LockState lockState);
     public Set<NodeRef> getNodes();
     
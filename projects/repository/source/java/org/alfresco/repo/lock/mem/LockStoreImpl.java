@@ -25,28 +25,38 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import org.alfresco.repo.lock.LockServiceImpl;
 import org.alfresco.service.cmr.repository.NodeRef;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 /**
- * {@link LockStore} implementation backed by a Google {@link ConcurrentMap}.
+ * {@link LockStore} implementation backed by a {@link ConcurrentHashMap}.
+ * <p>
+ * Each lock state is held on a lease that ends when the lock expires, or after the TTL if
+ * that is sooner. The leases are kept in a {@link LockExpiryWheel}, so expired lock states are
+ * removed as time moves on rather than lingering until they are next read.
  * 
  * @author Matt Ward
  */
 public class LockStoreImpl extends AbstractLockStore<ConcurrentMap<NodeRef, LockState>>
 {
+    private static final long DEFAULT_TICK_MILLIS = 1000L;
+    
+    private final long ttlMillis;
+    private final LockExpiryWheel leases;
+    
     /**
      * Default constructor.
      */
     public LockStoreImpl()
     {
-        super(createMap(LockServiceImpl.MAX_EPHEMERAL_LOCK_SECONDS, TimeUnit.SECONDS));
+        this(LockServiceImpl.MAX_EPHEMERAL_LOCK_SECONDS);
     }
     
     /**
@@ -56,15 +66,60 @@ public class LockStoreImpl extends AbstractLockStore<ConcurrentMap<NodeRef, Lock
      */
     public LockStoreImpl(int ephemeralTTLSeconds)
     {
-        super(createMap(ephemeralTTLSeconds, TimeUnit.SECONDS));
+        this(ephemeralTTLSeconds, DEFAULT_TICK_MILLIS);
+    }
+    
+    /**
+     * Constructor allowing specification of the TTL and the resolution of the lease expiry.
+     * 
+     * @param ephemeralTTLSeconds int
+     * @param tickMillis long
+     */
+    LockStoreImpl(int ephemeralTTLSeconds, long tickMillis)
+    {
+        super(new ConcurrentHashMap<NodeRef, LockState>(256, 0.75f, 32));
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ephemeralTTLSeconds);
+        this.leases = new LockExpiryWheel(map, tickMillis);
+    }
+    
+    @Override
+    public LockState get(NodeRef nodeRef)
+    {
+        leases.advance();
+        return super.get(nodeRef);
+    }
+    
+    @Override
+    public Map<NodeRef, LockState> getLockStates(Collection<NodeRef> nodeRefs)
+    {
+        leases.advance();
+        return super.getLockStates(nodeRefs);
+    }
+    
+    @Override
+    public void set(NodeRef nodeRef, LockState lockState)
+    {
+        leases.advance();
+        
+        long now = System.currentTimeMillis();
+        long deadline = now + ttlMillis;
+        Date expires = lockState.getExpires();
+        if (expires != null && expires.getTime() < deadline)
+        {
+            deadline = expires.getTime();
+        }
+        // The lease of the previous state must not expire the new one before it is superseded
+        synchronized (leases.getLock(nodeRef))
+        {
+            super.set(nodeRef, lockState);
+            leases.schedule(nodeRef, lockState, deadline);
+        }
     }
     
-    private static ConcurrentMap<NodeRef, LockState> createMap(long expiry, TimeUnit timeUnit)
+    @Override
+    public void clear()
     {
-        Cache<NodeRef, LockState> cache = CacheBuilder.newBuilder()
-                    .concurrencyLevel(32)
-                    .expireAfterWrite(expiry, timeUnit)
-                    .build();
-        return cache.asMap();
+        super.clear();
+        leases.clear();
     }
 }
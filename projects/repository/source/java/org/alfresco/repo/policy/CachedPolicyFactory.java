@@ -27,11 +27,13 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.alfresco.api.AlfrescoPublicApi;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
 import org.alfresco.util.LockHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +41,14 @@ import org.apache.commons.logging.LogFactory;
 
 /**
  * Policy Factory with caching support.
+ * <p/>
+ * Cache hits do not take any locks.  The lock only serialises the construction of new
+ * entries against the invalidation of the cache when behaviours are bound or the
+ * dictionary changes.
+ * <p/>
+ * When behaviour filters are active, the cached policy is still used for bindings whose
+ * class behaviours are enabled.  Disabled bindings resolve to the service-level behaviours
+ * only, which are the same for every binding and are cached separately.
  *
  * @author David Caruana
  *
@@ -60,12 +70,18 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     /**
      * Cache for a single Policy interface (keyed by Binding)
      */
-    private Map<B, P> singleCache = new HashMap<B, P>();
+    private Map<B, P> singleCache = new ConcurrentHashMap<B, P>();
     
     /**
      * Cache for a collection of Policy interfaces (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
+    private Map<B, Collection<P>> listCache = new ConcurrentHashMap<B, Collection<P>>();
+
+    /**
+     * Policy interface and collection for bindings with disabled class behaviours
+     */
+    private volatile P serviceOnlySingle = null;
+    private volatile Collection<P> serviceOnlyList = null;
 
     // Try lock timeout (MNT-11371)
     private long tryLockTimeout;
@@ -94,14 +110,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
         });
     }
@@ -110,31 +124,42 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     @Override
     public P create(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        Boolean enabled = isEnabled(binding);
+        if (enabled == null)
         {
+            // The filter can't be evaluated against the binding, so bypass the cache
             return super.create(binding);
         }
-        
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
+        else if (!enabled)
         {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
+            P policyInterface = serviceOnlySingle;
+            if (policyInterface == null)
             {
-                return policyInterface;
+                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting service policy to cache in 'CachedPolicyFactory.create()'");
+                try
+                {
+                    policyInterface = super.create(binding);
+                    serviceOnlySingle = policyInterface;
+                }
+                finally
+                {
+                    lock.writeLock().unlock();
+                }
             }
+            return policyInterface;
         }
-        finally
+        
+        P policyInterface = singleCache.get(binding);
+        if (policyInterface != null)
         {
-            lock.readLock().unlock();
+            return policyInterface;
         }
         
         // There wasn't one
         LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
         try
         {
-            P policyInterface = singleCache.get(binding);
+            policyInterface = singleCache.get(binding);
             if (policyInterface != null)
             {
                 return policyInterface;
@@ -157,31 +182,42 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     @Override
     public Collection<P> createList(B binding)
     {
-        // When behaviour filters are activated bypass the cache 
-        if (behaviourFilter != null && behaviourFilter.isActivated())
+        Boolean enabled = isEnabled(binding);
+        if (enabled == null)
         {
+            // The filter can't be evaluated against the binding, so bypass the cache
             return super.createList(binding);
         }
-        
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
-        try
+        else if (!enabled)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            Collection<P> policyInterfaces = serviceOnlyList;
+            if (policyInterfaces == null)
             {
-                return policyInterfaces;
+                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting service policy list to cache in 'CachedPolicyFactory.createList()'");
+                try
+                {
+                    policyInterfaces = super.createList(binding);
+                    serviceOnlyList = policyInterfaces;
+                }
+                finally
+                {
+                    lock.writeLock().unlock();
+                }
             }
+            return policyInterfaces;
         }
-        finally
+        
+        Collection<P> policyInterfaces = listCache.get(binding);
+        if (policyInterfaces != null)
         {
-            lock.readLock().unlock();
+            return policyInterfaces;
         }
         
         // There wasn't one
         LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
         try
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
+            policyInterfaces = listCache.get(binding);
             if (policyInterfaces != null)
             {
                 return policyInterfaces;
@@ -201,7 +237,53 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     }
     
     /**
-     * Clear entries in the cache based on binding changes.
+     * Determine whether the class behaviours of a binding are enabled by the behaviour filter,
+     * using the same test as {@link ClassBehaviourIndex#find(ClassBehaviourBinding)}.  When no
+     * filters are active in the current transaction the filter is not consulted at all.
+     * 
+     * @param binding  the binding
+     * @return  <tt>true</tt> if enabled, <tt>false</tt> if disabled or <tt>null</tt> if the
+     *          binding is not a class binding and the filter is active
+     */
+    private Boolean isEnabled(B binding)
+    {
+        if (behaviourFilter == null || !behaviourFilter.isActivated())
+        {
+            return Boolean.TRUE;
+        }
+        if (!(binding instanceof ClassBehaviourBinding))
+        {
+            return null;
+        }
+        NodeRef nodeRef = ((ClassBehaviourBinding) binding).getNodeRef();
+        QName className = ((ClassBehaviourBinding) binding).getClassQName();
+        return (nodeRef == null) ? behaviourFilter.isEnabled(className) : behaviourFilter.isEnabled(nodeRef, className);
+    }
+    
+    /**
+     * Clear all cached entries affected by a binding change.
+     * 
+     * @param binding  the changed binding or <tt>null</tt> if all bindings are affected
+     */
+    private void clearCaches(B binding)
+    {
+        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCaches()'");
+        try
+        {
+            // Service-level behaviours are part of every entry, so these are always rebuilt
+            serviceOnlySingle = null;
+            serviceOnlyList = null;
+            clearCache("aggregate delegate", singleCache, binding);
+            clearCache("delegate collection", listCache, binding);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Clear entries in the cache based on binding changes.  The caller must hold the write lock.
      * 
      * @param cacheDescription  description of cache to clear
      * @param cache  the cache to clear
@@ -211,19 +293,11 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     {
         if (binding == null)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            if (logger.isDebugEnabled() && cache.isEmpty() == false)
+                logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
+
+            // A specific binding has not been provided, so clear all entries
+            cache.clear();
         }
         else
         {
@@ -247,23 +321,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             }
 
             // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
+            for (B invalidBinding : invalidBindings)
             {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
-                    {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
-                    }
-                }
-                finally
-                {
-                    lock.writeLock().unlock();
-                }
+                cache.remove(invalidBinding);
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
             }
         }
     }
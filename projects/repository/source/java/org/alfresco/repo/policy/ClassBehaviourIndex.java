@@ -94,25 +94,6 @@ import org.alfresco.util.LockHelper;
             }
         });
 
-        this.classMap.addChangeObserver(new BehaviourChangeObserver<B>()
-        {
-            public void addition(B binding, Behaviour behaviour)
-            {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.addition(binding, behaviour);
-                }
-            }
-
-            public void removal(B binding, Behaviour behaviour)
-            {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.removal(binding, behaviour);
-                }
-            }
-        });
-
         // Observe service binding changes and propagate to our own observers
         this.serviceMap.addChangeObserver(new BehaviourChangeObserver<ServiceBehaviourBinding>()
         {
@@ -263,6 +244,26 @@ import org.alfresco.util.LockHelper;
         }
     }
 
+    /**
+     * Notify the observers that every binding may have changed, e.g. because the class
+     * hierarchy used to generalise bindings has been redefined
+     */
+    public void invalidate()
+    {
+        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "invalidating behavior definitions in 'ClassBehaviourIndex.invalidate()'");
+        try
+        {
+            for (BehaviourChangeObserver<B> listener : observers)
+            {
+                listener.removal(null, null);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
     private boolean isEnabled(B binding)
     {
         // Determine if behaviour has been disabled
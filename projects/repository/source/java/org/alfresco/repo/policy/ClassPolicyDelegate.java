@@ -26,8 +26,12 @@
 package org.alfresco.repo.policy;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.service.cmr.dictionary.ClassDefinition;
@@ -46,9 +50,21 @@ import org.alfresco.service.namespace.QName;
 @AlfrescoPublicApi
 public class ClassPolicyDelegate<P extends ClassPolicy>
 {
+    /** The largest number of distinct class sets for which the combined policies are kept */
+    private static final int MAX_CLASS_SETS = 1000;
+
     private DictionaryService dictionary;
+    private BehaviourFilter behaviourFilter;
     private CachedPolicyFactory<ClassBehaviourBinding, P> factory;
 
+    /**
+     * Combined policies for a set of classes, e.g. a node type and its aspects.  These are only used
+     * when no behaviour filters are active and are dropped whenever any behaviour binding changes.
+     */
+    private Map<Set<QName>, Collection<P>> classSetListCache = new ConcurrentHashMap<Set<QName>, Collection<P>>();
+    private Map<Set<QName>, P> classSetCache = new ConcurrentHashMap<Set<QName>, P>();
+    private AtomicInteger classSetGeneration = new AtomicInteger();
+
 
     /**
      * Construct.
@@ -73,6 +89,20 @@ public class ClassPolicyDelegate<P extends ClassPolicy>
         this.factory = new CachedPolicyFactory<ClassBehaviourBinding, P>(policyClass, index);
         this.factory.setTryLockTimeout(tryLockTimeout);
         this.dictionary = dictionary;
+        this.behaviourFilter = index.getFilter();
+
+        index.addChangeObserver(new BehaviourChangeObserver<ClassBehaviourBinding>()
+        {
+            public void addition(ClassBehaviourBinding binding, Behaviour behaviour)
+            {
+                clearClassSetCaches();
+            }
+
+            public void removal(ClassBehaviourBinding binding, Behaviour behaviour)
+            {
+                clearClassSetCaches();
+            }
+        });
     }
     
 
@@ -158,7 +188,18 @@ public class ClassPolicyDelegate<P extends ClassPolicy>
      */
     public P get(NodeRef nodeRef, Set<QName> classQNames)
     {
-        return factory.toPolicy(getList(nodeRef, classQNames));
+        if (isFiltered())
+        {
+            return factory.toPolicy(buildList(nodeRef, classQNames));
+        }
+        P policy = classSetCache.get(classQNames);
+        if (policy == null)
+        {
+            int generation = classSetGeneration.get();
+            policy = factory.toPolicy(getList(nodeRef, classQNames));
+            putClassSet(classSetCache, classQNames, policy, generation);
+        }
+        return policy;
     }
 
     /**
@@ -179,6 +220,25 @@ public class ClassPolicyDelegate<P extends ClassPolicy>
      * @return Returns the collection of policies
      */
     public Collection<P> getList(NodeRef nodeRef, Set<QName> classQNames)
+    {
+        if (isFiltered())
+        {
+            return buildList(nodeRef, classQNames);
+        }
+        Collection<P> policies = classSetListCache.get(classQNames);
+        if (policies == null)
+        {
+            int generation = classSetGeneration.get();
+            policies = Collections.unmodifiableCollection(buildList(nodeRef, classQNames));
+            putClassSet(classSetListCache, classQNames, policies, generation);
+        }
+        return policies;
+    }
+
+    /**
+     * Collect the policies of each of the given classes, with any filters applied
+     */
+    private Collection<P> buildList(NodeRef nodeRef, Set<QName> classQNames)
     {
         Collection<P> policies = new HashSet<P>();
         for (QName classQName : classQNames)
@@ -195,4 +255,36 @@ public class ClassPolicyDelegate<P extends ClassPolicy>
         }
         return policies;
     }
+
+    /**
+     * @return  <tt>true</tt> if behaviour filters are active, in which case the combined policies
+     *          depend on the transaction and can't be shared
+     */
+    private boolean isFiltered()
+    {
+        return behaviourFilter != null && behaviourFilter.isActivated();
+    }
+
+    /**
+     * Cache the combined policies for a set of classes, unless the bindings changed while they were built
+     */
+    private <V> void putClassSet(Map<Set<QName>, V> cache, Set<QName> classQNames, V value, int generation)
+    {
+        if (cache.size() >= MAX_CLASS_SETS)
+        {
+            return;
+        }
+        cache.put(new HashSet<QName>(classQNames), value);
+        if (classSetGeneration.get() != generation)
+        {
+            cache.clear();
+        }
+    }
+
+    private void clearClassSetCaches()
+    {
+        classSetGeneration.incrementAndGet();
+        classSetListCache.clear();
+        classSetCache.clear();
+    }
 }
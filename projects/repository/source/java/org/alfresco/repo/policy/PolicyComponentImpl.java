@@ -27,11 +27,15 @@ package org.alfresco.repo.policy;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.alfresco.repo.dictionary.DictionaryDAO;
+import org.alfresco.repo.dictionary.DictionaryListener;
 import org.alfresco.repo.policy.Policy.Arg;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.AssociationDefinition;
@@ -134,6 +138,58 @@ public class PolicyComponentImpl implements PolicyComponent
     }
     
     
+    /**
+     * Sets the dictionary DAO.  The cached policies are derived from the class hierarchy,
+     * so they are discarded whenever the dictionary is (re)loaded.
+     * 
+     * @param dictionaryDAO DictionaryDAO
+     */
+    public void setDictionaryDAO(DictionaryDAO dictionaryDAO)
+    {
+        dictionaryDAO.registerListener(new DictionaryListener()
+        {
+            @Override
+            public void onDictionaryInit()
+            {
+            }
+
+            @Override
+            public void afterDictionaryInit()
+            {
+                invalidateBehaviourIndexes();
+            }
+
+            @Override
+            public void afterDictionaryDestroy()
+            {
+                invalidateBehaviourIndexes();
+            }
+        });
+    }
+    
+    
+    /**
+     * Discard the policies cached against all behaviour indexes
+     */
+    private void invalidateBehaviourIndexes()
+    {
+        List<ClassBehaviourIndex<?>> indexes = new ArrayList<ClassBehaviourIndex<?>>();
+        synchronized (this)
+        {
+            indexes.addAll(classBehaviours.values());
+            indexes.addAll(propertyBehaviours.values());
+            indexes.addAll(associationBehaviours.values());
+        }
+        for (ClassBehaviourIndex<?> index : indexes)
+        {
+            index.invalidate();
+        }
+        
+        if (logger.isDebugEnabled())
+            logger.debug("Cleared cached policies of " + indexes.size() + " behaviour indexes after dictionary change");
+    }
+    
+    
     /* (non-Javadoc)
      * @see org.alfresco.repo.policy.PolicyComponent#registerClassPolicy()
      */
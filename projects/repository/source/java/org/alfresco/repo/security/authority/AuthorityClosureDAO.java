@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.List;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Access to the persisted, transitively-closed authority membership index.  The index holds a row for
+ * every (ancestor, descendant, depth) triple reachable through <b>cm:member</b> associations, so that
+ * the containing authorities of any user or group are found with a single indexed lookup.
+ * <p/>
+ * The index is maintained incrementally as memberships are added and removed; all methods operate on
+ * the store of the current tenant.
+ *
+ * @since 5.2
+ */
+public interface AuthorityClosureDAO
+{
+    /**
+     * Get the names of the groups and roles that contain an authority
+     *
+     * @param authorityRef      the user or group node
+     * @param immediate         <tt>true</tt> to get only the direct parents
+     * @return                  the containing authority names
+     */
+    List<String> getContainingAuthorities(NodeRef authorityRef, boolean immediate);
+
+    /**
+     * Record a new <b>cm:member</b> association between two authorities
+     */
+    void addMembership(NodeRef parentRef, NodeRef childRef);
+
+    /**
+     * Record the removal of a <b>cm:member</b> association between two authorities
+     */
+    void removeMembership(NodeRef parentRef, NodeRef childRef);
+
+    /**
+     * Remove all rows that refer to an authority that is being deleted.  The memberships of the authority
+     * in its parents must already have been removed using {@link #removeMembership(NodeRef, NodeRef)}.
+     */
+    void deleteAuthority(NodeRef authorityRef);
+
+    /**
+     * @return          <tt>true</tt> if the index holds any rows for the current tenant
+     */
+    boolean isPopulated();
+
+    /**
+     * Discard the index for the current tenant, e.g. because memberships are changing without it being maintained
+     */
+    void clear();
+
+    /**
+     * Discard and regenerate the index for the current tenant from the <b>cm:member</b> associations
+     *
+     * @return          the number of rows written
+     */
+    int rebuild();
+}
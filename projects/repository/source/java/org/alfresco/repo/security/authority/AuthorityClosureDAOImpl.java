@@ -0,0 +1,392 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.alfresco.ibatis.IdsEntity;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * myBatis implementation of the {@link AuthorityClosureDAO}.
+ * <p/>
+ * The group hierarchy is a DAG, so an authority may be reachable from an ancestor along several paths.
+ * Each row counts the paths of a given depth.  Adding the membership <i>P -> C</i> adds
+ * <i>count(A -> P) * count(C -> D)</i> paths of depth <i>depth(A -> P) + 1 + depth(C -> D)</i> for every
+ * ancestor <i>A</i> of <i>P</i> and every descendant <i>D</i> of <i>C</i> (each including the node itself
+ * at depth 0); removing the membership subtracts the same amounts and drops the rows that reach zero.
+ * <p/>
+ * Concurrent membership changes are serialised where their paths meet.  Before reading the rows it
+ * adjusts, a change locks the node rows of <i>P</i>, <i>C</i> and every ancestor of <i>P</i>.  If the child
+ * of one change reaches the parent of another, both changes lock that child, so the later one reads the
+ * rows written by the earlier one once it has committed.  This relies on the <tt>READ_COMMITTED</tt>
+ * isolation that the repository runs with.
+ *
+ * @since 5.2
+ */
+public class AuthorityClosureDAOImpl implements AuthorityClosureDAO
+{
+    private static final String SELECT_CONTAINING_AUTHORITIES = "alfresco.query.authorities.select_AuthorityClosureContainingAuthorities";
+    private static final String SELECT_ANCESTORS = "alfresco.query.authorities.select_AuthorityClosureAncestors";
+    private static final String SELECT_DESCENDANTS = "alfresco.query.authorities.select_AuthorityClosureDescendants";
+    private static final String SELECT_ANY_IN_STORE = "alfresco.query.authorities.select_AuthorityClosureInStore";
+    private static final String SELECT_MEMBER_LINKS = "alfresco.query.authorities.select_AuthorityMemberLinks";
+    private static final String SELECT_LOCK_NODES = "alfresco.query.authorities.select_AuthorityClosureLockNodes";
+    private static final String INSERT_CLOSURE = "alfresco.query.authorities.insert_AuthorityClosure";
+    private static final String UPDATE_PATH_COUNT = "alfresco.query.authorities.update_AuthorityClosurePathCount";
+    private static final String DELETE_EMPTY_PATHS = "alfresco.query.authorities.delete_AuthorityClosureEmptyPaths";
+    private static final String DELETE_FOR_NODE = "alfresco.query.authorities.delete_AuthorityClosureForNode";
+    private static final String DELETE_IN_STORE = "alfresco.query.authorities.delete_AuthorityClosureInStore";
+
+    private static Log logger = LogFactory.getLog(AuthorityClosureDAOImpl.class);
+
+    private SqlSessionTemplate template;
+    private NodeDAO nodeDAO;
+    private QNameDAO qnameDAO;
+    private TenantService tenantService;
+
+    public void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate)
+    {
+        this.template = sqlSessionTemplate;
+    }
+
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    public void setTenantService(TenantService tenantService)
+    {
+        this.tenantService = tenantService;
+    }
+
+    @Override
+    public List<String> getContainingAuthorities(NodeRef authorityRef, boolean immediate)
+    {
+        Long nodeId = getNodeId(authorityRef);
+        if (nodeId == null)
+        {
+            return Collections.emptyList();
+        }
+        AuthorityClosureEntity params = new AuthorityClosureEntity(null, nodeId, (immediate ? 1 : null), null);
+        params.setAuthorityNameQNameId(getQNameId(ContentModel.PROP_AUTHORITY_NAME));
+        return template.selectList(SELECT_CONTAINING_AUTHORITIES, params);
+    }
+
+    @Override
+    public void addMembership(NodeRef parentRef, NodeRef childRef)
+    {
+        Long parentId = getNodeId(parentRef);
+        Long childId = getNodeId(childRef);
+        if (parentId != null && childId != null)
+        {
+            updatePaths(parentId, childId, 1L);
+        }
+    }
+
+    @Override
+    public void removeMembership(NodeRef parentRef, NodeRef childRef)
+    {
+        Long parentId = getNodeId(parentRef);
+        Long childId = getNodeId(childRef);
+        if (parentId != null && childId != null)
+        {
+            updatePaths(parentId, childId, -1L);
+        }
+    }
+
+    /**
+     * Adjust the path counts for every ancestor/descendant pair joined by the membership <i>parent -> child</i>
+     *
+     * @param sign          <tt>1</tt> when adding the membership, <tt>-1</tt> when removing it
+     */
+    private void updatePaths(Long parentId, Long childId, long sign)
+    {
+        List<AuthorityClosureEntity> ancestors = new ArrayList<AuthorityClosureEntity>(lockAncestors(parentId, childId));
+        ancestors.add(new AuthorityClosureEntity(parentId, parentId, 0, 1L));
+        List<AuthorityClosureEntity> descendants = new ArrayList<AuthorityClosureEntity>(
+                template.<AuthorityClosureEntity>selectList(SELECT_DESCENDANTS, new AuthorityClosureEntity(childId, null, null, null)));
+        descendants.add(new AuthorityClosureEntity(childId, childId, 0, 1L));
+
+        int updated = 0;
+        int inserted = 0;
+        for (AuthorityClosureEntity ancestor : ancestors)
+        {
+            for (AuthorityClosureEntity descendant : descendants)
+            {
+                AuthorityClosureEntity path = new AuthorityClosureEntity(
+                        ancestor.getAncestorId(),
+                        descendant.getDescendantId(),
+                        ancestor.getDepth() + 1 + descendant.getDepth(),
+                        sign * ancestor.getPathCount() * descendant.getPathCount());
+                if (template.update(UPDATE_PATH_COUNT, path) > 0)
+                {
+                    updated++;
+                }
+                else if (sign > 0)
+                {
+                    template.insert(INSERT_CLOSURE, path);
+                    inserted++;
+                }
+            }
+        }
+        if (sign < 0)
+        {
+            for (AuthorityClosureEntity ancestor : ancestors)
+            {
+                template.delete(DELETE_EMPTY_PATHS, new AuthorityClosureEntity(ancestor.getAncestorId(), null, null, null));
+            }
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug((sign > 0 ? "Added" : "Removed") + " membership " + parentId + " -> " + childId + ": " +
+                    ancestors.size() + " ancestors, " + descendants.size() + " descendants, " +
+                    updated + " rows updated, " + inserted + " rows inserted");
+        }
+    }
+
+    /**
+     * Lock the parent and child of a membership and the ancestors of the parent, then read those ancestors.
+     * New ancestors may have been committed while waiting for the locks, so they are read again until
+     * all of them are locked.
+     *
+     * @return              the paths from the ancestors of the parent down to the parent
+     */
+    private List<AuthorityClosureEntity> lockAncestors(Long parentId, Long childId)
+    {
+        Set<Long> locked = new HashSet<Long>();
+        Set<Long> toLock = new TreeSet<Long>();
+        toLock.add(parentId);
+        toLock.add(childId);
+        while (true)
+        {
+            lockNodes(toLock);
+            locked.addAll(toLock);
+            List<AuthorityClosureEntity> ancestors = template.selectList(SELECT_ANCESTORS, new AuthorityClosureEntity(null, parentId, null, null));
+            // Lock in ID order to keep deadlocks between changes to a minimum
+            toLock = new TreeSet<Long>();
+            for (AuthorityClosureEntity ancestor : ancestors)
+            {
+                if (!locked.contains(ancestor.getAncestorId()))
+                {
+                    toLock.add(ancestor.getAncestorId());
+                }
+            }
+            if (toLock.isEmpty())
+            {
+                return ancestors;
+            }
+        }
+    }
+
+    /**
+     * Lock the node rows of authorities until the end of the transaction
+     */
+    private void lockNodes(Set<Long> nodeIds)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIds(new ArrayList<Long>(nodeIds));
+        template.selectList(SELECT_LOCK_NODES, ids);
+    }
+
+    @Override
+    public void deleteAuthority(NodeRef authorityRef)
+    {
+        Long nodeId = getNodeId(authorityRef);
+        if (nodeId != null)
+        {
+            lockNodes(Collections.singleton(nodeId));
+            template.delete(DELETE_FOR_NODE, new AuthorityClosureEntity(nodeId, nodeId, null, null));
+        }
+    }
+
+    @Override
+    public boolean isPopulated()
+    {
+        List<Object> rows = template.selectList(SELECT_ANY_IN_STORE, getStoreParameters(), new RowBounds(0, 1));
+        return !rows.isEmpty();
+    }
+
+    @Override
+    public void clear()
+    {
+        template.delete(DELETE_IN_STORE, getStoreParameters());
+    }
+
+    @Override
+    public int rebuild()
+    {
+        Long start = (logger.isDebugEnabled() ? System.currentTimeMillis() : null);
+
+        AuthorityClosureEntity storeParameters = getStoreParameters();
+        template.delete(DELETE_IN_STORE, storeParameters);
+
+        // Index the direct memberships by child
+        List<AuthorityClosureEntity> links = template.selectList(SELECT_MEMBER_LINKS, storeParameters);
+        Map<Long, List<Long>> parentsByChild = new HashMap<Long, List<Long>>(links.size());
+        Set<Long> groups = new HashSet<Long>();
+        for (AuthorityClosureEntity link : links)
+        {
+            List<Long> parents = parentsByChild.get(link.getDescendantId());
+            if (parents == null)
+            {
+                parents = new ArrayList<Long>(2);
+                parentsByChild.put(link.getDescendantId(), parents);
+            }
+            parents.add(link.getAncestorId());
+            groups.add(link.getAncestorId());
+        }
+
+        // Walk up from every member; the paths above a group are shared by its members, so they are kept
+        Map<Long, Map<Pair<Long, Integer>, Long>> groupPaths = new HashMap<Long, Map<Pair<Long, Integer>, Long>>(groups.size());
+        int rows = 0;
+        for (Long childId : parentsByChild.keySet())
+        {
+            Map<Pair<Long, Integer>, Long> paths = getPaths(childId, parentsByChild, groups, groupPaths, new HashSet<Long>());
+            for (Map.Entry<Pair<Long, Integer>, Long> path : paths.entrySet())
+            {
+                Pair<Long, Integer> key = path.getKey();
+                template.insert(INSERT_CLOSURE, new AuthorityClosureEntity(key.getFirst(), childId, key.getSecond(), path.getValue()));
+                rows++;
+            }
+        }
+
+        if (start != null)
+        {
+            logger.debug("Rebuilt authority closure: " + links.size() + " memberships, " + rows + " rows in " + (System.currentTimeMillis() - start) + " msecs");
+        }
+        return rows;
+    }
+
+    /**
+     * @return      the number of paths from each (ancestor, depth) down to the given node
+     */
+    private Map<Pair<Long, Integer>, Long> getPaths(
+            Long nodeId,
+            Map<Long, List<Long>> parentsByChild,
+            Set<Long> groups,
+            Map<Long, Map<Pair<Long, Integer>, Long>> groupPaths,
+            Set<Long> visiting)
+    {
+        Map<Pair<Long, Integer>, Long> paths = groupPaths.get(nodeId);
+        if (paths != null)
+        {
+            return paths;
+        }
+        paths = new HashMap<Pair<Long, Integer>, Long>();
+        List<Long> parents = parentsByChild.get(nodeId);
+        if (parents != null)
+        {
+            visiting.add(nodeId);
+            for (Long parentId : parents)
+            {
+                if (visiting.contains(parentId))
+                {
+                    logger.warn("Ignoring cyclic authority membership: " + parentId + " -> " + nodeId);
+                    continue;
+                }
+                addPaths(paths, new Pair<Long, Integer>(parentId, 1), 1L);
+                for (Map.Entry<Pair<Long, Integer>, Long> parentPath : getPaths(parentId, parentsByChild, groups, groupPaths, visiting).entrySet())
+                {
+                    Pair<Long, Integer> key = parentPath.getKey();
+                    addPaths(paths, new Pair<Long, Integer>(key.getFirst(), key.getSecond() + 1), parentPath.getValue());
+                }
+            }
+            visiting.remove(nodeId);
+        }
+        if (groups.contains(nodeId))
+        {
+            groupPaths.put(nodeId, paths);
+        }
+        return paths;
+    }
+
+    private static void addPaths(Map<Pair<Long, Integer>, Long> paths, Pair<Long, Integer> key, long count)
+    {
+        Long existing = paths.get(key);
+        paths.put(key, (existing == null) ? count : existing + count);
+    }
+
+    private Long getNodeId(NodeRef nodeRef)
+    {
+        if (nodeRef == null)
+        {
+            return null;
+        }
+        Pair<Long, NodeRef> pair = nodeDAO.getNodePair(tenantService.getName(nodeRef));
+        return (pair == null) ? null : pair.getFirst();
+    }
+
+    private Long getQNameId(QName qname)
+    {
+        Pair<Long, QName> qnamePair = qnameDAO.getQName(qname);
+        return (qnamePair == null) ? Long.MIN_VALUE : qnamePair.getFirst();
+    }
+
+    private AuthorityClosureEntity getStoreParameters()
+    {
+        // Get tenant specific store id
+        StoreRef tenantSpecificStoreRef = tenantService.getName(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+        Long storeId = Long.MIN_VALUE;
+        if (tenantSpecificStoreRef != null)
+        {
+            Pair<Long, StoreRef> storePair = nodeDAO.getStore(tenantSpecificStoreRef);
+            if (storePair != null)
+            {
+                storeId = storePair.getFirst();
+            }
+        }
+        AuthorityClosureEntity params = new AuthorityClosureEntity();
+        params.setStoreId(storeId);
+        params.setTypeQNameId(getQNameId(ContentModel.TYPE_AUTHORITY_CONTAINER));
+        params.setChildAssocTypeQNameId(getQNameId(ContentModel.ASSOC_MEMBER));
+        return params;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+/**
+ * A row of the authority closure table: the number of distinct membership paths of a given length
+ * between an ancestor authority and one of its (direct or indirect) members.  Instances are also
+ * used as parameters for the closure table queries.
+ *
+ * @since 5.2
+ */
+public class AuthorityClosureEntity
+{
+    private Long ancestorId;
+
+    private Long descendantId;
+
+    private Integer depth;
+
+    private Long pathCount;
+
+    private Long storeId;
+
+    private Long typeQNameId;
+
+    private Long childAssocTypeQNameId;
+
+    private Long authorityNameQNameId;
+
+    public AuthorityClosureEntity()
+    {
+    }
+
+    public AuthorityClosureEntity(Long ancestorId, Long descendantId, Integer depth, Long pathCount)
+    {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+        this.pathCount = pathCount;
+    }
+
+    /**
+     * @return the node ID of the containing authority
+     */
+    public Long getAncestorId()
+    {
+        return ancestorId;
+    }
+
+    public void setAncestorId(Long ancestorId)
+    {
+        this.ancestorId = ancestorId;
+    }
+
+    /**
+     * @return the node ID of the contained authority
+     */
+    public Long getDescendantId()
+    {
+        return descendantId;
+    }
+
+    public void setDescendantId(Long descendantId)
+    {
+        this.descendantId = descendantId;
+    }
+
+    /**
+     * @return the number of membership associations between the two authorities; <tt>1</tt> for immediate members
+     */
+    public Integer getDepth()
+    {
+        return depth;
+    }
+
+    public void setDepth(Integer depth)
+    {
+        this.depth = depth;
+    }
+
+    /**
+     * @return the number of distinct paths of this depth, or the change in that number when updating
+     */
+    public Long getPathCount()
+    {
+        return pathCount;
+    }
+
+    public void setPathCount(Long pathCount)
+    {
+        this.pathCount = pathCount;
+    }
+
+    /**
+     * @return the store holding the authorities (query parameter)
+     */
+    public Long getStoreId()
+    {
+        return storeId;
+    }
+
+    public void setStoreId(Long storeId)
+    {
+        this.storeId = storeId;
+    }
+
+    /**
+     * @return the <b>cm:authorityContainer</b> type ID (query parameter)
+     */
+    public Long getTypeQNameId()
+    {
+        return typeQNameId;
+    }
+
+    public void setTypeQNameId(Long typeQNameId)
+    {
+        this.typeQNameId = typeQNameId;
+    }
+
+    /**
+     * @return the <b>cm:member</b> association type ID (query parameter)
+     */
+    public Long getChildAssocTypeQNameId()
+    {
+        return childAssocTypeQNameId;
+    }
+
+    public void setChildAssocTypeQNameId(Long childAssocTypeQNameId)
+    {
+        this.childAssocTypeQNameId = childAssocTypeQNameId;
+    }
+
+    /**
+     * @return the <b>cm:authorityName</b> property ID (query parameter)
+     */
+    public Long getAuthorityNameQNameId()
+    {
+        return authorityNameQNameId;
+    }
+
+    public void setAuthorityNameQNameId(Long authorityNameQNameId)
+    {
+        this.authorityNameQNameId = authorityNameQNameId;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AuthorityClosureEntity [ancestorId=" + ancestorId + ", descendantId=" + descendantId + ", depth=" + depth + ", pathCount=" + pathCount + "]";
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.tenant.TenantAdminService;
+import org.alfresco.repo.tenant.TenantDeployer;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Populates the authority closure table when it is first used, and empties it when it is not.
+ * <p/>
+ * Memberships created by the bootstrap importers do not pass through the {@link AuthorityDAOImpl}, so the
+ * table is regenerated from the <b>cm:member</b> associations for each tenant that has no rows yet.  The
+ * table is not maintained while it is not in use, so it is emptied on startup without it: this records that
+ * it is stale, and it is regenerated once it is back in use.  Set <b>rebuildOnStartup</b> to regenerate it
+ * regardless, e.g. after memberships were changed directly on the nodes.
+ *
+ * @since 5.2
+ */
+public class AuthorityClosureTableBootstrap extends AbstractLifecycleBean implements TenantDeployer
+{
+    private static Log logger = LogFactory.getLog(AuthorityClosureTableBootstrap.class);
+
+    private AuthorityClosureDAO authorityClosureDAO;
+    private TransactionService transactionService;
+    private TenantAdminService tenantAdminService;
+    private boolean enabled = false;
+    private boolean rebuildOnStartup = false;
+
+    public void setAuthorityClosureDAO(AuthorityClosureDAO authorityClosureDAO)
+    {
+        this.authorityClosureDAO = authorityClosureDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    public void setTenantAdminService(TenantAdminService tenantAdminService)
+    {
+        this.tenantAdminService = tenantAdminService;
+    }
+
+    /**
+     * @param enabled       <tt>true</tt> if the closure table is in use (see <b>authority.useClosureTable</b>)
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param rebuildOnStartup  <tt>true</tt> to regenerate the table on startup even if it is populated
+     */
+    public void setRebuildOnStartup(boolean rebuildOnStartup)
+    {
+        this.rebuildOnStartup = rebuildOnStartup;
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        PropertyCheck.mandatory(this, "authorityClosureDAO", authorityClosureDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "tenantAdminService", tenantAdminService);
+
+        AuthenticationUtil.runAs(new RunAsWork<Object>()
+        {
+            public Object doWork()
+            {
+                init();
+                return null;
+            }
+        }, AuthenticationUtil.getSystemUserName());
+
+        if (tenantAdminService.isEnabled())
+        {
+            tenantAdminService.register(this);
+            tenantAdminService.deployTenants(this, logger);
+        }
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        // NOOP
+    }
+
+    /**
+     * Rebuild the table for the current tenant if it is in use and required, or empty it if it is not in use
+     */
+    @Override
+    public void init()
+    {
+        if (!enabled && transactionService.isReadOnly())
+        {
+            // Another server will empty it
+            return;
+        }
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                if (!enabled)
+                {
+                    if (authorityClosureDAO.isPopulated())
+                    {
+                        authorityClosureDAO.clear();
+                        if (logger.isInfoEnabled())
+                        {
+                            logger.info("Emptied unused authority closure table for tenant '" + tenantAdminService.getCurrentUserDomain() + "'");
+                        }
+                    }
+                }
+                else if (rebuildOnStartup || !authorityClosureDAO.isPopulated())
+                {
+                    int rows = authorityClosureDAO.rebuild();
+                    if (logger.isInfoEnabled())
+                    {
+                        logger.info("Rebuilt authority closure table for tenant '" + tenantAdminService.getCurrentUserDomain() + "': " + rows + " rows");
+                    }
+                }
+                return null;
+            }
+        }, false, true);
+    }
+
+    @Override
+    public void destroy()
+    {
+        // NOOP
+    }
+
+    @Override
+    public void onEnableTenant()
+    {
+        init(); // will be called in context of tenant
+    }
+
+    @Override
+    public void onDisableTenant()
+    {
+        // NOOP
+    }
+}
@@ -139,12 +139,15 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
 
     private boolean useBridgeTable = true;
     
+    private boolean useClosureTable = false;
+    
     private QNameDAO qnameDAO;
     private CannedQueryDAO cannedQueryDAO;
     private AclDAO aclDao;
     private PolicyComponent policyComponent;
     private NamedObjectRegistry<CannedQueryFactory<?>> cannedQueryRegistry;
     private AuthorityBridgeDAO authorityBridgeDAO;
+    private AuthorityClosureDAO authorityClosureDAO;
     
     
     public AuthorityDAOImpl()
@@ -225,6 +228,17 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     {
         this.useBridgeTable = useBridgeTable;
     }
+    
+    /**
+     * Use the authority closure table to find containing authorities.  The table is maintained as memberships
+     * change while this is set, and is rebuilt by the {@link AuthorityClosureTableBootstrap} when it is empty.
+     * 
+     * @param useClosureTable <tt>true</tt> to maintain and query the closure table
+     */
+    public void setUseClosureTable(boolean useClosureTable)
+    {
+        this.useClosureTable = useClosureTable;
+    }
 
 
     public void setPersonService(PersonService personService)
@@ -274,6 +288,19 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     {
         this.authorityBridgeDAO = authorityBridgeDAO;
     }
+    
+    /**
+     * @param authorityClosureDAO the authorityClosureDAO to set
+     */
+    public void setAuthorityClosureDAO(AuthorityClosureDAO authorityClosureDAO)
+    {
+        this.authorityClosureDAO = authorityClosureDAO;
+    }
+    
+    private boolean isClosureTableEnabled()
+    {
+        return useClosureTable && authorityClosureDAO != null;
+    }
 
     @Override
     public long getPersonCount()
@@ -361,6 +388,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
 
         nodeService.addChild(parentRefs, childRef, ContentModel.ASSOC_MEMBER, QName.createQName("cm", childName,
                 namespacePrefixResolver));
+        if (isClosureTableEnabled())
+        {
+            for (NodeRef parentRef : parentRefs)
+            {
+                authorityClosureDAO.addMembership(parentRef, childRef);
+            }
+        }
         if (isUser)
         {
             userAuthorityCache.remove(childName);
@@ -424,6 +458,15 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         zoneAuthorityCache.remove(new Pair<String, String>(currentUserDomain, null));
         removeParentsFromChildAuthorityCache(nodeRef, false);
+        if (isClosureTableEnabled())
+        {
+            // Detach the authority from its parents, then drop the paths to its members
+            for (ChildAssociationRef car : nodeService.getParentAssocs(nodeRef, ContentModel.ASSOC_MEMBER, RegexQNamePattern.MATCH_ALL))
+            {
+                authorityClosureDAO.removeMembership(car.getParentRef(), nodeRef);
+            }
+            authorityClosureDAO.deleteAuthority(nodeRef);
+        }
         
         nodeService.deleteNode(nodeRef);
         
@@ -796,6 +839,10 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             throw new UnknownAuthorityException("An authority was not found for " + childName);
         }
         nodeService.removeChild(parentRef, childRef);
+        if (isClosureTableEnabled())
+        {
+            authorityClosureDAO.removeMembership(parentRef, childRef);
+        }
         childAuthorityCache.remove(parentRef);
         if (AuthorityType.getAuthorityType(childName) == AuthorityType.USER)
         {
@@ -850,6 +897,34 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }        
     }
     
+    /**
+     * Explicitly use the closure table to list the containing authorities.
+     */
+    private void listAuthoritiesByClosureTable(AuthorityType type, String name, Set<String> authorities, boolean immediate)
+    {
+        AuthorityType localType = AuthorityType.getAuthorityType(name);
+        if (localType.equals(AuthorityType.GUEST))
+        {
+            // Nothing to do
+            return;
+        }
+        NodeRef ref = getAuthorityOrNull(name);
+        if (ref == null)
+        {
+            if (!localType.equals(AuthorityType.USER))
+            {
+                throw new UnknownAuthorityException("An authority was not found for " + name);
+            }
+            // Don't worry about missing person objects. It might be the system user or a user yet to be
+            // auto-created
+            return;
+        }
+        for (String ancestor : authorityClosureDAO.getContainingAuthorities(ref, immediate))
+        {
+            addAuthorityNameIfMatches(authorities, ancestor, type);
+        }
+    }
+    
     @Override
     public Set<String> getContainingAuthorities(AuthorityType type, String name, boolean immediate)
     {
@@ -861,7 +936,11 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             if (authorities == null)
             {
                 authorities = new TreeSet<String>();
-                if(useBridgeTable)
+                if (isClosureTableEnabled())
+                {
+                    listAuthoritiesByClosureTable(null, name, authorities, false);
+                }
+                else if(useBridgeTable)
                 {
                     listAuthoritiesByBridgeTable(authorities, name);
                 }
@@ -885,6 +964,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             }
             return filteredAuthorities;
         }
+        // The closure table holds every ancestor, however deep, so a single lookup answers the query
+        else if (isClosureTableEnabled())
+        {
+            Set<String> authorities = new TreeSet<String>();
+            listAuthoritiesByClosureTable(type, name, authorities, immediate);
+            return authorities;
+        }
         // Otherwise, crawl the DB for the answer
         else
         {
@@ -1562,6 +1648,11 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         // Remove cache elements for the parents, ensuring that we lock because the data still exists
         removeParentsFromChildAuthorityCache(nodeRef, true);
+        if (isClosureTableEnabled())
+        {
+            // People have no members, so dropping their own rows leaves the other paths intact
+            authorityClosureDAO.deleteAuthority(nodeRef);
+        }
     }
 
     public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after)
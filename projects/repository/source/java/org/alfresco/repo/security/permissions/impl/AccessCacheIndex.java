@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Secondary index over the keys of the permission service's access cache, allowing entries
+ * to be evicted by the ACL they were evaluated against rather than by clearing the whole cache.
+ * <p>
+ * Only entries evaluated against a single, non-OLD ACL are indexed; the permission service does
+ * not cache the results for other nodes. The cache keys carry the ACL's ID and change set, so an
+ * entry cached before the ACL was changed by a later change set can never be returned, even if
+ * it was cached by another JVM. Changes made within the current change set keep the same key,
+ * which is why the index is needed: it must see every key cached by this JVM, so when it is full
+ * the cache is cleared along with it.
+ * <p>
+ * The number of entries evicted per ACL change is recorded so that the effectiveness of the
+ * targeted invalidation can be monitored.
+ * 
+ * @since 5.2
+ */
+public class AccessCacheIndex
+{
+    private static final Log logger = LogFactory.getLog(AccessCacheIndex.class);
+    
+    private final ConcurrentMap<Long, Set<Serializable>> keysByAcl = new ConcurrentHashMap<Long, Set<Serializable>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+    
+    private final AtomicLong aclInvalidationCount = new AtomicLong();
+    private final AtomicLong aclInvalidatedEntryCount = new AtomicLong();
+    private final AtomicLong maxEntriesInvalidatedByAclChange = new AtomicLong();
+    private final AtomicLong fullClearCount = new AtomicLong();
+    
+    /**
+     * @param maxSize           the number of keys to index before the cache and index are cleared
+     */
+    public AccessCacheIndex(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Record that a cache entry depends on the given ACL
+     * 
+     * @param cache             the cache holding the entry, cleared if the index is full
+     * @param key               the access cache key
+     * @param aclId             the ID of the ACL the entry was evaluated against
+     */
+    public void index(SimpleCache<Serializable, AccessStatus> cache, Serializable key, Long aclId)
+    {
+        if (size.incrementAndGet() > maxSize)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Access cache index reached " + maxSize + " keys; clearing the access cache.");
+            }
+            invalidateAll(cache);
+            size.incrementAndGet();
+        }
+        getKeys(aclId).add(key);
+    }
+    
+    /**
+     * Evict all entries that were evaluated against any of the given ACLs
+     * 
+     * @param cache             the cache to evict from
+     * @param aclIds            the IDs of the changed ACLs
+     * @return                  the number of entries evicted
+     */
+    public int invalidateAcls(SimpleCache<Serializable, AccessStatus> cache, Collection<Long> aclIds)
+    {
+        int count = 0;
+        for (Long aclId : aclIds)
+        {
+            Set<Serializable> keys = keysByAcl.remove(aclId);
+            if (keys != null)
+            {
+                size.addAndGet(-keys.size());
+                for (Serializable key : keys)
+                {
+                    // Don't check for presence first: that may be a remote call for a distributed cache
+                    cache.remove(key);
+                    count++;
+                }
+            }
+        }
+        aclInvalidationCount.incrementAndGet();
+        aclInvalidatedEntryCount.addAndGet(count);
+        while (true)
+        {
+            long max = maxEntriesInvalidatedByAclChange.get();
+            if (count <= max || maxEntriesInvalidatedByAclChange.compareAndSet(max, count))
+            {
+                break;
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Evicted " + count + " access cache entries for " + aclIds.size() + " changed ACLs");
+        }
+        return count;
+    }
+    
+    /**
+     * Clear the cache and the index together, for changes that cannot be attributed to specific ACLs
+     * 
+     * @param cache             the cache to clear
+     */
+    public void invalidateAll(SimpleCache<Serializable, AccessStatus> cache)
+    {
+        cache.clear();
+        keysByAcl.clear();
+        size.set(0);
+        fullClearCount.incrementAndGet();
+    }
+    
+    /**
+     * @return                  the number of ACL change sets that have triggered eviction
+     */
+    public long getAclInvalidationCount()
+    {
+        return aclInvalidationCount.get();
+    }
+    
+    /**
+     * @return                  the total number of entries evicted because of ACL changes
+     */
+    public long getAclInvalidatedEntryCount()
+    {
+        return aclInvalidatedEntryCount.get();
+    }
+    
+    /**
+     * @return                  the mean number of entries evicted per ACL change set
+     */
+    public double getMeanEntriesInvalidatedPerAclChange()
+    {
+        long changes = aclInvalidationCount.get();
+        return changes == 0 ? 0.0 : (double) aclInvalidatedEntryCount.get() / changes;
+    }
+    
+    /**
+     * @return                  the largest number of entries evicted by a single ACL change set
+     */
+    public long getMaxEntriesInvalidatedByAclChange()
+    {
+        return maxEntriesInvalidatedByAclChange.get();
+    }
+    
+    /**
+     * @return                  the number of times the whole cache has been cleared
+     */
+    public long getFullClearCount()
+    {
+        return fullClearCount.get();
+    }
+    
+    private Set<Serializable> getKeys(Long aclId)
+    {
+        Set<Serializable> keys = keysByAcl.get(aclId);
+        if (keys == null)
+        {
+            Set<Serializable> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<Serializable, Boolean>());
+            keys = keysByAcl.putIfAbsent(aclId, newKeys);
+            if (keys == null)
+            {
+                keys = newKeys;
+            }
+        }
+        return keys;
+    }
+}
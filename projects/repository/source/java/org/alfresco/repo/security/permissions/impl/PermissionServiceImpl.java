@@ -39,6 +39,7 @@ import net.sf.acegisecurity.providers.dao.User;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.permissions.AclChangeSetListener;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.node.db.traitextender.NodeServiceTrait;
 import org.alfresco.repo.domain.permissions.FixedAclUpdater;
@@ -107,6 +108,9 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
     
+    /** index of the access cache keys by ACL and user, used to evict entries selectively */
+    protected AccessCacheIndex accessCacheIndex = new AccessCacheIndex(100000);
+    
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
     protected SimpleCache<Serializable, Set<String>> readersDeniedCache;
@@ -193,7 +197,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void setAnyDenyDenies(boolean anyDenyDenies)
     {
         this.anyDenyDenies = anyDenyDenies;
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
         readersCache.clear();
         readersDeniedCache.clear();
     }
@@ -315,44 +319,62 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     }
     
     /**
-     * Set the policy component
+     * Set the number of access cache keys to index for selective eviction
      * 
-     * @param policyComponent PolicyComponent
+     * @param accessCacheIndexSize the maximum number of keys to index
      */
-    public void setPolicyComponent(PolicyComponent policyComponent)
+    public void setAccessCacheIndexSize(int accessCacheIndexSize)
     {
-        this.policyComponent = policyComponent;
+        this.accessCacheIndex = new AccessCacheIndex(accessCacheIndexSize);
     }
-
+    
     /**
-     * Cache clear on move node
+     * @return the index of access cache keys, which also records how many entries each ACL change evicts
+     */
+    public AccessCacheIndex getAccessCacheIndex()
+    {
+        return accessCacheIndex;
+    }
+    
+    /**
+     * Set the policy component
      * 
-     * @param oldChildAssocRef ChildAssociationRef
-     * @param newChildAssocRef ChildAssociationRef
+     * @param policyComponent PolicyComponent
      */
-    public void onMoveNode(ChildAssociationRef oldChildAssocRef, ChildAssociationRef newChildAssocRef)
+    public void setPolicyComponent(PolicyComponent policyComponent)
     {
-        accessCache.clear();
+        this.policyComponent = policyComponent;
     }
 
     /**
      * Cache clear on create of a child association from an authority container.
+     * The keys for users' dynamic authority sets do not track group membership.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
     }
 
     /**
      * Cache clear on delete of a child association from an authority container.
+     * The keys for users' dynamic authority sets do not track group membership.
      * 
      * @param childAssocRef ChildAssociationRef
      */
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
     {
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
+    }
+    
+    /**
+     * Evict the entries for the ACLs changed so far by the current transaction.  An ACL changed
+     * in place keeps its change set, so the keys of its entries do not change until it is committed.
+     */
+    private void invalidateChangedAcls()
+    {
+        accessCacheIndex.invalidateAcls(accessCache, aclDaoComponent.getAclsChangedInCurrentTransaction());
     }
 
     @Override
@@ -382,7 +404,14 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     
     public void init()
     {
-        policyComponent.bindClassBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "onMoveNode"), ContentModel.TYPE_BASE, new JavaBehaviour(this, "onMoveNode"));
+        aclDaoComponent.registerAclChangeSetListener(new AclChangeSetListener()
+        {
+            @Override
+            public void beforeAclChangeSetCommit(Long aclChangeSetId, Set<Long> aclIds)
+            {
+                accessCacheIndex.invalidateAcls(accessCache, aclIds);
+            }
+        });
         
         policyComponent.bindClassBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "onCreateChildAssociation"), ContentModel.TYPE_AUTHORITY_CONTAINER, new JavaBehaviour(this, "onCreateChildAssociation"));
         policyComponent.bindClassBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "beforeDeleteChildAssociation"), ContentModel.TYPE_AUTHORITY_CONTAINER, new JavaBehaviour(this, "beforeDeleteChildAssociation"));
@@ -599,10 +628,11 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         available.add(getAllPermissionReference());
         available.add(OLD_ALL_PERMISSIONS_REFERENCE);
 
-        final Serializable key = generateKey(authorisations, nodeRef, perm, CacheType.HAS_PERMISSION);
+        // The ACL properties were read above, so are not looked up again for the key
+        final Serializable key = generateKey(authorisations, nodeRef, perm, CacheType.HAS_PERMISSION, properties);
         if (!(available.contains(perm)))
         {
-            accessCache.put(key, AccessStatus.DENIED);
+            cacheAccessStatus(key, AccessStatus.DENIED);
             return AccessStatus.DENIED;
         }
 
@@ -617,7 +647,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             public AccessStatus doWork() throws Exception
             {
 
-                AccessStatus status = accessCache.get(key);
+                AccessStatus status = key == null ? null : accessCache.get(key);
                 if (status != null)
                 {
                     return status;
@@ -644,7 +674,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                 }
 
                 status = result ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-                accessCache.put(key, status);
+                cacheAccessStatus(key, status);
                 return status;
             }
         }, AuthenticationUtil.getSystemUserName());
@@ -800,10 +830,31 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     /**
      * Key for a cache object is built from all the known Authorities (which can change dynamically so they must all be
      * used) the NodeRef ID and the permission reference itself. This gives a unique key for each permission test.
+     * <p>
+     * Nodes without an ACL, or with an OLD ACL, are evaluated against the ACLs of their ancestors too, which the key
+     * does not track, so no key is generated for them and their results are not cached.
+     * 
+     * @return the key, or <tt>null</tt> if the result must not be cached
      */
     Serializable generateKey(Set<String> auths, NodeRef nodeRef, PermissionReference perm, CacheType type)
     {
-        LinkedHashSet<Serializable> key = new LinkedHashSet<Serializable>();
+        return generateKey(auths, nodeRef, perm, type, permissionsDaoComponent.getAccessControlListProperties(nodeRef));
+    }
+
+    /**
+     * As {@link #generateKey(Set, NodeRef, PermissionReference, CacheType)}, for a caller that has already read
+     * the ACL properties of the node.
+     * 
+     * @param aclProperties the ACL properties of the node, which may be <tt>null</tt>
+     * @return the key, or <tt>null</tt> if the result must not be cached
+     */
+    Serializable generateKey(Set<String> auths, NodeRef nodeRef, PermissionReference perm, CacheType type, AccessControlListProperties aclProperties)
+    {
+        if (aclProperties == null || aclProperties.getAclType() == ACLType.OLD)
+        {
+            return null;
+        }
+        AccessCacheKey key = new AccessCacheKey(aclProperties.getId());
         key.add(perm.toString());
         // We will just have to key our dynamic sets by username. We wrap it so as not to be confused with a static set
         if (auths instanceof AuthorityServiceImpl.UserAuthoritySet)
@@ -818,9 +869,42 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         // Ensure some concept of node version or transaction is included in the key so we can track without cache replication 
         NodeRef.Status nodeStatus = nodeService.getNodeStatus(nodeRef);
         key.add(nodeStatus == null ? "null" : nodeStatus.getChangeTxnId());
+        // Likewise for the ACL: a change to it in a later change set gives a new key, even on other cluster members.
+        // Changes within the current change set are evicted through the index.
+        key.add(new Pair<Long, Long>(aclProperties.getId(), aclProperties.getAclChangeSetId()));
         key.add(type);
         return key;
     }
+    
+    /**
+     * Cache an access status, indexing it by the ACL it was evaluated against
+     * 
+     * @param key       the key from {@link #generateKey}, or <tt>null</tt> if the status must not be cached
+     */
+    void cacheAccessStatus(Serializable key, AccessStatus status)
+    {
+        if (key instanceof AccessCacheKey)
+        {
+            // Index first, as indexing may clear the cache
+            accessCacheIndex.index(accessCache, key, ((AccessCacheKey) key).aclId);
+            accessCache.put(key, status);
+        }
+    }
+    
+    /**
+     * An access cache key that remembers, in this JVM only, the ACL it was evaluated against
+     */
+    static final class AccessCacheKey extends LinkedHashSet<Serializable>
+    {
+        private static final long serialVersionUID = -2468063127596484226L;
+        
+        private final transient Long aclId;
+        
+        AccessCacheKey(Long aclId)
+        {
+            this.aclId = aclId;
+        }
+    }
 
     /**
      * Get the core authorisations for this {@code auth}. If {@code null} this
@@ -936,7 +1020,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(StoreRef storeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(storeRef, authority);
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
     }
 
     @Override
@@ -949,7 +1033,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(StoreRef storeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(storeRef, authority, perm);
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
     }
 
     @Override
@@ -957,7 +1041,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(StoreRef storeRef)
     {
         permissionsDaoComponent.deletePermissions(storeRef);
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
     }
 
     @Override
@@ -970,7 +1054,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void setPermission(StoreRef storeRef, String authority, PermissionReference permission, boolean allow)
     {
         permissionsDaoComponent.setPermission(storeRef, authority, permission, allow);
-        accessCache.clear();
+        accessCacheIndex.invalidateAll(accessCache);
     }
 
     @Override
@@ -978,7 +1062,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodeRef nodeRef)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef));
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     @Override
@@ -986,7 +1070,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(NodePermissionEntry nodePermissionEntry)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodePermissionEntry.getNodeRef()));
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     /**
@@ -1005,7 +1089,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected void deletePermission(NodeRef nodeRef, String authority, PermissionReference perm)
     {
         permissionsDaoComponent.deletePermission(tenantService.getName(nodeRef), authority, perm);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     @Override
@@ -1013,13 +1097,13 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void clearPermission(NodeRef nodeRef, String authority)
     {
         permissionsDaoComponent.deletePermissions(tenantService.getName(nodeRef), authority);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     protected void setPermission(NodeRef nodeRef, String authority, PermissionReference perm, boolean allow)
     {
         permissionsDaoComponent.setPermission(tenantService.getName(nodeRef), authority, perm, allow);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     @Override
@@ -1028,7 +1112,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef - currently only used by tests
         permissionsDaoComponent.setPermission(permissionEntry);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     @Override
@@ -1037,7 +1121,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         // TODO - not MT-enabled nodeRef- currently only used by tests
         permissionsDaoComponent.setPermission(nodePermissionEntry);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     @Override
@@ -1046,7 +1130,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         NodeRef actualRef = tenantService.getName(nodeRef);
         permissionsDaoComponent.setInheritParentPermissions(actualRef, inheritParentPermissions);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
     
     @Override
@@ -1072,8 +1156,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             //regular method call
             permissionsDaoComponent.setInheritParentPermissions(actualRef, inheritParentPermissions);
         }
-        
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     /**
@@ -1161,7 +1244,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void deletePermissions(String recipient)
     {
         permissionsDaoComponent.deletePermissions(recipient);
-        accessCache.clear();
+        invalidateChangedAcls();
     }
 
     /**
@@ -1343,7 +1426,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             return Collections.emptySet();
         }
-        Set<String> denied = readersDeniedCache.get(aclId);
+        Set<String> denied = readersDeniedCache.get((Serializable)acl.getProperties());
         if (denied != null)
         {
             return denied;
@@ -1630,7 +1713,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
             Serializable key = generateKey(authorisations, nodeRef, this.required, CacheType.SINGLE_PERMISSION_GLOBAL);
 
-            AccessStatus status = accessCache.get(key);
+            AccessStatus status = key == null ? null : accessCache.get(key);
             if (status != null)
             {
                 return status == AccessStatus.ALLOWED;
@@ -1640,7 +1723,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
             if (checkGlobalPermissions(authorisations))
             {
-                accessCache.put(key, AccessStatus.ALLOWED);
+                cacheAccessStatus(key, AccessStatus.ALLOWED);
                 return true;
             }
 
@@ -1685,7 +1768,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             {
                 if (key != null)
                 {
-                    accessCache.put(key, AccessStatus.ALLOWED);
+                    cacheAccessStatus(key, AccessStatus.ALLOWED);
                 }
                 return true;
             }
@@ -1704,7 +1787,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                     {
                         if (key != null)
                         {
-                            accessCache.put(key, AccessStatus.ALLOWED);
+                            cacheAccessStatus(key, AccessStatus.ALLOWED);
                         }
                         return true;
                     }
@@ -1712,7 +1795,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                     {
                         if (key != null)
                         {
-                            accessCache.put(key, AccessStatus.DENIED);
+                            cacheAccessStatus(key, AccessStatus.DENIED);
                         }
                         return false;
                     }
@@ -1721,7 +1804,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                 {
                     if (key != null)
                     {
-                        accessCache.put(key, AccessStatus.DENIED);
+                        cacheAccessStatus(key, AccessStatus.DENIED);
                     }
                     return false;
                 }
@@ -1730,7 +1813,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             {
                 if (key != null)
                 {
-                    accessCache.put(key, AccessStatus.DENIED);
+                    cacheAccessStatus(key, AccessStatus.DENIED);
                 }
                 return false;
             }
@@ -75,6 +75,7 @@ import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
+import org.springframework.dao.ConcurrencyFailureException;
 
 import com.sun.xml.txw2.NamespaceResolver;
 
@@ -664,13 +665,19 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
 
     protected Map<QName, Serializable> getProperties(Long nodeId)
     {
-        Map<QName, Serializable> props = null;
-
         // ALF-10641
         // Residual properties are un-indexed -> break serlialisation
         nodeDAO.setCheckNodeConsistency();
         Map<QName, Serializable> sourceProps = nodeDAO.getNodeProperties(nodeId);
-        props = new HashMap<QName, Serializable>((int)(sourceProps.size() * 1.3));
+        return filterProperties(sourceProps);
+    }
+
+    /**
+     * Drop the residual properties i.e. those not defined in the dictionary
+     */
+    private Map<QName, Serializable> filterProperties(Map<QName, Serializable> sourceProps)
+    {
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>((int)(sourceProps.size() * 1.3));
         for(QName propertyQName : sourceProps.keySet())
         {
             PropertyDefinition propDef = dictionaryService.getProperty(propertyQName);
@@ -770,6 +777,37 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         
         List<Long> nodeIds = preCacheNodes(nodeMetaDataParameters);
 
+        // Bulk load the aspects and properties of the live nodes; anything missing is fetched node by node
+        Map<Long, Set<QName>> aspectsByNodeId = Collections.emptyMap();
+        Map<Long, Map<QName, Serializable>> propsByNodeId = Collections.emptyMap();
+        List<Long> liveNodeIds = new ArrayList<Long>(nodeIds.size());
+        for(Long nodeId : nodeIds)
+        {
+            Status status = nodeDAO.getNodeIdStatus(nodeId);
+            if (status != null && !status.isDeleted())
+            {
+                liveNodeIds.add(nodeId);
+            }
+        }
+        if (!liveNodeIds.isEmpty())
+        {
+            try
+            {
+                aspectsByNodeId = nodeDAO.getNodeAspects(liveNodeIds);
+                if (includeProperties)
+                {
+                    nodeDAO.setCheckNodeConsistency();
+                    propsByNodeId = nodeDAO.getNodeProperties(liveNodeIds);
+                }
+            }
+            catch (ConcurrencyFailureException e)
+            {
+                // A node changed underneath us; the per-node lookups will report it
+                aspectsByNodeId = Collections.emptyMap();
+                propsByNodeId = Collections.emptyMap();
+            }
+        }
+
         for(Long nodeId : nodeIds)
         {
             Status status = nodeDAO.getNodeIdStatus(nodeId);
@@ -823,7 +861,8 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
             {
                 if(props == null)
                 {
-                    props = getProperties(nodeId);
+                    Map<QName, Serializable> sourceProps = propsByNodeId.get(nodeId);
+                    props = (sourceProps == null) ? getProperties(nodeId) : filterProperties(sourceProps);
                 }
                 nodeMetaData.setProperties(props);
             }
@@ -832,13 +871,15 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                 nodeMetaData.setProperties(Collections.<QName, Serializable>emptyMap());
             }
 
+            Set<QName> sourceAspects = aspectsByNodeId.get(nodeId);
+            Set<QName> nodeAspects = (sourceAspects == null) ? getNodeAspects(nodeId) : filterAspects(sourceAspects);
             if(includeAspects || includePaths || includeParentAssociations)
             {
-                aspects = getNodeAspects(nodeId);
+                aspects = nodeAspects;
             }
             nodeMetaData.setAspects(aspects);
 
-            boolean ignoreLargeMetadata = (typeIndexFilter.shouldBeIgnored(getNodeType(nodeId)) || aspectIndexFilter.shouldBeIgnored(getNodeAspects(nodeId)));
+            boolean ignoreLargeMetadata = (typeIndexFilter.shouldBeIgnored(getNodeType(nodeId)) || aspectIndexFilter.shouldBeIgnored(nodeAspects));
             if (!ignoreLargeMetadata && (typeIndexFilter.isIgnorePathsForSpecificTypes() || aspectIndexFilter.isIgnorePathsForSpecificAspects()))
             {
                 // check if parent should be ignored
@@ -1132,12 +1173,20 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
 
     private Set<QName> getNodeAspects(Long nodeId)
     {
-        Set<QName> aspects = new HashSet<QName>();
         if (null == nodeId)
         {
-            return aspects;
+            return new HashSet<QName>();
         }
         Set<QName> sourceAspects = nodeDAO.getNodeAspects(nodeId);
+        return filterAspects(sourceAspects);
+    }
+
+    /**
+     * Drop the aspects that are not defined in the dictionary
+     */
+    private Set<QName> filterAspects(Set<QName> sourceAspects)
+    {
+        Set<QName> aspects = new HashSet<QName>();
         for(QName aspectQName : sourceAspects)
         {
             AspectDefinition aspect = dictionaryService.getAspect(aspectQName);
@@ -39,6 +39,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -300,8 +301,9 @@ public class TaggingServiceImpl implements TaggingService,
                 }
             }
             
-            // Find the parent tag scopes and update them
-            updateTagScope(parentNodeRef, tagUpdates);
+            // Find the parent tag scopes now, while the node is still in place,
+            //  and queue their updates to be written with the transaction
+            queueTagScopeChanges(parentNodeRef, tagUpdates);
         }
     }
     
@@ -1376,17 +1378,20 @@ public class TaggingServiceImpl implements TaggingService,
     
     public static final String TAG_UPDATES = "tagUpdates"; 
     
+    /** Transaction resource holding the tag count changes per tag scope */
+    public static final String TAG_SCOPE_UPDATES = "tagScopeUpdates"; 
+    
     /**
-     * Triggers an async update of all the relevant tag scopes when a tag is 
-     *  added or removed from a node.
-     * Uses the audit service as a persisted queue to hold the list of changes,
-     *  and triggers an sync action to work on the entries in the queue for us.
-     *  This should avoid contention problems and race conditions.
+     * Adds the tag changes of a node to the pending changes of all the tag scopes
+     *  above it.  The changes of all nodes in the transaction are summed up per
+     *  tag scope, and written by {@link #updateTagScopes(Map)} when the transaction
+     *  commits.
      * 
      * @param nodeRef       node reference
      * @param updates Map<String, Boolean>
      */
-    private void updateTagScope(NodeRef nodeRef, Map<String, Boolean> updates)
+    @SuppressWarnings("unchecked")
+    private void queueTagScopeChanges(NodeRef nodeRef, Map<String, Boolean> updates)
     {
        // First up, locate all the tag scopes for this node
        // (Need to do a recursive search up to the root)
@@ -1402,28 +1407,71 @@ public class TaggingServiceImpl implements TaggingService,
           return;
        }
        
-       // Turn from tag+yes/no into tag+1/-1
-       // (Later we may roll things up better to be tag+#/-#)
-       HashMap<String,Integer> changes = new HashMap<String, Integer>(updates.size());
-       for(String tag : updates.keySet())
+       Map<NodeRef, HashMap<String, Integer>> scopeChanges = (Map<NodeRef, HashMap<String, Integer>>)AlfrescoTransactionSupport.getResource(TAG_SCOPE_UPDATES);
+       if (scopeChanges == null)
        {
-          int val = -1;
-          if(updates.get(tag))
-             val = 1;
-          changes.put(tag, val);
+           scopeChanges = new LinkedHashMap<NodeRef, HashMap<String, Integer>>(10);
+           AlfrescoTransactionSupport.bindResource(TAG_SCOPE_UPDATES, scopeChanges);
+           AlfrescoTransactionSupport.bindListener(this);
        }
        
-       // Next, queue the updates for each tag scope
+       // Turn from tag+yes/no into tag+#/-#, summed over the transaction
        for(NodeRef tagScopeNode : tagScopeNodeRefs)
        {
+          HashMap<String, Integer> changes = scopeChanges.get(tagScopeNode);
+          if (changes == null)
+          {
+             changes = new HashMap<String, Integer>(updates.size());
+             scopeChanges.put(tagScopeNode, changes);
+          }
+          for(String tag : updates.keySet())
+          {
+             Integer count = changes.get(tag);
+             int val = (count == null ? 0 : count) + (updates.get(tag) ? 1 : -1);
+             if (val == 0)
+             {
+                changes.remove(tag);
+             }
+             else
+             {
+                changes.put(tag, val);
+             }
+          }
+       }
+    }
+    
+    /**
+     * Triggers an async update of the given tag scopes.
+     * Uses the audit service as a persisted queue to hold the list of changes,
+     *  with a single entry for each tag scope holding the net change of every
+     *  tag, and triggers an async action to work on the entries in the queue for us.
+     *  This should avoid contention problems and race conditions.
+     * 
+     * @param scopeChanges  the tag count changes, by tag scope
+     */
+    private void updateTagScopes(Map<NodeRef, HashMap<String, Integer>> scopeChanges)
+    {
+       ArrayList<NodeRef> tagScopeNodeRefs = new ArrayList<NodeRef>(scopeChanges.size());
+       for(Map.Entry<NodeRef, HashMap<String, Integer>> entry : scopeChanges.entrySet())
+       {
+          if(entry.getValue().isEmpty())
+          {
+             // The changes cancelled each other out
+             continue;
+          }
           Map<String,Serializable> auditValues = new HashMap<String, Serializable>();
-          auditValues.put(TAGGING_AUDIT_KEY_TAGS, changes);
-          auditValues.put(TAGGING_AUDIT_KEY_NODEREF, tagScopeNode.toString());
+          auditValues.put(TAGGING_AUDIT_KEY_TAGS, entry.getValue());
+          auditValues.put(TAGGING_AUDIT_KEY_NODEREF, entry.getKey().toString());
           auditComponent.recordAuditValues(TAGGING_AUDIT_ROOT_PATH, auditValues);
+          tagScopeNodeRefs.add(entry.getKey());
+       }
+       if(tagScopeNodeRefs.size() == 0)
+       {
+          return;
        }
        if(logger.isDebugEnabled())
        {
-          logger.debug("Queueing async tag scope updates to tag scopes " + tagScopeNodeRefs + " of " + changes);
+          logger.debug("Queueing async tag scope updates to tag scopes " + scopeChanges);
        }
        
        // Finally, trigger the action to process the updates
@@ -1436,8 +1484,8 @@ public class TaggingServiceImpl implements TaggingService,
     /**
      * Records the fact that the given tag for the given node will need to
      *  be added or removed from its parent tags scopes.
-     * {@link #updateTagScope(NodeRef, Map)} will schedule the update
-     *  to occur, and an async action will do it. 
+     * {@link #queueTagScopeChanges(NodeRef, Map)} will collect the changes
+     *  of the tag scopes on commit, and an async action will apply them. 
      */
     @SuppressWarnings("unchecked")
     private void queueTagUpdate(NodeRef nodeRef, String tag, boolean add)
@@ -1515,10 +1563,17 @@ public class TaggingServiceImpl implements TaggingService,
                     {
                         continue;
                     }
-                    updateTagScope(nodeRef, tagUpdates);
+                    queueTagScopeChanges(nodeRef, tagUpdates);
                 }
             }
         }
+        
+        Map<NodeRef, HashMap<String, Integer>> scopeChanges = (Map<NodeRef, HashMap<String, Integer>>)AlfrescoTransactionSupport.getResource(TAG_SCOPE_UPDATES);
+        if (scopeChanges != null)
+        {
+            updateTagScopes(scopeChanges);
+            scopeChanges.clear();
+        }
     }
 
     /**
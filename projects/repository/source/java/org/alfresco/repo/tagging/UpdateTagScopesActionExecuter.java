@@ -33,6 +33,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ParameterDefinitionImpl;
@@ -99,7 +100,10 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
     public static final String PARAM_TAG_SCOPES = "tag_scopes";
     
     /** What's the largest number of updates we should claim for a tag scope in one transaction? */
-    private static final int tagUpdateBatchSize = 100;
+    private int tagUpdateBatchSize = 1000;
+    
+    /** How long (ms) to hold a locked tag scope before applying its updates, so that later transactions join in */
+    private long coalesceWindow = 0L;
     
     /** How long to lock a tag scope for */
     private static final int tagScopeLockTime = 2500;
@@ -112,6 +116,10 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
        TaggingServiceImpl.TAGGING_AUDIT_ROOT_PATH + "/" +
        TaggingServiceImpl.TAGGING_AUDIT_KEY_TAGS + "/value";
    
+    /** Statistics on the updates applied so far */
+    private final AtomicLong updatesApplied = new AtomicLong();
+    private final AtomicLong tagScopesWritten = new AtomicLong();
+   
 
     /**
      * Set the node service
@@ -183,6 +191,47 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
         this.behaviourFilter = behaviourFilter;
     }
     
+    /**
+     * Set the number of queued updates that are merged together and applied
+     *  to a tag scope with a single write of its tag cache
+     * 
+     * @param tagUpdateBatchSize    the number of updates per write (default 1000)
+     */
+    public void setTagUpdateBatchSize(int tagUpdateBatchSize)
+    {
+        this.tagUpdateBatchSize = tagUpdateBatchSize;
+    }
+    
+    /**
+     * Set how long a tag scope is held, once locked, before its queued updates
+     *  are applied.  Transactions that commit changes to the tag scope in the
+     *  meantime find it locked and leave their updates in the queue, so that they
+     *  are merged into the same write of the tag cache.
+     * 
+     * @param coalesceWindow    the time to wait in milliseconds, or 0 to apply
+     *                          updates straight away (default 0)
+     */
+    public void setCoalesceWindow(long coalesceWindow)
+    {
+        this.coalesceWindow = coalesceWindow;
+    }
+    
+    /**
+     * @return the number of queued updates that have been applied to tag scopes
+     */
+    public long getUpdatesApplied()
+    {
+        return updatesApplied.get();
+    }
+    
+    /**
+     * @return the number of times that a tag scope cache has been rewritten
+     */
+    public long getTagScopesWritten()
+    {
+        return tagScopesWritten.get();
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -199,6 +248,9 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
                logger.debug("About to process tag scope updates for scopes " + tagScopeNodes);
             }
             
+            // Updates committed until the end of the window are applied together
+            final long windowEnd = System.currentTimeMillis() + coalesceWindow;
+            
             // Process each tag scope in turn
             for(NodeRef tmpTagScope : tagScopeNodes)
             {
@@ -209,7 +261,7 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
                //  to worry as they'll handle the update for us!
                try 
                {
-                  String lock = lockTagScope(tagScope);
+                  final String lock = lockTagScope(tagScope);
                   
                   // If we got here, we're the only thread currently
                   //  processing this tag scope
@@ -218,6 +270,9 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
                      logger.debug("Locked tag scope " + tagScope + " for updates");
                   }
                   
+                  // Let other transactions queue their updates behind ours
+                  waitForCoalesceWindow(tagScope, lock, windowEnd);
+                  
                   // Grab all the pending work in chunks, and process
                   AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Void>()
                      {
@@ -226,6 +281,11 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
                            final MutableInt updatesRemain = new MutableInt(1);
                            while(updatesRemain.intValue() > 0)
                            {
+                              // Keep hold of the tag scope while the backlog is worked through
+                              if(updatesRemain.intValue() > 1)
+                              {
+                                 updateTagScopeLock(tagScope, lock);
+                              }
                               transactionService.getRetryingTransactionHelper().doInTransaction(
                                     new RetryingTransactionCallback<Void>() {
                                        public Void execute() throws Throwable {
@@ -263,6 +323,7 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
                                           
                                           // Mark these entries as finished with
                                           markUpdatesPerformed(entryIds);
+                                          updatesApplied.addAndGet(entryIds.size());
                                           
                                           // Done for now
                                           return null;
@@ -296,6 +357,31 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
         }
     }
     
+    /**
+     * Holds the given locked tag scope until the coalescing window has
+     *  passed, refreshing the lock as needed.  The window is shared by all
+     *  the tag scopes of the action, so only the first one waits for long.
+     */
+    private void waitForCoalesceWindow(NodeRef tagScope, String lock, long windowEnd)
+    {
+       long remaining = windowEnd - System.currentTimeMillis();
+       while(remaining > 0)
+       {
+          try
+          {
+             Thread.sleep(Math.min(remaining, tagScopeLockTime / 2));
+          }
+          catch(InterruptedException e)
+          {
+             // Stop waiting and apply what has been queued so far
+             Thread.currentThread().interrupt();
+             return;
+          }
+          updateTagScopeLock(tagScope, lock);
+          remaining = windowEnd - System.currentTimeMillis();
+       }
+    }
+    
     /**
      * For the given tag scope node, which should have been locked,
      *  ask the Audit Service for work that needs to be done on it.
@@ -469,6 +555,7 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
               contentWriter.setEncoding("UTF-8");
               contentWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
               contentWriter.putContent(tagContent);
+              tagScopesWritten.incrementAndGet();
 
               // Log this if required
               if(logger.isDebugEnabled())
@@ -556,6 +643,50 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
        return tagNodes;
     }
     
+    /**
+     * Counts the tag scope updates that are queued in the Audit event
+     *  log and have yet to be applied, stopping once the given number
+     *  has been found.
+     * 
+     * @param maxCount      the maximum number of entries to count
+     * @return the number of pending updates, up to <tt>maxCount</tt>
+     */
+    public int getPendingUpdateCount(final int maxCount)
+    {
+       final AuditQueryParameters params = new AuditQueryParameters();
+       params.setApplicationName(TaggingServiceImpl.TAGGING_AUDIT_APPLICATION_NAME);
+       
+       final MutableInt count = new MutableInt(0);
+       transactionService.getRetryingTransactionHelper().doInTransaction(
+         new RetryingTransactionCallback<Void>() {
+           public Void execute() throws Throwable {
+             auditService.auditQuery(new AuditQueryCallback() {
+                @Override
+                public boolean valuesRequired() {
+                   return false;
+                }
+              
+                @Override
+                public boolean handleAuditEntryError(Long entryId, String errorMsg,
+                    Throwable error) {
+                   count.increment();
+                   return true;
+                }
+              
+                @Override
+                public boolean handleAuditEntry(Long entryId, String applicationName,
+                    String user, long time, Map<String, Serializable> values) {
+                   count.increment();
+                   return true;
+                }
+             }, params, maxCount);
+             return null;
+           }
+         }, true, true
+       );
+       return count.intValue();
+    }
+    
     private QName tagScopeToLockQName(NodeRef tagScope)
     {
        QName lockQName = QName.createQName("TagScope_" + tagScope.toString());
@@ -52,6 +52,9 @@ import org.quartz.JobExecutionException;
 public class UpdateTagScopesQuartzJob implements Job {
    private static Log logger = LogFactory.getLog(UpdateTagScopesQuartzJob.class);
    
+   /** The most pending updates to count when reporting on the backlog */
+   private static final int MAX_PENDING_COUNT = 10000;
+   
    public UpdateTagScopesQuartzJob() {}
 
    /**
@@ -85,7 +88,7 @@ public class UpdateTagScopesQuartzJob implements Job {
        
        ActionService actionService = (ActionService)actionServiceO;
        TransactionService transactionService = (TransactionService)transactionServiceO;
-       UpdateTagScopesActionExecuter updateTagsAction = (UpdateTagScopesActionExecuter)updateTagsActionO;
+       final UpdateTagScopesActionExecuter updateTagsAction = (UpdateTagScopesActionExecuter)updateTagsActionO;
        
        // We need to write to the database to perform updates.
        // If the system is in read only mode, bail out
@@ -95,8 +98,28 @@ public class UpdateTagScopesQuartzJob implements Job {
     	   return;
        }
        
+       // Report on the size of the backlog, if required
+       if(logger.isDebugEnabled())
+       {
+          int pending = AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Integer>()
+             {
+                public Integer doWork() throws Exception
+                {
+                   return updateTagsAction.getPendingUpdateCount(MAX_PENDING_COUNT);
+                }
+             }, AuthenticationUtil.getSystemUserName()
+          );
+          logger.debug("Found " + (pending < MAX_PENDING_COUNT ? "" : "at least ") + pending + " pending tag scope updates");
+       }
+       
        // Do the work
        execute(actionService, updateTagsAction);
+       
+       if(logger.isDebugEnabled())
+       {
+          logger.debug("Tag scope updates applied: " + updateTagsAction.getUpdatesApplied() +
+                ", tag scope caches written: " + updateTagsAction.getTagScopesWritten());
+       }
    }
 
    protected void execute(final ActionService actionService, final UpdateTagScopesActionExecuter updateTagsAction)
@@ -54,6 +54,8 @@ public class DownloadStatus implements Serializable
 	private long filesAddedCount;
 	private long totalFileCount;
 
+	private long bytesPerSecond;
+
 	private Status status;
 	
 	/**
@@ -65,12 +67,27 @@ public class DownloadStatus implements Serializable
 	 * @param totalFiles The number of files that will eventually be added to the archive 
 	 */
 	public DownloadStatus(Status status, long done, long total, long filesAdded, long totalFiles)
+    {
+	    this(status, done, total, filesAdded, totalFiles, 0L);
+    }
+
+	/**
+	 * @param status Current status of the download
+	 * @param done Done count
+	 * @param total Total to be de done
+	 * @param filesAdded Number of files added to the archive
+	 * @param totalFiles The number of files that will eventually be added to the archive
+	 * @param bytesPerSecond The rate at which content has been added to the archive
+	 * @since 5.2
+	 */
+	public DownloadStatus(Status status, long done, long total, long filesAdded, long totalFiles, long bytesPerSecond)
     {
 	    this.status = status;
 	    this.done = done;
 	    this.total = total;
 	    this.filesAddedCount = filesAdded;
 	    this.totalFileCount = totalFiles;
+	    this.bytesPerSecond = bytesPerSecond;
     }
 
 	/**
@@ -128,5 +145,14 @@ public class DownloadStatus implements Serializable
     {
         return filesAddedCount;
     }
+
+    /**
+     * @return the average number of bytes of content added to the archive per second, or 0 if not known.
+     * @since 5.2
+     */
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
 	
 }
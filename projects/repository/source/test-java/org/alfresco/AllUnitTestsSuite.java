@@ -53,12 +53,16 @@ public class AllUnitTestsSuite extends TestSuite
         suite.addTest(new JUnit4TestAdapter(org.alfresco.filesys.config.ServerConfigurationBeanTest.class));
         suite.addTestSuite(org.alfresco.filesys.repo.CIFSContentComparatorTest.class);
         suite.addTestSuite(org.alfresco.filesys.repo.rules.ShuffleTest.class);
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.feed.FeedTaskProcessorTest.class));
         suite.addTestSuite(org.alfresco.repo.admin.Log4JHierarchyInitTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.attributes.PropTablesCleanupJobTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.batch.BatchProcessorTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultCacheFactoryTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultSimpleCacheTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.OffHeapSimpleCacheTest.class));
         suite.addTestSuite(org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.calendar.CalendarHelpersTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.content.filestore.DeduplicatingFileContentStoreTest.class));
         suite.addTestSuite(org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class);
         suite.addTestSuite(org.alfresco.repo.forms.processor.node.FieldProcessorTest.class);
         suite.addTestSuite(org.alfresco.repo.forms.processor.workflow.TaskFormProcessorTest.class);
@@ -130,6 +134,7 @@ public class AllUnitTestsSuite extends TestSuite
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.search.impl.solr.SolrStoreMappingWrapperTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.security.authentication.CompositePasswordEncoderTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.security.authentication.PasswordHashingTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.security.permissions.impl.AccessCacheIndexTest.class));
         suite.addTest(org.alfresco.traitextender.TraitExtenderUnitTestSuite.suite());
         suite.addTest(org.alfresco.repo.virtual.VirtualizationUnitTestSuite.suite());
     }
@@ -160,6 +160,7 @@ public class Repository01TestSuite extends TestSuite
     static void tests23(TestSuite suite)
     {
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.download.DownloadServiceIntegrationTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.download.ZipDownloadExporterTest.class));
         suite.addTestSuite(org.alfresco.repo.exporter.ExporterComponentTest.class);
         suite.addTestSuite(org.alfresco.repo.exporter.RepositoryExporterComponentTest.class);
     }
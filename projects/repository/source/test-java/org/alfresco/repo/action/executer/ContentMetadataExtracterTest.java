@@ -51,6 +51,7 @@ import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ActionImpl;
+import org.alfresco.repo.action.executer.ContentMetadataExtracter.ExtractedMetadata;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.metadata.AbstractMappingMetadataExtracter;
 import org.alfresco.repo.content.metadata.MetadataExtracterRegistry;
@@ -312,4 +313,39 @@ public class ContentMetadataExtracterTest extends BaseSpringTest
         // But this one should have been set
         assertEquals(QUICK_DESCRIPTION, this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_DESCRIPTION));
     }
+
+    /**
+     * Metadata extracted in one step and written in another keeps changes made to the
+     * node in between, and is not written if the content has changed
+     */
+    public void testExtractThenApply()
+    {
+        Map<QName, Serializable> props = this.nodeService.getProperties(this.nodeRef);
+        props.remove(ContentModel.PROP_AUTHOR);
+        props.put(ContentModel.PROP_TITLE, "");
+        this.nodeService.setProperties(this.nodeRef, props);
+
+        ExtractedMetadata extracted = executer.extractMetadata(this.nodeRef);
+        assertNotNull(extracted);
+        assertTrue(extracted.getModifiedProperties().containsKey(ContentModel.PROP_TITLE));
+        assertTrue(executer.getStatistics().getCount(MimetypeMap.MIMETYPE_PDF) > 0);
+
+        // Nothing is written until the metadata is applied
+        assertEquals("", this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_TITLE));
+        this.nodeService.setProperty(this.nodeRef, ContentModel.PROP_NAME, "renamed.pdf");
+
+        executer.applyMetadata(extracted);
+        assertEquals(QUICK_TITLE, this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_TITLE));
+        assertEquals(QUICK_CREATOR, this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_AUTHOR));
+        assertEquals("renamed.pdf", this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_NAME));
+
+        // Metadata of content that has since been replaced is discarded
+        this.nodeService.setProperty(this.nodeRef, ContentModel.PROP_TITLE, "");
+        extracted = executer.extractMetadata(this.nodeRef);
+        ContentWriter cw = this.contentService.getWriter(nodeRef, ContentModel.PROP_CONTENT, true);
+        cw.setMimetype(MimetypeMap.MIMETYPE_PDF);
+        cw.putContent(AbstractContentTransformerTest.loadQuickTestFile("pdf"));
+        executer.applyMetadata(extracted);
+        assertEquals("", this.nodeService.getProperty(this.nodeRef, ContentModel.PROP_TITLE));
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.admin.SysAdminParams;
+import org.alfresco.repo.domain.activities.ActivityFeedEntity;
+import org.alfresco.repo.domain.activities.ActivityPostEntity;
+import org.alfresco.repo.domain.activities.FeedControlEntity;
+import org.alfresco.service.cmr.activities.FeedControl;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the batching of feed entries and feed control lookups, and the site members snapshots,
+ * of the {@link FeedTaskProcessor}.
+ *
+ * @since 5.2
+ */
+public class FeedTaskProcessorTest
+{
+    private static final String SITE = "site1";
+
+    private TestFeedTaskProcessor processor;
+    private RepoCtx ctx;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        processor = new TestFeedTaskProcessor();
+        processor.siteMembers.put(SITE, new HashSet<String>(Arrays.asList("usera", "userb", "userc")));
+        ctx = new RepoCtx(mock(SysAdminParams.class), "/service");
+    }
+
+    private ActivityPostEntity createPost(long id, String userId)
+    {
+        ActivityPostEntity post = new ActivityPostEntity();
+        post.setId(id);
+        post.setUserId(userId);
+        post.setSiteNetwork(SITE);
+        post.setActivityType("org.alfresco.documentlibrary.file-added");
+        post.setActivityData("{\"title\":\"document " + id + "\"}");
+        post.setAppTool("documentlibrary");
+        post.setPostDate(new Date());
+        return post;
+    }
+
+    @Test
+    public void feedEntriesOfAPostAreInsertedTogether() throws Exception
+    {
+        processor.posts.add(createPost(1L, "poster"));
+        processor.process(1, 1L, 100L, ctx);
+
+        assertEquals(0, processor.singleInserts);
+        assertEquals(1, processor.inserts.size());
+        Set<String> feedUserIds = new HashSet<String>();
+        for (ActivityFeedEntity feed : processor.inserts.get(0))
+        {
+            feedUserIds.add(feed.getFeedUserId());
+            assertEquals(SITE, feed.getSiteNetwork());
+            assertEquals(1L, feed.getPostId());
+        }
+        // The site members, the site feed and the poster
+        assertEquals(5, processor.inserts.get(0).size());
+        assertTrue(feedUserIds.containsAll(Arrays.asList("usera", "userb", "userc", "poster")));
+        assertEquals(ActivityPostEntity.STATUS.PROCESSED, processor.statuses.get(1L));
+        assertEquals(5L, processor.getFeedEntriesGenerated());
+        assertEquals(1L, processor.getPostsProcessed());
+    }
+
+    @Test
+    public void feedControlsAreSelectedOncePerUserAndRun() throws Exception
+    {
+        processor.feedControls.add(new FeedControlEntity("userb", new FeedControl(SITE, null)));
+        processor.posts.add(createPost(1L, "poster"));
+        processor.posts.add(createPost(2L, "poster"));
+        processor.posts.add(createPost(3L, "other"));
+        processor.process(1, 1L, 100L, ctx);
+
+        // The second post has no new recipients, the third only its poster
+        assertEquals(2, processor.feedControlSelects.size());
+        assertEquals(new HashSet<String>(Arrays.asList("usera", "userb", "userc", "poster")), new HashSet<String>(processor.feedControlSelects.get(0)));
+        assertEquals(Collections.singleton("other"), new HashSet<String>(processor.feedControlSelects.get(1)));
+        assertEquals(2L, processor.getFeedControlsLoads());
+
+        // userb has opted out of the site
+        assertEquals(3, processor.inserts.size());
+        for (List<ActivityFeedEntity> feeds : processor.inserts)
+        {
+            assertEquals(4, feeds.size());
+            for (ActivityFeedEntity feed : feeds)
+            {
+                assertTrue(!"userb".equals(feed.getFeedUserId()));
+            }
+        }
+    }
+
+    @Test
+    public void siteMembersAreFetchedOncePerRunByDefault() throws Exception
+    {
+        processor.posts.add(createPost(1L, "poster"));
+        processor.posts.add(createPost(2L, "poster"));
+        processor.process(1, 1L, 100L, ctx);
+        assertEquals(1, processor.siteMembersFetches);
+
+        // A new member is seen by the next run
+        processor.siteMembers.get(SITE).add("userd");
+        processor.process(1, 1L, 100L, ctx);
+        assertEquals(2, processor.siteMembersFetches);
+        assertEquals(0L, processor.getSiteMembersSnapshotHits());
+        List<ActivityFeedEntity> lastFeeds = processor.inserts.get(processor.inserts.size() - 1);
+        assertEquals(6, lastFeeds.size());
+    }
+
+    @Test
+    public void siteMembersSnapshotIsSharedByRuns() throws Exception
+    {
+        processor.setSiteMembersSnapshotMillis(60000L);
+        processor.posts.add(createPost(1L, "poster"));
+        processor.process(1, 1L, 100L, ctx);
+        processor.process(1, 1L, 100L, ctx);
+
+        assertEquals(1, processor.siteMembersFetches);
+        assertEquals(1L, processor.getSiteMembersLoads());
+        assertEquals(1L, processor.getSiteMembersSnapshotHits());
+    }
+
+    /**
+     * Records the calls made by the {@link FeedTaskProcessor} in place of the database and repository
+     */
+    private static class TestFeedTaskProcessor extends FeedTaskProcessor
+    {
+        private final List<ActivityPostEntity> posts = new ArrayList<ActivityPostEntity>();
+        private final Map<String, Set<String>> siteMembers = new HashMap<String, Set<String>>();
+        private final List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        private final List<Collection<String>> feedControlSelects = new ArrayList<Collection<String>>();
+        private final List<List<ActivityFeedEntity>> inserts = new ArrayList<List<ActivityFeedEntity>>();
+        private final Map<Long, ActivityPostEntity.STATUS> statuses = new HashMap<Long, ActivityPostEntity.STATUS>();
+        private int singleInserts;
+        private int siteMembersFetches;
+
+        @Override
+        public void startTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void endTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public List<ActivityPostEntity> selectPosts(ActivityPostEntity selector) throws SQLException
+        {
+            return posts;
+        }
+
+        @Override
+        public List<FeedControlEntity> selectUserFeedControls(String userId) throws SQLException
+        {
+            return selectUserFeedControls(Collections.singleton(userId));
+        }
+
+        @Override
+        public List<FeedControlEntity> selectUserFeedControls(Collection<String> userIds) throws SQLException
+        {
+            feedControlSelects.add(new ArrayList<String>(userIds));
+            List<FeedControlEntity> selected = new ArrayList<FeedControlEntity>();
+            for (FeedControlEntity feedControl : feedControls)
+            {
+                if (userIds.contains(feedControl.getFeedUserId()))
+                {
+                    selected.add(feedControl);
+                }
+            }
+            return selected;
+        }
+
+        @Override
+        public long insertFeedEntry(ActivityFeedEntity feed) throws SQLException
+        {
+            singleInserts++;
+            return singleInserts;
+        }
+
+        @Override
+        public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+        {
+            inserts.add(new ArrayList<ActivityFeedEntity>(feeds));
+            return feeds.size();
+        }
+
+        @Override
+        public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
+        {
+            statuses.put(id, status);
+            return 1;
+        }
+
+        @Override
+        protected Set<String> getSiteMembers(RepoCtx ctx, String siteId, String tenantDomain) throws Exception
+        {
+            siteMembersFetches++;
+            return new HashSet<String>(siteMembers.get(siteId));
+        }
+
+        @Override
+        protected Set<String> getFollowers(String userId, String tenantDomain) throws Exception
+        {
+            return Collections.emptySet();
+        }
+
+        @Override
+        protected boolean canReadSite(RepoCtx ctx, String siteIdIn, String connectedUser, String tenantDomain) throws Exception
+        {
+            return true;
+        }
+
+        @Override
+        protected boolean canRead(RepoCtx ctx, String connectedUser, Map<String, Object> model) throws Exception
+        {
+            return true;
+        }
+    }
+}
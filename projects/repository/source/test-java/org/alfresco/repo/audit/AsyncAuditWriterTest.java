@@ -0,0 +1,373 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.repo.audit.AsyncAuditWriter.QueuedAuditEntry;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.Transaction;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the {@link AsyncAuditWriter} journal and writer thread against a mock DAO.
+ *
+ * @since 5.2
+ */
+public class AsyncAuditWriterTest
+{
+    private static final long WAIT_MILLIS = 5000L;
+
+    private File journalDir;
+    private AuditDAO auditDAO;
+    private NodeDAO nodeDAO;
+    private TransactionService transactionService;
+    private List<AsyncAuditWriter> writers = new ArrayList<AsyncAuditWriter>();
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        journalDir = new File(TempFileProvider.getTempDir(), "AsyncAuditWriterTest-" + GUID.generate());
+        auditDAO = mock(AuditDAO.class);
+        nodeDAO = mock(NodeDAO.class);
+        transactionService = mock(TransactionService.class);
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (AsyncAuditWriter writer : writers)
+        {
+            writer.shutdown();
+        }
+    }
+
+    private AsyncAuditWriter createWriter()
+    {
+        return createWriter("server1");
+    }
+
+    private AsyncAuditWriter createWriter(String serverName)
+    {
+        AsyncAuditWriter writer = new AsyncAuditWriter();
+        writer.setEnabled(true);
+        writer.setAuditDAO(auditDAO);
+        writer.setNodeDAO(nodeDAO);
+        writer.setTransactionService(transactionService);
+        writer.setJournalDir(journalDir);
+        writer.setServerName(serverName);
+        writer.setSynchronousApplications("Queued App, Other App");
+        writer.setFlushIntervalMillis(10L);
+        writer.setRetryDelayMillis(10L);
+        writer.init();
+        writers.add(writer);
+        return writer;
+    }
+
+    private List<QueuedAuditEntry> entries(long firstSequence, int count)
+    {
+        return entries(firstSequence, count, null);
+    }
+
+    private List<QueuedAuditEntry> entries(long firstSequence, int count, Long txnId)
+    {
+        List<QueuedAuditEntry> entries = new ArrayList<QueuedAuditEntry>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Map<String, Serializable> values = new HashMap<String, Serializable>();
+            values.put("/test/value", "value-" + i);
+            entries.add(new QueuedAuditEntry(firstSequence + i, 1L, 1000L + i, "user-" + i, values, txnId));
+        }
+        return entries;
+    }
+
+    private int countJournalFiles()
+    {
+        String[] names = journalDir.list();
+        return (names == null) ? 0 : names.length;
+    }
+
+    private void waitForJournalFiles(int count) throws InterruptedException
+    {
+        long until = System.currentTimeMillis() + WAIT_MILLIS;
+        while (countJournalFiles() != count && System.currentTimeMillis() < until)
+        {
+            Thread.sleep(10L);
+        }
+        assertEquals(count, countJournalFiles());
+    }
+
+    private void waitForEntriesWritten(AsyncAuditWriter writer, long count) throws InterruptedException
+    {
+        long until = System.currentTimeMillis() + WAIT_MILLIS;
+        while (writer.getEntriesWritten() < count && System.currentTimeMillis() < until)
+        {
+            Thread.sleep(10L);
+        }
+        assertEquals(count, writer.getEntriesWritten());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void committedEntriesAreWritten() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> entries = entries(0L, 3);
+        writer.journal(entries);
+        writer.markCommitted(entries);
+        writer.enqueue(entries);
+
+        verify(auditDAO, timeout(WAIT_MILLIS).times(3)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        verify(auditDAO).createAuditEntry(eq(1L), eq(1001L), eq("user-1"), any(Map.class));
+        waitForEntriesWritten(writer, 3L);
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void writtenJournalFileIsRemovedWhenItIsFull() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        writer.setMaxJournalFileSize(1L);
+        List<QueuedAuditEntry> first = entries(0L, 2);
+        writer.journal(first);
+        writer.journal(entries(2L, 1));
+        assertEquals(2, countJournalFiles());
+
+        writer.markCommitted(first);
+        writer.enqueue(first);
+        waitForJournalFiles(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void committedEntriesAreWrittenAfterRestart() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> entries = entries(0L, 5);
+        writer.journal(entries);
+        writer.markCommitted(entries);
+        writer.shutdown();
+        verify(auditDAO, never()).createAuditEntry(anyLong(), anyLong(), anyString(), any(Map.class));
+
+        AsyncAuditWriter restarted = createWriter();
+        verify(auditDAO, timeout(WAIT_MILLIS).times(5)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        waitForJournalFiles(0);
+        assertEquals(5L, restarted.getEntriesWritten());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void discardedEntriesAreNotWrittenAfterRestart() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> rolledBack = entries(0L, 2);
+        List<QueuedAuditEntry> committed = entries(2L, 1);
+        writer.journal(rolledBack);
+        writer.journal(committed);
+        writer.discard(rolledBack);
+        writer.markCommitted(committed);
+        writer.shutdown();
+
+        createWriter();
+        verify(auditDAO, timeout(WAIT_MILLIS).times(1)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        verify(auditDAO).createAuditEntry(eq(1L), eq(1000L), eq("user-0"), any(Map.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void uncommittedEntriesAreNotWrittenAfterRestart() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> committed = entries(0L, 1);
+        writer.journal(committed);
+        writer.journal(entries(1L, 2));
+        writer.markCommitted(committed);
+        writer.shutdown();
+
+        createWriter();
+        verify(auditDAO, timeout(WAIT_MILLIS).times(1)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        verify(auditDAO).createAuditEntry(eq(1L), eq(1000L), eq("user-0"), any(Map.class));
+        waitForJournalFiles(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void entriesOfTransactionsCommittedBeforeACrashAreWrittenAfterRestart() throws Exception
+    {
+        // Both transactions were committing when the server stopped, before their commit records were journalled
+        when(nodeDAO.getTxnById(10L)).thenReturn(mock(Transaction.class));
+        when(nodeDAO.getTxnById(11L)).thenReturn(null);
+        AsyncAuditWriter writer = createWriter();
+        writer.journal(entries(0L, 2, 10L));
+        writer.journal(entries(2L, 1, 11L));
+        writer.shutdown();
+
+        AsyncAuditWriter restarted = createWriter();
+        verify(auditDAO, timeout(WAIT_MILLIS).times(2)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        verify(auditDAO).createAuditEntry(eq(1L), eq(1000L), eq("user-0"), any(Map.class));
+        verify(auditDAO).createAuditEntry(eq(1L), eq(1001L), eq("user-1"), any(Map.class));
+        waitForJournalFiles(0);
+        assertEquals(2L, restarted.getEntriesWritten());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void journalIsKeptWhenTransactionsCannotBeChecked() throws Exception
+    {
+        when(nodeDAO.getTxnById(10L)).thenThrow(new RuntimeException("Database unavailable"));
+        AsyncAuditWriter writer = createWriter();
+        writer.journal(entries(0L, 1, 10L));
+        writer.shutdown();
+
+        createWriter();
+        Thread.sleep(100L);
+        verify(auditDAO, never()).createAuditEntry(anyLong(), anyLong(), anyString(), any(Map.class));
+        assertEquals(1, countJournalFiles());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void otherServersJournalsAreNotRecovered() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter("server1");
+        List<QueuedAuditEntry> entries = entries(0L, 2);
+        writer.journal(entries);
+        writer.markCommitted(entries);
+        writer.shutdown();
+        assertTrue(journalDir.list()[0].startsWith("audit-server1-"));
+
+        createWriter("server2");
+        Thread.sleep(100L);
+        verify(auditDAO, never()).createAuditEntry(anyLong(), anyLong(), anyString(), any(Map.class));
+        assertEquals(1, countJournalFiles());
+
+        createWriter("server1");
+        verify(auditDAO, timeout(WAIT_MILLIS).times(2)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        waitForJournalFiles(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void partialRecordIsIgnoredAfterRestart() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> entries = entries(0L, 1);
+        writer.journal(entries);
+        writer.markCommitted(entries);
+        writer.shutdown();
+        File[] files = journalDir.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0], true);
+        out.write(new byte[] {1, 0, 0, 0});
+        out.close();
+
+        createWriter();
+        verify(auditDAO, timeout(WAIT_MILLIS).times(1)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        waitForJournalFiles(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void failedEntriesAreRetried() throws Exception
+    {
+        when(auditDAO.createAuditEntry(anyLong(), anyLong(), anyString(), any(Map.class)))
+                .thenThrow(new RuntimeException("Database unavailable"))
+                .thenReturn(1L);
+        AsyncAuditWriter writer = createWriter();
+        List<QueuedAuditEntry> entries = entries(0L, 1);
+        writer.journal(entries);
+        writer.enqueue(entries);
+
+        verify(auditDAO, timeout(WAIT_MILLIS).times(2)).createAuditEntry(eq(1L), anyLong(), anyString(), any(Map.class));
+        waitForEntriesWritten(writer, 1L);
+        assertEquals(1L, writer.getFailedAttempts());
+    }
+
+    @Test
+    public void entriesAreRefusedWhenTheQueueIsFull() throws Exception
+    {
+        AsyncAuditWriter writer = new AsyncAuditWriter();
+        writer.setMaxQueueSize(2);
+        writer.enqueue(entries(0L, 2));
+        assertEquals(true, writer.isBehind());
+        writer.setMaxQueueSize(3);
+        assertEquals(false, writer.isBehind());
+        writer.setMaxLagMillis(0L);
+        assertEquals(true, writer.isBehind());
+    }
+
+    @Test
+    public void synchronousApplicationsAreNotQueued() throws Exception
+    {
+        AsyncAuditWriter writer = createWriter();
+        Map<String, Serializable> values = new HashMap<String, Serializable>();
+        values.put("/test/value", "value");
+        assertFalse(writer.queueAuditEntry("Queued App", 1L, 1000L, "user", values));
+        assertFalse(writer.queueAuditEntry("Other App", 1L, 1000L, "user", values));
+        assertEquals(0L, writer.getSynchronousEntries());
+    }
+}
@@ -52,6 +52,7 @@ public class AuditTestSuite extends TestSuite
         
         suite.addTest(new JUnit4TestAdapter(PropertyAuditFilterTest.class));
         suite.addTest(new JUnit4TestAdapter(AccessAuditorTest.class));
+        suite.addTest(new JUnit4TestAdapter(AsyncAuditWriterTest.class));
                 
         return suite;
     }
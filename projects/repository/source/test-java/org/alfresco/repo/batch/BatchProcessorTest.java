@@ -0,0 +1,320 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.junit.Test;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the splitting of retried batches, the adaptive batch size and the metrics of the {@link BatchProcessor}.
+ * Transactions are simulated, so no repository is needed.
+ *
+ * @since 5.2
+ */
+public class BatchProcessorTest
+{
+    private static final int MAX_ATTEMPTS = 5;
+
+    @Test
+    public void errorsAreCountedAndTheLastErrorKept()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(20, 1, 5);
+        int count = processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry % 7 == 0)
+                {
+                    throw new IllegalStateException("Entry " + entry);
+                }
+            }
+        }, true);
+
+        assertEquals(20, count);
+        assertEquals(3, processor.getTotalErrors());
+        assertEquals(17, processor.getSuccessfullyProcessedEntries());
+        assertEquals("14", processor.getLastErrorEntryId());
+        assertNotNull(processor.getLastError());
+        assertEquals(0, processor.getTotalRetries());
+        assertNotNull(processor.getEndTime());
+    }
+
+    @Test
+    public void retriedBatchIsSplitWhenWorkStealing()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(20, 2, 10);
+        processor.setWorkStealing(true);
+        processor.process(new ConflictingWorker(3), true);
+
+        // The retry keeps entries 0-4 and entries 5-9 become a batch of their own
+        assertEquals(20, processor.getSuccessfullyProcessedEntries());
+        assertEquals(0, processor.getTotalErrors());
+        assertEquals(1, processor.getTotalRetries());
+        assertTotals(processor.getWorkerStatistics(), 3, 20, 1);
+    }
+
+    @Test
+    public void retriedBatchIsNotSplitByDefault()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(20, 2, 10);
+        processor.process(new ConflictingWorker(3), true);
+
+        assertEquals(20, processor.getSuccessfullyProcessedEntries());
+        assertEquals(0, processor.getTotalErrors());
+        assertEquals(1, processor.getTotalRetries());
+        assertTotals(processor.getWorkerStatistics(), 2, 20, 1);
+    }
+
+    @Test
+    public void batchSizeGrowsToTheMaximumWhenBatchesAreQuick()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(100, 1, 8);
+        processor.setAdaptiveBatchSize(true);
+        processor.setMaxBatchSize(16);
+        processor.setTargetBatchTime(60000L);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+            }
+        }, true);
+
+        // Batches of 8, 10, 12, 15, 16, 16, 16 and the remaining 7
+        assertEquals(16, processor.getCurrentBatchSize());
+        assertEquals(100, processor.getSuccessfullyProcessedEntries());
+        assertTotals(processor.getWorkerStatistics(), 8, 100, 0);
+    }
+
+    @Test
+    public void batchSizeIsHalvedOnRetry()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(8, 1, 8);
+        processor.setAdaptiveBatchSize(true);
+        processor.setMaxBatchSize(8);
+        processor.setTargetBatchTime(60000L);
+        processor.process(new ConflictingWorker(0), true);
+
+        assertEquals(4, processor.getCurrentBatchSize());
+        assertEquals(1, processor.getTotalRetries());
+        assertEquals(8, processor.getSuccessfullyProcessedEntries());
+    }
+
+    @Test
+    public void batchSizeShrinksWhenBatchesAreSlow()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(8, 1, 8);
+        processor.setAdaptiveBatchSize(true);
+        processor.setTargetBatchTime(10L);
+        processor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            @Override
+            public void process(Integer entry) throws Throwable
+            {
+                Thread.sleep(5L);
+            }
+        }, true);
+
+        assertEquals(6, processor.getCurrentBatchSize());
+    }
+
+    @Test
+    public void batchSizeIsKeptWithinTheMinimum()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(2, 1, 2);
+        processor.setAdaptiveBatchSize(true);
+        processor.setMinBatchSize(2);
+        processor.process(new ConflictingWorker(0), true);
+
+        assertEquals(2, processor.getCurrentBatchSize());
+        assertEquals(1, processor.getTotalRetries());
+    }
+
+    @Test
+    public void batchSizeIsFixedByDefault()
+    {
+        BatchProcessor<Integer> processor = newBatchProcessor(8, 1, 8);
+        processor.process(new ConflictingWorker(0), true);
+
+        assertEquals(8, processor.getCurrentBatchSize());
+        assertNull(processor.getLastErrorEntryId());
+    }
+
+    private static BatchProcessor<Integer> newBatchProcessor(int entries, int workerThreads, int batchSize)
+    {
+        List<Integer> collection = new ArrayList<Integer>(entries);
+        for (int i = 0; i < entries; i++)
+        {
+            collection.add(i);
+        }
+        return new BatchProcessor<Integer>(
+                "BatchProcessorTest",
+                new SimulatedTransactionHelper(),
+                new CollectionWorkProvider(collection),
+                workerThreads, batchSize,
+                null, null, 1000);
+    }
+
+    private static void assertTotals(List<BatchWorkerStatistics> statistics, int batches, int entries, int retries)
+    {
+        int totalBatches = 0;
+        int totalEntries = 0;
+        int totalRetries = 0;
+        for (BatchWorkerStatistics workerStats : statistics)
+        {
+            totalBatches += workerStats.getBatches();
+            totalEntries += workerStats.getEntries();
+            totalRetries += workerStats.getRetries();
+        }
+        assertEquals("Batches", batches, totalBatches);
+        assertEquals("Entries", entries, totalEntries);
+        assertEquals("Retries", retries, totalRetries);
+    }
+
+    /**
+     * Fails the transaction the first time that a given entry is processed
+     */
+    private static class ConflictingWorker extends BatchProcessWorkerAdaptor<Integer>
+    {
+        private final int conflictingEntry;
+        private final AtomicBoolean conflicted = new AtomicBoolean();
+
+        private ConflictingWorker(int conflictingEntry)
+        {
+            this.conflictingEntry = conflictingEntry;
+        }
+
+        @Override
+        public void process(Integer entry) throws Throwable
+        {
+            if (entry == conflictingEntry && conflicted.compareAndSet(false, true))
+            {
+                throw new ConcurrencyFailureException("Conflict on entry " + entry);
+            }
+        }
+    }
+
+    private static class CollectionWorkProvider implements BatchProcessWorkProvider<Integer>
+    {
+        private final int size;
+        private List<Integer> collection;
+
+        private CollectionWorkProvider(List<Integer> collection)
+        {
+            this.size = collection.size();
+            this.collection = collection;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return size;
+        }
+
+        @Override
+        public synchronized List<Integer> getNextWork()
+        {
+            List<Integer> work = collection;
+            collection = new ArrayList<Integer>(0);
+            return work;
+        }
+    }
+
+    /**
+     * Runs callbacks with the transaction synchronization that a transaction manager would provide, retrying them
+     * when they fail with a retryable exception.
+     */
+    private static class SimulatedTransactionHelper extends RetryingTransactionHelper
+    {
+        @Override
+        public <R> R doInTransaction(RetryingTransactionCallback<R> cb, boolean readOnly, boolean requiresNew)
+        {
+            for (int attempt = 1; ; attempt++)
+            {
+                TransactionSynchronizationManager.initSynchronization();
+                try
+                {
+                    R result = cb.execute();
+                    endTransaction(true);
+                    return result;
+                }
+                catch (Throwable e)
+                {
+                    endTransaction(false);
+                    if (attempt < MAX_ATTEMPTS && extractRetryCause(e) != null)
+                    {
+                        continue;
+                    }
+                    if (e instanceof RuntimeException)
+                    {
+                        throw (RuntimeException) e;
+                    }
+                    throw new AlfrescoRuntimeException("Transaction failed", e);
+                }
+            }
+        }
+
+        private static void endTransaction(boolean commit)
+        {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (commit)
+            {
+                for (TransactionSynchronization synchronization : synchronizations)
+                {
+                    synchronization.beforeCommit(false);
+                }
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCompletion();
+            }
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+            TransactionSynchronizationManager.clearSynchronization();
+            for (Object key : new ArrayList<Object>(TransactionSynchronizationManager.getResourceMap().keySet()))
+            {
+                TransactionSynchronizationManager.unbindResource(key);
+            }
+        }
+    }
+}
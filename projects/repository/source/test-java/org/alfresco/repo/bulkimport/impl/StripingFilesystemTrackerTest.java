@@ -30,6 +30,8 @@ import static org.junit.Assert.assertEquals;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.alfresco.repo.bulkimport.DirectoryAnalyser;
 import org.alfresco.repo.bulkimport.ImportableItem;
@@ -79,4 +81,31 @@ public class StripingFilesystemTrackerTest
         items = tracker.getImportableItems(Integer.MAX_VALUE);
         assertEquals("", 31, items.size());
     }
+
+    @Test
+    public void testScanAhead() throws FileNotFoundException
+    {
+    	final File sourceFolder = ResourceUtils.getFile("classpath:bulkimport");
+    	ExecutorService scannerExecutor = Executors.newFixedThreadPool(2);
+    	try
+    	{
+            final StripingFilesystemTracker tracker = new StripingFilesystemTracker(directoryAnalyser, new NodeRef("workspace", "SpacesStore", "123"), sourceFolder, Integer.MAX_VALUE,
+                    scannerExecutor, 1);
+            List<ImportableItem> items = tracker.getImportableItems(Integer.MAX_VALUE);
+            assertEquals("", 11, items.size());
+
+            tracker.incrementLevel();
+            assertEquals(true, tracker.moreLevels());
+            items = tracker.getImportableItems(Integer.MAX_VALUE);
+            assertEquals("", 2, items.size());
+
+            tracker.incrementLevel();
+            items = tracker.getImportableItems(Integer.MAX_VALUE);
+            assertEquals("", 31, items.size());
+    	}
+    	finally
+    	{
+    		scannerExecutor.shutdownNow();
+    	}
+    }
 }
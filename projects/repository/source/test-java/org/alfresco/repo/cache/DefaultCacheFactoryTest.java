@@ -62,6 +62,10 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.offHeap
+        properties.setProperty("cache.offHeap.store-type", "off-heap");
+        properties.setProperty("cache.offHeap.maxBytes", "1048576");
+        properties.setProperty("cache.offHeap.timeToLiveSeconds", "6");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +104,14 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
+    
+    @Test
+    public void canCreateOffHeapCache()
+    {
+        OffHeapSimpleCache<String, String> offHeapCache =
+                    (OffHeapSimpleCache<String, String>) cacheFactory.createCache("cache.offHeap");
+        assertEquals("cache.offHeap", offHeapCache.getCacheName());
+        assertEquals(1048576, offHeapCache.getMaxBytes());
+        assertEquals(6, offHeapCache.getTTLSecs());
+    }
 }
@@ -27,7 +27,13 @@ package org.alfresco.repo.cache;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.alfresco.repo.cache.TransactionStats.OpType;
 import org.junit.Before;
@@ -229,4 +235,53 @@ public class InMemoryCacheStatisticsTest
         assertEquals(1, snapshot1.get(OpType.GET_HIT).getCount());
         assertEquals(1000, snapshot1.get(OpType.GET_HIT).getTotalTime(), 0.0d);
     }
+    
+    @Test
+    public void concurrentAddsAreNotLost() throws Exception
+    {
+        final int numThreads = 8;
+        final int txnsPerThread = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++)
+            {
+                results.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        for (int j = 0; j < txnsPerThread; j++)
+                        {
+                            TransactionStats txStats = new TransactionStats();
+                            txStats.record(0, 100, OpType.GET_HIT);
+                            txStats.record(0, 300, OpType.GET_HIT);
+                            txStats.record(0, 50, OpType.GET_MISS);
+                            cacheStats.add("cache1", txStats);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results)
+            {
+                result.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        
+        // The cache was only registered once
+        Mockito.verify(appCtx).publishEvent(Mockito.any(CacheStatisticsCreated.class));
+        
+        long txns = numThreads * txnsPerThread;
+        assertEquals(2 * txns, cacheStats.count("cache1", OpType.GET_HIT));
+        assertEquals(txns, cacheStats.count("cache1", OpType.GET_MISS));
+        assertEquals(3 * txns, cacheStats.numGets("cache1"));
+        assertEquals(200, cacheStats.meanTime("cache1", OpType.GET_HIT), 0.0d);
+        assertEquals(400 * txns, cacheStats.allStats("cache1").get(OpType.GET_HIT).getTotalTime(), 0.0d);
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests for the {@link OffHeapSimpleCache} class.
+ * 
+ * @since 5.2
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class OffHeapSimpleCacheTest extends SimpleCacheTestBase<OffHeapSimpleCache<Integer, String>>
+{
+    private @Mock ApplicationContext appCtx;
+    
+    @Override
+    protected OffHeapSimpleCache<Integer, String> createCache()
+    {
+        return new OffHeapSimpleCache<Integer, String>(1024 * 1024, 0, 0, getClass().getName());
+    }
+    
+    @Test
+    public void evictsLeastRecentlyUsedWhenByteBudgetExceeded()
+    {
+        // A single segment makes the budget apply to the cache as a whole
+        OffHeapSimpleCache<Integer, String> sizingCache = new OffHeapSimpleCache<Integer, String>(1024 * 1024, 1, 0, 0, "sizing");
+        sizingCache.put(1, "1");
+        long entryBytes = sizingCache.getUsedBytes();
+        assertTrue(entryBytes > 0);
+        
+        // Room for exactly three entries of the same serialized size
+        cache = new OffHeapSimpleCache<Integer, String>(entryBytes * 3, 1, 0, 0, getClass().getName());
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        assertEquals(entryBytes * 3, cache.getUsedBytes());
+        
+        // Touch the first item so that the second becomes the least recently used
+        assertEquals("1", cache.get(1));
+        cache.put(4, "4");
+        
+        assertEquals("1", cache.get(1));
+        assertFalse(cache.contains(2));
+        assertEquals("3", cache.get(3));
+        assertEquals("4", cache.get(4));
+        assertEquals(3, cache.size());
+        assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+    }
+    
+    @Test
+    public void valuesLargerThanBudgetAreNotCached()
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(16, 1, 0, 0, getClass().getName());
+        cache.put(1, "a value that serializes to more than sixteen bytes");
+        assertFalse(cache.contains(1));
+        assertEquals(0, cache.getUsedBytes());
+    }
+    
+    @Test
+    public void removeAndClearReleaseBytes()
+    {
+        cache.put(1, "1");
+        cache.put(2, "2");
+        assertTrue(cache.getUsedBytes() > 0);
+        cache.remove(1);
+        cache.remove(2);
+        assertEquals(0, cache.getUsedBytes());
+        
+        cache.put(3, "3");
+        cache.clear();
+        assertEquals(0, cache.getUsedBytes());
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void valuesAreCopies()
+    {
+        StringBuilder value = new StringBuilder("original");
+        OffHeapSimpleCache<Integer, StringBuilder> copyCache = new OffHeapSimpleCache<Integer, StringBuilder>(1024, 0, 0, "copies");
+        copyCache.put(1, value);
+        value.append("-changed");
+        assertEquals("original", copyCache.get(1).toString());
+    }
+    
+    @Test
+    public void putAndCheckUpdate()
+    {
+        assertEquals(false, cache.putAndCheckUpdate(101, "101"));
+        assertEquals(false, cache.putAndCheckUpdate(101, "101"));
+        assertEquals(true, cache.putAndCheckUpdate(101, "99101"));
+        assertEquals("99101", cache.get(101));
+        assertEquals(true, cache.putAndCheckUpdate(101, null));
+        assertEquals(false, cache.putAndCheckUpdate(101, null));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void noNonPositiveMaxBytes()
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(0, 0, 0, getClass().getName());
+    }
+    
+    @Test
+    public void reportsStatistics()
+    {
+        InMemoryCacheStatistics cacheStats = new InMemoryCacheStatistics();
+        cacheStats.setApplicationContext(appCtx);
+        cache.setCacheStats(cacheStats);
+        
+        cache.put(1, "1");
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.flushStatistics();
+        
+        String cacheName = getClass().getName();
+        assertEquals(2, cacheStats.count(cacheName, OpType.GET_HIT));
+        assertEquals(1, cacheStats.count(cacheName, OpType.GET_MISS));
+        assertEquals(1, cacheStats.count(cacheName, OpType.PUT));
+        assertEquals(cache.getUsedBytes(), cacheStats.memoryUsage(cacheName));
+    }
+}
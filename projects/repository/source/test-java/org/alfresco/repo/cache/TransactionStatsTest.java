@@ -93,10 +93,23 @@ public class TransactionStatsTest
         assertEquals(4, stats.getCount(OpType.CLEAR));
         
         // Mean operation times
-        assertEquals(1333.33, stats.getTimings(OpType.GET_HIT).getMean(), 0.01d);
-        assertEquals(2000, stats.getTimings(OpType.GET_MISS).getMean(), 0.01d);
-        assertEquals(1500, stats.getTimings(OpType.PUT).getMean(), 0.01d);
-        assertEquals(1000, stats.getTimings(OpType.REMOVE).getMean(), 0.01d);
-        assertEquals(1750, stats.getTimings(OpType.CLEAR).getMean(), 0.01d);
+        assertEquals(1333.33, stats.getMeanTime(OpType.GET_HIT), 0.01d);
+        assertEquals(2000, stats.getMeanTime(OpType.GET_MISS), 0.01d);
+        assertEquals(1500, stats.getMeanTime(OpType.PUT), 0.01d);
+        assertEquals(1000, stats.getMeanTime(OpType.REMOVE), 0.01d);
+        assertEquals(1750, stats.getMeanTime(OpType.CLEAR), 0.01d);
+        
+        // Total operation times
+        assertEquals(4000, stats.getTotalTime(OpType.GET_HIT));
+        assertEquals(7000, stats.getTotalTime(OpType.CLEAR));
+    }
+    
+    @Test
+    public void meanTimeIsNaNWhenNoOpsTakenPlace()
+    {
+        TransactionStats stats = new TransactionStats();
+        
+        assertTrue(Double.isNaN(stats.getMeanTime(OpType.PUT)));
+        assertEquals(0, stats.getTotalTime(OpType.PUT));
     }
 }
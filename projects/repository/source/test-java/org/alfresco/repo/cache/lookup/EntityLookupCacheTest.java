@@ -26,6 +26,9 @@
 package org.alfresco.repo.cache.lookup;
 
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,6 +37,7 @@ import junit.framework.TestCase;
 
 import org.alfresco.repo.cache.MemoryCache;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.BatchEntityLookupCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.util.EqualsHelper;
@@ -265,6 +269,123 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         assertEquals(valueOne.val, database.get(id));               // Must still be in database
         assertEquals(0, cache.getKeys().size());                    // ... but cache must be empty
     }
+    
+    public void testGetByKeys() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        createValue(new TestValue("CCC"));
+        
+        // Client order is kept, duplicates and missing entities are dropped
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(3L, 1L, 99L, 3L));
+        assertEquals(2, entityPairs.size());
+        assertEquals(new Long(3), entityPairs.get(0).getFirst());
+        assertEquals(new TestValue("CCC"), entityPairs.get(0).getSecond());
+        assertEquals(new Long(1), entityPairs.get(1).getFirst());
+        assertEquals(new TestValue("AAA"), entityPairs.get(1).getSecond());
+        // Key and value-key entries for the two entities, plus the "not found" entry
+        assertEquals(5, cache.getKeys().size());
+        
+        // The cache must now be used, including the "not found" entry
+        database.clear();
+        entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(1L, 3L, 99L));
+        assertEquals(2, entityPairs.size());
+        assertEquals(new Long(1), entityPairs.get(0).getFirst());
+        assertEquals(new Long(3), entityPairs.get(1).getFirst());
+        // Single key lookups see the same entries
+        assertNotNull(entityLookupCacheA.getByKey(3L));
+        assertNull(entityLookupCacheA.getByKey(99L));
+        
+        try
+        {
+            entityLookupCacheA.getByKeys(Arrays.asList(1L, null));
+            fail("Null keys must be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+    
+    public void testGetByKeysUsesBatchLookup() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        createValue(new TestValue("CCC"));
+        BatchTestLookup batchLookup = new BatchTestLookup();
+        EntityLookupCache<Long, Object, String> entityLookupCacheC = new EntityLookupCache<Long, Object, String>(cache, "C", batchLookup);
+        
+        // Only the keys that miss the cache are resolved, and all of them in one call
+        entityLookupCacheC.getByKey(2L);
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheC.getByKeys(Arrays.asList(1L, 2L, 3L, 4L));
+        assertEquals(3, entityPairs.size());
+        assertEquals(1, batchLookup.batches.size());
+        assertEquals(Arrays.asList(1L, 3L, 4L), batchLookup.batches.get(0));
+        
+        // Everything is cached now
+        entityPairs = entityLookupCacheC.getByKeys(Arrays.asList(4L, 3L, 2L, 1L));
+        assertEquals(3, entityPairs.size());
+        assertEquals(1, batchLookup.batches.size());
+        
+        // Without a cache, all keys go to the batch lookup
+        EntityLookupCache<Long, Object, String> entityLookupCacheNoCache = new EntityLookupCache<Long, Object, String>(batchLookup);
+        entityPairs = entityLookupCacheNoCache.getByKeys(Arrays.asList(3L, 2L));
+        assertEquals(2, entityPairs.size());
+        assertEquals(new Long(3), entityPairs.get(0).getFirst());
+        assertEquals(2, batchLookup.batches.size());
+        assertEquals(Arrays.asList(3L, 2L), batchLookup.batches.get(1));
+    }
+
+    /**
+     * Batch-capable lookup that records the keys of each batch and otherwise uses the test's "database"
+     */
+    private class BatchTestLookup implements BatchEntityLookupCallbackDAO<Long, Object, String>
+    {
+        private final List<List<Long>> batches = new ArrayList<List<Long>>();
+        
+        public List<Pair<Long, Object>> findByKeys(List<Long> keys)
+        {
+            batches.add(new ArrayList<Long>(keys));
+            List<Pair<Long, Object>> results = new ArrayList<Pair<Long, Object>>(keys.size());
+            for (Long key : keys)
+            {
+                Pair<Long, Object> entityPair = findByKey(key);
+                if (entityPair != null)
+                {
+                    results.add(entityPair);
+                }
+            }
+            return results;
+        }
+        public String getValueKey(Object value)
+        {
+            return EntityLookupCacheTest.this.getValueKey(value);
+        }
+        public Pair<Long, Object> findByKey(Long key)
+        {
+            return EntityLookupCacheTest.this.findByKey(key);
+        }
+        public Pair<Long, Object> findByValue(Object value)
+        {
+            return EntityLookupCacheTest.this.findByValue(value);
+        }
+        public Pair<Long, Object> createValue(Object value)
+        {
+            return EntityLookupCacheTest.this.createValue(value);
+        }
+        public int updateValue(Long key, Object value)
+        {
+            return EntityLookupCacheTest.this.updateValue(key, value);
+        }
+        public int deleteByKey(Long key)
+        {
+            return EntityLookupCacheTest.this.deleteByKey(key);
+        }
+        public int deleteByValue(Object value)
+        {
+            return EntityLookupCacheTest.this.deleteByValue(value);
+        }
+    }
 
     /**
      * Helper class to represent business object
@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CacheFileIndex} class.
+ */
+public class CacheFileIndexTest
+{
+    private File cacheRoot;
+    private CacheFileIndex index;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        cacheRoot = new File(TempFileProvider.getTempDir(), GUID.generate());
+        index = new CacheFileIndex();
+        index.setCacheRoot(cacheRoot);
+        index.open();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        index.close();
+        FileUtils.deleteDirectory(cacheRoot);
+    }
+
+    private File cacheFile()
+    {
+        return new File(cacheRoot, ContentCacheImpl.createNewCacheFilePath());
+    }
+
+    @Test
+    public void canLookupIndexedFiles()
+    {
+        File file = cacheFile();
+        assertTrue(index.put(file, "store://a/url.bin", 100L));
+
+        assertEquals(file, index.getCacheFile("store://a/url.bin"));
+        assertEquals("store://a/url.bin", index.getContentUrl(file));
+        assertEquals(100L, index.getSize(file));
+        assertEquals(1, index.size());
+        assertEquals(100L, index.getTotalSize());
+    }
+
+    @Test
+    public void detachedFilesAreKeptUntilRemoved()
+    {
+        File file = cacheFile();
+        index.put(file, "store://a/url.bin", 100L);
+
+        index.detach("store://a/url.bin");
+        assertNull(index.getCacheFile("store://a/url.bin"));
+        assertTrue(index.contains(file));
+        assertEquals(100L, index.getTotalSize());
+
+        index.remove(file);
+        assertFalse(index.contains(file));
+        assertEquals(0L, index.getTotalSize());
+        assertNull(index.getLeastRecentlyUsed());
+    }
+
+    @Test
+    public void entriesSurviveReopening()
+    {
+        File file1 = cacheFile();
+        File file2 = cacheFile();
+        File file3 = cacheFile();
+        index.put(file1, "store://1.bin", 10L);
+        index.put(file2, "store://2.bin", 20L);
+        index.put(file3, "store://3.bin", 30L);
+        index.detach("store://2.bin");
+        index.remove(file3);
+
+        index.close();
+        index.open();
+
+        assertEquals(2, index.size());
+        assertEquals(30L, index.getTotalSize());
+        assertEquals(file1, index.getCacheFile("store://1.bin"));
+        assertNull(index.getCacheFile("store://2.bin"));
+        assertTrue(index.contains(file2));
+        assertFalse(index.contains(file3));
+
+        // The freed slot is reused
+        File file4 = cacheFile();
+        index.put(file4, "store://4.bin", 40L);
+        assertEquals(file4, index.getCacheFile("store://4.bin"));
+        assertEquals(70L, index.getTotalSize());
+    }
+
+    @Test
+    public void filesAreVisitedLeastRecentlyUsedFirst() throws Exception
+    {
+        File file1 = cacheFile();
+        File file2 = cacheFile();
+        index.put(file1, "store://1.bin", 10L);
+        index.put(file2, "store://2.bin", 20L);
+
+        // Access times are ordered to the second
+        Thread.sleep(1100);
+        index.touch(file1);
+        assertEquals(file2, index.getLeastRecentlyUsed());
+
+        final List<File> visited = new ArrayList<File>();
+        index.processFiles(new FileHandler()
+        {
+            @Override
+            public void handle(File file)
+            {
+                visited.add(file);
+                index.remove(file);
+            }
+        });
+        assertEquals(2, visited.size());
+        assertEquals(file2, visited.get(0));
+        assertEquals(file1, visited.get(1));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void manyFilesCanBeLookedUpAndRemoved()
+    {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 3000; i++)
+        {
+            File file = cacheFile();
+            index.put(file, "store://" + i + ".bin", 1L);
+            files.add(file);
+        }
+        for (int i = 0; i < files.size(); i += 2)
+        {
+            index.remove(files.get(i));
+        }
+
+        assertEquals(1500, index.size());
+        assertEquals(1500L, index.getTotalSize());
+        for (int i = 0; i < files.size(); i++)
+        {
+            boolean kept = i % 2 == 1;
+            assertEquals(kept, index.contains(files.get(i)));
+            assertEquals(kept ? files.get(i) : null, index.getCacheFile("store://" + i + ".bin"));
+        }
+
+        index.close();
+        index.open();
+        assertEquals(1500, index.size());
+        assertEquals(files.get(2999), index.getCacheFile("store://2999.bin"));
+    }
+
+    @Test
+    public void existingFilesAreIndexedWhenCreated() throws Exception
+    {
+        index.close();
+        File root = new File(TempFileProvider.getTempDir(), GUID.generate());
+        File file = new File(root, ContentCacheImpl.createNewCacheFilePath());
+        FileUtils.writeStringToFile(file, "content");
+
+        CacheFileIndex newIndex = new CacheFileIndex();
+        newIndex.setCacheRoot(root);
+        newIndex.open();
+        try
+        {
+            assertTrue(newIndex.contains(file));
+            assertNull(newIndex.getContentUrl(file));
+            assertEquals(7L, newIndex.getTotalSize());
+        }
+        finally
+        {
+            newIndex.close();
+            FileUtils.deleteDirectory(root);
+        }
+        index.open();
+    }
+}
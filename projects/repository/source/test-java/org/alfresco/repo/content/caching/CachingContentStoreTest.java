@@ -41,6 +41,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 
@@ -48,6 +49,7 @@ import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
 import org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategy;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -236,6 +238,73 @@ public class CachingContentStoreTest
     }
     
     
+    @Test
+    public void getWriterWhenWriteBehind() throws ContentIOException, IOException
+    {
+        cachingStore = new CachingContentStore(backingStore, cache, true);
+        WriteBehindUploader uploader = mock(WriteBehindUploader.class);
+        cachingStore.setWriteBehind(true);
+        cachingStore.setUploader(uploader);
+        ContentContext ctx = ContentContext.NULL_CONTEXT;
+        ContentWriter bsWriter = mock(ContentWriter.class);
+        when(backingStore.getWriter(ctx)).thenReturn(bsWriter);
+        when(bsWriter.getContentUrl()).thenReturn("url");
+        ContentWriter cacheWriter = mock(ContentWriter.class);
+        when(cache.getWriter("url")).thenReturn(cacheWriter);
+        when(cacheWriter.getSize()).thenReturn(54321L);
+        QuotaManagerStrategy quota = mock(QuotaManagerStrategy.class);
+        cachingStore.setQuota(quota);
+        when(quota.beforeWritingCacheFile(0L)).thenReturn(true);
+        // The quota manager cannot have content removed from the cache before it is uploaded
+        when(quota.afterWritingCacheFile(54321L)).thenReturn(false);
+        
+        cachingStore.getWriter(ctx);
+        
+        ArgumentCaptor<ContentStreamListener> arg = ArgumentCaptor.forClass(ContentStreamListener.class);
+        verify(cacheWriter).addListener(arg.capture());
+        arg.getValue().contentStreamClosed();
+        
+        verify(uploader).submit("url", bsWriter);
+        verify(bsWriter, never()).putContent(any(ContentReader.class));
+        verify(quota).afterWritingCacheFile(54321L);
+        verify(cache, never()).deleteFile("url");
+        verify(cache, never()).remove("url");
+    }
+    
+    
+    @Test
+    public void getReaderForItemPendingWriteBehind()
+    {
+        WriteBehindUploader uploader = mock(WriteBehindUploader.class);
+        cachingStore.setUploader(uploader);
+        File pendingFile = new File("pending.bin");
+        when(uploader.getPendingFile("url")).thenReturn(pendingFile);
+        
+        ContentReader reader = cachingStore.getReader("url");
+        
+        assertEquals(pendingFile, ((FileContentReader) reader).getFile());
+        assertEquals("url", reader.getContentUrl());
+        verify(backingStore, never()).getReader(anyString());
+    }
+    
+    
+    @Test
+    public void existsAndDeleteForItemPendingWriteBehind()
+    {
+        WriteBehindUploader uploader = mock(WriteBehindUploader.class);
+        cachingStore.setUploader(uploader);
+        when(uploader.isPending("url")).thenReturn(true);
+        when(uploader.cancel("url")).thenReturn(true);
+        
+        assertTrue(cachingStore.exists("url"));
+        assertTrue(cachingStore.delete("url"));
+        
+        verify(cache).remove("url");
+        verify(backingStore, never()).exists("url");
+        verify(backingStore, never()).delete("url");
+    }
+    
+    
     @Test
     // When attempting to perform write-through caching, i.e. cacheOnInbound = true
     public void quotaManagerCanVetoInboundCaching()
@@ -53,6 +53,8 @@ import org.junit.runners.Suite;
     //CachingContentStoreSpringTest.class,
     CachingContentStoreTest.class,
     ContentCacheImplTest.class,
+    CacheFileIndexTest.class,
+    WriteBehindUploaderTest.class,
     FullTest.class
 })
 public class CachingContentStoreTestSuite
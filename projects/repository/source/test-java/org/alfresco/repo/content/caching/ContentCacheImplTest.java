@@ -42,6 +42,7 @@ import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.GUID;
 import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -330,6 +331,39 @@ public class ContentCacheImplTest
         inOrder.verify(handler).handle(f4);
     }
     
+    @Test
+    public void indexedFilesAreRestoredOnlyWhenComplete() throws Exception
+    {
+        File cacheRoot = new File(TempFileProvider.getTempDir(), GUID.generate());
+        contentCache.setCacheRoot(cacheRoot);
+        CacheFileIndex index = new CacheFileIndex();
+        index.setCacheRoot(cacheRoot);
+        index.open();
+        contentCache.setIndex(index);
+        try
+        {
+            File complete = new File(cacheRoot, ContentCacheImpl.createNewCacheFilePath());
+            FileUtils.writeStringToFile(complete, "content");
+            index.put(complete, "store://complete.bin", complete.length());
+            File truncated = new File(cacheRoot, ContentCacheImpl.createNewCacheFilePath());
+            FileUtils.writeStringToFile(truncated, "cont");
+            index.put(truncated, "store://truncated.bin", 7L);
+            
+            assertTrue(contentCache.contains("store://complete.bin"));
+            Mockito.verify(lookupTable).put(Key.forUrl("store://complete.bin"), complete.getAbsolutePath());
+            
+            assertFalse(contentCache.contains("store://truncated.bin"));
+            assertFalse("Truncated cache file should be deleted", truncated.exists());
+            assertFalse(index.contains(truncated));
+            Mockito.verify(lookupTable, Mockito.never()).put(Key.forUrl("store://truncated.bin"), truncated.getAbsolutePath());
+        }
+        finally
+        {
+            index.close();
+            FileUtils.deleteDirectory(cacheRoot);
+        }
+    }
+    
 
 
     private File tempfile()
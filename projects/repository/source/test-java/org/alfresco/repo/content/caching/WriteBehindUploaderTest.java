@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+/**
+ * Tests for the {@link WriteBehindUploader} class. Tests use a mock backing store and a cache on disk.
+ *
+ * @since 5.2
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class WriteBehindUploaderTest
+{
+    private static final long WAIT_MILLIS = 5000L;
+    private static final String URL = "store://2016/10/16/1/2/write-behind.bin";
+
+    private ContentCacheImpl cache;
+    private WriteBehindUploader uploader;
+    private File cacheFile;
+
+    @Mock
+    private ContentStore backingStore;
+
+    @Mock
+    private ContentWriter bsWriter;
+
+
+    @Before
+    public void setUp() throws Exception
+    {
+        cache = new ContentCacheImpl();
+        cache.setMemoryStore(new DefaultSimpleCache<Key, String>());
+        cache.setCacheRoot(new File(TempFileProvider.getTempDir(), "WriteBehindUploaderTest-" + GUID.generate()));
+
+        ContentWriter cacheWriter = cache.getWriter(URL);
+        cacheWriter.putContent("write-behind content");
+        cacheFile = new File(cache.getCacheFilePath(URL));
+
+        when(bsWriter.getContentUrl()).thenReturn(URL);
+        uploader = createUploader();
+    }
+
+    @After
+    public void tearDown()
+    {
+        uploader.shutdown();
+    }
+
+    private WriteBehindUploader createUploader()
+    {
+        WriteBehindUploader uploader = new WriteBehindUploader();
+        uploader.setBackingStore(backingStore);
+        uploader.setCache(cache);
+        uploader.setRetryDelayMillis(10L);
+        uploader.init();
+        return uploader;
+    }
+
+    private void waitForUpload(WriteBehindUploader uploader) throws InterruptedException
+    {
+        long until = System.currentTimeMillis() + WAIT_MILLIS;
+        while (uploader.isPending(URL) && System.currentTimeMillis() < until)
+        {
+            Thread.sleep(10L);
+        }
+        assertFalse("Upload should have completed", uploader.isPending(URL));
+    }
+
+    @Test
+    public void submittedContentIsUploaded() throws Exception
+    {
+        uploader.submit(URL, bsWriter);
+
+        verify(bsWriter, timeout(WAIT_MILLIS)).putContent(cacheFile);
+        waitForUpload(uploader);
+        assertFalse(cache.isUploadPending(cacheFile));
+        assertEquals(0, uploader.getJournalDir().list().length);
+        assertEquals(1L, uploader.getNumUploaded());
+        assertEquals(0, uploader.getPendingCount());
+        assertEquals(0L, uploader.getUploadLagMillis());
+    }
+
+    @Test
+    public void pendingContentIsKeptInCache() throws Exception
+    {
+        uploader.setRetryDelayMillis(60000L);
+        doThrow(new ContentIOException("Backing store unavailable")).when(bsWriter).putContent(cacheFile);
+
+        uploader.submit(URL, bsWriter);
+
+        verify(bsWriter, timeout(WAIT_MILLIS)).putContent(cacheFile);
+        assertTrue(uploader.isPending(URL));
+        assertEquals(cacheFile, uploader.getPendingFile(URL));
+        assertTrue(cache.isUploadPending(cacheFile));
+        assertEquals(cacheFile.length(), uploader.getPendingBytes());
+
+        cache.deleteFile(URL);
+        assertTrue("Content not yet uploaded should not be deleted", cacheFile.exists());
+    }
+
+    @Test
+    public void failedUploadsAreRetried() throws Exception
+    {
+        doThrow(new ContentIOException("Backing store unavailable")).when(bsWriter).putContent(cacheFile);
+        ContentWriter retryWriter = mock(ContentWriter.class);
+        when(retryWriter.getContentUrl()).thenReturn(URL);
+        when(backingStore.getWriter(any(ContentContext.class))).thenReturn(retryWriter);
+
+        uploader.submit(URL, bsWriter);
+
+        verify(retryWriter, timeout(WAIT_MILLIS)).putContent(cacheFile);
+        waitForUpload(uploader);
+        assertTrue(uploader.getNumFailedAttempts() >= 1L);
+        assertEquals(1L, uploader.getNumUploaded());
+    }
+
+    @Test
+    public void journalledUploadsAreResumed() throws Exception
+    {
+        uploader.setRetryDelayMillis(60000L);
+        doThrow(new ContentIOException("Backing store unavailable")).when(bsWriter).putContent(cacheFile);
+        uploader.submit(URL, bsWriter);
+        verify(bsWriter, timeout(WAIT_MILLIS)).putContent(cacheFile);
+        uploader.shutdown();
+
+        // Restart, with the content only in the cache and the journal
+        ContentWriter resumedWriter = mock(ContentWriter.class);
+        when(resumedWriter.getContentUrl()).thenReturn(URL);
+        when(backingStore.getWriter(any(ContentContext.class))).thenReturn(resumedWriter);
+        uploader = createUploader();
+
+        verify(resumedWriter, timeout(WAIT_MILLIS)).putContent(cacheFile);
+        waitForUpload(uploader);
+        assertEquals(0, uploader.getJournalDir().list().length);
+    }
+
+    @Test
+    public void cancelledUploadsAreForgotten() throws Exception
+    {
+        uploader.setRetryDelayMillis(60000L);
+        doThrow(new ContentIOException("Backing store unavailable")).when(bsWriter).putContent(cacheFile);
+        uploader.submit(URL, bsWriter);
+
+        assertTrue(uploader.cancel(URL));
+        assertFalse(uploader.isPending(URL));
+        assertNull(uploader.getPendingFile(URL));
+        assertFalse(cache.isUploadPending(cacheFile));
+        assertEquals(0, uploader.getJournalDir().list().length);
+        assertFalse(uploader.cancel(URL));
+    }
+}
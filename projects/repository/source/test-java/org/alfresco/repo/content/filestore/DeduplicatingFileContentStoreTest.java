@@ -0,0 +1,312 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests for the {@link DeduplicatingFileContentStore} class.
+ *
+ * @since 5.2
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class DeduplicatingFileContentStoreTest
+{
+    private static final String CONTENT = "abc";
+    private static final String CONTENT_DIGEST = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private DeduplicatingFileContentStore store;
+    @Mock ApplicationContext appCtx;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        File tempDir = TempFileProvider.getTempDir();
+        store = new DeduplicatingFileContentStore(appCtx,
+                tempDir.getAbsolutePath() +
+                File.separatorChar +
+                "DeduplicatingFileContentStoreTest-" + GUID.generate());
+        EagerContentStoreCleaner eagerContentStoreCleaner = new EagerContentStoreCleaner();
+        eagerContentStoreCleaner.setStores(Collections.<ContentStore>singletonList(store));
+        store.setEagerContentStoreCleaner(eagerContentStoreCleaner);
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        for (Object key : new ArrayList<Object>(TransactionSynchronizationManager.getResourceMap().keySet()))
+        {
+            TransactionSynchronizationManager.unbindResource(key);
+        }
+    }
+
+    @Test
+    public void contentUrlIsDerivedFromDigest()
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String contentUrlBefore = writer.getContentUrl();
+        writer.putContent(CONTENT);
+
+        assertEquals("store://sha256/ba/78/" + CONTENT_DIGEST + ".bin", writer.getContentUrl());
+        assertEquals(DeduplicatingFileContentStore.makeDigestContentUrl(CONTENT_DIGEST), writer.getContentUrl());
+        // The file originally written to has been moved
+        assertFalse(store.exists(contentUrlBefore));
+
+        ContentReader reader = store.getReader(writer.getContentUrl());
+        assertEquals(CONTENT, reader.getContentString());
+        reader = writer.getReader();
+        assertEquals(writer.getContentUrl(), reader.getContentUrl());
+        assertEquals(CONTENT, reader.getContentString());
+        assertEquals(CONTENT.length(), writer.getSize());
+    }
+
+    @Test
+    public void duplicateContentIsStoredOnce()
+    {
+        ContentWriter writer1 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer1.putContent(CONTENT);
+        ContentWriter writer2 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String contentUrlBefore = writer2.getContentUrl();
+        writer2.putContent(CONTENT);
+
+        assertEquals(writer1.getContentUrl(), writer2.getContentUrl());
+        assertFalse("Duplicate content should have been discarded", store.exists(contentUrlBefore));
+        assertEquals(CONTENT, writer2.getReader().getContentString());
+
+        ContentWriter writer3 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer3.putContent(CONTENT + "d");
+        assertFalse(writer1.getContentUrl().equals(writer3.getContentUrl()));
+        assertEquals(CONTENT, store.getReader(writer1.getContentUrl()).getContentString());
+        assertEquals(CONTENT + "d", store.getReader(writer3.getContentUrl()).getContentString());
+    }
+
+    @Test
+    public void listenersSeeDigestUrl()
+    {
+        final ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        final String[] listenerContentUrl = new String[1];
+        writer.addListener(new ContentStreamListener()
+        {
+            @Override
+            public void contentStreamClosed() throws ContentIOException
+            {
+                listenerContentUrl[0] = writer.getContentData().getContentUrl();
+            }
+        });
+        writer.putContent(CONTENT);
+
+        assertEquals(DeduplicatingFileContentStore.makeDigestContentUrl(CONTENT_DIGEST), listenerContentUrl[0]);
+    }
+
+    @Test
+    public void randomAccessWritesAreDigested() throws Exception
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        FileChannel channel = writer.getFileChannel(true);
+        channel.write(ByteBuffer.wrap("xbc".getBytes("UTF-8")));
+        channel.write(ByteBuffer.wrap("a".getBytes("UTF-8")), 0L);
+        channel.close();
+
+        assertEquals(DeduplicatingFileContentStore.makeDigestContentUrl(CONTENT_DIGEST), writer.getContentUrl());
+        assertEquals(CONTENT, writer.getReader().getContentString());
+    }
+
+    @Test
+    public void specificUrlsAreNotDeduplicated()
+    {
+        String contentUrl = "store://1965/12/1/13/12/" + GUID.generate() + ".bin";
+        ContentWriter writer = store.getWriter(new ContentContext(null, contentUrl));
+        writer.putContent(CONTENT);
+
+        assertEquals(contentUrl, writer.getContentUrl());
+        assertEquals(CONTENT, store.getReader(contentUrl).getContentString());
+    }
+
+    @Test
+    public void canDeleteDigestUrl()
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        String contentUrl = writer.getContentUrl();
+        assertTrue(store.exists(contentUrl));
+
+        assertTrue(store.delete(contentUrl));
+        assertFalse(store.exists(contentUrl));
+
+        // The same content can be written again
+        writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        assertEquals(contentUrl, writer.getContentUrl());
+        assertTrue(store.exists(contentUrl));
+    }
+
+    @Test
+    public void newContentIsDeletedOnRollback()
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        String contentUrl = writer.getContentUrl();
+        assertEquals(DeduplicatingFileContentStore.makeDigestContentUrl(CONTENT_DIGEST), contentUrl);
+        assertTrue(store.exists(contentUrl));
+        endTransaction(false);
+
+        assertFalse(store.exists(contentUrl));
+    }
+
+    @Test
+    public void newContentIsKeptOnCommit()
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        endTransaction(true);
+
+        assertEquals(CONTENT, store.getReader(writer.getContentUrl()).getContentString());
+    }
+
+    @Test
+    public void uncommittedContentIsOnlySharedWithinItsTransaction() throws Exception
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        ContentWriter writer1 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer1.putContent(CONTENT);
+        ContentWriter writer2 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer2.putContent(CONTENT);
+        assertEquals(writer1.getContentUrl(), writer2.getContentUrl());
+
+        // Another thread has no transaction, or a different one
+        final ContentWriter[] otherWriter = new ContentWriter[1];
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                otherWriter[0] = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+                otherWriter[0].putContent(CONTENT);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotEquals(writer1.getContentUrl(), otherWriter[0].getContentUrl());
+
+        endTransaction(false);
+        assertFalse(store.exists(writer1.getContentUrl()));
+        assertEquals(CONTENT, store.getReader(otherWriter[0].getContentUrl()).getContentString());
+    }
+
+    @Test
+    public void reusedContentIsRestoredBeforeCommit()
+    {
+        ContentWriter writer1 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer1.putContent(CONTENT);
+        String contentUrl = writer1.getContentUrl();
+
+        TransactionSynchronizationManager.initSynchronization();
+        ContentWriter writer2 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String contentUrlBefore = writer2.getContentUrl();
+        writer2.putContent(CONTENT);
+        assertEquals(contentUrl, writer2.getContentUrl());
+        assertTrue("The written file is kept until the transaction completes", store.exists(contentUrlBefore));
+
+        // The content store cleaner deletes the binary before the reference to it is committed
+        assertTrue(store.delete(contentUrl));
+        endTransaction(true);
+
+        assertEquals(CONTENT, store.getReader(contentUrl).getContentString());
+        assertFalse(store.exists(contentUrlBefore));
+    }
+
+    @Test
+    public void reusedContentCopyIsDeletedOnCompletion()
+    {
+        ContentWriter writer1 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer1.putContent(CONTENT);
+
+        TransactionSynchronizationManager.initSynchronization();
+        ContentWriter writer2 = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String contentUrlBefore = writer2.getContentUrl();
+        writer2.putContent(CONTENT);
+        endTransaction(false);
+
+        assertFalse(store.exists(contentUrlBefore));
+        assertEquals(CONTENT, store.getReader(writer1.getContentUrl()).getContentString());
+    }
+
+    /**
+     * Runs the completion callbacks that a transaction manager would
+     */
+    private static void endTransaction(boolean commit)
+    {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (commit)
+        {
+            for (TransactionSynchronization synchronization : synchronizations)
+            {
+                synchronization.beforeCommit(false);
+            }
+        }
+        for (TransactionSynchronization synchronization : synchronizations)
+        {
+            synchronization.beforeCompletion();
+        }
+        for (TransactionSynchronization synchronization : synchronizations)
+        {
+            synchronization.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
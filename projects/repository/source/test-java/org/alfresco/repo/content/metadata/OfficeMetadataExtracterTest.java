@@ -26,6 +26,8 @@
 package org.alfresco.repo.content.metadata;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,6 +35,9 @@ import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
+import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
 import org.alfresco.service.namespace.QName;
 
@@ -104,6 +109,70 @@ public class OfficeMetadataExtracterTest extends AbstractMetadataExtracterTest
         }
     }
     
+    /**
+     * Stopping the parse when the mapped metadata has been found
+     *  must not change what is extracted
+     */
+    public void testStopParsingWhenMapped() throws Exception
+    {
+        String[] mimetypes = new String[] {
+              MimetypeMap.MIMETYPE_WORD, MimetypeMap.MIMETYPE_EXCEL, MimetypeMap.MIMETYPE_PPT
+        };
+        for (String mimetype : mimetypes)
+        {
+            extracter.setStopParsingWhenMapped(false);
+            Map<QName, Serializable> fullParse = extractFromMimetype(mimetype);
+            extracter.setStopParsingWhenMapped(true);
+            Map<QName, Serializable> stoppedParse = extractFromMimetype(mimetype);
+            assertEquals("Properties differ for mimetype " + mimetype, fullParse, stoppedParse);
+        }
+        
+        // Only map the title, which is found before the body
+        Map<String, Set<QName>> titleMapping = new HashMap<String, Set<QName>>();
+        titleMapping.put(OfficeMetadataExtracter.KEY_TITLE, Collections.singleton(ContentModel.PROP_TITLE));
+        extracter.setMapping(titleMapping);
+        Map<QName, Serializable> properties = extractFromMimetype(MimetypeMap.MIMETYPE_WORD);
+        assertEquals(QUICK_TITLE, DefaultTypeConverter.INSTANCE.convert(String.class, properties.get(ContentModel.PROP_TITLE)));
+    }
+    
+    /**
+     * With the default mapping, the parse stops at the body once the metadata
+     *  that would be written to the node has been found
+     */
+    public void testStopParsingWithDefaultMapping() throws Exception
+    {
+        OfficeMetadataExtracter defaultExtracter = new OfficeMetadataExtracter();
+        defaultExtracter.setDictionaryService(dictionaryService);
+        defaultExtracter.register();
+        defaultExtracter.setStopParsingWhenMapped(true);
+        
+        // The pragmatic overwrite policy keeps the values the node already has,
+        //  so only the title is wanted
+        Date created = new Date(0L);
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_AUTHOR, "Existing author");
+        properties.put(ContentModel.PROP_DESCRIPTION, "Existing description");
+        properties.put(ContentModel.PROP_CREATED, created);
+        properties.put(ContentModel.PROP_MODIFIED, created);
+        
+        ContentReader reader = new FileContentReader(AbstractContentTransformerTest.loadQuickTestFile("doc"));
+        reader.setMimetype(MimetypeMap.MIMETYPE_WORD);
+        defaultExtracter.extract(reader, properties);
+        
+        assertEquals(1L, defaultExtracter.getStoppedParseCount());
+        assertEquals(QUICK_TITLE, DefaultTypeConverter.INSTANCE.convert(String.class, properties.get(ContentModel.PROP_TITLE)));
+        assertEquals("Existing author", properties.get(ContentModel.PROP_AUTHOR));
+        assertEquals(created, properties.get(ContentModel.PROP_CREATED));
+        
+        // A node without those values wants them all, so they are still extracted
+        properties = new HashMap<QName, Serializable>();
+        reader = new FileContentReader(AbstractContentTransformerTest.loadQuickTestFile("doc"));
+        reader.setMimetype(MimetypeMap.MIMETYPE_WORD);
+        defaultExtracter.extract(reader, properties);
+        assertEquals(QUICK_TITLE, DefaultTypeConverter.INSTANCE.convert(String.class, properties.get(ContentModel.PROP_TITLE)));
+        assertEquals(QUICK_CREATOR, DefaultTypeConverter.INSTANCE.convert(String.class, properties.get(ContentModel.PROP_AUTHOR)));
+    }
+    
     /** 
      * We support all sorts of extra metadata. Check it all behaves.
      */
@@ -48,6 +48,7 @@ import org.alfresco.util.exec.RuntimeExec;
 public class RuntimeExecutableContentTransformerTest extends BaseAlfrescoTestCase
 {
     private ContentTransformer transformer;
+    private RuntimeExecutableContentTransformerWorker worker;
     
     @Override
     protected void setUpContext() {
@@ -60,7 +61,7 @@ public class RuntimeExecutableContentTransformerTest extends BaseAlfrescoTestCas
     {
         super.setUp();
         
-        RuntimeExecutableContentTransformerWorker worker = new RuntimeExecutableContentTransformerWorker();
+        worker = new RuntimeExecutableContentTransformerWorker();
         // the command to execute
         RuntimeExec transformCommand = new RuntimeExec();
         Map<String, String> commandMap = new HashMap<String, String>(5);
@@ -113,4 +114,82 @@ public class RuntimeExecutableContentTransformerTest extends BaseAlfrescoTestCas
         String checkContent = checkReader.getContentString();
         assertEquals("Content not copied", content, checkContent);
     }
+
+    /**
+     * @return a pool of shell helper processes that run each request as a command, or
+     *         <code>null</code> on Windows.
+     */
+    private TransformerProcessPool createShellProcessPool()
+    {
+        if (System.getProperty("os.name").startsWith("Windows"))
+        {
+            return null;
+        }
+        RuntimeExec startCommand = new RuntimeExec();
+        Map<String, String[]> commandMap = new HashMap<String, String[]>(1);
+        commandMap.put(".*", new String[] {"sh", "-c",
+                "while read -r line; do if eval \"$line\"; then echo PASS; else echo FAIL; fi; done"});
+        startCommand.setCommandsAndArguments(commandMap);
+
+        TransformerProcessPool pool = new TransformerProcessPool();
+        pool.setStartCommand(startCommand);
+        pool.setSkipArguments(0);
+        pool.setPoolSize(1);
+        pool.setMaxJobsPerProcess(20);
+        return pool;
+    }
+
+    private void copy(String content) throws Exception
+    {
+        File sourceFile = TempFileProvider.createTempFile(getName() + "_", ".txt");
+        ContentWriter tempWriter = new FileContentWriter(sourceFile);
+        tempWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        tempWriter.putContent(content);
+        File targetFile = TempFileProvider.createTempFile(getName() + "_", ".xml");
+        ContentWriter writer = new FileContentWriter(targetFile);
+        writer.setMimetype(MimetypeMap.MIMETYPE_XML);
+
+        transformer.transform(tempWriter.getReader(), writer);
+
+        assertEquals("Content not copied", content, writer.getReader().getContentString());
+    }
+
+    public void testPooledCopyCommand() throws Exception
+    {
+        TransformerProcessPool pool = createShellProcessPool();
+        if (pool == null)
+        {
+            return;
+        }
+        worker.setProcessPool(pool);
+        try
+        {
+            for (int i = 0; i < 30; i++)
+            {
+                copy("<A><B>" + i + "</B></A>");
+            }
+            // Recycled after 20 transformations
+            assertEquals("Helper processes started", 2, pool.getStartedCount());
+        }
+        finally
+        {
+            pool.destroy();
+        }
+    }
+
+    public void testPoolFallback() throws Exception
+    {
+        TransformerProcessPool pool = new TransformerProcessPool();
+        RuntimeExec startCommand = new RuntimeExec();
+        Map<String, String> commandMap = new HashMap<String, String>(1);
+        commandMap.put(".*", "no_such_helper_" + System.currentTimeMillis());
+        startCommand.setCommandMap(commandMap);
+        pool.setStartCommand(startCommand);
+        worker.setProcessPool(pool);
+
+        // The helper does not start, so a process is used per transformation
+        copy("<A><B></B></A>");
+        assertFalse("Pool should be unavailable", pool.isAvailable());
+        copy("<A><C></C></A>");
+    }
 }
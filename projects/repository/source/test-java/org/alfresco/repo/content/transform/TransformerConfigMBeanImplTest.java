@@ -362,6 +362,25 @@ public class TransformerConfigMBeanImplTest
         assertArrayEquals(new String[] {"No transformations to report"}, mbean.getTransformationDebugLog(5));
     }
     
+    @Test
+    public void getSelectorCacheStatisticsTest()
+    {
+        TransformerSelectorImpl selector = new TransformerSelectorImpl();
+        selector.setTransformerConfig(transformerConfig);
+        selector.setContentTransformerRegistry(transformerRegistry);
+        mbean.setTransformerSelector(selector);
+        assertEquals("hits=0 misses=0 hitRate=0% size=0", mbean.getSelectorCacheStatistics());
+
+        selector.selectTransformers("application/pdf", -1, "image/png", null);
+        selector.selectTransformers("application/pdf", -1, "image/png", null);
+        selector.selectTransformers("application/pdf", -1, "image/png", null);
+        selector.selectTransformers("application/pdf", -1, "image/png", null);
+        assertEquals("hits=3 misses=1 hitRate=75% size=1", mbean.getSelectorCacheStatistics());
+
+        assertEquals("Selector cache cleared", mbean.clearSelectorCache());
+        assertEquals("hits=3 misses=1 hitRate=75% size=0", mbean.getSelectorCacheStatistics());
+    }
+    
     @Test
     public void getPropertiesTest()
     {
@@ -57,7 +57,8 @@ import org.junit.runners.Suite.SuiteClasses;
     TransformerConfigImplTest.class,
     TransformerConfigMBeanImplTest.class,
 
-    TransformerSelectorImplTest.class})
+    TransformerSelectorImplTest.class,
+    TransformerSchedulerTest.class})
 
 /**
  * Test classes in the Transformers subsystem
@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.service.cmr.repository.ContentServiceTransientException;
+import org.alfresco.service.cmr.repository.TransformationOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for TransformerScheduler.
+ *
+ * @since 5.2
+ */
+public class TransformerSchedulerTest
+{
+    private TransformerScheduler scheduler;
+    private ContentTransformer transformer1;
+    private ContentTransformer transformer2;
+    private TransformationOptions userOptions;
+    private TransformationOptions backgroundOptions;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        scheduler = new TransformerScheduler();
+        scheduler.setMaxConcurrentTransformations(3);
+        scheduler.setMaxConcurrentPerTransformer(2);
+        scheduler.setReservedUserTransformations(1);
+        scheduler.setMaxQueuedTransformations(1);
+        scheduler.setMaxWaitMs(50);
+
+        transformer1 = mock(ContentTransformer.class);
+        when(transformer1.getName()).thenReturn("transformer.one");
+        transformer2 = mock(ContentTransformer.class);
+        when(transformer2.getName()).thenReturn("transformer.two");
+
+        userOptions = new TransformationOptions();
+        backgroundOptions = new TransformationOptions();
+        backgroundOptions.setUse("doclib");
+    }
+
+    private void assertDeclined(ContentTransformer transformer, TransformationOptions options)
+    {
+        try
+        {
+            scheduler.acquire(transformer, options);
+            fail("Transformation should have been declined");
+        }
+        catch (ContentServiceTransientException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void perTransformerLimitTest()
+    {
+        scheduler.acquire(transformer1, userOptions);
+        scheduler.acquire(transformer1, userOptions);
+        assertDeclined(transformer1, userOptions);
+
+        // Other transformers still run
+        scheduler.acquire(transformer2, userOptions);
+        assertEquals(3, scheduler.getRunningCount());
+
+        scheduler.release(transformer1);
+        scheduler.acquire(transformer1, userOptions);
+        assertEquals(3, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void transformerLimitsOverrideTest()
+    {
+        scheduler.setTransformerLimits("one=1, transformer.two=0");
+
+        scheduler.acquire(transformer1, userOptions);
+        assertDeclined(transformer1, userOptions);
+
+        // A limit of 0 is not applied, so only the total applies
+        scheduler.acquire(transformer2, userOptions);
+        scheduler.acquire(transformer2, userOptions);
+        assertDeclined(transformer2, userOptions);
+    }
+
+    @Test
+    public void backgroundReserveTest()
+    {
+        scheduler.acquire(transformer1, backgroundOptions);
+        scheduler.acquire(transformer2, backgroundOptions);
+        assertDeclined(transformer2, backgroundOptions);
+
+        // The reserved place is still free for user transformations
+        scheduler.acquire(transformer2, userOptions);
+        assertEquals(3, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void waitForPlaceTest() throws Exception
+    {
+        scheduler.setMaxWaitMs(10000);
+        scheduler.acquire(transformer1, userOptions);
+        scheduler.acquire(transformer1, userOptions);
+
+        Thread releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while (scheduler.getQueuedCount() == 0)
+                    {
+                        Thread.sleep(5);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                scheduler.release(transformer1);
+            }
+        };
+        releaser.start();
+        scheduler.acquire(transformer1, userOptions);
+        releaser.join();
+
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void queueFullTest() throws Exception
+    {
+        scheduler.setMaxWaitMs(10000);
+        scheduler.acquire(transformer1, userOptions);
+        scheduler.acquire(transformer1, userOptions);
+
+        Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    scheduler.acquire(transformer1, userOptions);
+                }
+                catch (ContentServiceTransientException e)
+                {
+                    // interrupted
+                }
+            }
+        };
+        waiter.start();
+        while (scheduler.getQueuedCount() == 0)
+        {
+            Thread.sleep(5);
+        }
+
+        // Only one transformation may wait, so the next is declined without waiting
+        long start = System.currentTimeMillis();
+        assertDeclined(transformer1, userOptions);
+        assertEquals(true, System.currentTimeMillis() - start < 5000);
+
+        waiter.interrupt();
+        waiter.join();
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void blockingUseIsNotDeclinedTest() throws Exception
+    {
+        final TransformationOptions indexOptions = new TransformationOptions();
+        indexOptions.setUse("index");
+        scheduler.acquire(transformer1, userOptions);
+        scheduler.acquire(transformer1, userOptions);
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] waiters = new Thread[2];
+        for (int i = 0; i < waiters.length; i++)
+        {
+            waiters[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        scheduler.acquire(transformer1, indexOptions);
+                    }
+                    catch (Throwable e)
+                    {
+                        errors.add(e);
+                    }
+                }
+            };
+            waiters[i].start();
+        }
+
+        // More wait than maxQueuedTransformations allows, and for longer than maxWaitMs
+        while (scheduler.getQueuedCount() < waiters.length)
+        {
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        assertEquals(waiters.length, scheduler.getQueuedCount());
+
+        scheduler.release(transformer1);
+        scheduler.release(transformer1);
+        for (Thread waiter : waiters)
+        {
+            waiter.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+}
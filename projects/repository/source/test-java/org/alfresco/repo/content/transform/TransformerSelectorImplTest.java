@@ -26,6 +26,11 @@
 package org.alfresco.repo.content.transform;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -297,6 +302,73 @@ public class TransformerSelectorImplTest
         
         assertTransformers("", expected, actual);
     }
+
+    @Test
+    public void cachedCandidatesTest()
+    {
+        // Only 1 and 4 should be asked again once the candidates have been cached
+        mockTransformer(transformer1, 100, PDF, PNG, 0,  0, 3);
+        mockTransformer(transformer2, 100, PDF, PNG);
+        mockTransformer(transformer3, 100, PDF, PNG);
+        mockTransformer(transformer4, 100, PDF, PNG, 0,  0, 3);
+
+        List<ContentTransformer> expected = Arrays.asList(new ContentTransformer[] {transformer1, transformer4});
+        assertTransformers("first", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        assertTransformers("second", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        assertTransformers("third", expected, selector.selectTransformers(PDF, -1, PNG, options));
+
+        verify(transformer2, times(1)).isTransformable(anyString(), anyLong(), anyString(), any(TransformationOptions.class));
+        verify(transformer1, times(3)).isTransformable(PDF, -1, PNG, options);
+        assertEquals(2, selector.getCacheHits());
+        assertEquals(1, selector.getCacheMisses());
+        assertEquals(1, selector.getCacheSize());
+    }
+
+    @Test
+    public void cachedCandidatesSizeTest()
+    {
+        // Both are candidates, but only 4 can handle the size
+        mockTransformer(transformer1, 100, PDF, PNG, 0,  0, 3);
+        mockTransformer(transformer4, 100, PDF, PNG, 0,  0, 3);
+        when(transformer4.isTransformable(PDF, 1000, PNG, options)).thenReturn(true);
+
+        List<ContentTransformer> expected = Arrays.asList(new ContentTransformer[] {transformer4});
+        assertTransformers("first", expected, selector.selectTransformers(PDF, 1000, PNG, options));
+        assertTransformers("second", expected, selector.selectTransformers(PDF, 1000, PNG, options));
+        expected = Arrays.asList(new ContentTransformer[] {transformer1, transformer4});
+        assertTransformers("unknown size", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        assertEquals(2, selector.getCacheHits());
+    }
+
+    @Test
+    public void registryChangeTest()
+    {
+        mockTransformer(transformer1, 100, PDF, PNG, 0,  0, 3);
+        selector.selectTransformers(PDF, -1, PNG, options);
+
+        // A new transformer is only found once the registry reports a change
+        mockTransformer(transformer4,  50, PDF, PNG, 0,  0, 3);
+        List<ContentTransformer> expected = Arrays.asList(new ContentTransformer[] {transformer1});
+        assertTransformers("cached", expected, selector.selectTransformers(PDF, -1, PNG, options));
+
+        when(contentTransformerRegistry.getChangeCount()).thenReturn(1);
+        expected = Arrays.asList(new ContentTransformer[] {transformer4, transformer1});
+        assertTransformers("changed", expected, selector.selectTransformers(PDF, -1, PNG, options));
+        assertEquals(2, selector.getCacheMisses());
+    }
+
+    @Test
+    public void cacheDisabledTest()
+    {
+        selector.setCacheTimeoutMs(0);
+        mockTransformer(transformer1, 100, PDF, PNG, 0,  0, 3);
+        mockTransformer(transformer2, 100, PDF, PNG);
+        selector.selectTransformers(PDF, -1, PNG, options);
+        selector.selectTransformers(PDF, -1, PNG, options);
+
+        verify(transformer2, times(2)).isTransformable(PDF, -1, PNG, options);
+        assertEquals(0, selector.getCacheSize());
+    }
 }
 
 class DummyTransformerStatistics extends TransformerStatisticsImpl
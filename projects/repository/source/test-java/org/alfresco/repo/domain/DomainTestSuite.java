@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.domain;
 
+import org.alfresco.repo.domain.activities.ActivitiesDAOTest;
 import org.alfresco.repo.domain.audit.AuditDAOTest;
 import org.alfresco.repo.domain.contentdata.ContentDataDAOTest;
 import org.alfresco.repo.domain.encoding.EncodingDAOTest;
@@ -65,6 +66,7 @@ import org.junit.runners.Suite;
     UsageDAOTest.class,
     SOLRDAOTest.class,
     TenantAdminDAOTest.class,
+    ActivitiesDAOTest.class,
     // REOPO-1012 : run AuditDAOTest and PropertyValueCleanupTest near the end
     // because their failure can cause other tests to fail on MS SQL
     // AuditDAOTest fails if it runs after CannedQueryDAOTest so this order is a compromise
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.activities;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.domain.activities.ibatis.ActivityFeedDAOImpl;
+import org.alfresco.service.cmr.activities.FeedControl;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.junit.experimental.categories.Category;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the bulk statements of the {@link ActivityFeedDAO} and {@link FeedControlDAO} against the
+ * database's own SqlMaps (the MySQL and PostgreSQL multi-row inserts, depending on the database).
+ *
+ * @since 5.2
+ */
+@Category(OwnJVMTestsCategory.class)
+public class ActivitiesDAOTest extends TestCase
+{
+    private static final int DEFAULT_INSERT_BATCH_SIZE = 250;
+
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private ActivityFeedDAO feedDAO;
+    private FeedControlDAO feedControlDAO;
+    private String siteId;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        feedDAO = (ActivityFeedDAO) ctx.getBean("feedDAO");
+        feedControlDAO = (FeedControlDAO) ctx.getBean("feedControlDAO");
+        siteId = "ActivitiesDAOTest-" + GUID.generate();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        feedDAO.deleteSiteFeedEntries(siteId);
+    }
+
+    private List<ActivityFeedEntity> createSiteFeedEntries(int count)
+    {
+        List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ActivityFeedEntity feed = new ActivityFeedEntity();
+            feed.setPostDate(new Date(System.currentTimeMillis() - i * 1000L));
+            feed.setSiteNetwork(siteId);
+            feed.setActivityType("testActivityType");
+            feed.setActivitySummary("{\"title\":\"entry " + i + "\"}");
+            feed.setPostUserId("testUser" + i);
+            feed.setFeedUserId("");
+            feed.setPostId(i);
+            feed.setFeedDate(new Date());
+            feeds.add(feed);
+        }
+        return feeds;
+    }
+
+    public void testInsertFeedEntries() throws Exception
+    {
+        assertEquals(3, feedDAO.insertFeedEntries(createSiteFeedEntries(3)));
+
+        List<ActivityFeedEntity> feeds = feedDAO.selectSiteFeedEntries(siteId, -1);
+        assertEquals(3, feeds.size());
+        Set<String> postUserIds = new HashSet<String>();
+        for (ActivityFeedEntity feed : feeds)
+        {
+            assertEquals("testActivityType", feed.getActivityType());
+            assertEquals(siteId, feed.getSiteNetwork());
+            assertTrue(feed.getActivitySummary().startsWith("{\"title\":\"entry "));
+            postUserIds.add(feed.getPostUserId());
+        }
+        assertEquals(3, postUserIds.size());
+    }
+
+    public void testInsertFeedEntriesInChunks() throws Exception
+    {
+        // Three statements of the default batch size: 250, 250 and 100 rows
+        assertEquals(600, feedDAO.insertFeedEntries(createSiteFeedEntries(600)));
+        assertEquals(600, feedDAO.selectSiteFeedEntries(siteId, -1).size());
+    }
+
+    public void testInsertFeedEntriesInSmallChunks() throws Exception
+    {
+        ActivityFeedDAOImpl feedDAOImpl = (ActivityFeedDAOImpl) feedDAO;
+        feedDAOImpl.setInsertBatchSize(7);
+        try
+        {
+            assertEquals(20, feedDAO.insertFeedEntries(createSiteFeedEntries(20)));
+        }
+        finally
+        {
+            feedDAOImpl.setInsertBatchSize(DEFAULT_INSERT_BATCH_SIZE);
+        }
+        assertEquals(20, feedDAO.selectSiteFeedEntries(siteId, -1).size());
+    }
+
+    public void testSelectFeedControlsForManyUsers() throws Exception
+    {
+        // More users than fit in one IN list
+        String userPrefix = "ActivitiesDAOTest-" + GUID.generate() + "-";
+        List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        List<String> userIds = new ArrayList<String>();
+        for (int i = 0; i < 1200; i++)
+        {
+            String userId = userPrefix + i;
+            userIds.add(userId);
+            if (i % 2 == 0)
+            {
+                FeedControlEntity feedControl = new FeedControlEntity(userId, new FeedControl(siteId, null));
+                feedControlDAO.insertFeedControl(feedControl);
+                feedControls.add(feedControl);
+            }
+        }
+        try
+        {
+            List<FeedControlEntity> selected = feedControlDAO.selectFeedControls(userIds);
+            assertEquals(600, selected.size());
+            Set<String> selectedUserIds = new HashSet<String>();
+            for (FeedControlEntity feedControl : selected)
+            {
+                assertEquals(siteId, feedControl.getSiteNetwork());
+                selectedUserIds.add(feedControl.getFeedUserId());
+            }
+            assertEquals(600, selectedUserIds.size());
+            assertTrue(selectedUserIds.contains(userPrefix + 0));
+            assertTrue(selectedUserIds.contains(userPrefix + 1198));
+            assertFalse(selectedUserIds.contains(userPrefix + 1199));
+        }
+        finally
+        {
+            for (FeedControlEntity feedControl : feedControls)
+            {
+                feedControlDAO.deleteFeedControl(feedControl);
+            }
+        }
+    }
+}
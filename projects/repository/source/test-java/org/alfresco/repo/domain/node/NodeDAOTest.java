@@ -27,9 +27,12 @@ package org.alfresco.repo.domain.node;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,20 +43,25 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
 import org.alfresco.util.Pair;
 import org.junit.Assert;
 import org.junit.experimental.categories.Category;
 import org.springframework.context.ApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
 
 /**
  * Additional tests for the Node DAO.
@@ -71,7 +79,11 @@ public class NodeDAOTest extends TestCase
     private TransactionService transactionService;
     private RetryingTransactionHelper txnHelper;
     private NodeDAO nodeDAO;
+    private NodeService nodeService;
     private SimpleCache<Serializable, ValueHolder<Node>> rootNodesCache;    
+    private SimpleCache<Serializable, ValueHolder<Serializable>> nodesCache;
+    private SimpleCache<Serializable, ?> aspectsCache;
+    private SimpleCache<Serializable, ?> propertiesCache;
     @SuppressWarnings("unchecked")
     @Override
     public void setUp()
@@ -85,6 +97,17 @@ public class NodeDAOTest extends TestCase
         
         nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
         rootNodesCache = (SimpleCache<Serializable, ValueHolder<Node>>) ctx.getBean("node.rootNodesSharedCache");
+        nodesCache = (SimpleCache<Serializable, ValueHolder<Serializable>>) ctx.getBean("node.nodesSharedCache");
+        aspectsCache = (SimpleCache<Serializable, ?>) ctx.getBean("node.aspectsSharedCache");
+        propertiesCache = (SimpleCache<Serializable, ?>) ctx.getBean("node.propertiesSharedCache");
+        nodeService = (NodeService) ctx.getBean("nodeService");
+        AuthenticationUtil.setRunAsUserSystem();
+    }
+    
+    @Override
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
     }
     
     public void testTransaction() throws Throwable
@@ -366,4 +389,202 @@ public class NodeDAOTest extends TestCase
             Assert.assertEquals(node, clonedNode);          // Does NPE check implicitly
         }
     }
+    
+    /**
+     * Creates a folder holding the given number of documents
+     * 
+     * @return the node IDs of the documents, in the order created
+     */
+    private List<Long> createDocuments(final int count)
+    {
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<List<Long>>()
+        {
+            public List<Long> execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+                NodeRef folderNodeRef = nodeService.createNode(
+                        rootNodeRef,
+                        ContentModel.ASSOC_CHILDREN,
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, getName() + "-" + GUID.generate()),
+                        ContentModel.TYPE_FOLDER).getChildRef();
+                List<Long> nodeIds = new ArrayList<Long>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+                    props.put(ContentModel.PROP_NAME, "doc-" + i);
+                    props.put(ContentModel.PROP_TITLE, "Title " + i);
+                    NodeRef nodeRef = nodeService.createNode(
+                            folderNodeRef,
+                            ContentModel.ASSOC_CONTAINS,
+                            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "doc-" + i),
+                            ContentModel.TYPE_CONTENT,
+                            props).getChildRef();
+                    nodeService.addAspect(nodeRef, ContentModel.ASPECT_TITLED, null);
+                    nodeIds.add(nodeDAO.getNodePair(nodeRef).getFirst());
+                }
+                return nodeIds;
+            }
+        });
+    }
+    
+    private void clearNodeCaches()
+    {
+        nodesCache.clear();
+        aspectsCache.clear();
+        propertiesCache.clear();
+    }
+    
+    /**
+     * Multi-gets of more nodes than are queried at once give the same results as single gets
+     */
+    public void testGetNodePropertiesAndAspectsInBatches() throws Throwable
+    {
+        final List<Long> nodeIds = createDocuments(600);
+        clearNodeCaches();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Map<Long, Map<QName, Serializable>> propsByNodeId = nodeDAO.getNodeProperties(nodeIds);
+                Map<Long, Set<QName>> aspectsByNodeId = nodeDAO.getNodeAspects(nodeIds);
+                assertEquals(nodeIds, new ArrayList<Long>(propsByNodeId.keySet()));
+                assertEquals(nodeIds, new ArrayList<Long>(aspectsByNodeId.keySet()));
+                for (int i = 0; i < nodeIds.size(); i++)
+                {
+                    Long nodeId = nodeIds.get(i);
+                    Map<QName, Serializable> props = propsByNodeId.get(nodeId);
+                    assertEquals("doc-" + i, props.get(ContentModel.PROP_NAME));
+                    assertEquals(nodeId, props.get(ContentModel.PROP_NODE_DBID));
+                    assertEquals(nodeDAO.getNodeProperties(nodeId), props);
+                    Set<QName> aspects = aspectsByNodeId.get(nodeId);
+                    assertTrue(aspects.contains(ContentModel.ASPECT_TITLED));
+                    assertTrue(aspects.contains(ContentModel.ASPECT_REFERENCEABLE));
+                    assertEquals(nodeDAO.getNodeAspects(nodeId), aspects);
+                }
+                return null;
+            }
+        }, true);
+    }
+    
+    /**
+     * A node that has been deleted, or never existed, fails a multi-get
+     */
+    public void testGetNodePropertiesOfDeletedAndMissingNodes() throws Throwable
+    {
+        final List<Long> nodeIds = createDocuments(3);
+        // Cache the nodes before one is deleted
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                nodeDAO.getNodeProperties(nodeIds);
+                nodeDAO.deleteNode(nodeIds.get(1));
+                return null;
+            }
+        });
+        final List<Long> liveNodeIds = Arrays.asList(nodeIds.get(0), nodeIds.get(2));
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Map<Long, Map<QName, Serializable>> propsByNodeId = nodeDAO.getNodeProperties(liveNodeIds);
+                assertEquals(liveNodeIds, new ArrayList<Long>(propsByNodeId.keySet()));
+                assertEquals("doc-2", propsByNodeId.get(nodeIds.get(2)).get(ContentModel.PROP_NAME));
+                assertEquals(2, nodeDAO.getNodeAspects(liveNodeIds).size());
+                return null;
+            }
+        }, true);
+        
+        List<Long> missingNodeIds = new ArrayList<Long>(liveNodeIds);
+        missingNodeIds.add(nodeDAO.getMaxNodeId() + 1000L);
+        for (final List<Long> ids : Arrays.asList(nodeIds, missingNodeIds))
+        {
+            for (final boolean aspects : new boolean[] {false, true})
+            {
+                RetryingTransactionHelper helper = transactionService.getRetryingTransactionHelper();
+                helper.setMaxRetries(0);
+                try
+                {
+                    helper.doInTransaction(new RetryingTransactionCallback<Void>()
+                    {
+                        public Void execute() throws Throwable
+                        {
+                            if (aspects)
+                            {
+                                nodeDAO.getNodeAspects(ids);
+                            }
+                            else
+                            {
+                                nodeDAO.getNodeProperties(ids);
+                            }
+                            return null;
+                        }
+                    }, true);
+                    fail("A node that does not exist should fail the multi-get: " + ids);
+                }
+                catch (ConcurrencyFailureException e)
+                {
+                    // Expected
+                }
+            }
+        }
+    }
+    
+    /**
+     * A cached node entry older than the node's properties is detected by the multi-get, which
+     * drops the entry so that the retry sees the current version
+     */
+    public void testGetNodePropertiesDetectsStaleNodeEntry() throws Throwable
+    {
+        final List<Long> nodeIds = createDocuments(3);
+        final Long staleNodeId = nodeIds.get(2);
+        clearNodeCaches();
+        // Cache the current entries, then replace one node entry with that of an older version
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                nodeDAO.getNodeAspects(nodeIds);
+                return null;
+            }
+        }, true);
+        propertiesCache.clear();
+        boolean replaced = false;
+        for (Serializable key : nodesCache.getKeys())
+        {
+            Object value = TransactionalCache.getSharedCacheValue(nodesCache, key);
+            if (value instanceof NodeEntity && staleNodeId.equals(((NodeEntity) value).getId()))
+            {
+                NodeEntity node = (NodeEntity) value;
+                NodeEntity staleNode = new NodeEntity();
+                staleNode.setId(node.getId());
+                staleNode.setVersion(node.getVersion() - 1L);
+                staleNode.setStore(node.getStore());
+                staleNode.setUuid(node.getUuid());
+                staleNode.setTypeQNameId(node.getTypeQNameId());
+                staleNode.setLocaleId(node.getLocaleId());
+                staleNode.setAclId(node.getAclId());
+                staleNode.setTransaction(node.getTransaction());
+                staleNode.setAuditableProperties(node.getAuditableProperties());
+                staleNode.setShardKey(node.getShardKey());
+                staleNode.lock();
+                TransactionalCache.putSharedCacheValue(nodesCache, key, (Serializable) staleNode, null);
+                replaced = true;
+            }
+        }
+        assertTrue("Node entry was not cached", replaced);
+        
+        final AtomicLong attempts = new AtomicLong();
+        Map<Long, Map<QName, Serializable>> propsByNodeId = txnHelper.doInTransaction(
+                new RetryingTransactionCallback<Map<Long, Map<QName, Serializable>>>()
+        {
+            public Map<Long, Map<QName, Serializable>> execute() throws Throwable
+            {
+                attempts.incrementAndGet();
+                return nodeDAO.getNodeProperties(nodeIds);
+            }
+        }, true);
+        assertEquals("The stale entry should have failed the first attempt", 2L, attempts.get());
+        assertEquals("doc-2", propsByNodeId.get(staleNodeId).get(ContentModel.PROP_NAME));
+    }
 }
\ No newline at end of file
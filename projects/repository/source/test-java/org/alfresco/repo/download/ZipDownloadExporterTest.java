@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.coci.CheckOutCheckInService;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Tests for the {@link ZipDownloadExporter} entries, using mock services.
+ *
+ * @since 5.2
+ */
+public class ZipDownloadExporterTest
+{
+    private static final byte[] TEXT = "Some text that compresses well well well well well well well".getBytes();
+    private static final byte[] JPEG = "Pretend this is an already compressed image".getBytes();
+    private static final ContentData TEXT_DATA = new ContentData("store://text.bin", MimetypeMap.MIMETYPE_TEXT_PLAIN, TEXT.length, "UTF-8");
+    private static final ContentData JPEG_DATA = new ContentData("store://image.bin", MimetypeMap.MIMETYPE_IMAGE_JPEG, JPEG.length, null);
+
+    private NodeService nodeService;
+    private CheckOutCheckInService checkOutCheckInService;
+    private RetryingTransactionHelper transactionHelper;
+    private ContentService contentService;
+    private ExecutorService executorService;
+    private ByteArrayOutputStream output;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        AuthenticationUtil.setFullyAuthenticatedUser("admin");
+        nodeService = mock(NodeService.class);
+        when(nodeService.getType(any(NodeRef.class))).thenReturn(ContentModel.TYPE_CONTENT);
+        checkOutCheckInService = mock(CheckOutCheckInService.class);
+        transactionHelper = mock(RetryingTransactionHelper.class);
+        when(transactionHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        });
+        contentService = mock(ContentService.class);
+        mockContent(TEXT_DATA, TEXT);
+        mockContent(JPEG_DATA, JPEG);
+        executorService = Executors.newFixedThreadPool(2);
+        output = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        executorService.shutdownNow();
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private void mockContent(ContentData contentData, byte[] content)
+    {
+        ContentReader reader = mock(ContentReader.class);
+        when(reader.exists()).thenReturn(true);
+        when(reader.getSize()).thenReturn((long) content.length);
+        when(reader.getContentInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(contentService.getRawReader(contentData.getContentUrl())).thenReturn(reader);
+    }
+
+    private ZipDownloadExporter createExporter()
+    {
+        ZipDownloadExporter exporter = new ZipDownloadExporter(output, checkOutCheckInService, nodeService, transactionHelper,
+                    mock(DownloadStatusUpdateService.class), mock(DownloadStorage.class), node("download"), TEXT.length + JPEG.length, 2);
+        exporter.setStoredMimetypes(Arrays.asList("image/*", "application/zip"));
+        return exporter;
+    }
+
+    private NodeRef node(String id)
+    {
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, id);
+        when(nodeService.getProperty(nodeRef, ContentModel.PROP_NAME)).thenReturn(id);
+        return nodeRef;
+    }
+
+    private void export(ZipDownloadExporter exporter)
+    {
+        exporter.start(null);
+        addContent(exporter, node("text.txt"), TEXT, TEXT_DATA);
+        addContent(exporter, node("image.jpg"), JPEG, JPEG_DATA);
+        exporter.end();
+    }
+
+    private void addContent(ZipDownloadExporter exporter, NodeRef nodeRef, byte[] content, ContentData contentData)
+    {
+        exporter.startNode(nodeRef);
+        exporter.content(nodeRef, ContentModel.PROP_CONTENT, new ByteArrayInputStream(content), contentData, -1);
+        exporter.endNode(nodeRef);
+    }
+
+    private void assertEntry(ZipInputStream zip, String name, byte[] content, int method) throws Exception
+    {
+        ZipEntry entry = zip.getNextEntry();
+        assertEquals(name, entry.getName());
+        assertEquals(name + " method", method, entry.getMethod());
+        assertEquals(new String(content), new String(FileCopyUtils.copyToByteArray(new NonClosingInputStream(zip))));
+    }
+
+    @Test
+    public void compressedContentIsStored() throws Exception
+    {
+        ZipDownloadExporter exporter = createExporter();
+        exporter.setPrefetcher(new DownloadContentPrefetcher(contentService, transactionHelper, executorService,
+                    Arrays.asList(TEXT_DATA, JPEG_DATA), 1024, 4));
+        export(exporter);
+
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        assertEntry(zip, "text.txt", TEXT, ZipEntry.DEFLATED);
+        assertEntry(zip, "image.jpg", JPEG, ZipEntry.STORED);
+        assertNull(zip.getNextEntry());
+        assertEquals(2, exporter.getFilesAdded());
+        assertEquals(TEXT.length + JPEG.length, exporter.getDone());
+    }
+
+    @Test
+    public void unexpectedContentIsReadFromStream() throws Exception
+    {
+        // The text is not in the estimate and the image is too big to prefetch
+        ZipDownloadExporter exporter = createExporter();
+        exporter.setPrefetcher(new DownloadContentPrefetcher(contentService, transactionHelper, executorService,
+                    Arrays.asList(JPEG_DATA), 8, 4));
+        export(exporter);
+
+        // Without its size up front the image is deflated, but without compression
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        assertEntry(zip, "text.txt", TEXT, ZipEntry.DEFLATED);
+        assertEntry(zip, "image.jpg", JPEG, ZipEntry.DEFLATED);
+        assertNull(zip.getNextEntry());
+    }
+
+    /**
+     * Stops FileCopyUtils closing the zip stream after each entry.
+     */
+    private static class NonClosingInputStream extends FilterInputStream
+    {
+        private NonClosingInputStream(ZipInputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -27,8 +27,10 @@ package org.alfresco.repo.lock.mem;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -104,6 +106,27 @@ public abstract class AbstractLockStoreTestBase<T extends LockStore>
         assertNull(lockStore.get(nodeRef3));
     }
 
+    @Test
+    public void testGetLockStates()
+    {
+        NodeRef nodeRef1 = new NodeRef("workspace://SpacesStore/12345");
+        LockState lock1 = LockState.createLock(nodeRef1, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        
+        NodeRef nodeRef2 = new NodeRef("workspace://SpacesStore/5838743");
+        LockState lock2 = LockState.createLock(nodeRef2, LockType.NODE_LOCK, "owner", null, Lifetime.PERSISTENT, null);
+        
+        NodeRef nodeRef3 = new NodeRef("workspace://SpacesStore/65752323");
+        
+        lockStore.set(nodeRef1, lock1);
+        lockStore.set(nodeRef2, lock2);
+        
+        Map<NodeRef, LockState> lockStates = lockStore.getLockStates(Arrays.asList(nodeRef1, nodeRef2, nodeRef3));
+        assertEquals(2, lockStates.size());
+        assertEquals(lock1, lockStates.get(nodeRef1));
+        assertEquals(lock2, lockStates.get(nodeRef2));
+        assertFalse(lockStates.containsKey(nodeRef3));
+    }
+
     @Test
     public void testClear()
     {
@@ -25,6 +25,15 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.alfresco.service.cmr.lock.LockType;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Test;
 
 /**
  * Tests for the {@link LockStoreImpl} class.
@@ -38,4 +47,74 @@ public class LockStoreImplTest extends AbstractLockStoreTestBase<LockStoreImpl>
     {
         return new LockStoreImpl(20);
     }
+    
+    @Test
+    public void testExpiredLocksAreRemoved() throws InterruptedException
+    {
+        LockStoreImpl store = new LockStoreImpl(1, 10L);
+        
+        NodeRef expiringNodeRef = new NodeRef("workspace://SpacesStore/1");
+        Date expires = new Date(System.currentTimeMillis() + 100);
+        LockState expiringLock = LockState.createLock(expiringNodeRef, LockType.WRITE_LOCK, "owner", expires, Lifetime.EPHEMERAL, null);
+        
+        NodeRef ttlNodeRef = new NodeRef("workspace://SpacesStore/2");
+        LockState ttlLock = LockState.createLock(ttlNodeRef, LockType.WRITE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        
+        store.set(expiringNodeRef, expiringLock);
+        store.set(ttlNodeRef, ttlLock);
+        assertEquals(2, store.getNodes().size());
+        
+        // Reading any node moves the lease expiry on
+        Thread.sleep(300);
+        store.get(new NodeRef("workspace://SpacesStore/3"));
+        assertFalse(store.getNodes().contains(expiringNodeRef));
+        assertTrue(store.getNodes().contains(ttlNodeRef));
+        
+        // The TTL applies to locks without an expiry date
+        Thread.sleep(1000);
+        store.get(new NodeRef("workspace://SpacesStore/3"));
+        assertTrue(store.getNodes().isEmpty());
+    }
+    
+    @Test
+    public void testReplacedLockIsKept() throws InterruptedException
+    {
+        LockStoreImpl store = new LockStoreImpl(20, 10L);
+        
+        NodeRef nodeRef = new NodeRef("workspace://SpacesStore/1");
+        Date expires = new Date(System.currentTimeMillis() + 100);
+        LockState lock = LockState.createLock(nodeRef, LockType.WRITE_LOCK, "owner", expires, Lifetime.EPHEMERAL, null);
+        store.set(nodeRef, lock);
+        
+        // Extend the lock before it expires
+        LockState extended = LockState.createWithExpires(lock, new Date(System.currentTimeMillis() + 60000));
+        store.set(nodeRef, extended);
+        
+        Thread.sleep(300);
+        assertEquals(extended, store.get(nodeRef));
+    }
+    
+    @Test
+    public void testReLockWithEqualStateSurvivesOldLease() throws InterruptedException
+    {
+        LockStoreImpl store = new LockStoreImpl(1, 10L);
+        
+        NodeRef nodeRef = new NodeRef("workspace://SpacesStore/1");
+        LockState lock = LockState.createLock(nodeRef, LockType.WRITE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        store.set(nodeRef, lock);
+        
+        // Re-lock with an equal state, which gets a lease ending later than the first
+        Thread.sleep(600);
+        LockState relock = LockState.createLock(nodeRef, LockType.WRITE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        assertEquals(lock, relock);
+        store.set(nodeRef, relock);
+        
+        // The first lease has fallen due, but must not remove the equal state
+        Thread.sleep(600);
+        assertEquals(relock, store.get(nodeRef));
+        
+        Thread.sleep(800);
+        store.get(new NodeRef("workspace://SpacesStore/2"));
+        assertTrue(store.getNodes().isEmpty());
+    }
 }
@@ -27,7 +27,9 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import junit.framework.TestCase;
@@ -361,6 +363,54 @@ public class PolicyComponentTest extends TestCase
     }
 
 
+    public void testClassSetCache()
+    {
+        // Register Policy
+        ClassPolicyDelegate<TestClassPolicy> delegate = policyComponent.registerClassPolicy(TestClassPolicy.class);
+        
+        // Bind Behaviour
+        QName policyName = QName.createQName(TEST_NAMESPACE, "test");
+        Behaviour baseBehaviour = new JavaBehaviour(this, "baseTest");
+        policyComponent.bindClassBehaviour(policyName, BASE_TYPE, baseBehaviour);
+        Behaviour aspectBehaviour = new JavaBehaviour(this, "aspectTest");
+        policyComponent.bindClassBehaviour(policyName, TEST_ASPECT, aspectBehaviour);
+
+        // Retrieve policies for a type and aspect
+        Set<QName> classes = new HashSet<QName>();
+        classes.add(FILE_TYPE);
+        classes.add(TEST_ASPECT);
+        Collection<TestClassPolicy> policies = delegate.getList(classes);
+        assertEquals(2, policies.size());
+        Set<String> results = new HashSet<String>();
+        for (TestClassPolicy policy : policies)
+        {
+            results.add(policy.test("file"));
+        }
+        assertTrue(results.contains("Base: file"));
+        assertTrue(results.contains("Aspect: file"));
+
+        // Retrieve again, using an equal set
+        Collection<TestClassPolicy> policies2 = delegate.getList(new HashSet<QName>(classes));
+        assertTrue(policies == policies2);
+        TestClassPolicy policy2 = delegate.get(classes);
+        assertTrue(policy2 == delegate.get(classes));
+
+        // Bind new behaviour (forcing cache reset)
+        Behaviour fileBehaviour = new JavaBehaviour(this, "fileTest");
+        policyComponent.bindClassBehaviour(policyName, FILE_TYPE, fileBehaviour);
+        Collection<TestClassPolicy> policies3 = delegate.getList(classes);
+        assertTrue(policies3 != policies2);
+        assertTrue(delegate.get(classes) != policy2);
+        results.clear();
+        for (TestClassPolicy policy : policies3)
+        {
+            results.add(policy.test("file"));
+        }
+        assertTrue(results.contains("File: file"));
+        assertTrue(results.contains("Aspect: file"));
+    }
+
+
     public void testPropertyDelegate()
     {
         // Register Policy
@@ -39,6 +39,7 @@ import org.alfresco.repo.security.authentication.ChainingAuthenticationServiceTe
 import org.alfresco.repo.security.authentication.NameBasedUserNameGeneratorTest;
 import org.alfresco.repo.security.authentication.UpgradePasswordHashTest;
 import org.alfresco.repo.security.authority.AuthorityBridgeTableAsynchronouslyRefreshedCacheTest;
+import org.alfresco.repo.security.authority.AuthorityClosureDAOImplTest;
 import org.alfresco.repo.security.authority.AuthorityServiceTest;
 import org.alfresco.repo.security.authority.DuplicateAuthorityTest;
 import org.alfresco.repo.security.authority.ExtendedPermissionServiceTest;
@@ -93,6 +94,7 @@ public class SecurityTestSuite extends TestSuite
 
         suite.addTest(new JUnit4TestAdapter(HomeFolderProviderSynchronizerTest.class));
         suite.addTest(new JUnit4TestAdapter(AlfrescoSSLSocketFactoryTest.class));
+        suite.addTest(new JUnit4TestAdapter(AuthorityClosureDAOImplTest.class));
 		suite.addTestSuite(FixedAclUpdaterTest.class);
 		
         return suite;
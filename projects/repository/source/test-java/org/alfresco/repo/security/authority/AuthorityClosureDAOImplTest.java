@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.ibatis.IdsEntity;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * Checks that the incremental maintenance of the {@link AuthorityClosureDAOImpl} produces the same
+ * rows as a full rebuild, using an in-memory stand-in for the closure table.
+ *
+ * @since 5.2
+ */
+public class AuthorityClosureDAOImplTest
+{
+    private static final String NAMESPACE = "alfresco.query.authorities.";
+
+    /** (ancestor, descendant, depth) to path count */
+    private Map<List<Number>, Long> closure = new HashMap<List<Number>, Long>();
+    /** The direct memberships, as (parent, child) */
+    private List<Long[]> memberships = new ArrayList<Long[]>();
+    /** The IDs of the nodes locked by each lock statement */
+    private List<List<Long>> locks = new ArrayList<List<Long>>();
+    private AuthorityClosureDAOImpl closureDAO;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        SqlSessionTemplate template = mock(SqlSessionTemplate.class);
+        when(template.selectList(anyString(), any())).thenAnswer(new Answer<List<AuthorityClosureEntity>>()
+        {
+            @Override
+            public List<AuthorityClosureEntity> answer(InvocationOnMock invocation) throws Throwable
+            {
+                String statement = (String) invocation.getArguments()[0];
+                List<AuthorityClosureEntity> rows = new ArrayList<AuthorityClosureEntity>();
+                if (statement.equals(NAMESPACE + "select_AuthorityClosureLockNodes"))
+                {
+                    locks.add(((IdsEntity) invocation.getArguments()[1]).getIds());
+                    return rows;
+                }
+                AuthorityClosureEntity params = (AuthorityClosureEntity) invocation.getArguments()[1];
+                if (statement.equals(NAMESPACE + "select_AuthorityMemberLinks"))
+                {
+                    for (Long[] membership : memberships)
+                    {
+                        rows.add(new AuthorityClosureEntity(membership[0], membership[1], 1, 1L));
+                    }
+                    return rows;
+                }
+                for (Map.Entry<List<Number>, Long> row : closure.entrySet())
+                {
+                    List<Number> key = row.getKey();
+                    if ((statement.equals(NAMESPACE + "select_AuthorityClosureAncestors") && key.get(1).equals(params.getDescendantId())) ||
+                        (statement.equals(NAMESPACE + "select_AuthorityClosureDescendants") && key.get(0).equals(params.getAncestorId())))
+                    {
+                        rows.add(new AuthorityClosureEntity((Long) key.get(0), (Long) key.get(1), (Integer) key.get(2), row.getValue()));
+                    }
+                }
+                return rows;
+            }
+        });
+        when(template.update(anyString(), any())).thenAnswer(new Answer<Integer>()
+        {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable
+            {
+                AuthorityClosureEntity path = (AuthorityClosureEntity) invocation.getArguments()[1];
+                List<Number> key = key(path.getAncestorId(), path.getDescendantId(), path.getDepth());
+                Long count = closure.get(key);
+                if (count == null)
+                {
+                    return 0;
+                }
+                closure.put(key, count + path.getPathCount());
+                return 1;
+            }
+        });
+        when(template.insert(anyString(), any())).thenAnswer(new Answer<Integer>()
+        {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable
+            {
+                AuthorityClosureEntity path = (AuthorityClosureEntity) invocation.getArguments()[1];
+                Long previous = closure.put(key(path.getAncestorId(), path.getDescendantId(), path.getDepth()), path.getPathCount());
+                assertEquals("Duplicate closure row", null, previous);
+                return 1;
+            }
+        });
+        when(template.delete(anyString(), any())).thenAnswer(new Answer<Integer>()
+        {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable
+            {
+                String statement = (String) invocation.getArguments()[0];
+                AuthorityClosureEntity params = (AuthorityClosureEntity) invocation.getArguments()[1];
+                int deleted = 0;
+                for (List<Number> key : new ArrayList<List<Number>>(closure.keySet()))
+                {
+                    boolean delete = statement.equals(NAMESPACE + "delete_AuthorityClosureInStore");
+                    delete |= statement.equals(NAMESPACE + "delete_AuthorityClosureEmptyPaths") && key.get(0).equals(params.getAncestorId()) && closure.get(key) <= 0;
+                    delete |= statement.equals(NAMESPACE + "delete_AuthorityClosureForNode") && (key.get(0).equals(params.getAncestorId()) || key.get(1).equals(params.getDescendantId()));
+                    if (delete)
+                    {
+                        closure.remove(key);
+                        deleted++;
+                    }
+                }
+                return deleted;
+            }
+        });
+
+        NodeDAO nodeDAO = mock(NodeDAO.class);
+        when(nodeDAO.getNodePair(any(NodeRef.class))).thenAnswer(new Answer<Pair<Long, NodeRef>>()
+        {
+            @Override
+            public Pair<Long, NodeRef> answer(InvocationOnMock invocation) throws Throwable
+            {
+                NodeRef nodeRef = (NodeRef) invocation.getArguments()[0];
+                return new Pair<Long, NodeRef>(Long.valueOf(nodeRef.getId()), nodeRef);
+            }
+        });
+        when(nodeDAO.getStore(any(StoreRef.class))).thenReturn(new Pair<Long, StoreRef>(1L, StoreRef.STORE_REF_WORKSPACE_SPACESSTORE));
+        QNameDAO qnameDAO = mock(QNameDAO.class);
+        when(qnameDAO.getQName(any(QName.class))).thenReturn(new Pair<Long, QName>(1L, QName.createQName("test")));
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getName(any(NodeRef.class))).thenAnswer(new Answer<NodeRef>()
+        {
+            @Override
+            public NodeRef answer(InvocationOnMock invocation) throws Throwable
+            {
+                return (NodeRef) invocation.getArguments()[0];
+            }
+        });
+        when(tenantService.getName(any(StoreRef.class))).thenReturn(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+
+        closureDAO = new AuthorityClosureDAOImpl();
+        closureDAO.setSqlSessionTemplate(template);
+        closureDAO.setNodeDAO(nodeDAO);
+        closureDAO.setQnameDAO(qnameDAO);
+        closureDAO.setTenantService(tenantService);
+    }
+
+    private static List<Number> key(Long ancestorId, Long descendantId, Integer depth)
+    {
+        return Arrays.<Number>asList(ancestorId, descendantId, depth);
+    }
+
+    private static NodeRef ref(long id)
+    {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, Long.toString(id));
+    }
+
+    private void add(long parentId, long childId)
+    {
+        memberships.add(new Long[] {parentId, childId});
+        closureDAO.addMembership(ref(parentId), ref(childId));
+    }
+
+    private void remove(long parentId, long childId)
+    {
+        for (Long[] membership : memberships)
+        {
+            if (membership[0] == parentId && membership[1] == childId)
+            {
+                memberships.remove(membership);
+                break;
+            }
+        }
+        closureDAO.removeMembership(ref(parentId), ref(childId));
+    }
+
+    private void assertMatchesRebuild()
+    {
+        Map<List<Number>, Long> incremental = new HashMap<List<Number>, Long>(closure);
+        int rows = closureDAO.rebuild();
+        assertEquals(closure.size(), rows);
+        assertEquals(closure, incremental);
+    }
+
+    @Test
+    public void nestedGroups() throws Exception
+    {
+        // 1 -> 2 -> 3 -> 10, added bottom up
+        add(3L, 10L);
+        add(2L, 3L);
+        add(1L, 2L);
+        assertEquals(Long.valueOf(1L), closure.get(key(1L, 10L, 3)));
+        assertEquals(Long.valueOf(1L), closure.get(key(2L, 10L, 2)));
+        assertEquals(6, closure.size());
+        assertMatchesRebuild();
+    }
+
+    @Test
+    public void diamondMembership() throws Exception
+    {
+        // 1 -> 2 -> 4, 1 -> 3 -> 4, 4 -> 10
+        add(1L, 2L);
+        add(4L, 10L);
+        add(2L, 4L);
+        add(1L, 3L);
+        add(3L, 4L);
+        assertEquals(Long.valueOf(2L), closure.get(key(1L, 4L, 2)));
+        assertEquals(Long.valueOf(2L), closure.get(key(1L, 10L, 3)));
+        assertMatchesRebuild();
+
+        remove(3L, 4L);
+        assertEquals(Long.valueOf(1L), closure.get(key(1L, 10L, 3)));
+        assertEquals(null, closure.get(key(3L, 10L, 2)));
+        assertMatchesRebuild();
+
+        remove(2L, 4L);
+        assertEquals(null, closure.get(key(1L, 10L, 3)));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    public void pathsOfDifferentDepths() throws Exception
+    {
+        // 1 -> 10 directly and through 1 -> 2 -> 10
+        add(1L, 2L);
+        add(2L, 10L);
+        add(1L, 10L);
+        assertEquals(Long.valueOf(1L), closure.get(key(1L, 10L, 1)));
+        assertEquals(Long.valueOf(1L), closure.get(key(1L, 10L, 2)));
+        assertMatchesRebuild();
+
+        remove(1L, 10L);
+        assertEquals(null, closure.get(key(1L, 10L, 1)));
+        assertEquals(Long.valueOf(1L), closure.get(key(1L, 10L, 2)));
+        assertMatchesRebuild();
+    }
+
+    @Test
+    public void deletedAuthorityIsRemoved() throws Exception
+    {
+        add(1L, 2L);
+        add(2L, 10L);
+        add(2L, 11L);
+
+        // Delete group 2: detach it from its parent, then drop its own rows
+        remove(1L, 2L);
+        closureDAO.deleteAuthority(ref(2L));
+        memberships.clear();
+        assertEquals(0, closure.size());
+    }
+
+    @Test
+    public void ancestorsAreLockedBeforeTheChange() throws Exception
+    {
+        add(1L, 2L);
+        add(2L, 3L);
+        locks.clear();
+
+        add(3L, 10L);
+        assertEquals(Arrays.asList(Arrays.asList(3L, 10L), Arrays.asList(1L, 2L)), locks);
+        locks.clear();
+
+        remove(2L, 3L);
+        assertEquals(Arrays.asList(Arrays.asList(2L, 3L), Arrays.asList(1L)), locks);
+        locks.clear();
+
+        closureDAO.deleteAuthority(ref(10L));
+        assertEquals(Arrays.asList(Arrays.asList(10L)), locks);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link AccessCacheIndex} class.
+ * 
+ * @since 5.2
+ */
+public class AccessCacheIndexTest
+{
+    private DefaultSimpleCache<Serializable, AccessStatus> cache;
+    private AccessCacheIndex index;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        cache = new DefaultSimpleCache<Serializable, AccessStatus>(100, getClass().getName());
+        index = new AccessCacheIndex(1000);
+    }
+    
+    private void put(String key, Long aclId)
+    {
+        // Index first, as indexing may clear the cache
+        index.index(cache, key, aclId);
+        cache.put(key, AccessStatus.ALLOWED);
+    }
+    
+    @Test
+    public void aclChangeOnlyEvictsEntriesForThatAcl()
+    {
+        put("a", 1L);
+        put("b", 1L);
+        put("c", 2L);
+        
+        assertEquals(2, index.invalidateAcls(cache, Collections.singleton(1L)));
+        assertFalse(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        
+        // Nothing more to evict for the same ACL
+        assertEquals(0, index.invalidateAcls(cache, Arrays.asList(1L, 3L)));
+        
+        assertEquals(2, index.getAclInvalidationCount());
+        assertEquals(2, index.getAclInvalidatedEntryCount());
+        assertEquals(2, index.getMaxEntriesInvalidatedByAclChange());
+        assertEquals(1.0, index.getMeanEntriesInvalidatedPerAclChange(), 0.0);
+    }
+    
+    @Test
+    public void invalidateAllClearsCacheAndIndex()
+    {
+        put("a", 1L);
+        index.invalidateAll(cache);
+        assertFalse(cache.contains("a"));
+        assertEquals(0, index.invalidateAcls(cache, Collections.singleton(1L)));
+        assertEquals(1, index.getFullClearCount());
+    }
+    
+    @Test
+    public void cacheIsClearedWhenIndexIsFull()
+    {
+        index = new AccessCacheIndex(2);
+        put("a", 1L);
+        put("b", 2L);
+        // Exceeds the cap, so no entry may be left in the cache without being indexed
+        put("c", 1L);
+        
+        assertFalse(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(1, index.getFullClearCount());
+        assertEquals(1, index.invalidateAcls(cache, Collections.singleton(1L)));
+        assertFalse(cache.contains("c"));
+    }
+}
@@ -1854,6 +1854,70 @@ public class TaggingServiceImplTest extends TestCase
         });
     }
     
+    /**
+     * Test that the tag changes made in one transaction are queued
+     *  as a single update per tag scope
+     */
+    public void test93CoalescedUpdates() throws Exception
+    {
+        final UpdateTagScopesActionExecuter updateTagsAction = (UpdateTagScopesActionExecuter) ctx
+                .getBean("update-tagscope");
+        final String[] lock = new String[1];
+        asyncOccurs.awaitExecution(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                // Nothing is pending to start with
+                assertEquals(0, updateTagsAction.getPendingUpdateCount(100));
+                
+                // Take the tag scope lock, so that no real updates will happen
+                lock[0] = updateTagsAction.lockTagScope(folder);
+                
+                // Tag several documents below the one tag scope
+                taggingService.addTagScope(folder);
+                taggingService.addTag(document, TAG_1);
+                taggingService.addTag(document, TAG_2);
+                taggingService.addTag(subDocument, TAG_1);
+                taggingService.addTag(subDocument, TAG_2);
+                taggingService.removeTag(subDocument, TAG_2);
+                return null;
+            }
+        });
+        
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                // Only one update should have been queued for the scope
+                assertEquals(1, updateTagsAction.getPendingUpdateCount(100));
+                assertEquals(0, taggingService.findTagScope(folder).getTags().size());
+                return null;
+            }
+        });
+        
+        // Give back our lock, and have the queued update applied
+        updateTagsAction.unlockTagScope(folder, lock[0]);
+        UpdateTagScopesQuartzJob job = new UpdateTagScopesQuartzJob();
+        job.execute(actionService, updateTagsAction);
+        
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                assertEquals(0, updateTagsAction.getPendingUpdateCount(100));
+                
+                TagScope ts = taggingService.findTagScope(folder);
+                assertEquals("Wrong tags on folder tagscope: " + ts.getTags(), 2, ts.getTags().size());
+                assertEquals(2, ts.getTag(TAG_1).getCount());
+                assertEquals(1, ts.getTag(TAG_2).getCount());
+                return null;
+            }
+        });
+    }
+    
     /**
      * Test that when multiple threads do tag updates, the right thing still
      * happens
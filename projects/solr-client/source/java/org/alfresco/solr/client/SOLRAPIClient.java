@@ -25,6 +25,7 @@
  */
 package org.alfresco.solr.client;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -45,9 +46,12 @@ import org.alfresco.httpclient.AlfrescoHttpClient;
 import org.alfresco.httpclient.AuthenticationException;
 import org.alfresco.httpclient.GetRequest;
 import org.alfresco.httpclient.PostRequest;
+import org.alfresco.httpclient.Request;
 import org.alfresco.httpclient.Response;
 import org.alfresco.repo.dictionary.M2Model;
 import org.alfresco.repo.dictionary.NamespaceDAO;
+import org.alfresco.repo.index.TrackingDataInput;
+import org.alfresco.repo.index.TrackingDataOutput;
 import org.alfresco.repo.index.shard.ShardState;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
@@ -105,11 +109,23 @@ public class SOLRAPIClient
 
     private static final String CHECKSUM_HEADER = "XAlfresco-modelChecksum";
 
+    /**
+     * Receives node metadata as it is read from the repository response
+     */
+    public interface NodeMetaDataCallback
+    {
+        /**
+         * @return              <tt>true</tt> to continue reading nodes, or <tt>false</tt> to stop
+         */
+        boolean handleNodeMetaData(NodeMetaData nodeMetaData) throws AuthenticationException, IOException;
+    }
+
     private AlfrescoHttpClient repositoryHttpClient;
     private SOLRDeserializer deserializer;
     private DictionaryService dictionaryService;
     private JsonFactory jsonFactory;
     private NamespaceDAO namespaceDAO;
+    private boolean binaryTrackingEnabled = true;
 
     public SOLRAPIClient(AlfrescoHttpClient repositoryHttpClient,
             DictionaryService dictionaryService,
@@ -121,6 +137,36 @@ public class SOLRAPIClient
         this.deserializer = new SOLRDeserializer(namespaceDAO);
         this.jsonFactory = new JsonFactory();
     }
+
+    /**
+     * Ask the repository for the compact binary form of the tracking responses. Repositories that do
+     * not support it answer with JSON, which is always understood.
+     */
+    public void setBinaryTrackingEnabled(boolean binaryTrackingEnabled)
+    {
+        this.binaryTrackingEnabled = binaryTrackingEnabled;
+    }
+
+    private void acceptTrackingData(Request req)
+    {
+        if (binaryTrackingEnabled)
+        {
+            Map<String, String> headers = new HashMap<String, String>(1, 1.0f);
+            headers.put("Accept", TrackingDataOutput.MIMETYPE + ", application/json");
+            req.setHeaders(headers);
+        }
+    }
+
+    private boolean isTrackingData(Response response)
+    {
+        String contentType = response.getContentType();
+        return contentType != null && contentType.startsWith(TrackingDataOutput.MIMETYPE);
+    }
+
+    private TrackingDataInput getTrackingDataInput(Response response) throws IOException
+    {
+        return new TrackingDataInput(new BufferedInputStream(response.getContentAsStream()));
+    }
     
     /**
      * Get the ACL ChangeSets
@@ -315,6 +361,7 @@ public class SOLRAPIClient
         jsonReq.put("aclIds", aclIdsJSON);
 
         PostRequest req = new PostRequest(url.toString(), jsonReq.toString(), "application/json");
+        acceptTrackingData(req);
         Response response = null;
         JSONObject json = null;
         try
@@ -325,6 +372,11 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException(GET_ACLS_READERS + " return status:" + response.getStatus());
             }
+
+            if (isTrackingData(response))
+            {
+                return readAclReaders(getTrackingDataInput(response));
+            }
         
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
@@ -366,6 +418,36 @@ public class SOLRAPIClient
         // Done
         return aclsReaders;
     }
+
+    private List<AclReaders> readAclReaders(TrackingDataInput in) throws IOException
+    {
+        List<AclReaders> aclsReaders = new ArrayList<AclReaders>();
+        while (in.readBoolean())
+        {
+            long aclId = in.readLong();
+            long aclChangeSetId = in.readLong();
+            String tenantDomain = in.readToken();
+            if (tenantDomain == null)
+            {
+                tenantDomain = TenantService.DEFAULT_DOMAIN;
+            }
+            List<String> readers = readAuthorities(in);
+            List<String> denied = readAuthorities(in);
+            aclsReaders.add(new AclReaders(aclId, readers, denied, aclChangeSetId, tenantDomain));
+        }
+        return aclsReaders;
+    }
+
+    private List<String> readAuthorities(TrackingDataInput in) throws IOException
+    {
+        int count = (int) in.readLong();
+        List<String> authorities = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            authorities.add(in.readToken());
+        }
+        return authorities;
+    }
     
     /**
      * Convert a JSON array of authorities to a simple Java List&lt;String&gt;
@@ -476,6 +558,7 @@ public class SOLRAPIClient
         url.append(args);
         
         GetRequest req = new GetRequest(url.toString());
+        acceptTrackingData(req);
         Response response = null;
         List<Transaction> transactions = new ArrayList<Transaction>();
         Long maxTxnCommitTime = null;
@@ -488,6 +571,21 @@ public class SOLRAPIClient
                 throw new AlfrescoRuntimeException("GetTransactions return status is " + response.getStatus());
             }
 
+            if (isTrackingData(response))
+            {
+                TrackingDataInput in = getTrackingDataInput(response);
+                while (in.readBoolean())
+                {
+                    Transaction txn = new Transaction();
+                    txn.setId(in.readLong());
+                    txn.setCommitTimeMs(in.readLong());
+                    txn.setUpdates(in.readLong());
+                    txn.setDeletes(in.readLong());
+                    transactions.add(txn);
+                }
+                return new Transactions(transactions, in.readNullableLong(), in.readNullableLong());
+            }
+
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             JsonParser parser = jsonFactory.createJsonParser(reader);
             
@@ -609,6 +707,7 @@ public class SOLRAPIClient
         }
         
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
+        acceptTrackingData(req);
  
         Response response = null;
         JSONObject json = null;
@@ -620,6 +719,11 @@ public class SOLRAPIClient
                 throw new AlfrescoRuntimeException("GetNodes return status is " + response.getStatus());
             }
 
+            if (isTrackingData(response))
+            {
+                return readNodes(getTrackingDataInput(response));
+            }
+
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
         }
@@ -696,6 +800,28 @@ public class SOLRAPIClient
 
         return nodes;
     }
+
+    private List<Node> readNodes(TrackingDataInput in) throws IOException
+    {
+        List<Node> nodes = new ArrayList<Node>();
+        while (in.readBoolean())
+        {
+            Node nodeInfo = new Node();
+            nodeInfo.setId(in.readLong());
+            nodeInfo.setNodeRef(in.readNodeRef());
+            nodeInfo.setTxnId(in.readLong());
+            nodeInfo.setStatus(in.readBoolean() ? Node.SolrApiNodeStatus.DELETED : Node.SolrApiNodeStatus.UPDATED);
+            Long aclId = in.readNullableLong();
+            if (aclId != null)
+            {
+                nodeInfo.setAclId(aclId);
+            }
+            nodeInfo.setShardPropertyValue(in.readString());
+            nodeInfo.setTenant(in.readToken());
+            nodes.add(nodeInfo);
+        }
+        return nodes;
+    }
     
     private PropertyValue getSinglePropertyValue(DataTypeDefinition dataType, Object value) throws JSONException
     {
@@ -789,6 +915,30 @@ public class SOLRAPIClient
     }
     
     public List<NodeMetaData> getNodesMetaData(NodeMetaDataParameters params, int maxResults) throws AuthenticationException, IOException, JSONException
+    {
+        final List<NodeMetaData> nodes = new ArrayList<NodeMetaData>();
+        getNodesMetaData(params, maxResults, new NodeMetaDataCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                nodes.add(nodeMetaData);
+                return true;
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * Get the metadata for nodes, handing each node to the callback as soon as it has been read
+     * from the response rather than after the whole response has been parsed.
+     * 
+     * @param params                        the nodes to fetch and the metadata to include
+     * @param maxResults                    the maximum number of results
+     * @param callback                      receives each node in the order returned by the repository
+     */
+    public void getNodesMetaData(NodeMetaDataParameters params, int maxResults, NodeMetaDataCallback callback)
+            throws AuthenticationException, IOException, JSONException
     {
         List<Long> nodeIds = params.getNodeIds();
         
@@ -860,8 +1010,8 @@ public class SOLRAPIClient
         body.put("maxResults", maxResults);
 
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
+        acceptTrackingData(req);
         Response response = null;
-        JSONObject json = null;
         try
         {
             response = repositoryHttpClient.sendRequest(req);
@@ -869,9 +1019,22 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException("GetNodeMetaData return status is " + response.getStatus());
             }
+
+            if(isTrackingData(response))
+            {
+                TrackingDataInput in = getTrackingDataInput(response);
+                while(in.readBoolean())
+                {
+                    if(!callback.handleNodeMetaData(readNodeMetaData(in)))
+                    {
+                        return;
+                    }
+                }
+                return;
+            }
         
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
-            json = new JSONObject(new JSONTokener(reader));
+            readNodesMetaData(reader, callback);
         }
         finally
         {
@@ -880,185 +1043,406 @@ public class SOLRAPIClient
                 response.release();
             }
         }
+    }
 
-        if (log.isDebugEnabled())
+    /**
+     * Pull the nodes out of a <tt>{"nodes": [...]}</tt> response one at a time, so that only the
+     * node currently being handled is held in memory.
+     * <p/>
+     * The repository has already sent a successful status by the time it writes the nodes, so a
+     * failure part way through shows up only as an incomplete document. That is reported as a
+     * {@link JSONException}, after the nodes read before the break have been handed to the callback.
+     */
+    void readNodesMetaData(Reader reader, NodeMetaDataCallback callback)
+            throws AuthenticationException, IOException, JSONException
+    {
+        JSONTokener tokener = new JSONTokener(reader);
+        if(nextClean(tokener) != '{')
         {
-            log.debug(json.toString(3));
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
         }
-        
-        JSONArray jsonNodes = json.getJSONArray("nodes");
-        
-        List<NodeMetaData> nodes = new ArrayList<NodeMetaData>(jsonNodes.length());
-        for(int i = 0; i < jsonNodes.length(); i++)
+        char c = nextClean(tokener);
+        while(c != '}')
         {
-            JSONObject jsonNodeInfo = jsonNodes.getJSONObject(i);
-            NodeMetaData metaData = new NodeMetaData();
-            
-            if(jsonNodeInfo.has("id"))
+            tokener.back();
+            String key = tokener.nextValue().toString();
+            if(nextClean(tokener) != ':')
             {
-                metaData.setId(jsonNodeInfo.getLong("id"));
+                throw tokener.syntaxError("Expected a ':' after a key");
             }
-            
-            if(jsonNodeInfo.has("tenantDomain"))
+            if("nodes".equals(key))
+            {
+                if(nextClean(tokener) != '[')
+                {
+                    throw tokener.syntaxError("Expected a '[' to start the nodes");
+                }
+                c = nextClean(tokener);
+                while(c != ']')
+                {
+                    tokener.back();
+                    Object value = tokener.nextValue();
+                    if(!(value instanceof JSONObject))
+                    {
+                        throw tokener.syntaxError("Expected a node object");
+                    }
+                    JSONObject jsonNodeInfo = (JSONObject)value;
+                    if (log.isDebugEnabled())
+                    {
+                        log.debug(jsonNodeInfo.toString(3));
+                    }
+                    if(!callback.handleNodeMetaData(getNodeMetaData(jsonNodeInfo)))
+                    {
+                        // the rest of the response is not wanted
+                        return;
+                    }
+                    c = nextClean(tokener);
+                    if(c == ',')
+                    {
+                        c = nextClean(tokener);
+                    }
+                    else if(c != ']')
+                    {
+                        throw tokener.syntaxError("Expected a ',' or ']'");
+                    }
+                }
+            }
+            else
             {
-                metaData.setTenantDomain(jsonNodeInfo.getString("tenantDomain"));
+                tokener.nextValue();
             }
-            
-            if(jsonNodeInfo.has("txnId"))
+            c = nextClean(tokener);
+            if(c == ',')
             {
-                metaData.setTxnId(jsonNodeInfo.getLong("txnId"));
+                c = nextClean(tokener);
             }
-            
-            if(jsonNodeInfo.has("aclId"))
+            else if(c != '}')
             {
-                metaData.setAclId(jsonNodeInfo.getLong("aclId"));
+                throw tokener.syntaxError("Expected a ',' or '}'");
             }
+        }
+    }
 
-            if(jsonNodeInfo.has("nodeRef"))
+    /**
+     * @return              the next character that is not whitespace, failing at the end of the response
+     */
+    private static char nextClean(JSONTokener tokener) throws JSONException
+    {
+        char c = tokener.nextClean();
+        if(c == 0)
+        {
+            throw tokener.syntaxError("Incomplete node metadata response");
+        }
+        return c;
+    }
+
+    private NodeMetaData readNodeMetaData(TrackingDataInput in) throws IOException, JSONException
+    {
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setId(in.readLong());
+        metaData.setTenantDomain(in.readToken());
+        String nodeRef = in.readNodeRef();
+        if(nodeRef != null)
+        {
+            metaData.setNodeRef(new NodeRef(nodeRef));
+        }
+        metaData.setType(in.readQName());
+        Long aclId = in.readNullableLong();
+        if(aclId != null)
+        {
+            metaData.setAclId(aclId);
+        }
+        Long txnId = in.readNullableLong();
+        if(txnId != null)
+        {
+            metaData.setTxnId(txnId);
+        }
+
+        int count = (int)in.readLong();
+        if(count >= 0)
+        {
+            Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(count);
+            for(int i = 0; i < count; i++)
             {
-                metaData.setNodeRef(new NodeRef(jsonNodeInfo.getString("nodeRef")));
+                QName propQName = in.readQName();
+                int kind = (int)in.readLong();
+                PropertyValue value = null;
+                if(kind == TrackingDataOutput.PROPERTY_STRING)
+                {
+                    value = new StringPropertyValue(in.readString());
+                }
+                else if(kind == TrackingDataOutput.PROPERTY_JSON)
+                {
+                    Object propValueObj = new JSONTokener(in.readString()).nextValue();
+                    value = getPropertyValue(dictionaryService.getProperty(propQName), propValueObj);
+                }
+                properties.put(propQName, value);
             }
-            
-            if(jsonNodeInfo.has("type"))
+            metaData.setProperties(properties);
+        }
+
+        count = (int)in.readLong();
+        if(count >= 0)
+        {
+            Set<QName> aspects = new HashSet<QName>(count);
+            for(int i = 0; i < count; i++)
             {
-                metaData.setType(deserializer.deserializeValue(QName.class, jsonNodeInfo.getString("type")));
+                aspects.add(in.readQName());
             }
-            
-            if(jsonNodeInfo.has("aspects"))
+            metaData.setAspects(aspects);
+        }
+
+        count = (int)in.readLong();
+        if(count >= 0)
+        {
+            List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(count);
+            for(int i = 0; i < count; i++)
             {
-                JSONArray jsonAspects = jsonNodeInfo.getJSONArray("aspects");
-                Set<QName> aspects = new HashSet<QName>(jsonAspects.length());
-                for(int j = 0; j < jsonAspects.length(); j++)
-                {
-                    String jsonAspect = (String)jsonAspects.get(j);
-                    aspects.add(deserializer.deserializeValue(QName.class, jsonAspect));
-                }
-                metaData.setAspects(aspects);
+                String pathValue = in.readString();
+                paths.add(new Pair<String, QName>(pathValue, in.readQName()));
             }
+            metaData.setPaths(paths);
+        }
 
-            if(jsonNodeInfo.has("paths"))
+        count = (int)in.readLong();
+        if(count >= 0)
+        {
+            HashSet<NodeRef> ancestors = new HashSet<NodeRef>(count);
+            for(int i = 0; i < count; i++)
             {
-                JSONArray jsonPaths = jsonNodeInfo.getJSONArray("paths");
-                List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(jsonPaths.length());
-                for(int j = 0; j < jsonPaths.length(); j++)
-                {
-                    JSONObject path = jsonPaths.getJSONObject(j);
-                    String pathValue = path.getString("path");
-                    QName qname = path.has("qname") ? deserializer.deserializeValue(QName.class, path.getString("qname")) : null;
-                    paths.add(new Pair<String, QName>(pathValue, qname));
-                }
-                metaData.setPaths(paths);
+                ancestors.add(new NodeRef(in.readNodeRef()));
             }
-            
-            if(jsonNodeInfo.has("namePaths"))
+            metaData.setAncestors(ancestors);
+        }
+
+        count = (int)in.readLong();
+        if(count >= 0)
+        {
+            List<List<String>> namePaths = new ArrayList<List<String>>(count);
+            for(int i = 0; i < count; i++)
             {
-                JSONArray jsonNamePaths = jsonNodeInfo.getJSONArray("namePaths");
-                List<List<String>> namePaths = new ArrayList<List<String>>(jsonNamePaths.length());
-                for(int j = 0; j < jsonNamePaths.length(); j++)
+                int elements = (int)in.readLong();
+                List<String> namePath = new ArrayList<String>(elements);
+                for(int j = 0; j < elements; j++)
                 {
-                    JSONObject jsonNamePath = jsonNamePaths.getJSONObject(j);
-                    JSONArray jsonNameElements = jsonNamePath.getJSONArray("namePath");
-                    List<String> namePath = new ArrayList<String>(jsonNameElements.length());
-                    for(int k = 0; k < jsonNameElements.length(); k++)
-                    {
-                        String namePathElement =  jsonNameElements.getString(k);
-                        namePath.add(namePathElement);
-                    }
-                    namePaths.add(namePath);
+                    namePath.add(in.readString());
                 }
-                metaData.setNamePaths(namePaths);
+                namePaths.add(namePath);
             }
-            
-            if(jsonNodeInfo.has("ancestors"))
+            metaData.setNamePaths(namePaths);
+        }
+
+        List<ChildAssociationRef> parentAssocs = readChildAssocs(in);
+        if(parentAssocs != null)
+        {
+            metaData.setParentAssocs(parentAssocs);
+            Long parentAssocsCrc = in.readNullableLong();
+            if(parentAssocsCrc != null)
+            {
+                metaData.setParentAssocsCrc(parentAssocsCrc);
+            }
+        }
+        List<ChildAssociationRef> childAssocs = readChildAssocs(in);
+        if(childAssocs != null)
+        {
+            metaData.setChildAssocs(childAssocs);
+        }
+
+        count = (int)in.readLong();
+        if(count >= 0)
+        {
+            List<Long> childIds = new ArrayList<Long>(count);
+            for(int i = 0; i < count; i++)
+            {
+                childIds.add(in.readLong());
+            }
+            metaData.setChildIds(childIds);
+        }
+
+        metaData.setOwner(in.readString());
+        return metaData;
+    }
+
+    private List<ChildAssociationRef> readChildAssocs(TrackingDataInput in) throws IOException
+    {
+        int count = (int)in.readLong();
+        if(count < 0)
+        {
+            return null;
+        }
+        List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(count);
+        for(int i = 0; i < count; i++)
+        {
+            assocs.add(new ChildAssociationRef(in.readString()));
+        }
+        return assocs;
+    }
+
+    private NodeMetaData getNodeMetaData(JSONObject jsonNodeInfo) throws JSONException
+    {
+        NodeMetaData metaData = new NodeMetaData();
+        
+        if(jsonNodeInfo.has("id"))
+        {
+            metaData.setId(jsonNodeInfo.getLong("id"));
+        }
+        
+        if(jsonNodeInfo.has("tenantDomain"))
+        {
+            metaData.setTenantDomain(jsonNodeInfo.getString("tenantDomain"));
+        }
+        
+        if(jsonNodeInfo.has("txnId"))
+        {
+            metaData.setTxnId(jsonNodeInfo.getLong("txnId"));
+        }
+        
+        if(jsonNodeInfo.has("aclId"))
+        {
+            metaData.setAclId(jsonNodeInfo.getLong("aclId"));
+        }
+
+        if(jsonNodeInfo.has("nodeRef"))
+        {
+            metaData.setNodeRef(new NodeRef(jsonNodeInfo.getString("nodeRef")));
+        }
+        
+        if(jsonNodeInfo.has("type"))
+        {
+            metaData.setType(deserializer.deserializeValue(QName.class, jsonNodeInfo.getString("type")));
+        }
+        
+        if(jsonNodeInfo.has("aspects"))
+        {
+            JSONArray jsonAspects = jsonNodeInfo.getJSONArray("aspects");
+            Set<QName> aspects = new HashSet<QName>(jsonAspects.length());
+            for(int j = 0; j < jsonAspects.length(); j++)
+            {
+                String jsonAspect = (String)jsonAspects.get(j);
+                aspects.add(deserializer.deserializeValue(QName.class, jsonAspect));
+            }
+            metaData.setAspects(aspects);
+        }
+
+        if(jsonNodeInfo.has("paths"))
+        {
+            JSONArray jsonPaths = jsonNodeInfo.getJSONArray("paths");
+            List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(jsonPaths.length());
+            for(int j = 0; j < jsonPaths.length(); j++)
+            {
+                JSONObject path = jsonPaths.getJSONObject(j);
+                String pathValue = path.getString("path");
+                QName qname = path.has("qname") ? deserializer.deserializeValue(QName.class, path.getString("qname")) : null;
+                paths.add(new Pair<String, QName>(pathValue, qname));
+            }
+            metaData.setPaths(paths);
+        }
+        
+        if(jsonNodeInfo.has("namePaths"))
+        {
+            JSONArray jsonNamePaths = jsonNodeInfo.getJSONArray("namePaths");
+            List<List<String>> namePaths = new ArrayList<List<String>>(jsonNamePaths.length());
+            for(int j = 0; j < jsonNamePaths.length(); j++)
             {
-                JSONArray jsonAncestors = jsonNodeInfo.getJSONArray("ancestors");
-                HashSet<NodeRef> ancestors = new HashSet<NodeRef>(jsonAncestors.length());
-                for(int j = 0; j < jsonAncestors.length(); j++)
+                JSONObject jsonNamePath = jsonNamePaths.getJSONObject(j);
+                JSONArray jsonNameElements = jsonNamePath.getJSONArray("namePath");
+                List<String> namePath = new ArrayList<String>(jsonNameElements.length());
+                for(int k = 0; k < jsonNameElements.length(); k++)
                 {
-                    String ancestorNodeRefString = jsonAncestors.getString(j);
-                    NodeRef ancestorNodeRef = new NodeRef(ancestorNodeRefString);
-                    ancestors.add(ancestorNodeRef);
+                    String namePathElement =  jsonNameElements.getString(k);
+                    namePath.add(namePathElement);
                 }
-                metaData.setAncestors(ancestors);
+                namePaths.add(namePath);
+            }
+            metaData.setNamePaths(namePaths);
+        }
+        
+        if(jsonNodeInfo.has("ancestors"))
+        {
+            JSONArray jsonAncestors = jsonNodeInfo.getJSONArray("ancestors");
+            HashSet<NodeRef> ancestors = new HashSet<NodeRef>(jsonAncestors.length());
+            for(int j = 0; j < jsonAncestors.length(); j++)
+            {
+                String ancestorNodeRefString = jsonAncestors.getString(j);
+                NodeRef ancestorNodeRef = new NodeRef(ancestorNodeRefString);
+                ancestors.add(ancestorNodeRef);
             }
+            metaData.setAncestors(ancestors);
+        }
 
-            if(jsonNodeInfo.has("properties"))
+        if(jsonNodeInfo.has("properties"))
+        {
+            JSONObject jsonProperties = jsonNodeInfo.getJSONObject("properties");
+            Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(jsonProperties.length());
+            @SuppressWarnings("rawtypes")
+            Iterator propKeysIterator = jsonProperties.keys();
+            while(propKeysIterator.hasNext())
             {
-                JSONObject jsonProperties = jsonNodeInfo.getJSONObject("properties");
-                Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(jsonProperties.length());
-                @SuppressWarnings("rawtypes")
-                Iterator propKeysIterator = jsonProperties.keys();
-                while(propKeysIterator.hasNext())
-                {
-                    String propName = (String)propKeysIterator.next();
-                    QName propQName = deserializer.deserializeValue(QName.class, propName);
-                    Object propValueObj = jsonProperties.opt(propName);
+                String propName = (String)propKeysIterator.next();
+                QName propQName = deserializer.deserializeValue(QName.class, propName);
+                Object propValueObj = jsonProperties.opt(propName);
 
-                    // check the expected property type to determine how to process the value
-                    PropertyDefinition propertyDef = dictionaryService.getProperty(propQName);
+                // check the expected property type to determine how to process the value
+                PropertyDefinition propertyDef = dictionaryService.getProperty(propQName);
 //                    if(propertyDef == null)
 //                    {
 //                        // TODO which exception here?
 //                        throw new IllegalArgumentException("Could not find property definition for property " + propName);
 //                    }
-                    
-                    properties.put(propQName, getPropertyValue(propertyDef, propValueObj));
-                }
-                metaData.setProperties(properties);
-            }
-            
-            if(jsonNodeInfo.has("parentAssocsCrc"))
-            {
-                metaData.setParentAssocsCrc(jsonNodeInfo.getLong("parentAssocsCrc"));
-            }
-            
-            if(jsonNodeInfo.has("parentAssocs"))
-            {
-                JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("parentAssocs");
-                List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
-                for(int j = 0; j < jsonParentAssocs.length(); j++)
-                {
-                    String childAssocRefStr = jsonParentAssocs.getString(j);
-                    ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
-                    assocs.add(childAssociationRef);
-                }
-                metaData.setParentAssocs(assocs);
+                
+                properties.put(propQName, getPropertyValue(propertyDef, propValueObj));
             }
-            
-            if(jsonNodeInfo.has("childAssocs"))
+            metaData.setProperties(properties);
+        }
+        
+        if(jsonNodeInfo.has("parentAssocsCrc"))
+        {
+            metaData.setParentAssocsCrc(jsonNodeInfo.getLong("parentAssocsCrc"));
+        }
+        
+        if(jsonNodeInfo.has("parentAssocs"))
+        {
+            JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("parentAssocs");
+            List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
+            for(int j = 0; j < jsonParentAssocs.length(); j++)
             {
-                JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("childAssocs");
-                List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
-                for(int j = 0; j < jsonParentAssocs.length(); j++)
-                {
-                    String childAssocRefStr = jsonParentAssocs.getString(j);
-                    ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
-                    assocs.add(childAssociationRef);
-                }
-                metaData.setChildAssocs(assocs);
+                String childAssocRefStr = jsonParentAssocs.getString(j);
+                ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
+                assocs.add(childAssociationRef);
             }
-            
-            if(jsonNodeInfo.has("childIds"))
+            metaData.setParentAssocs(assocs);
+        }
+        
+        if(jsonNodeInfo.has("childAssocs"))
+        {
+            JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("childAssocs");
+            List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
+            for(int j = 0; j < jsonParentAssocs.length(); j++)
             {
-                JSONArray jsonChildIds = jsonNodeInfo.getJSONArray("childIds");
-                List<Long> childIds = new ArrayList<Long>(jsonChildIds.length());
-                for(int j = 0; j < jsonChildIds.length(); j++)
-                {
-                    Long childId = jsonChildIds.getLong(j);
-                    childIds.add(childId);
-                }
-                metaData.setChildIds(childIds);
+                String childAssocRefStr = jsonParentAssocs.getString(j);
+                ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
+                assocs.add(childAssociationRef);
             }
-            
-            if(jsonNodeInfo.has("owner"))
+            metaData.setChildAssocs(assocs);
+        }
+        
+        if(jsonNodeInfo.has("childIds"))
+        {
+            JSONArray jsonChildIds = jsonNodeInfo.getJSONArray("childIds");
+            List<Long> childIds = new ArrayList<Long>(jsonChildIds.length());
+            for(int j = 0; j < jsonChildIds.length(); j++)
             {
-                metaData.setOwner(jsonNodeInfo.getString("owner"));
+                Long childId = jsonChildIds.getLong(j);
+                childIds.add(childId);
             }
-            
-            nodes.add(metaData);
+            metaData.setChildIds(childIds);
         }
-
-        return nodes;
+        
+        if(jsonNodeInfo.has("owner"))
+        {
+            metaData.setOwner(jsonNodeInfo.getString("owner"));
+        }
+        
+        return metaData;
     }
     
     public GetTextContentResponse getTextContent(Long nodeId, QName propertyQName, Long modifiedSince) throws AuthenticationException, IOException
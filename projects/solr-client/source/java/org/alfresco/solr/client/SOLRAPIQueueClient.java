@@ -279,6 +279,15 @@ public class SOLRAPIQueueClient extends SOLRAPIClient
         return nodeMetaDatas;
     }
 
+    public void getNodesMetaData(NodeMetaDataParameters params, int maxResults, NodeMetaDataCallback callback) throws AuthenticationException, IOException, JSONException
+    {
+        for (NodeMetaData nodeMetaData : getNodesMetaData(params, maxResults)) {
+            if (!callback.handleNodeMetaData(nodeMetaData)) {
+                return;
+            }
+        }
+    }
+
     public GetTextContentResponse getTextContent(Long nodeId, QName propertyQName, Long modifiedSince) throws AuthenticationException, IOException
     {
         //Just put the nodeId innto the content so we query for this in tests.
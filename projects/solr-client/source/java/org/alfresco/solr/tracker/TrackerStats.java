@@ -60,6 +60,12 @@ public class TrackerStats
     ConcurrentHashMap<String, IncrementalStats> elapsedAclTimes = new ConcurrentHashMap<String, IncrementalStats>();
     
     ConcurrentHashMap<String, IncrementalStats> elapsedContentTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> nodeFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> nodeMetaDataFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> nodePrefetchWaitTimes = new ConcurrentHashMap<String, IncrementalStats>();
 
     private InformationServerCollectionProvider infoSrv;
     
@@ -169,6 +175,30 @@ public class TrackerStats
         return aggregateResults(docTransformationTimes);
     }
 
+    /**
+     * @return the mean time per node spent fetching nodes for transactions
+     */
+    public SimpleStats getNodeFetchTimes()
+    {
+        return aggregateResults(nodeFetchTimes);
+    }
+
+    /**
+     * @return the mean time per node spent fetching node metadata
+     */
+    public SimpleStats getNodeMetaDataFetchTimes()
+    {
+        return aggregateResults(nodeMetaDataFetchTimes);
+    }
+
+    /**
+     * @return the time the metadata tracker spent waiting for prefetched nodes
+     */
+    public SimpleStats getNodePrefetchWaitTimes()
+    {
+        return aggregateResults(nodePrefetchWaitTimes);
+    }
+
     public double getMeanModelSyncTime()
     {
         return aggregateResults(modelTimes).getMean();
@@ -915,6 +945,57 @@ public class TrackerStats
         
     }
     
+    /**
+     * Records the mean time per node of a single fetch of nodes for transactions
+     * 
+     * @param nodeCount int
+     * @param time long
+     */
+    public void addNodeFetchTime(int nodeCount, long time)
+    {
+        addMeanTime(nodeFetchTimes, nodeCount, time);
+    }
+    
+    /**
+     * Records the mean time per node of a single fetch of node metadata
+     * 
+     * @param nodeCount int
+     * @param time long
+     */
+    public void addNodeMetaDataFetchTime(int nodeCount, long time)
+    {
+        addMeanTime(nodeMetaDataFetchTimes, nodeCount, time);
+    }
+    
+    /**
+     * @param time long
+     */
+    public void addNodePrefetchWaitTime(long time)
+    {
+        IncrementalStats stats = nodePrefetchWaitTimes.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            nodePrefetchWaitTimes.put(Thread.currentThread().getName(), stats);
+        }
+        stats.add(time);
+    }
+    
+    private void addMeanTime(ConcurrentHashMap<String, IncrementalStats> all, int count, long time)
+    {
+        if(count < 1)
+        {
+            return;
+        }
+        IncrementalStats stats = all.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            all.put(Thread.currentThread().getName(), stats);
+        }
+        stats.add(time / count);
+    }
+    
     /**
      * @param size int
      */
@@ -980,6 +1061,9 @@ public class TrackerStats
         txDocs.clear();
         docTransformationTimes.clear();
         nodeTimes.clear();
+        nodeFetchTimes.clear();
+        nodeMetaDataFetchTimes.clear();
+        nodePrefetchWaitTimes.clear();
     }
 
  
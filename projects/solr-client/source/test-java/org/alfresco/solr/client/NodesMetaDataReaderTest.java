@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * Alfresco Solr Client
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.alfresco.repo.dictionary.NamespaceDAO;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.SOLRAPIClient.NodeMetaDataCallback;
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads node metadata in the JSON form written by the repository's <tt>api/solr/metadata</tt> web script.
+ *
+ * @since 5.2
+ */
+public class NodesMetaDataReaderTest
+{
+    private static final String CM = NamespaceService.CONTENT_MODEL_1_0_URI;
+    private static final String AWKWARD = "He said \"hi\\there\"\n\tand left </script>";
+    private static final String AWKWARD_JSON = "\"He said \\\"hi\\\\there\\\"\\n\\tand left <\\/script>\"";
+
+    private static final String ROOT = "workspace://SpacesStore/root";
+    private static final String FOLDER = "workspace://SpacesStore/folder";
+    private static final String DOC = "workspace://SpacesStore/doc";
+    private static final String PARENT_ASSOC = FOLDER + "|" + DOC + "|{" + CM + "}contains|{" + CM + "}doc|true|-1";
+
+    private static final String NODE =
+            "{\"id\":1,\"tenantDomain\":\"\",\"nodeRef\":\"" + DOC + "\",\"type\":\"cm:content\",\"aclId\":2,\"txnId\":3" +
+            ",\"properties\":{\"{" + CM + "}name\":" + AWKWARD_JSON + ",\"{" + CM + "}undefined\":null" +
+            ",\"{" + CM + "}tags\":[\"a\"," + AWKWARD_JSON + "]}" +
+            ",\"aspects\":[\"cm:titled\"]" +
+            ",\"paths\":[{\"path\":\"/{" + CM + "}folder/{" + CM + "}doc\",\"qname\":\"{" + CM + "}doc\"}]" +
+            ",\"ancestors\":[\"" + ROOT + "\",\"" + FOLDER + "\"]" +
+            ",\"namePaths\":[{\"namePath\":[\"Company Home\"," + AWKWARD_JSON + "]}]" +
+            ",\"parentAssocs\":[\"" + PARENT_ASSOC + "\"],\"parentAssocsCrc\":42" +
+            ",\"childIds\":[3,4],\"owner\":" + AWKWARD_JSON + "}";
+
+    private SOLRAPIClient client;
+    private List<NodeMetaData> nodes;
+    private NodeMetaDataCallback collector;
+
+    @Before
+    public void setUp()
+    {
+        NamespaceDAO namespaceDAO = mock(NamespaceDAO.class);
+        when(namespaceDAO.getNamespaceURI("cm")).thenReturn(CM);
+
+        DataTypeDefinition text = mock(DataTypeDefinition.class);
+        when(text.getName()).thenReturn(DataTypeDefinition.TEXT);
+        PropertyDefinition tags = mock(PropertyDefinition.class);
+        when(tags.getDataType()).thenReturn(text);
+        when(tags.isMultiValued()).thenReturn(true);
+        DictionaryService dictionaryService = mock(DictionaryService.class);
+        when(dictionaryService.getProperty(QName.createQName(CM, "tags"))).thenReturn(tags);
+
+        client = new SOLRAPIClient(null, dictionaryService, namespaceDAO);
+        nodes = new ArrayList<NodeMetaData>();
+        collector = new NodeMetaDataCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                nodes.add(nodeMetaData);
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void readsEveryPartOfANode() throws Exception
+    {
+        read("{\"nodes\":[" + NODE + "]}", collector);
+
+        assertEquals(1, nodes.size());
+        NodeMetaData node = nodes.get(0);
+        assertEquals(1L, node.getId());
+        assertEquals("", node.getTenantDomain());
+        assertEquals(new NodeRef(DOC), node.getNodeRef());
+        assertEquals(QName.createQName(CM, "content"), node.getType());
+        assertEquals(2L, node.getAclId());
+        assertEquals(3L, node.getTxnId());
+
+        assertEquals(AWKWARD, ((StringPropertyValue)node.getProperties().get(QName.createQName(CM, "name"))).getValue());
+        assertTrue(node.getProperties().containsKey(QName.createQName(CM, "undefined")));
+        assertNull(node.getProperties().get(QName.createQName(CM, "undefined")));
+        List<PropertyValue> tags = ((MultiPropertyValue)node.getProperties().get(QName.createQName(CM, "tags"))).getValues();
+        assertEquals(2, tags.size());
+        assertEquals(AWKWARD, ((StringPropertyValue)tags.get(1)).getValue());
+
+        assertEquals(Collections.singleton(QName.createQName(CM, "titled")), node.getAspects());
+        assertEquals(1, node.getPaths().size());
+        assertEquals("/{" + CM + "}folder/{" + CM + "}doc", node.getPaths().get(0).getFirst());
+        assertEquals(QName.createQName(CM, "doc"), node.getPaths().get(0).getSecond());
+        assertEquals(new HashSet<NodeRef>(Arrays.asList(new NodeRef(ROOT), new NodeRef(FOLDER))), node.getAncestors());
+        assertEquals(Collections.singletonList(Arrays.asList("Company Home", AWKWARD)), node.getNamePaths());
+        assertEquals(Collections.singletonList(new ChildAssociationRef(PARENT_ASSOC)), node.getParentAssocs());
+        assertEquals(42L, node.getParentAssocsCrc());
+        assertEquals(Arrays.asList(3L, 4L), node.getChildIds());
+        assertEquals(AWKWARD, node.getOwner());
+    }
+
+    @Test
+    public void readsNodesInOrderAndSkipsOtherValues() throws Exception
+    {
+        read("{\"count\":{\"a\":[1,2]}, \"nodes\":[ {\"id\":5}, {\"id\":6} ], \"more\":true}", collector);
+
+        assertEquals(2, nodes.size());
+        assertEquals(5L, nodes.get(0).getId());
+        assertEquals(6L, nodes.get(1).getId());
+    }
+
+    @Test
+    public void stopsWhenTheCallbackDeclines() throws Exception
+    {
+        // the unread remainder is not checked
+        read("{\"nodes\":[{\"id\":5},{\"id\":6},", new NodeMetaDataCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                nodes.add(nodeMetaData);
+                return false;
+            }
+        });
+
+        assertEquals(1, nodes.size());
+    }
+
+    @Test
+    public void incompleteResponsesFail() throws Exception
+    {
+        String response = "{\"nodes\":[" + NODE + "," + NODE + "]}";
+        for (int length = 0; length < response.length(); length++)
+        {
+            try
+            {
+                read(response.substring(0, length), collector);
+                fail("Read an incomplete response: " + response.substring(0, length));
+            }
+            catch (JSONException e)
+            {
+                // expected
+            }
+        }
+        nodes.clear();
+        read(response, collector);
+        assertEquals(2, nodes.size());
+    }
+
+    private void read(String response, NodeMetaDataCallback callback) throws Exception
+    {
+        client.readNodesMetaData(new StringReader(response), callback);
+    }
+}
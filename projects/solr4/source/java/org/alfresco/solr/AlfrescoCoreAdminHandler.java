@@ -1247,6 +1247,12 @@ public class AlfrescoCoreAdminHandler extends CoreAdminHandler
                     srv.getTrackerStats().getAclTimes().getNamedList(detail, hist, values));
         coreSummary.add("Node index time (ms)",
                     srv.getTrackerStats().getNodeTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Node fetch time per node (ms)",
+                    srv.getTrackerStats().getNodeFetchTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Node metadata fetch time per node (ms)",
+                    srv.getTrackerStats().getNodeMetaDataFetchTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Node prefetch wait time (ms)",
+                    srv.getTrackerStats().getNodePrefetchWaitTimes().getNamedList(detail, hist, values));
         coreSummary.add("Docs/Tx", srv.getTrackerStats().getTxDocs().getNamedList(detail, hist, values));
         coreSummary.add("Doc Transformation time (ms)", srv.getTrackerStats().getDocTransformationTimes()
                     .getNamedList(detail, hist, values));
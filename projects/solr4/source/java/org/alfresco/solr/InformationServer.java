@@ -42,6 +42,7 @@ import org.alfresco.solr.client.AclChangeSet;
 import org.alfresco.solr.client.AclReaders;
 import org.alfresco.solr.client.AlfrescoModel;
 import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.NodeMetaData;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.tracker.IndexHealthReport;
 import org.alfresco.solr.tracker.TrackerStats;
@@ -78,6 +79,13 @@ public interface InformationServer extends InformationServerCollectionProvider
     void indexNode(Node node, boolean overwrite) throws IOException, AuthenticationException, JSONException;
     
     void indexNodes(List<Node> nodes, boolean overwrite) throws IOException, AuthenticationException, JSONException;
+    
+    /**
+     * Index the nodes using metadata that has already been fetched from the repository
+     * 
+     * @param nodeMetaDatas the metadata of the updated nodes and of the nodes of unknown status
+     */
+    void indexNodes(List<Node> nodes, List<NodeMetaData> nodeMetaDatas, boolean overwrite) throws IOException, AuthenticationException, JSONException;
 
     long indexAcl(List<AclReaders> aclReaderList, boolean overwrite) throws IOException;
 
@@ -142,6 +142,7 @@ import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.PropertyValue;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.SOLRAPIClient.GetTextContentResponse;
+import org.alfresco.solr.client.SOLRAPIClient.NodeMetaDataCallback;
 import org.alfresco.solr.client.StringPropertyValue;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.content.SolrContentStore;
@@ -1916,7 +1917,13 @@ public class SolrInformationServer implements InformationServer
     
 
     @Override
-    public void indexNodes(List<Node> nodes, boolean overwrite) throws IOException, AuthenticationException, JSONException
+    public void indexNodes(List<Node> nodes, final boolean overwrite) throws IOException, AuthenticationException, JSONException
+    {
+        indexNodes(nodes, null, overwrite);
+    }
+
+    @Override
+    public void indexNodes(List<Node> nodes, List<NodeMetaData> prefetchedNodeMetaDatas, final boolean overwrite) throws IOException, AuthenticationException, JSONException
     {
         SolrQueryRequest request = null;
         UpdateRequestProcessor processor = null;
@@ -1947,7 +1954,11 @@ public class SolrInformationServer implements InformationServer
                     nodeMetaDatas.add(nodeMetaData);
                 }
                 
-                if (!unknownNodeIds.isEmpty())
+                if (!unknownNodeIds.isEmpty() && prefetchedNodeMetaDatas != null)
+                {
+                    nodeMetaDatas.addAll(selectNodeMetaDatas(prefetchedNodeMetaDatas, unknownNodeIds));
+                }
+                else if (!unknownNodeIds.isEmpty())
                 {
                     NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
                     nmdp.setNodeIds(unknownNodeIds);
@@ -1990,79 +2001,33 @@ public class SolrInformationServer implements InformationServer
                 nodeIds.addAll(shardUpdatedNodeIds);
                 nmdp.setNodeIds(nodeIds);
 
-                // Fetches bulk metadata
-                List<NodeMetaData> nodeMetaDatas =  repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE);
-
-                NEXT_NODE: for (NodeMetaData nodeMetaData : nodeMetaDatas)
+                if (prefetchedNodeMetaDatas != null)
                 {
-                    long start = System.nanoTime();
-                
-                    Node node = nodeIdsToNodes.get(nodeMetaData.getId());
-                    if (nodeMetaData.getTxnId() > node.getTxnId())
+                    for (NodeMetaData nodeMetaData : selectNodeMetaDatas(prefetchedNodeMetaDatas, nodeIds))
                     {
-                        // the node has moved on to a later transaction
-                        // it will be indexed later
-                        continue;
-                    }
-
-                    // All do potential cascade
-                    if (mayHaveChildren(nodeMetaData))
-                    {
-                        cascadeUpdate(nodeMetaData, overwrite, request, processor);
+                        indexNodeMetaData(nodeMetaData, nodeIdsToNodes, overwrite, request, processor);
                     }
-                    
-                    // NON_SHARD_UPDATED do not index just cascade
-                    if(nodeIdsToNodes.get(nodeMetaData.getId()).getStatus() == SolrApiNodeStatus.NON_SHARD_UPDATED)
-                    {
-                        continue;   
-                    }
-                    
-                    AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
-                    addDocCmd.overwrite = overwrite;
-                    
-                    // check index control
-                    Map<QName, PropertyValue> properties = nodeMetaData.getProperties();
-                    StringPropertyValue pValue = (StringPropertyValue) properties.get(ContentModel.PROP_IS_INDEXED);
-                    if (pValue != null)
-                    {
-                        Boolean isIndexed = Boolean.valueOf(pValue.getValue());
-                        if (!isIndexed.booleanValue())
-                        {
-                            if(log.isDebugEnabled())
-                            {
-                                log.debug(".. clearing unindexed");
-                            }
-                            deleteNode(processor, request, node);
-
-                            SolrInputDocument doc = createNewDoc(nodeMetaData, DOC_TYPE_UNINDEXED_NODE);
-                            storeDocOnSolrContentStore(nodeMetaData, doc);
-                            addDocCmd.solrDoc = doc;
-                            if (recordUnindexedNodes)
-                            {
-                                processor.processAdd(addDocCmd);
-                            }
+                    return;
+                }
 
-                            long end = System.nanoTime();
-                            this.trackerStats.addNodeTime(end - start);
-                            continue NEXT_NODE;
-                        }
-                    }
-                    
-                    // Make sure any unindexed or error doc is removed.
-                    if (log.isDebugEnabled())
+                // Fetches bulk metadata, indexing each node as it arrives
+                final Map<Long, Node> nodeIdsToIndex = nodeIdsToNodes;
+                final SolrQueryRequest solrRequest = request;
+                final UpdateRequestProcessor updateProcessor = processor;
+                final long fetchStart = System.nanoTime();
+                final long[] indexTime = new long[] {0};
+                repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE, new NodeMetaDataCallback()
+                {
+                    @Override
+                    public boolean handleNodeMetaData(NodeMetaData nodeMetaData) throws AuthenticationException, IOException
                     {
-                        log.debug(".. deleting node " + node.getId());
+                        long start = System.nanoTime();
+                        indexNodeMetaData(nodeMetaData, nodeIdsToIndex, overwrite, solrRequest, updateProcessor);
+                        indexTime[0] += System.nanoTime() - start;
+                        return true;
                     }
-                    deleteNode(processor, request, node);
-                    
-                    SolrInputDocument doc = createNewDoc(nodeMetaData, DOC_TYPE_NODE);
-                    addToNewDocAndCache(nodeMetaData, doc);
-                    addDocCmd.solrDoc = doc;
-                    processor.processAdd(addDocCmd);
-                    
-                    long end = System.nanoTime();
-                    this.trackerStats.addNodeTime(end - start);
-                } // Ends iteration over nodeMetadatas
+                });
+                this.trackerStats.addNodeMetaDataFetchTime(nodeIds.size(), System.nanoTime() - fetchStart - indexTime[0]);
             } // Ends checking for the existence of updated or unknown node ids 
            
         }
@@ -2082,6 +2047,92 @@ public class SolrInformationServer implements InformationServer
       
     }
 
+    private List<NodeMetaData> selectNodeMetaDatas(List<NodeMetaData> nodeMetaDatas, Collection<Long> nodeIds)
+    {
+        Set<Long> selectedNodeIds = new HashSet<>(nodeIds);
+        List<NodeMetaData> selected = new ArrayList<>(selectedNodeIds.size());
+        for (NodeMetaData nodeMetaData : nodeMetaDatas)
+        {
+            if (selectedNodeIds.contains(nodeMetaData.getId()))
+            {
+                selected.add(nodeMetaData);
+            }
+        }
+        return selected;
+    }
+
+    private void indexNodeMetaData(NodeMetaData nodeMetaData, Map<Long, Node> nodeIdsToNodes, boolean overwrite,
+                SolrQueryRequest request, UpdateRequestProcessor processor) throws IOException, AuthenticationException
+    {
+        long start = System.nanoTime();
+    
+        Node node = nodeIdsToNodes.get(nodeMetaData.getId());
+        if (nodeMetaData.getTxnId() > node.getTxnId())
+        {
+            // the node has moved on to a later transaction
+            // it will be indexed later
+            return;
+        }
+
+        // All do potential cascade
+        if (mayHaveChildren(nodeMetaData))
+        {
+            cascadeUpdate(nodeMetaData, overwrite, request, processor);
+        }
+        
+        // NON_SHARD_UPDATED do not index just cascade
+        if(nodeIdsToNodes.get(nodeMetaData.getId()).getStatus() == SolrApiNodeStatus.NON_SHARD_UPDATED)
+        {
+            return;   
+        }
+        
+        AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
+        addDocCmd.overwrite = overwrite;
+        
+        // check index control
+        Map<QName, PropertyValue> properties = nodeMetaData.getProperties();
+        StringPropertyValue pValue = (StringPropertyValue) properties.get(ContentModel.PROP_IS_INDEXED);
+        if (pValue != null)
+        {
+            Boolean isIndexed = Boolean.valueOf(pValue.getValue());
+            if (!isIndexed.booleanValue())
+            {
+                if(log.isDebugEnabled())
+                {
+                    log.debug(".. clearing unindexed");
+                }
+                deleteNode(processor, request, node);
+
+                SolrInputDocument doc = createNewDoc(nodeMetaData, DOC_TYPE_UNINDEXED_NODE);
+                storeDocOnSolrContentStore(nodeMetaData, doc);
+                addDocCmd.solrDoc = doc;
+                if (recordUnindexedNodes)
+                {
+                    processor.processAdd(addDocCmd);
+                }
+
+                long end = System.nanoTime();
+                this.trackerStats.addNodeTime(end - start);
+                return;
+            }
+        }
+        
+        // Make sure any unindexed or error doc is removed.
+        if (log.isDebugEnabled())
+        {
+            log.debug(".. deleting node " + node.getId());
+        }
+        deleteNode(processor, request, node);
+        
+        SolrInputDocument doc = createNewDoc(nodeMetaData, DOC_TYPE_NODE);
+        addToNewDocAndCache(nodeMetaData, doc);
+        addDocCmd.solrDoc = doc;
+        processor.processAdd(addDocCmd);
+        
+        long end = System.nanoTime();
+        this.trackerStats.addNodeTime(end - start);
+    }
+
     private void addToNewDocAndCache(NodeMetaData nodeMetaData, SolrInputDocument newDoc) throws IOException,
                 AuthenticationException
     {
@@ -26,12 +26,20 @@
 package org.alfresco.solr.tracker;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.httpclient.AuthenticationException;
@@ -47,9 +55,12 @@ import org.alfresco.solr.adapters.IOpenBitSet;
 import org.alfresco.solr.client.GetNodesParameters;
 import org.alfresco.solr.client.Node;
 import org.alfresco.solr.client.Node.SolrApiNodeStatus;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.client.Transactions;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.codec.EncoderException;
 import org.json.JSONException;
 import org.slf4j.Logger;
@@ -64,8 +75,14 @@ public class MetadataTracker extends AbstractTracker implements Tracker
     protected final static Logger log = LoggerFactory.getLogger(MetadataTracker.class);
     private static final int DEFAULT_TRANSACTION_DOCS_BATCH_SIZE = 100;
     private static final int DEFAULT_NODE_BATCH_SIZE = 10;
+    private static final int DEFAULT_TRANSACTION_PREFETCH_DEPTH = 2;
     private int transactionDocsBatchSize = DEFAULT_TRANSACTION_DOCS_BATCH_SIZE;
     private int nodeBatchSize = DEFAULT_NODE_BATCH_SIZE;
+    private int transactionPrefetchDepth = DEFAULT_TRANSACTION_PREFETCH_DEPTH;
+    /** Fetches the nodes and node metadata of upcoming transaction batches while earlier batches are indexed (<tt>null</tt> if not prefetching) */
+    private ExecutorService nodeFetchExecutor;
+    /** Node fetches in transaction order; never holds more than {@link #transactionPrefetchDepth} entries */
+    private ArrayDeque<Future<PrefetchedNodes>> prefetchedNodeBatches = new ArrayDeque<Future<PrefetchedNodes>>();
     private ConcurrentLinkedQueue<Long> transactionsToReindex = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<Long> transactionsToIndex = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<Long> transactionsToPurge = new ConcurrentLinkedQueue<Long>();
@@ -82,7 +99,15 @@ public class MetadataTracker extends AbstractTracker implements Tracker
 
         transactionDocsBatchSize = Integer.parseInt(p.getProperty("alfresco.transactionDocsBatchSize", "100"));
         nodeBatchSize = Integer.parseInt(p.getProperty("alfresco.nodeBatchSize", "10"));
+        transactionPrefetchDepth = Integer.parseInt(p.getProperty("alfresco.transactionPrefetchDepth", "2"));
         threadHandler = new ThreadHandler(p, coreName, "MetadataTracker");
+        if (transactionPrefetchDepth > 0)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("SolrTrackingPool-" + coreName + "-MetadataTracker-Prefetch-");
+            nodeFetchExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        }
     }
     
     MetadataTracker()
@@ -588,103 +613,113 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         long totalUpdatedDocs = 0;
         int docCount = 0;
         
-        do
+        try
         {
+            do
+            {
            
 
-            Long fromCommitTime = getTxFromCommitTime(txnsFound, state.getLastGoodTxCommitTimeInIndex());
-            transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000,
-                        state.getTimeToStopIndexing());
+                Long fromCommitTime = getTxFromCommitTime(txnsFound, state.getLastGoodTxCommitTimeInIndex());
+                transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000,
+                            state.getTimeToStopIndexing());
 
-            setLastTxCommitTimeAndTxIdInTrackerState(transactions, state);
+                setLastTxCommitTimeAndTxIdInTrackerState(transactions, state);
 
-            log.info("Scanning transactions ...");
-            if (transactions.getTransactions().size() > 0)
-            {
-                log.info(".... from " + transactions.getTransactions().get(0));
-                log.info(".... to " + transactions.getTransactions().get(transactions.getTransactions().size() - 1));
-            }
-            else
-            {
-                log.info(".... none found after lastTxCommitTime "
-                            + ((txnsFound.size() > 0) ? txnsFound.getLast().getCommitTimeMs() : state
-                                        .getLastIndexedTxCommitTime()));
-            }
-            
-            ArrayList<Transaction> txBatch = new ArrayList<>();
-            for (Transaction info : transactions.getTransactions())
-            {
-                boolean isInIndex = (info.getCommitTimeMs() <= state.getLastIndexedTxCommitTime()) &&  this.infoSrv.isInIndex(AlfrescoSolrDataModel.getTransactionDocumentId(info.getId()));
-                if (isInIndex)
+                log.info("Scanning transactions ...");
+                if (transactions.getTransactions().size() > 0)
                 {
-                    txnsFound.add(info);
+                    log.info(".... from " + transactions.getTransactions().get(0));
+                    log.info(".... to " + transactions.getTransactions().get(transactions.getTransactions().size() - 1));
                 }
                 else
                 {
-                    // Make sure we do not go ahead of where we started - we will check the holes here
-                    // correctly next time
-                    if (info.getCommitTimeMs() > state.getTimeToStopIndexing())
+                    log.info(".... none found after lastTxCommitTime "
+                                + ((txnsFound.size() > 0) ? txnsFound.getLast().getCommitTimeMs() : state
+                                            .getLastIndexedTxCommitTime()));
+                }
+            
+                ArrayList<Transaction> txBatch = new ArrayList<>();
+                for (Transaction info : transactions.getTransactions())
+                {
+                    boolean isInIndex = (info.getCommitTimeMs() <= state.getLastIndexedTxCommitTime()) &&  this.infoSrv.isInIndex(AlfrescoSolrDataModel.getTransactionDocumentId(info.getId()));
+                    if (isInIndex)
                     {
-                        upToDate = true;
-                        break;
+                        txnsFound.add(info);
                     }
-                    
-                    txBatch.add(info);
-                    if (getUpdateAndDeleteCount(txBatch) > this.transactionDocsBatchSize)
+                    else
                     {
-                        indexed = true;
-                        docCount += indexBatchOfTransactions(txBatch);
-                        
-                        for (Transaction scheduledTx : txBatch)
+                        // Make sure we do not go ahead of where we started - we will check the holes here
+                        // correctly next time
+                        if (info.getCommitTimeMs() > state.getTimeToStopIndexing())
+                        {
+                            upToDate = true;
+                            break;
+                        }
+                    
+                        txBatch.add(info);
+                        if (getUpdateAndDeleteCount(txBatch) > this.transactionDocsBatchSize)
                         {
-                            txnsFound.add(scheduledTx);
-                            txsIndexed.add(scheduledTx);
+                            indexed = true;
+                            docCount += indexBatchOfTransactions(txBatch);
+                        
+                            for (Transaction scheduledTx : txBatch)
+                            {
+                                txnsFound.add(scheduledTx);
+                                txsIndexed.add(scheduledTx);
+                            }
+                            txBatch.clear();
                         }
-                        txBatch.clear();
                     }
-                }
                 
-                if (docCount > batchCount) 
-                {
-                    if (super.infoSrv.getRegisteredSearcherCount() < getMaxLiveSearchers())
+                    if (docCount > batchCount) 
                     {
-                        indexTransactionsAfterAsynchronous(txsIndexed, state);
-                        long endElapsed = System.nanoTime();
-                        trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
-                        startElapsed = endElapsed;
-                        docCount = 0;
+                        if (super.infoSrv.getRegisteredSearcherCount() < getMaxLiveSearchers())
+                        {
+                            docCount += indexPrefetchedBatches();
+                            indexTransactionsAfterAsynchronous(txsIndexed, state);
+                            long endElapsed = System.nanoTime();
+                            trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
+                            startElapsed = endElapsed;
+                            docCount = 0;
+                        }
                     }
+                    checkShutdown();
                 }
-                checkShutdown();
-            }
             
-            if (!txBatch.isEmpty())
-            {
-                indexed = true;
-                if (this.getUpdateAndDeleteCount(txBatch) > 0)
+                if (!txBatch.isEmpty())
                 {
-                    docCount += indexBatchOfTransactions(txBatch);
-                }
+                    indexed = true;
+                    if (this.getUpdateAndDeleteCount(txBatch) > 0)
+                    {
+                        docCount += indexBatchOfTransactions(txBatch);
+                    }
 
-                for (Transaction scheduledTx : txBatch)
-                {
-                    txnsFound.add(scheduledTx);
-                    txsIndexed.add(scheduledTx);
+                    for (Transaction scheduledTx : txBatch)
+                    {
+                        txnsFound.add(scheduledTx);
+                        txsIndexed.add(scheduledTx);
+                    }
+                    txBatch.clear();
                 }
-                txBatch.clear();
-            }
             
-            totalUpdatedDocs += docCount;
-        }
-        while ((transactions.getTransactions().size() > 0) && (upToDate == false));
+                totalUpdatedDocs += docCount;
+            }
+            while ((transactions.getTransactions().size() > 0) && (upToDate == false));
 
-        log.info("total number of docs with metadata updated: " + totalUpdatedDocs);
+            log.info("total number of docs with metadata updated: " + totalUpdatedDocs);
         
-        if (indexed)
+            if (indexed)
+            {
+                docCount += indexPrefetchedBatches();
+                indexTransactionsAfterAsynchronous(txsIndexed, state);
+                long endElapsed = System.nanoTime();
+                trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
+            }
+        }
+        finally
         {
-            indexTransactionsAfterAsynchronous(txsIndexed, state);
-            long endElapsed = System.nanoTime();
-            trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
+            // Anything still in the pipeline belongs to transactions that will be tracked again
+            cancelPrefetchedBatches();
         }
     }
 
@@ -734,17 +769,23 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         return count;
     }
 
+    /**
+     * Index the nodes of a batch of transactions.  When prefetching is enabled, the nodes and the metadata
+     * of the nodes to be updated are fetched in the background and the oldest fetched batch is only handed
+     * to the index workers once more than <tt>alfresco.transactionPrefetchDepth</tt> batches are in the
+     * pipeline, so the tracker blocks
+     * (back-pressure) instead of running ahead of the repository.
+     * 
+     * @return the number of nodes handed over for indexing by this call
+     */
     private int indexBatchOfTransactions(List<Transaction> txBatch) throws AuthenticationException, IOException, JSONException
     {
-        int nodeCount = 0;
-        ArrayList<Transaction> nonEmptyTxs = new ArrayList<>(txBatch.size());
-        GetNodesParameters gnp = new GetNodesParameters();
+        final GetNodesParameters gnp = new GetNodesParameters();
         ArrayList<Long> txIds = new ArrayList<Long>();
         for (Transaction tx : txBatch)
         {
             if (tx.getUpdates() > 0 || tx.getDeletes() > 0)
             {
-                nonEmptyTxs.add(tx);
                 txIds.add(tx.getId());
             }
         }
@@ -752,8 +793,159 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         gnp.setTransactionIds(txIds);
         gnp.setStoreProtocol(storeRef.getProtocol());
         gnp.setStoreIdentifier(storeRef.getIdentifier());
+        
+        if (nodeFetchExecutor == null)
+        {
+            return scheduleNodeIndexing(fetchNodes(gnp), null);
+        }
+        
+        Future<PrefetchedNodes> prefetch = nodeFetchExecutor.submit(new Callable<PrefetchedNodes>()
+        {
+            @Override
+            public PrefetchedNodes call() throws Exception
+            {
+                List<Node> nodes = fetchNodes(gnp);
+                return new PrefetchedNodes(nodes, fetchNodeMetaData(nodes));
+            }
+        });
+        prefetchedNodeBatches.add(prefetch);
+        
+        int nodeCount = 0;
+        while (prefetchedNodeBatches.size() > transactionPrefetchDepth)
+        {
+            PrefetchedNodes prefetched = takePrefetchedNodes();
+            nodeCount += scheduleNodeIndexing(prefetched.nodes, prefetched.nodeMetaDatas);
+        }
+        return nodeCount;
+    }
+    
+    /**
+     * Hand all batches still in the prefetch pipeline over for indexing
+     * 
+     * @return the number of nodes handed over for indexing
+     */
+    private int indexPrefetchedBatches() throws AuthenticationException, IOException, JSONException
+    {
+        int nodeCount = 0;
+        while (!prefetchedNodeBatches.isEmpty())
+        {
+            PrefetchedNodes prefetched = takePrefetchedNodes();
+            nodeCount += scheduleNodeIndexing(prefetched.nodes, prefetched.nodeMetaDatas);
+        }
+        return nodeCount;
+    }
+    
+    private void cancelPrefetchedBatches()
+    {
+        Future<PrefetchedNodes> prefetch;
+        while ((prefetch = prefetchedNodeBatches.poll()) != null)
+        {
+            prefetch.cancel(true);
+        }
+    }
+    
+    /**
+     * Wait for the oldest node fetch in the pipeline to complete
+     */
+    private PrefetchedNodes takePrefetchedNodes() throws AuthenticationException, IOException, JSONException
+    {
+        Future<PrefetchedNodes> prefetch = prefetchedNodeBatches.poll();
+        long start = System.nanoTime();
+        try
+        {
+            return prefetch.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while waiting for nodes", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof AuthenticationException)
+            {
+                throw (AuthenticationException) cause;
+            }
+            else if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof JSONException)
+            {
+                throw (JSONException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new AlfrescoRuntimeException("Failed to get nodes", cause);
+        }
+        finally
+        {
+            trackerStats.addNodePrefetchWaitTime(System.nanoTime() - start);
+        }
+    }
+    
+    private List<Node> fetchNodes(GetNodesParameters gnp) throws AuthenticationException, IOException, JSONException
+    {
+        long start = System.nanoTime();
         List<Node> nodes = client.getNodes(gnp, Integer.MAX_VALUE);
+        trackerStats.addNodeFetchTime(nodes.size(), System.nanoTime() - start);
+        return nodes;
+    }
+    
+    /**
+     * Fetch, in a single request, the metadata the index workers will need for the given nodes: that of the
+     * updated nodes, whether or not they are in this shard, and of the nodes of unknown status in this shard.
+     * 
+     * @return the metadata by node id, or <tt>null</tt> if it could not be fetched and is left to the index workers
+     */
+    private Map<Long, NodeMetaData> fetchNodeMetaData(List<Node> nodes)
+    {
+        List<Long> nodeIds = new ArrayList<Long>(nodes.size());
+        for (Node node : nodes)
+        {
+            if (node.getStatus() == SolrApiNodeStatus.UPDATED
+                    || node.getStatus() == SolrApiNodeStatus.UNKNOWN && isInAclShard(node.getAclId()))
+            {
+                nodeIds.add(node.getId());
+            }
+        }
+        Map<Long, NodeMetaData> nodeMetaDatas = new HashMap<Long, NodeMetaData>((int) (nodeIds.size() * 1.3));
+        if (nodeIds.isEmpty())
+        {
+            return nodeMetaDatas;
+        }
         
+        NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
+        nmdp.setNodeIds(nodeIds);
+        long start = System.nanoTime();
+        try
+        {
+            for (NodeMetaData nodeMetaData : client.getNodesMetaData(nmdp, Integer.MAX_VALUE))
+            {
+                nodeMetaDatas.put(nodeMetaData.getId(), nodeMetaData);
+            }
+        }
+        catch (Exception e)
+        {
+            log.warn("Failed to prefetch the metadata of " + nodeIds.size() + " nodes; it will be fetched when indexing", e);
+            return null;
+        }
+        trackerStats.addNodeMetaDataFetchTime(nodeIds.size(), System.nanoTime() - start);
+        return nodeMetaDatas;
+    }
+    
+    /**
+     * Split the nodes into batches of <tt>alfresco.nodeBatchSize</tt> and schedule them for indexing
+     * 
+     * @param nodeMetaDatas     the prefetched metadata of the nodes, or <tt>null</tt> to fetch it when indexing
+     * @return the number of nodes scheduled
+     */
+    private int scheduleNodeIndexing(List<Node> nodes, Map<Long, NodeMetaData> nodeMetaDatas)
+    {
+        int nodeCount = 0;
         ArrayList<Node> nodeBatch = new ArrayList<>();
         for (Node node : nodes)
         {
@@ -765,7 +957,8 @@ public class MetadataTracker extends AbstractTracker implements Tracker
             if (nodeBatch.size() > nodeBatchSize)
             {
                 nodeCount += nodeBatch.size();
-                NodeIndexWorkerRunnable niwr = new NodeIndexWorkerRunnable(this.threadHandler, nodeBatch, this.infoSrv);
+                NodeIndexWorkerRunnable niwr = new NodeIndexWorkerRunnable(this.threadHandler, nodeBatch, 
+                            getNodeMetaDatas(nodeBatch, nodeMetaDatas), this.infoSrv);
                 this.threadHandler.scheduleTask(niwr);
                 nodeBatch = new ArrayList<>();
             }
@@ -774,23 +967,59 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         if (nodeBatch.size() > 0)
         {
             nodeCount += nodeBatch.size();
-            NodeIndexWorkerRunnable niwr = new NodeIndexWorkerRunnable(this.threadHandler, nodeBatch, this.infoSrv);
+            NodeIndexWorkerRunnable niwr = new NodeIndexWorkerRunnable(this.threadHandler, nodeBatch, 
+                        getNodeMetaDatas(nodeBatch, nodeMetaDatas), this.infoSrv);
             this.threadHandler.scheduleTask(niwr);
             nodeBatch = new ArrayList<>();
         }
         return nodeCount;
     }
+    
+    private List<NodeMetaData> getNodeMetaDatas(List<Node> nodes, Map<Long, NodeMetaData> nodeMetaDatas)
+    {
+        if (nodeMetaDatas == null)
+        {
+            return null;
+        }
+        List<NodeMetaData> batch = new ArrayList<NodeMetaData>(nodes.size());
+        for (Node node : nodes)
+        {
+            NodeMetaData nodeMetaData = nodeMetaDatas.get(node.getId());
+            if (nodeMetaData != null)
+            {
+                batch.add(nodeMetaData);
+            }
+        }
+        return batch;
+    }
+    
+    /**
+     * The nodes of a batch of transactions and, unless it could not be fetched, the metadata of those to update
+     */
+    private static class PrefetchedNodes
+    {
+        private final List<Node> nodes;
+        private final Map<Long, NodeMetaData> nodeMetaDatas;
+        
+        private PrefetchedNodes(List<Node> nodes, Map<Long, NodeMetaData> nodeMetaDatas)
+        {
+            this.nodes = nodes;
+            this.nodeMetaDatas = nodeMetaDatas;
+        }
+    }
 
     class NodeIndexWorkerRunnable extends AbstractWorkerRunnable
     {
         InformationServer infoServer;
         List<Node> nodes;
+        List<NodeMetaData> nodeMetaDatas;
 
-        NodeIndexWorkerRunnable(QueueHandler queueHandler, List<Node> nodes, InformationServer infoServer)
+        NodeIndexWorkerRunnable(QueueHandler queueHandler, List<Node> nodes, List<NodeMetaData> nodeMetaDatas, InformationServer infoServer)
         {
             super(queueHandler);
             this.infoServer = infoServer;
             this.nodes = nodes;
+            this.nodeMetaDatas = nodeMetaDatas;
         }
 
         @Override
@@ -799,7 +1028,14 @@ public class MetadataTracker extends AbstractTracker implements Tracker
             List<Node> filteredNodes = filterNodes(nodes);
             if(filteredNodes.size() > 0)
             {
-                this.infoServer.indexNodes(filteredNodes, true);
+                if (nodeMetaDatas == null)
+                {
+                    this.infoServer.indexNodes(filteredNodes, true);
+                }
+                else
+                {
+                    this.infoServer.indexNodes(filteredNodes, nodeMetaDatas, true);
+                }
             }
         }
         
@@ -1036,4 +1272,20 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         this.queriesToReindex.offer(query);
     }
 
+    @Override
+    public void close()
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (nodeFetchExecutor != null)
+            {
+                nodeFetchExecutor.shutdownNow();
+            }
+        }
+    }
+
 }
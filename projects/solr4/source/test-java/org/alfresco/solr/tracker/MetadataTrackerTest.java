@@ -31,6 +31,7 @@ import static org.mockito.Mockito.*;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -42,6 +43,9 @@ import org.alfresco.solr.NodeReport;
 import org.alfresco.solr.TrackerState;
 import org.alfresco.solr.client.GetNodesParameters;
 import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.Node.SolrApiNodeStatus;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.client.Transactions;
@@ -122,11 +126,86 @@ public class MetadataTrackerTest
         this.metadataTracker.doTrack();
 
         InOrder inOrder = inOrder(srv);
-        inOrder.verify(srv).indexNodes(nodes, true);
+        inOrder.verify(srv).indexNodes(nodes, Collections.<NodeMetaData>emptyList(), true);
         inOrder.verify(srv).indexTransaction(tx, true);
         inOrder.verify(srv).commit();
     }
 
+    @Test
+    public void doTrackPrefetchesMetadataOfUpdatedNodes() throws AuthenticationException, IOException, JSONException, EncoderException
+    {
+        TrackerState state = new TrackerState();
+        state.setTimeToStopIndexing(2L);
+        when(srv.getTrackerInitialState()).thenReturn(state);
+        when(this.metadataTracker.getTrackerState()).thenReturn(state);
+
+        List<Transaction> txsList = new ArrayList<>();
+        Transaction tx = new Transaction();
+        tx.setCommitTimeMs(1L);
+        tx.setUpdates(1);
+        txsList.add(tx);
+        Transactions txs = mock(Transactions.class);
+        when(txs.getTransactions()).thenReturn(txsList);
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt())).thenReturn(txs);
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt(), any(ShardState.class))).thenReturn(txs)
+        .thenReturn(txs).thenReturn(mock(Transactions.class));
+
+        List<Node> nodes = getNodes();
+        nodes.get(0).setStatus(SolrApiNodeStatus.UPDATED);
+        when(repositoryClient.getNodes(any(GetNodesParameters.class), anyInt())).thenReturn(nodes);
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setId(DB_ID);
+        nodeMetaData.setTxnId(TX_ID);
+        List<NodeMetaData> nodeMetaDatas = Collections.singletonList(nodeMetaData);
+        when(repositoryClient.getNodesMetaData(any(NodeMetaDataParameters.class), anyInt())).thenReturn(nodeMetaDatas);
+
+        this.metadataTracker.doTrack();
+
+        // The metadata is fetched with the nodes and handed to the index worker
+        verify(repositoryClient).getNodesMetaData(any(NodeMetaDataParameters.class), anyInt());
+        InOrder inOrder = inOrder(srv);
+        inOrder.verify(srv).indexNodes(nodes, nodeMetaDatas, true);
+        inOrder.verify(srv).indexTransaction(tx, true);
+        inOrder.verify(srv).commit();
+    }
+
+    @Test
+    public void doTrackPropagatesNodeFetchFailureWithoutCommitting() throws AuthenticationException, IOException, JSONException, EncoderException
+    {
+        TrackerState state = new TrackerState();
+        state.setTimeToStopIndexing(2L);
+        when(srv.getTrackerInitialState()).thenReturn(state);
+        when(this.metadataTracker.getTrackerState()).thenReturn(state);
+
+        List<Transaction> txsList = new ArrayList<>();
+        Transaction tx = new Transaction();
+        tx.setCommitTimeMs(1L);
+        tx.setUpdates(1);
+        txsList.add(tx);
+        Transactions txs = mock(Transactions.class);
+        when(txs.getTransactions()).thenReturn(txsList);
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt())).thenReturn(txs);
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt(), any(ShardState.class))).thenReturn(txs)
+        .thenReturn(txs).thenReturn(mock(Transactions.class));
+
+        // The nodes are fetched in the background; the failure must still reach the tracker
+        IOException fetchFailure = new IOException("Repository unavailable");
+        when(repositoryClient.getNodes(any(GetNodesParameters.class), anyInt())).thenThrow(fetchFailure);
+
+        try
+        {
+            this.metadataTracker.doTrack();
+            fail("Expected the node fetch failure to be rethrown");
+        }
+        catch (IOException e)
+        {
+            assertSame(fetchFailure, e);
+        }
+        verify(srv, never()).indexNodes(anyListOf(Node.class), anyBoolean());
+        verify(srv, never()).indexNodes(anyListOf(Node.class), anyListOf(NodeMetaData.class), anyBoolean());
+        verify(srv, never()).commit();
+    }
+
     @Test
     public void doTrackWithNoTransactionsDoesNothing() throws AuthenticationException, IOException, JSONException, EncoderException
     {